@@ -0,0 +1,49 @@
+package edu.umass.cs.surveyman.bench;
+
+import edu.umass.cs.surveyman.output.BreakoffTally;
+import edu.umass.cs.surveyman.output.OrderBiasStruct;
+import edu.umass.cs.surveyman.output.WordingBiasStruct;
+import edu.umass.cs.surveyman.qc.QCMetrics;
+import edu.umass.cs.surveyman.qc.classifiers.EntropyClassifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The dynamic analyses of a population of responses: order bias, wording bias, and breakoff.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalysisBenchmark {
+
+    private static final double ALPHA = 0.05;
+
+    @State(Scope.Benchmark)
+    public static class Population extends ResponsesState {
+
+        QCMetrics qcMetrics;
+
+        @Override
+        protected void prepare() throws Exception {
+            qcMetrics = new QCMetrics(survey, new EntropyClassifier(survey, false, ALPHA, 2));
+        }
+    }
+
+    @Benchmark
+    public OrderBiasStruct orderBias(Population population) throws Exception {
+        return OrderBiasStruct.makeStruct(population.qcMetrics, population.responses, ALPHA);
+    }
+
+    @Benchmark
+    public WordingBiasStruct wordingBias(Population population) throws Exception {
+        return WordingBiasStruct.makeStruct(population.qcMetrics, population.responses, ALPHA);
+    }
+
+    @Benchmark
+    public BreakoffTally breakoff(Population population) {
+        return BreakoffTally.count(population.qcMetrics, population.responses);
+    }
+}
@@ -0,0 +1,35 @@
+package edu.umass.cs.surveyman.bench;
+
+import edu.umass.cs.surveyman.SurveyMan;
+import edu.umass.cs.surveyman.output.ClassifiedRespondentsStruct;
+import edu.umass.cs.surveyman.qc.QCMetrics;
+import edu.umass.cs.surveyman.qc.classifiers.AbstractClassifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fits each classifier to a population of responses and classifies every response. The linear, Mahalanobis and
+ * NIPS 2010 classifiers are left out until they run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassifyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Population extends ResponsesState {
+
+        @Param({"ALL", "CLUSTER", "ENTROPY", "LOG_LIKELIHOOD", "LPO", "STACKED"})
+        public String classifier;
+    }
+
+    @Benchmark
+    public ClassifiedRespondentsStruct classify(Population population) throws Exception {
+        AbstractClassifier classifier = SurveyMan.resolveClassifier(population.survey, population.classifier, 2, 0.05,
+                false);
+        return new QCMetrics(population.survey, classifier).classifyResponses(population.responses);
+    }
+}
@@ -0,0 +1,428 @@
+package edu.umass.cs.surveyman.bench;
+
+import edu.umass.cs.surveyman.SurveyMan;
+import edu.umass.cs.surveyman.analyses.AbstractRule;
+import edu.umass.cs.surveyman.analyses.DynamicAnalysis;
+import edu.umass.cs.surveyman.analyses.RuleSet;
+import edu.umass.cs.surveyman.analyses.StaticAnalysis;
+import edu.umass.cs.surveyman.analyses.SyntheticResponses;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
+import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
+import edu.umass.cs.surveyman.utils.TableWriter;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Runs static and dynamic analysis over the surveys and responses bundled in {@code data}, once per classifier, and
+ * records the cost of each stage -- wall time, peak heap, allocation, and collector time; see {@link StageMeter} -- in a
+ * tab-separated results file. Given the results of an earlier run as a baseline, it reports every stage that got worse
+ * by more than the thresholds, and exits with status 1 if there were any.
+ *
+ * <p>Where a case's recorded responses cannot be read, as is the case for those in an older results format, dynamic
+ * analysis runs on simulated respondents instead ({@code --respondents} of them). Those respondents, and the populations
+ * that static analysis simulates, are seeded from {@code --seed}, so two runs with the same options do the same work.
+ * The options that shape the work are written to the first line of the results file, and a baseline written with
+ * different options is refused rather than compared.
+ *
+ * <pre>
+ *     java -cp target/benchmarks.jar edu.umass.cs.surveyman.bench.CorpusBenchmark --baseline corpus-baseline.tsv
+ * </pre>
+ */
+public final class CorpusBenchmark {
+
+    /**
+     * A survey in the corpus and the responses collected for it.
+     */
+    private static final class Case {
+        final String name;
+        final String survey;
+        final String responses;
+
+        Case(String name, String survey, String responses) {
+            this.name = name;
+            this.survey = survey;
+            this.responses = responses;
+        }
+    }
+
+    private static final Case[] CORPUS = {
+            new Case("wage_survey", "samples/wage_survey.csv", "results/wage_survey_results.csv"),
+            new Case("phonology", "samples/phonology.csv", "results/english_phonology_results.csv"),
+            new Case("prototypicality", "samples/prototypicality.csv", "results/prototypicality_results.csv"),
+            new Case("food", "samples/food_survey.csv", "responses/food"),
+            new Case("ipierotis", "samples/Ipierotis.csv", "responses/ipierotis")
+    };
+
+    // The classifiers that run end to end; linear, Mahalanobis and NIPS 2010 do not yet.
+    private static final String CLASSIFIERS = "all,cluster,entropy,log_likelihood,lpo,stacked";
+    private static final String[] COLUMNS = {"case", "classifier", "stage", "status", "wall_ms", "peak_heap_bytes",
+            "allocated_bytes", "allocation_mb_per_s", "gc_ms"};
+    // The columns compared against the baseline, and the thresholds that apply to them.
+    private static final String[] METRICS = {"wall_ms", "peak_heap_bytes", "allocated_bytes", "gc_ms"};
+    private static final String[] THRESHOLDS = {"wallthreshold", "heapthreshold", "allocthreshold", "gcthreshold"};
+    // The options that change the work a run does, and so must match the baseline's.
+    private static final String[] OPTIONS = {"seed", "respondents", "granularity", "alpha", "numClusters",
+            "classifiers"};
+    private static final String OPTIONS_MARKER = "#";
+    // The make-up of the simulated respondents.
+    private static final double BOTS = 0.25;
+    private static final double NOISE = 0.1;
+    private static final double BREAKOFF = 0.1;
+    private static final String NONE = "-";
+    private static final String OK = "ok";
+
+    private final StageMeter meter = new StageMeter();
+    private final TableWriter out;
+    // Rows by case, classifier and stage, as written.
+    private final Map<String, String[]> rows = new LinkedHashMap<>();
+
+    private CorpusBenchmark(TableWriter out) {
+        this.out = out;
+    }
+
+    private interface Stage<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Runs and measures a stage, and writes its row. A stage that throws an exception is recorded as failed, with the
+     * exception's name as its status; errors are not caught, and end the run.
+     * @return The stage's result, or null if it failed.
+     */
+    private <T> T measure(String caseName, String classifier, String stage, Stage<T> body) throws IOException {
+        T result = null;
+        String status = OK;
+        meter.start();
+        try {
+            result = body.run();
+        } catch (Exception e) {
+            status = e.getClass().getSimpleName();
+            SurveyMan.LOGGER.warn(String.format("%s/%s/%s failed: %s", caseName, classifier, stage, e.getMessage()));
+        }
+        StageMeter.Measurement m = meter.stop();
+        String[] row = {caseName, classifier, stage, status, format(m.wallMillis()), Long.toString(m.peakHeapBytes),
+                Long.toString(m.allocatedBytes), format(m.allocationRate()), Long.toString(m.gcMillis)};
+        for (String cell : row)
+            out.cell(cell);
+        out.endRow();
+        out.flush();
+        rows.put(key(row[0], row[1], row[2]), row);
+        System.out.println(String.join("\t", row));
+        return result;
+    }
+
+    private static String format(double d) {
+        return String.format(Locale.ROOT, "%.3f", d);
+    }
+
+    private static String key(String caseName, String classifier, String stage) {
+        return caseName + "\t" + classifier + "\t" + stage;
+    }
+
+    private void run(final File corpus, Case c, List<String> classifiers, boolean runStatic, boolean runDynamic,
+                     final double granularity, final double alpha, final int numClusters, final int numRespondents,
+                     final long seed)
+            throws IOException {
+        final File surveyFile = new File(corpus, c.survey);
+        final Survey survey = measure(c.name, NONE, "parse", new Stage<Survey>() {
+            @Override
+            public Survey run() throws Exception {
+                return new CSVParser(new CSVLexer(surveyFile.getPath(), ",")).parse();
+            }
+        });
+        if (survey == null)
+            return;
+        final File responseFile = new File(corpus, c.responses);
+        List<DynamicAnalysis.DynamicSurveyResponse> responses = null;
+        if (runDynamic) {
+            responses = measure(c.name, NONE, "responses", new Stage<List<DynamicAnalysis.DynamicSurveyResponse>>() {
+                @Override
+                public List<DynamicAnalysis.DynamicSurveyResponse> run() throws Exception {
+                    return DynamicAnalysis.readSurveyResponses(survey, responseFile.getPath());
+                }
+            });
+            if (responses == null)
+                responses = measure(c.name, NONE, "simulate", new Stage<List<DynamicAnalysis.DynamicSurveyResponse>>() {
+                    @Override
+                    public List<DynamicAnalysis.DynamicSurveyResponse> run() throws Exception {
+                        List<DynamicAnalysis.DynamicSurveyResponse> simulated = new ArrayList<>();
+                        for (DynamicAnalysis.DynamicSurveyResponse sr
+                                : new SyntheticResponses(survey, numRespondents, seed, BOTS, NOISE, BREAKOFF))
+                            simulated.add(sr);
+                        return simulated;
+                    }
+                });
+        }
+        final List<DynamicAnalysis.DynamicSurveyResponse> sample = responses;
+        for (final String classifier : classifiers) {
+            if (runStatic) {
+                final StaticAnalysis.Report report = measure(c.name, classifier, "static",
+                        new Stage<StaticAnalysis.Report>() {
+                            @Override
+                            public StaticAnalysis.Report run() throws Exception {
+                                return StaticAnalysis.staticAnalysis(survey,
+                                        SurveyMan.resolveClassifier(survey, classifier, numClusters, alpha, false),
+                                        granularity, RandomRespondent.AdversaryType.UNIFORM, RuleSet.fromRegistry(),
+                                        new MersenneRandom(seed));
+                            }
+                        });
+                if (report != null)
+                    measure(c.name, classifier, "static_report", new Stage<Long>() {
+                        @Override
+                        public Long run() {
+                            return print(report);
+                        }
+                    });
+            }
+            if (sample != null) {
+                final DynamicAnalysis.Report report = measure(c.name, classifier, "dynamic",
+                        new Stage<DynamicAnalysis.Report>() {
+                            @Override
+                            public DynamicAnalysis.Report run() throws Exception {
+                                return DynamicAnalysis.dynamicAnalysis(survey, sample,
+                                        SurveyMan.resolveClassifier(survey, classifier, numClusters, alpha, false));
+                            }
+                        });
+                if (report != null)
+                    measure(c.name, classifier, "dynamic_report", new Stage<Long>() {
+                        @Override
+                        public Long run() {
+                            return print(report);
+                        }
+                    });
+            }
+        }
+    }
+
+    /**
+     * Prints a report to nowhere.
+     * @return The number of bytes printed.
+     */
+    private static long print(Object report) {
+        CountingOutputStream sink = new CountingOutputStream();
+        if (report instanceof StaticAnalysis.Report)
+            ((StaticAnalysis.Report) report).print(sink);
+        else ((DynamicAnalysis.Report) report).print(sink);
+        return sink.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * The options and rows of a results file written by an earlier run.
+     */
+    private static final class Results {
+        // Option values by name, from the file's first line.
+        final Map<String, String> options = new LinkedHashMap<>();
+        // Rows by case, classifier and stage.
+        final Map<String, String[]> rows = new LinkedHashMap<>();
+    }
+
+    private static Results readResults(File file) throws IOException {
+        Results results = new Results();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        if (lines.size() < 2 || !lines.get(1).equals(String.join("\t", COLUMNS)))
+            throw new IOException(String.format("%s is not a corpus benchmark results file, or was written by an "
+                    + "older version without its options.", file));
+        String[] options = lines.get(0).split("\t", -1);
+        for (int i = 1; i < options.length; i++) {
+            int eq = options[i].indexOf('=');
+            if (eq > 0)
+                results.options.put(options[i].substring(0, eq), options[i].substring(eq + 1));
+        }
+        for (String line : lines.subList(2, lines.size())) {
+            String[] row = line.split("\t", -1);
+            if (row.length == COLUMNS.length)
+                results.rows.put(key(row[0], row[1], row[2]), row);
+        }
+        return results;
+    }
+
+    /**
+     * @return This run's value of each of {@link #OPTIONS}, as written to the results file.
+     */
+    private static Map<String, String> options(Namespace ns, List<String> classifiers) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String option : OPTIONS)
+            options.put(option, String.valueOf((Object) ns.get(option)));
+        options.put("classifiers", String.join(",", classifiers));
+        return options;
+    }
+
+    /**
+     * @return A line for each option whose value differs between the baseline and this run.
+     */
+    private static List<String> mismatches(Map<String, String> baseline, Map<String, String> options) {
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<String, String> e : options.entrySet())
+            if (!e.getValue().equals(baseline.get(e.getKey())))
+                mismatches.add(String.format("--%s was %s in the baseline, but is %s in this run", e.getKey(),
+                        baseline.containsKey(e.getKey()) ? baseline.get(e.getKey()) : "unset", e.getValue()));
+        return mismatches;
+    }
+
+    private static int column(String name) {
+        return Arrays.asList(COLUMNS).indexOf(name);
+    }
+
+    /**
+     * Compares this run with the baseline, stage by stage.
+     * @param thresholds The largest tolerated relative increase for each of {@link #METRICS}.
+     * @param floorMillis Times below this, in both runs, are too short to compare.
+     * @return A line for each regression.
+     */
+    private List<String> compare(Map<String, String[]> baseline, double[] thresholds, double floorMillis) {
+        List<String> regressions = new ArrayList<>();
+        int status = column("status");
+        for (Map.Entry<String, String[]> e : rows.entrySet()) {
+            String[] before = baseline.get(e.getKey());
+            String[] after = e.getValue();
+            if (before == null || !before[status].equals(OK))
+                continue;
+            String stage = e.getKey().replace('\t', '/');
+            if (!after[status].equals(OK)) {
+                regressions.add(String.format("%s: failed with %s", stage, after[status]));
+                continue;
+            }
+            for (int m = 0; m < METRICS.length; m++) {
+                int col = column(METRICS[m]);
+                double b = Double.parseDouble(before[col]), a = Double.parseDouble(after[col]);
+                boolean time = METRICS[m].endsWith("_ms");
+                if (time ? Math.max(a, b) < floorMillis : b <= 0)
+                    continue;
+                double change = b == 0 ? Double.POSITIVE_INFINITY : (a - b) / b;
+                if (change > thresholds[m])
+                    regressions.add(String.format(Locale.ROOT, "%s: %s rose from %s to %s (%+.1f%%, threshold %.1f%%)",
+                            stage, METRICS[m], before[col], after[col], 100 * change, 100 * thresholds[m]));
+            }
+        }
+        return regressions;
+    }
+
+    private static ArgumentParser makeArgParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser(CorpusBenchmark.class.getName(), true, "-")
+                .description("Measures static and dynamic analysis over the bundled survey corpus.");
+        parser.addArgument("--corpus").setDefault("data").help("The directory holding samples/, results/ and responses/.");
+        parser.addArgument("--cases").setDefault("")
+                .help("Comma-separated cases to run, from wage_survey, phonology, prototypicality, food and ipierotis. "
+                        + "If omitted, all of them.");
+        parser.addArgument("--classifiers").setDefault(CLASSIFIERS).help("Comma-separated classifiers to run.");
+        parser.addArgument("--analyses").setDefault("static,dynamic").help("Comma-separated analyses to run.");
+        parser.addArgument("--granularity").type(Double.class).setDefault(0.5)
+                .help("The step size in the proportion of bad actors, for static analysis. Each step simulates a "
+                        + "population and classifies it, so the finer the step, the longer the run.");
+        parser.addArgument("--alpha").type(Double.class).setDefault(0.05).help("Hypothesis testing threshold.");
+        parser.addArgument("--numClusters").type(Integer.class).setDefault(2).help("Clusters for the classifiers.");
+        parser.addArgument("--respondents").type(Integer.class).setDefault(250)
+                .help("Respondents to simulate where recorded responses cannot be read.");
+        parser.addArgument("--seed").type(Long.class).setDefault(0L)
+                .help("Seeds the simulated respondents and populations.");
+        parser.addArgument("--results").setDefault("corpus-benchmark.tsv").help("Where to write this run's results.");
+        parser.addArgument("--baseline").setDefault("").help("The results of an earlier run to compare against.");
+        parser.addArgument("--wallthreshold").type(Double.class).setDefault(0.25)
+                .help("Tolerated relative increase in wall time.");
+        parser.addArgument("--heapthreshold").type(Double.class).setDefault(0.25)
+                .help("Tolerated relative increase in peak heap.");
+        parser.addArgument("--allocthreshold").type(Double.class).setDefault(0.25)
+                .help("Tolerated relative increase in bytes allocated.");
+        parser.addArgument("--gcthreshold").type(Double.class).setDefault(0.5)
+                .help("Tolerated relative increase in collector time.");
+        parser.addArgument("--floor").type(Double.class).setDefault(50.0)
+                .help("Times, in milliseconds, too short to compare.");
+        return parser;
+    }
+
+    private static List<String> list(String csv) {
+        List<String> items = new ArrayList<>();
+        for (String s : csv.split(","))
+            if (!s.trim().isEmpty())
+                items.add(s.trim());
+        return items;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ArgumentParser parser = makeArgParser();
+        Namespace ns;
+        try {
+            ns = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            System.exit(2);
+            return;
+        }
+        File corpus = new File(ns.getString("corpus"));
+        List<String> cases = list(ns.getString("cases"));
+        List<String> classifiers = new ArrayList<>();
+        for (String classifier : list(ns.getString("classifiers")))
+            classifiers.add(classifier.toUpperCase());
+        List<String> analyses = list(ns.getString("analyses"));
+        Map<String, String> options = options(ns, classifiers);
+        Results baseline = ns.getString("baseline").isEmpty()
+                ? null : readResults(new File(ns.getString("baseline")));
+        if (baseline != null) {
+            List<String> mismatches = mismatches(baseline.options, options);
+            for (String mismatch : mismatches)
+                System.err.println(mismatch);
+            if (!mismatches.isEmpty()) {
+                System.err.println(String.format("%s was run with different options; rerun it with this run's options "
+                        + "or compare without a baseline.", ns.getString("baseline")));
+                System.exit(2);
+            }
+        }
+
+        AbstractRule.getDefaultRules();
+        CorpusBenchmark benchmark;
+        try (TableWriter out = new TableWriter(new FileOutputStream(ns.getString("results")))) {
+            out.cell(OPTIONS_MARKER);
+            for (Map.Entry<String, String> option : options.entrySet())
+                out.cell(option.getKey() + "=" + option.getValue());
+            out.endRow();
+            for (String column : COLUMNS)
+                out.cell(column);
+            out.endRow();
+            benchmark = new CorpusBenchmark(out);
+            System.out.println(String.join("\t", COLUMNS));
+            for (Case c : CORPUS)
+                if (cases.isEmpty() || cases.contains(c.name))
+                    benchmark.run(corpus, c, classifiers, analyses.contains("static"), analyses.contains("dynamic"),
+                            (Double) ns.get("granularity"), (Double) ns.get("alpha"), (Integer) ns.get("numClusters"),
+                            (Integer) ns.get("respondents"), (Long) ns.get("seed"));
+        }
+        System.out.println(String.format("Results written to %s", ns.getString("results")));
+
+        if (baseline != null) {
+            double[] thresholds = new double[THRESHOLDS.length];
+            for (int i = 0; i < thresholds.length; i++)
+                thresholds[i] = (Double) ns.get(THRESHOLDS[i]);
+            List<String> regressions = benchmark.compare(baseline.rows, thresholds, (Double) ns.get("floor"));
+            for (String regression : regressions)
+                System.out.println("REGRESSION " + regression);
+            System.out.println(String.format("%d regressions against %s", regressions.size(), ns.getString("baseline")));
+            if (!regressions.isEmpty())
+                System.exit(1);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,82 @@
+package edu.umass.cs.surveyman.bench;
+
+import edu.umass.cs.surveyman.analyses.SurveyResponse;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
+import edu.umass.cs.surveyman.qc.respondents.NoisyLexicographicRespondent;
+import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
+import edu.umass.cs.surveyman.survey.Survey;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Surveys and responses shared by the benchmarks.
+ */
+final class Fixtures {
+
+    /**
+     * Where the sample surveys live, relative to the directory the benchmarks are run from.
+     */
+    static final String SAMPLES = System.getProperty("surveyman.samples", "data/samples");
+    private static final String[] OPTIONS = {"Strongly disagree", "Disagree", "Neutral", "Agree", "Strongly agree"};
+    private static final int BLOCK_SIZE = 5;
+
+    private Fixtures() {}
+
+    /**
+     * Reads a survey from {@link #SAMPLES} into memory, so that parsing it can be timed without the disk.
+     */
+    static String sample(String filename) throws IOException {
+        return new String(Files.readAllBytes(new File(SAMPLES, filename).toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a survey of Likert questions as CSV: fixed top-level blocks of five questions, in which every fourth
+     * block's questions are variants of one another.
+     * @param numQuestions The number of questions.
+     */
+    static String syntheticCsv(int numQuestions) {
+        StringBuilder csv = new StringBuilder("BLOCK,QUESTION,OPTIONS,BRANCH,ORDERED\n");
+        for (int q = 0; q < numQuestions; q++) {
+            int block = q / BLOCK_SIZE + 1;
+            boolean variant = block % 4 == 0;
+            String text = variant
+                    ? String.format("Statement %d (variant %d).", block, q % BLOCK_SIZE + 1)
+                    : String.format("Statement %d.", q + 1);
+            for (int o = 0; o < OPTIONS.length; o++)
+                csv.append(block).append(',')
+                        .append(o == 0 ? text : "").append(',')
+                        .append(OPTIONS[o]).append(',')
+                        .append(variant ? "NEXT" : "").append(',')
+                        .append("TRUE\n");
+        }
+        return csv.toString();
+    }
+
+    static Survey parseCsv(String csv) throws Exception {
+        return new CSVParser(new CSVLexer(new StringReader(csv), ",")).parse();
+    }
+
+    static Survey syntheticSurvey(int numQuestions) throws Exception {
+        return parseCsv(syntheticCsv(numQuestions));
+    }
+
+    /**
+     * Simulates a population in which three quarters of the respondents are honest but noisy, and the rest answer
+     * uniformly at random.
+     */
+    static List<SurveyResponse> responses(Survey survey, int numRespondents) throws Exception {
+        NoisyLexicographicRespondent honest = new NoisyLexicographicRespondent(survey, 0.25);
+        RandomRespondent random = new RandomRespondent(survey, RandomRespondent.AdversaryType.UNIFORM);
+        List<SurveyResponse> responses = new ArrayList<>(numRespondents);
+        for (int i = 0; i < numRespondents; i++)
+            responses.add(i % 4 == 3 ? random.getResponse() : honest.getResponse());
+        return responses;
+    }
+}
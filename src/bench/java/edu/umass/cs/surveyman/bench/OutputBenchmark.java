@@ -0,0 +1,66 @@
+package edu.umass.cs.surveyman.bench;
+
+import edu.umass.cs.surveyman.output.BreakoffTally;
+import edu.umass.cs.surveyman.output.ClassifiedRespondentsStruct;
+import edu.umass.cs.surveyman.output.OrderBiasStruct;
+import edu.umass.cs.surveyman.output.WordingBiasStruct;
+import edu.umass.cs.surveyman.qc.QCMetrics;
+import edu.umass.cs.surveyman.qc.classifiers.EntropyClassifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes the survey and each section of a dynamic analysis report to JSON.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Report extends ResponsesState {
+
+        OrderBiasStruct orderBiases;
+        WordingBiasStruct wordingBiases;
+        BreakoffTally breakoff;
+        ClassifiedRespondentsStruct classifiedResponses;
+
+        @Override
+        protected void prepare() throws Exception {
+            double alpha = 0.05;
+            QCMetrics qcMetrics = new QCMetrics(survey, new EntropyClassifier(survey, false, alpha, 2));
+            orderBiases = OrderBiasStruct.makeStruct(qcMetrics, responses, alpha);
+            wordingBiases = WordingBiasStruct.makeStruct(qcMetrics, responses, alpha);
+            breakoff = BreakoffTally.count(qcMetrics, responses);
+            classifiedResponses = qcMetrics.classifyResponses(responses);
+        }
+    }
+
+    @Benchmark
+    public String survey(Report report) throws Exception {
+        return report.survey.jsonize();
+    }
+
+    @Benchmark
+    public String orderBias(Report report) throws Exception {
+        return report.orderBiases.jsonize();
+    }
+
+    @Benchmark
+    public String wordingBias(Report report) throws Exception {
+        return report.wordingBiases.jsonize();
+    }
+
+    @Benchmark
+    public String breakoff(Report report) throws Exception {
+        return report.breakoff.byPosition.jsonize() + report.breakoff.byQuestion.jsonize();
+    }
+
+    @Benchmark
+    public String classifiedResponses(Report report) throws Exception {
+        return report.classifiedResponses.jsonize();
+    }
+}
@@ -0,0 +1,66 @@
+package edu.umass.cs.surveyman.bench;
+
+import edu.umass.cs.surveyman.input.json.JSONParser;
+import edu.umass.cs.surveyman.survey.Survey;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses the sample surveys, and synthetic surveys of increasing size, from memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Sample {
+
+        @Param({"prototypicality.csv", "wage_survey.csv", "phonology.csv", "food_survey.csv", "Ipierotis.csv",
+                "flat_test_csv.csv", "cdc_survey.json"})
+        public String filename;
+
+        String source;
+
+        @Setup
+        public void setUp() throws Exception {
+            source = Fixtures.sample(filename);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Synthetic {
+
+        @Param({"10", "100", "1000"})
+        public int numQuestions;
+
+        String csv;
+        String json;
+
+        @Setup
+        public void setUp() throws Exception {
+            csv = Fixtures.syntheticCsv(numQuestions);
+            json = Fixtures.parseCsv(csv).jsonize();
+        }
+    }
+
+    @Benchmark
+    public Survey sample(Sample sample) throws Exception {
+        if (sample.filename.endsWith(".json"))
+            return new JSONParser(sample.source).parse();
+        return Fixtures.parseCsv(sample.source);
+    }
+
+    @Benchmark
+    public Survey syntheticCsv(Synthetic synthetic) throws Exception {
+        return Fixtures.parseCsv(synthetic.csv);
+    }
+
+    @Benchmark
+    public Survey syntheticJson(Synthetic synthetic) throws Exception {
+        return new JSONParser(synthetic.json).parse();
+    }
+}
@@ -0,0 +1,38 @@
+package edu.umass.cs.surveyman.bench;
+
+import edu.umass.cs.surveyman.analyses.SurveyResponse;
+import edu.umass.cs.surveyman.survey.Survey;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * A synthetic survey and a simulated population of responses to it, built once per trial.
+ */
+@State(Scope.Benchmark)
+public class ResponsesState {
+
+    @Param({"20", "100"})
+    public int numQuestions;
+
+    @Param({"100", "1000"})
+    public int numRespondents;
+
+    public Survey survey;
+    public List<SurveyResponse> responses;
+
+    @Setup
+    public void setUp() throws Exception {
+        survey = Fixtures.syntheticSurvey(numQuestions);
+        responses = Fixtures.responses(survey, numRespondents);
+        prepare();
+    }
+
+    /**
+     * Runs after the survey and responses are built; subclasses precompute whatever else their benchmarks read.
+     */
+    protected void prepare() throws Exception {}
+}
@@ -0,0 +1,75 @@
+package edu.umass.cs.surveyman.bench;
+
+import edu.umass.cs.surveyman.analyses.SurveyResponse;
+import edu.umass.cs.surveyman.qc.Interpreter;
+import edu.umass.cs.surveyman.qc.respondents.AbstractRespondent;
+import edu.umass.cs.surveyman.qc.respondents.NoisyLexicographicRespondent;
+import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates populations of respondents, and walks the interpreter through a survey without choosing answers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulateBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Population {
+
+        @Param({"20", "100"})
+        public int numQuestions;
+
+        @Param({"100", "1000"})
+        public int numRespondents;
+
+        Survey survey;
+        AbstractRespondent random;
+        AbstractRespondent noisy;
+
+        @Setup
+        public void setUp() throws Exception {
+            survey = Fixtures.syntheticSurvey(numQuestions);
+            random = new RandomRespondent(survey, RandomRespondent.AdversaryType.UNIFORM);
+            noisy = new NoisyLexicographicRespondent(survey, 0.25);
+        }
+    }
+
+    private static void simulate(AbstractRespondent respondent, int numRespondents, Blackhole blackhole)
+            throws Exception {
+        for (int i = 0; i < numRespondents; i++)
+            blackhole.consume(respondent.getResponse());
+    }
+
+    @Benchmark
+    public void randomRespondents(Population population, Blackhole blackhole) throws Exception {
+        simulate(population.random, population.numRespondents, blackhole);
+    }
+
+    @Benchmark
+    public void noisyLexicographicRespondents(Population population, Blackhole blackhole) throws Exception {
+        simulate(population.noisy, population.numRespondents, blackhole);
+    }
+
+    @Benchmark
+    public void interpreter(Population population, Blackhole blackhole) throws Exception {
+        for (int i = 0; i < population.numRespondents; i++) {
+            Interpreter interpreter = new Interpreter(population.survey);
+            do {
+                Question q = interpreter.getNextQuestion();
+                interpreter.answer(q, Collections.singletonList(q.getOptListByIndex()[0]));
+            } while (!interpreter.terminated());
+            SurveyResponse response = interpreter.getResponse();
+            blackhole.consume(response);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package edu.umass.cs.surveyman.bench;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures one stage of a run at a time: its wall time, the peak heap it reached, how much it allocated, and how long
+ * the collector ran. Allocation is counted on every thread, so stages that fan out to thread pools are charged for
+ * their workers too.
+ *
+ * <p>The JVM only reports allocation per live thread, so it is estimated here as the growth in heap use over the stage
+ * plus everything the collector reclaimed during it. Collection notifications arrive asynchronously, so the meter waits
+ * (briefly) for every collection to be reported at both ends of a stage. Heap use only moves a region at a time, so
+ * the estimate is never taken to be less than what the measuring thread allocated itself.
+ */
+final class StageMeter {
+
+    /**
+     * One stage's measurements.
+     */
+    static final class Measurement {
+        final long wallNanos;
+        final long peakHeapBytes;
+        final long allocatedBytes;
+        final long gcMillis;
+
+        Measurement(long wallNanos, long peakHeapBytes, long allocatedBytes, long gcMillis) {
+            this.wallNanos = wallNanos;
+            this.peakHeapBytes = peakHeapBytes;
+            this.allocatedBytes = allocatedBytes;
+            this.gcMillis = gcMillis;
+        }
+
+        double wallMillis() {
+            return wallNanos / 1e6;
+        }
+
+        /**
+         * @return Megabytes allocated per second of wall time.
+         */
+        double allocationRate() {
+            return wallNanos == 0 ? 0.0 : (allocatedBytes / 1e6) / (wallNanos / 1e9);
+        }
+    }
+
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final AtomicLong reclaimed = new AtomicLong();
+    private final AtomicLong notified = new AtomicLong();
+    // Collections before the listener was registered, which will never be reported.
+    private final long unreported;
+
+    private long startNanos;
+    private long startHeap;
+    private long startReclaimed;
+    private long startGcMillis;
+    private long startThreadAllocated;
+
+    StageMeter() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                heapPools.add(pool);
+        NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                    return;
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                Map<String, MemoryUsage> before = info.getGcInfo().getMemoryUsageBeforeGc();
+                Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+                long freed = 0;
+                for (Map.Entry<String, MemoryUsage> e : before.entrySet()) {
+                    MemoryUsage a = after.get(e.getKey());
+                    if (a != null && e.getValue().getUsed() > a.getUsed())
+                        freed += e.getValue().getUsed() - a.getUsed();
+                }
+                reclaimed.addAndGet(freed);
+                notified.incrementAndGet();
+            }
+        };
+        for (GarbageCollectorMXBean collector : collectors)
+            if (collector instanceof NotificationEmitter)
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+        unreported = collections();
+    }
+
+    /**
+     * Collects garbage left by earlier stages, then starts measuring.
+     */
+    void start() {
+        System.gc();
+        awaitNotifications();
+        for (MemoryPoolMXBean pool : heapPools)
+            pool.resetPeakUsage();
+        startHeap = memory.getHeapMemoryUsage().getUsed();
+        startReclaimed = reclaimed.get();
+        startGcMillis = gcMillis();
+        startThreadAllocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        startNanos = System.nanoTime();
+    }
+
+    Measurement stop() {
+        long wall = System.nanoTime() - startNanos;
+        long heap = memory.getHeapMemoryUsage().getUsed();
+        long threadAllocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - startThreadAllocated;
+        awaitNotifications();
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools)
+            peak += pool.getPeakUsage().getUsed();
+        long allocated = Math.max(threadAllocated, heap - startHeap + reclaimed.get() - startReclaimed);
+        return new Measurement(wall, peak, allocated, gcMillis() - startGcMillis);
+    }
+
+    private void awaitNotifications() {
+        long deadline = System.nanoTime() + 1000000000L;
+        while (unreported + notified.get() < collections() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private long collections() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors)
+            total += Math.max(0, collector.getCollectionCount());
+        return total;
+    }
+
+    private long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors)
+            total += Math.max(0, collector.getCollectionTime());
+        return total;
+    }
+}
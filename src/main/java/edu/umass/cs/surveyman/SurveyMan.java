@@ -3,6 +3,8 @@ package edu.umass.cs.surveyman;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
 import edu.umass.cs.surveyman.analyses.AbstractRule;
 import edu.umass.cs.surveyman.analyses.DynamicAnalysis;
+import edu.umass.cs.surveyman.analyses.RuleSet;
+import edu.umass.cs.surveyman.analyses.ResponseArchive;
 import edu.umass.cs.surveyman.analyses.StaticAnalysis;
 import edu.umass.cs.surveyman.input.AbstractParser;
 import edu.umass.cs.surveyman.input.csv.CSVLexer;
@@ -12,6 +14,8 @@ import edu.umass.cs.surveyman.qc.Analyses;
 import edu.umass.cs.surveyman.qc.classifiers.*;
 import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
 import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.SurveySnapshot;
+import edu.umass.cs.surveyman.survey.exceptions.ResponseArchiveException;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 import edu.umass.cs.surveyman.utils.ArgReader;
 import net.sourceforge.argparse4j.ArgumentParsers;
@@ -24,9 +28,13 @@ import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
 
@@ -57,6 +65,8 @@ public class SurveyMan {
     private static final String resultsfileArg = "resultsfile";
     private static final String smoothingArg = "smoothing";
     private static final String inputFormat = "inputformat";
+    private static final String snapshotDirArg = "snapshotdir";
+    private static final String responseArchiveArg = "responsearchive";
 
     private SurveyMan()
     {
@@ -111,12 +121,30 @@ public class SurveyMan {
             String outputFile,
             String resultsfile
     ) throws IOException, SurveyException, ProcessingException {
+        analyze(survey, analyses, classifier, granularity, outputFile, resultsfile, RuleSet.fromRegistry());
+    }
+
+    /**
+     * Analyzes the survey, checking it against an explicit rule set rather than the global registry.
+     * @param rules The wellformedness rules to check before static analysis. Pass a smaller set for surveys that are
+     *              known to have passed some rules already, e.g. those loaded from a {@link SurveySnapshot}.
+     * @see #analyze(Survey, Analyses, AbstractClassifier, double, String, String)
+     */
+    public static void analyze(
+            Survey survey,
+            Analyses analyses,
+            AbstractClassifier classifier,
+            double granularity,
+            String outputFile,
+            String resultsfile,
+            RuleSet rules
+    ) throws IOException, SurveyException, ProcessingException {
 
-        LOGGER.info(survey.jsonize());
+        LOGGER.info(String.format("Analyzing survey %s (%d questions)", survey.sourceName, survey.questions.size()));
         OutputStream out;
         try {
             if (analyses.equals(Analyses.STATIC)) {
-                StaticAnalysis.Report report = StaticAnalysis.staticAnalysis(survey, classifier, granularity, RandomRespondent.AdversaryType.UNIFORM);
+                StaticAnalysis.Report report = StaticAnalysis.staticAnalysis(survey, classifier, granularity, RandomRespondent.AdversaryType.UNIFORM, rules);
                 out = new FileOutputStream(outputFile);
                 report.print(out);
                 out.close();
@@ -160,6 +188,20 @@ public class SurveyMan {
         }
     }
 
+    private static Survey parse(String filename, String inputformat, String separator)
+            throws IOException, SurveyException, InvocationTargetException, NoSuchMethodException,
+            IllegalAccessException
+    {
+        AbstractParser parser;
+        if (inputformat.equals("csv")) {
+            CSVLexer lexer = new CSVLexer(filename, separator);
+            parser = new CSVParser(lexer);
+        } else if (inputformat.equals("json")) {
+            parser = JSONParser.makeParser(filename);
+        } else throw new RuntimeException(String.format("Unknown input format: %s", inputformat));
+        return parser.parse();
+    }
+
     /**
      * The main entry point for the program. Running the jar with no arguments will call this function and then print
      * out a description of the arguments.
@@ -196,16 +238,40 @@ public class SurveyMan {
             String resultsfile = ns.getString(resultsfileArg);
             String inputformat = ns.getString(inputFormat);
 
-            AbstractParser parser = null;
-            if (inputformat.equals("csv")) {
-                CSVLexer lexer = new CSVLexer((String) ns.get(surveyArg), (String) ns.get(separatorArg));
-                parser = new CSVParser(lexer);
-            } else if (inputformat.equals("json")) {
-                parser = JSONParser.makeParser(ns.getString(surveyArg));
-            }
+            String surveyFile = ns.getString(surveyArg);
+            String separator = ns.getString(separatorArg);
+            String snapshotDir = ns.getString(snapshotDirArg);
+            String responseArchive = ns.getString(responseArchiveArg);
 
-            assert parser != null;
-            Survey survey = parser.parse();
+            AbstractRule.getDefaultRules();
+            RuleSet rules = RuleSet.fromRegistry();
+            Survey survey;
+            if (inputformat.equals("snapshot") || SurveySnapshot.isSnapshot(surveyFile)) {
+                SurveySnapshot snapshot = SurveySnapshot.load(surveyFile);
+                survey = snapshot.survey;
+                rules = rules.without(snapshot.checkedRules);
+            } else if (snapshotDir == null || snapshotDir.isEmpty()) {
+                survey = parse(surveyFile, inputformat, separator);
+            } else {
+                // Compile once per distinct source; later runs load the cached snapshot instead of parsing.
+                String hash = SurveySnapshot.contentHash(Files.readAllBytes(Paths.get(surveyFile)), inputformat,
+                        inputformat.equals("csv") ? separator : "");
+                File cached = new File(snapshotDir, hash + SurveySnapshot.EXTENSION);
+                if (cached.isFile()) {
+                    LOGGER.info(String.format("Loading cached snapshot %s", cached));
+                    SurveySnapshot snapshot = SurveySnapshot.load(cached.getPath());
+                    survey = snapshot.survey;
+                    rules = rules.without(snapshot.checkedRules);
+                } else {
+                    survey = parse(surveyFile, inputformat, separator);
+                    StaticAnalysis.wellFormednessChecks(survey, rules);
+                    if (!new File(snapshotDir).isDirectory() && !new File(snapshotDir).mkdirs())
+                        throw new IOException(String.format("Cannot create snapshot directory %s", snapshotDir));
+                    SurveySnapshot.write(survey, hash, rules.names(), cached);
+                    LOGGER.info(String.format("Wrote snapshot %s", cached));
+                    rules = RuleSet.EMPTY;
+                }
+            }
 
             AbstractClassifier classifier = resolveClassifier(
                     survey,
@@ -214,8 +280,25 @@ public class SurveyMan {
                     Double.parseDouble((String) ns.get(alphaArg)),
                     Boolean.parseBoolean((String) ns.get(smoothingArg)));
 
-            AbstractRule.getDefaultRules();
-            analyze(survey, analyses, classifier, granularity, outputfile, resultsfile);
+            if (analyses.equals(Analyses.DYNAMIC) && responseArchive != null && !responseArchive.isEmpty()) {
+                // Parse the results once; later runs map the archive instead, for as long as neither source changes.
+                File archive = new File(responseArchive);
+                String surveyHash = SurveySnapshot.contentHash(Files.readAllBytes(Paths.get(surveyFile)), inputformat,
+                        inputformat.equals("csv") ? separator : "");
+                boolean haveResults = resultsfile != null && !resultsfile.isEmpty();
+                String resultsHash = haveResults ? ResponseArchive.contentHash(resultsfile) : null;
+                if (!ResponseArchive.isCurrent(archive, surveyHash, resultsHash)) {
+                    if (!haveResults)
+                        throw new ResponseArchiveException(String.format("Response archive %s is missing or was "
+                                + "built from another survey, and there is no results file to rebuild it from.",
+                                responseArchive));
+                    ResponseArchive.convert(survey, surveyHash, resultsfile, archive);
+                    LOGGER.info(String.format("Wrote response archive %s", responseArchive));
+                }
+                resultsfile = responseArchive;
+            }
+
+            analyze(survey, analyses, classifier, granularity, outputfile, resultsfile, rules);
             System.out.println(String.format("Results found in file %s", ns.get("outputfile")));
 
         } catch (ArgumentParserException e) {
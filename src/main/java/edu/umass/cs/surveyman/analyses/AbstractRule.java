@@ -1,16 +1,46 @@
 package edu.umass.cs.surveyman.analyses;
 
-import edu.umass.cs.surveyman.analyses.rules.*;
 import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.SurveyObj;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Base class for wellformedness rules. Rules must be stateless: a single instance may check several surveys
+ * concurrently. Rules are grouped into {@link RuleSet}s and passed explicitly to
+ * {@link StaticAnalysis#wellFormednessChecks(Survey, RuleSet)}. The static registry below is kept for callers of
+ * {@link StaticAnalysis#wellFormednessChecks(Survey)}; constructing a rule no longer registers it.
+ */
 public abstract class AbstractRule {
 
+    /**
+     * Receives violations from {@link #check(Survey, Reporter)}. A reporter either throws the violation, stopping the
+     * rule, or records it and returns, letting the rule keep looking.
+     */
+    public interface Reporter {
+        /**
+         * @param violation The violation found.
+         * @param locus The question or block the violation belongs to, or null if it cannot be attributed to one.
+         * @throws SurveyException if the caller only wants the first violation.
+         */
+        void report(SurveyException violation, SurveyObj locus) throws SurveyException;
+    }
+
+    /**
+     * Reporter that throws the first violation it is given.
+     */
+    protected static final Reporter FAIL_FAST = new Reporter() {
+        @Override
+        public void report(SurveyException violation, SurveyObj locus) throws SurveyException {
+            throw violation;
+        }
+    };
+
     final protected static Logger LOGGER = Logger.getLogger(AbstractRule.class);
-    private static final Map<Class, AbstractRule> register = new HashMap<Class, AbstractRule>();
+    private static final Map<Class, AbstractRule> register = new ConcurrentHashMap<Class, AbstractRule>();
 
     public static void registerRule(AbstractRule rule) {
         register.put(rule.getClass(), rule);
@@ -36,20 +66,33 @@ public abstract class AbstractRule {
         return register.values();
     }
 
+    /**
+     * Registers every rule in {@link RuleSet#defaults()} in the global registry.
+     * @return The global registry.
+     */
     public static Map<Class, AbstractRule> getDefaultRules() {
-        new BranchConsistency();
-        new BranchForward();
-        new BranchParadigm();
-        new BranchTop();
-        new Compactness();
-        new ExclusiveBranching();
-        new NoTopLevelBranching();
-        new Reachability();
-        new SampleHomogenousMaps();
-        new NonEmptySurvey();
+        for (AbstractRule rule : RuleSet.defaults())
+            registerRule(rule);
         return register;
     }
 
     public abstract void check(Survey survey) throws SurveyException;
 
+    /**
+     * Checks the survey, passing each violation to the reporter. The default implementation reports the single
+     * violation thrown by {@link #check(Survey)}, without a locus. Rules that can attribute violations to individual
+     * questions or blocks override this to report all of them, and implement {@link #check(Survey)} as
+     * {@code check(survey, FAIL_FAST)}.
+     * @param survey The survey to check.
+     * @param reporter Receives the violations.
+     * @throws SurveyException if the reporter throws.
+     */
+    public void check(Survey survey, Reporter reporter) throws SurveyException {
+        try {
+            check(survey);
+        } catch (SurveyException e) {
+            reporter.report(e, null);
+        }
+    }
+
 }
@@ -0,0 +1,198 @@
+package edu.umass.cs.surveyman.analyses;
+
+import edu.umass.cs.surveyman.survey.Block;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.SurveyObj;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
+import edu.umass.cs.surveyman.utils.Jsonable;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Every wellformedness violation found in a survey, rather than just the first. Each violation records the rule that
+ * found it and, where the rule could attribute it to a question or block, the source line and column it came from.
+ * Diagnostics are plain values: they hold no references to the survey, so they may be cached and serialized freely.
+ * Build them with {@link RuleSet#collect}.
+ */
+public final class Diagnostics implements Iterable<Diagnostics.Diagnostic>, Jsonable {
+
+    /**
+     * A single rule violation.
+     */
+    public static final class Diagnostic {
+
+        /**
+         * Simple class name of the rule that reported this violation.
+         */
+        public final String rule;
+        /**
+         * Simple class name of the exception describing the violation.
+         */
+        public final String type;
+        public final String message;
+        /**
+         * Identifier of the question or block the violation was attributed to, or null.
+         */
+        public final String locus;
+        /**
+         * Source line of the locus, or -1 if unknown.
+         */
+        public final int line;
+        /**
+         * Source column of the locus, or -1 if unknown.
+         */
+        public final int column;
+
+        Diagnostic(String rule, SurveyException violation, SurveyObj locus) {
+            this.rule = rule;
+            this.type = violation.getClass().getSimpleName();
+            this.message = violation.getMessage();
+            this.locus = locus == null ? null : locus.getId();
+            int[] position = position(locus);
+            this.line = position[0];
+            this.column = position[1];
+        }
+
+        void write(JsonWriter out) throws IOException {
+            out.beginObject();
+            out.name("rule").value(this.rule);
+            out.name("type").value(this.type);
+            out.name("message").value(this.message);
+            out.name("locus").value(this.locus);
+            out.name("line").value(this.line);
+            out.name("column").value(this.column);
+            out.endObject();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d:%d\t%s\t%s", this.line, this.column, this.rule, this.message);
+        }
+    }
+
+    /**
+     * Orders diagnostics by source position; diagnostics without a position sort last.
+     */
+    private static final Comparator<Diagnostic> BY_POSITION = new Comparator<Diagnostic>() {
+        @Override
+        public int compare(Diagnostic a, Diagnostic b) {
+            int cmp = Integer.compare(unknownLast(a.line), unknownLast(b.line));
+            if (cmp == 0)
+                cmp = Integer.compare(unknownLast(a.column), unknownLast(b.column));
+            if (cmp == 0)
+                cmp = a.rule.compareTo(b.rule);
+            return cmp;
+        }
+
+        private int unknownLast(int i) {
+            return i < 0 ? Integer.MAX_VALUE : i;
+        }
+    };
+
+    private final List<Diagnostic> diagnostics;
+    private final Map<String, Long> timings;
+    private final long wallNanos;
+
+    Diagnostics(List<Diagnostic> diagnostics, Map<String, Long> timings, long wallNanos) {
+        List<Diagnostic> sorted = new ArrayList<>(diagnostics);
+        Collections.sort(sorted, BY_POSITION);
+        this.diagnostics = Collections.unmodifiableList(sorted);
+        this.timings = Collections.unmodifiableMap(new LinkedHashMap<>(timings));
+        this.wallNanos = wallNanos;
+    }
+
+    /**
+     * Finds the source position of a question or block. A block is located at its earliest question.
+     * @param locus The question or block a violation was attributed to; may be null.
+     * @return A two-element array of line and column, each -1 if unknown.
+     */
+    static int[] position(SurveyObj locus) {
+        int[] retval = new int[]{-1, -1};
+        if (locus instanceof Question) {
+            Question q = (Question) locus;
+            if (!q.sourceLineNos.isEmpty())
+                retval[0] = Collections.min(q.sourceLineNos);
+            if (q.data != null && q.data.getSourceCol() >= 0)
+                retval[1] = q.data.getSourceCol();
+        } else if (locus instanceof Block) {
+            for (Question q : ((Block) locus).getAllQuestions()) {
+                int[] qPosition = position(q);
+                if (qPosition[0] >= 0 && (retval[0] < 0 || qPosition[0] < retval[0]))
+                    retval = qPosition;
+            }
+        }
+        return retval;
+    }
+
+    @Override
+    public Iterator<Diagnostic> iterator() {
+        return this.diagnostics.iterator();
+    }
+
+    /**
+     * @return true if no rule reported a violation.
+     */
+    public boolean isEmpty() {
+        return this.diagnostics.isEmpty();
+    }
+
+    public int size() {
+        return this.diagnostics.size();
+    }
+
+    /**
+     * @param rule A rule class.
+     * @return The diagnostics reported by rules of the input class, in source order.
+     */
+    public List<Diagnostic> reportedBy(Class<? extends AbstractRule> rule) {
+        List<Diagnostic> retval = new ArrayList<>();
+        for (Diagnostic d : this.diagnostics)
+            if (d.rule.equals(rule.getSimpleName()))
+                retval.add(d);
+        return retval;
+    }
+
+    /**
+     * @return Map from rule class name to the wall time it took, in nanoseconds, in rule order.
+     */
+    public Map<String, Long> timings() {
+        return this.timings;
+    }
+
+    /**
+     * @return Wall time for the whole check, in nanoseconds. Since rules run concurrently, this tracks the slowest rule
+     * rather than the sum.
+     */
+    public long wallNanos() {
+        return this.wallNanos;
+    }
+
+    @Override
+    public String jsonize() throws SurveyException {
+        return JsonWriter.toString(this);
+    }
+
+    @Override
+    public void write(JsonWriter out) throws IOException {
+        out.beginObject();
+        out.name("valid").value(this.isEmpty());
+        out.name("diagnostics").beginArray();
+        for (Diagnostic d : this.diagnostics)
+            d.write(out);
+        out.endArray();
+        out.name("timings").beginObject();
+        for (Map.Entry<String, Long> entry : this.timings.entrySet())
+            out.name(entry.getKey()).value(entry.getValue());
+        out.endObject();
+        out.name("wallnanos").value(this.wallNanos);
+        out.endObject();
+    }
+
+    @Override
+    public String toString() {
+        return StringUtils.join(this.diagnostics, "\n");
+    }
+}
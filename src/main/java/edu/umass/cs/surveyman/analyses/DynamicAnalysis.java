@@ -3,6 +3,7 @@ package edu.umass.cs.surveyman.analyses;
 import edu.umass.cs.surveyman.SurveyMan;
 import edu.umass.cs.surveyman.output.BreakoffByPosition;
 import edu.umass.cs.surveyman.output.BreakoffByQuestion;
+import edu.umass.cs.surveyman.output.BreakoffTally;
 import edu.umass.cs.surveyman.output.ClassifiedRespondentsStruct;
 import edu.umass.cs.surveyman.output.OrderBiasStruct;
 import edu.umass.cs.surveyman.output.WordingBiasStruct;
@@ -12,8 +13,10 @@ import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.StringDatum;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.SurveyDatum;
+import edu.umass.cs.surveyman.survey.exceptions.ResponseArchiveException;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
-import org.apache.commons.lang3.StringUtils;
+import edu.umass.cs.surveyman.utils.TableWriter;
+import edu.umass.cs.surveyman.utils.Tabularable;
 import org.supercsv.cellprocessor.ift.CellProcessor;
 import org.supercsv.io.CsvMapReader;
 import org.supercsv.io.ICsvMapReader;
@@ -24,7 +27,6 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -42,7 +44,7 @@ public class DynamicAnalysis {
     /**
      * Concretized IQuestionResponse.
      */
-    private static class QuestionResponse implements IQuestionResponse {
+    static class QuestionResponse implements IQuestionResponse {
 
         private Question q;
         private List<OptTuple> opts = new ArrayList<>();
@@ -61,7 +63,14 @@ public class DynamicAnalysis {
                 int qpos)
                 throws SurveyException
         {
-            this.q = s.getQuestionById(quid);
+            this(s.getQuestionById(quid), qpos);
+        }
+
+        QuestionResponse(
+                Question q,
+                int qpos)
+        {
+            this.q = q;
             this.indexSeen = qpos;
         }
 
@@ -185,6 +194,8 @@ public class DynamicAnalysis {
                     questionResponse.getOpts().add(new OptTuple(c,i));
                     sr.getNonCustomResponses().add(questionResponse);
                 }
+                if (sr != null)
+                    responses.add(sr);
                 reader.close();
                 return responses;
             } catch (IOException io) {
@@ -231,20 +242,28 @@ public class DynamicAnalysis {
         }
 
 
+        /**
+         * Streams each section of the report, row by row, through a buffer. The stream is flushed but not closed.
+         * @param stream Where to write the report.
+         */
         public void print(
                 OutputStream stream)
         {
-            OutputStreamWriter osw = new OutputStreamWriter(stream);
+            TableWriter out = new TableWriter(stream);
             try {
-                String[] toprint = {
-                        this.orderBiases.toString(),
-                        this.wordingBiases.toString(),
-                        this.breakoffByPosition.toString(),
-                        this.breakoffByQuestion.toString(),
-                        this.classifiedResponses.toString()
+                Tabularable[] toprint = {
+                        this.orderBiases,
+                        this.wordingBiases,
+                        this.breakoffByPosition,
+                        this.breakoffByQuestion,
+                        this.classifiedResponses
                 };
-                osw.write(StringUtils.join(toprint, "\n"));
-                osw.flush();
+                for (int i = 0; i < toprint.length; i++) {
+                    if (i > 0)
+                        out.endRow();
+                    toprint[i].print(out);
+                }
+                out.flush();
             } catch (IOException io) {
                 io.printStackTrace();
                 SurveyMan.LOGGER.warn(io);
@@ -258,13 +277,14 @@ public class DynamicAnalysis {
             AbstractClassifier classifier)
             throws SurveyException {
         QCMetrics qcMetrics = new QCMetrics(survey, classifier);
+        BreakoffTally breakoff = BreakoffTally.count(qcMetrics, responses);
         return new Report(
                 survey.sourceName,
                 survey.sid,
                 OrderBiasStruct.makeStruct(qcMetrics, responses, classifier.alpha),
                 WordingBiasStruct.makeStruct(qcMetrics, responses, classifier.alpha),
-                BreakoffByPosition.makeStruct(qcMetrics, responses),
-                BreakoffByQuestion.makeStruct(qcMetrics, responses),
+                breakoff.byPosition,
+                breakoff.byQuestion,
                 qcMetrics.classifyResponses(responses)
             );
    }
@@ -272,10 +292,13 @@ public class DynamicAnalysis {
 
     /**
      * Parses the responses to survey s contained in the file named filename. Returns a list of SurveyResponses.
+     * If the file is a {@link ResponseArchive}, it is mapped rather than parsed.
      * @param s The survey that the responses being read from filename had answered.
-     * @param filename The url string corresponding to the file containing the survey responses.
+     * @param filename The url string corresponding to the file containing the survey responses, a directory of such
+     *                 files, or a response archive.
      * @return A list of SurveyResponses.
      * @throws SurveyException
+     * @throws ResponseArchiveException if the file is an archive that cannot be read, or does not match the survey.
      */
     public static List<DynamicSurveyResponse> readSurveyResponses(
             Survey s,
@@ -283,7 +306,14 @@ public class DynamicAnalysis {
             throws SurveyException
     {
         List<DynamicSurveyResponse> responses = null;
-        if (new File(filename).isFile()) {
+        if (ResponseArchive.isArchive(filename)) {
+            try {
+                responses = ResponseArchive.open(s, new File(filename)).responses();
+            } catch (IOException e) {
+                throw new ResponseArchiveException(String.format("Cannot read response archive %s: %s", filename,
+                        e.getMessage()));
+            }
+        } else if (new File(filename).isFile()) {
             try {
                 responses = readSurveyResponses(s, new FileReader(filename));
             } catch (FileNotFoundException e) {
@@ -331,16 +361,19 @@ public class DynamicAnalysis {
                     sr.setSrid((String) headerMap.get("responseid"));
                 }
                 // fill out the individual question responses
-                IQuestionResponse questionResponse = new QuestionResponse(
-                        s,
-                        (String) headerMap.get("questionid"),
-                        (Integer) headerMap.get("questionpos"));
+                IQuestionResponse questionResponse = null;
                 for (IQuestionResponse qr : sr.getNonCustomResponses())
                     if (qr.getQuestion().id.equals(headerMap.get("questionid"))) {
                     // if we already have a QuestionResponse object matching this id, set it
                         questionResponse = qr;
                         break;
                     }
+                boolean seen = questionResponse != null;
+                if (!seen)
+                    questionResponse = new QuestionResponse(
+                            s,
+                            (String) headerMap.get("questionid"),
+                            (Integer) headerMap.get("questionpos"));
                 SurveyDatum c;
                 if (!Question.customQuestion(questionResponse.getQuestion().id)) {
                     String id = (String) headerMap.get("optionid");
@@ -352,8 +385,11 @@ public class DynamicAnalysis {
                 } else c = new StringDatum((String) headerMap.get("optionid"), -1, -1, -1);
                 Integer i = (Integer) headerMap.get("optionpos");
                 questionResponse.getOpts().add(new OptTuple(c,i));
-                sr.addResponse(questionResponse);
+                if (!seen)
+                    sr.addResponse(questionResponse);
             }
+            if (sr != null)
+                responses.add(sr);
             reader.close();
             return responses;
         } catch (IOException io) {
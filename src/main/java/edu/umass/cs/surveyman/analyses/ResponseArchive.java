@@ -0,0 +1,637 @@
+package edu.umass.cs.surveyman.analyses;
+
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.StringDatum;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.SurveyDatum;
+import edu.umass.cs.surveyman.survey.exceptions.ResponseArchiveException;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A columnar, memory-mapped image of the responses to a survey. Reading the Runtime results CSV re-runs the cell
+ * processors from {@link Survey#makeProcessorsForResponse()} on every row; converting it once to an archive lets
+ * repeated analyses of the same results skip parsing and validation entirely.
+ *
+ * <p>Responses are stored as three levels of parallel {@code int} columns, each level indexing into the next through
+ * an offsets column:</p>
+ * <pre>
+ *     respondent r:  srid,     answers  [answerOffset(r), answerOffset(r + 1))
+ *     answer a:      question, position, options [optionOffset(a), optionOffset(a + 1))
+ *     option o:      option,   position
+ * </pre>
+ * <p>Question and option ordinals index small tables that are resolved against the survey once, when the archive is
+ * opened. The columns themselves are views of the mapped file, so iterating them with the accessors below does not
+ * copy or allocate. {@link #responses()} materializes {@link DynamicAnalysis.DynamicSurveyResponse}s for the existing
+ * analyses.</p>
+ *
+ * <p>The header records content hashes of the survey and the results the archive was converted from, so that a
+ * caller holding an archive can tell whether it is stale; see {@link #isCurrent(File, String, String)}.</p>
+ *
+ * <p>Archives are limited to 2GB, which is on the order of a hundred million answers.</p>
+ */
+public final class ResponseArchive {
+
+    /**
+     * Conventional file extension for response archives.
+     */
+    public static final String EXTENSION = ".smresp";
+    /**
+     * Format version. Bump this whenever the layout changes.
+     */
+    public static final int VERSION = 2;
+
+    // "SMRA"
+    private static final int MAGIC = 0x534d5241;
+    private static final int HEADER_INTS = 11;
+    // Option positions are boxed in OptTuple, and may be absent.
+    private static final int NO_POSITION = Integer.MIN_VALUE;
+
+    private final Survey survey;
+    private final ByteBuffer strings;
+    private final IntBuffer stringOffsets;
+    private final Question[] questions;
+    private final SurveyDatum[] options;
+    private final IntBuffer srids;
+    private final IntBuffer answerOffsets;
+    private final IntBuffer answerQuestions;
+    private final IntBuffer answerPositions;
+    private final IntBuffer optionOffsets;
+    private final IntBuffer answerOptions;
+    private final IntBuffer optionPositions;
+    private final String surveyHash;
+    private final String resultsHash;
+
+    /**
+     * Checks the layout of an archive and, given a survey, resolves its question and option tables against it.
+     * Without a survey, only the header and strings can be read.
+     */
+    private ResponseArchive(Survey survey, ByteBuffer buf) throws SurveyException {
+        this.survey = survey;
+        if (buf.remaining() < HEADER_INTS * 4 || buf.getInt(0) != MAGIC)
+            throw new ResponseArchiveException("Not a response archive.");
+        int version = buf.getInt(4);
+        if (version != VERSION)
+            throw new ResponseArchiveException(String.format("Response archive version %d is not supported " +
+                    "(expected %d).", version, VERSION));
+        int numStrings = buf.getInt(8), stringBytes = buf.getInt(12), numQuestions = buf.getInt(16),
+                numOptions = buf.getInt(20), numRespondents = buf.getInt(24), numAnswers = buf.getInt(28),
+                numAnswerOptions = buf.getInt(32);
+        if (numStrings < 0 || stringBytes < 0 || numQuestions < 0 || numOptions < 0 || numRespondents < 0
+                || numAnswers < 0 || numAnswerOptions < 0)
+            throw new ResponseArchiveException("Corrupt response archive: negative table size.");
+        long expected = HEADER_INTS * 4L + 4L * (numStrings + 1) + pad(stringBytes)
+                + 4L * (numQuestions + 2L * numOptions + 2L * numRespondents + 1 + 3L * numAnswers + 1
+                        + 2L * numAnswerOptions);
+        if (buf.remaining() != expected)
+            throw new ResponseArchiveException(String.format("Corrupt response archive: expected %d bytes, found %d.",
+                    expected, buf.remaining()));
+        int pos = HEADER_INTS * 4;
+        this.stringOffsets = ints(buf, pos, numStrings + 1);
+        pos += 4 * (numStrings + 1);
+        this.strings = slice(buf, pos, stringBytes);
+        pos += pad(stringBytes);
+        IntBuffer questionIds = ints(buf, pos, numQuestions);
+        pos += 4 * numQuestions;
+        IntBuffer optionQuestions = ints(buf, pos, numOptions);
+        pos += 4 * numOptions;
+        IntBuffer optionTexts = ints(buf, pos, numOptions);
+        pos += 4 * numOptions;
+        this.srids = ints(buf, pos, numRespondents);
+        pos += 4 * numRespondents;
+        this.answerOffsets = ints(buf, pos, numRespondents + 1);
+        pos += 4 * (numRespondents + 1);
+        this.answerQuestions = ints(buf, pos, numAnswers);
+        pos += 4 * numAnswers;
+        this.answerPositions = ints(buf, pos, numAnswers);
+        pos += 4 * numAnswers;
+        this.optionOffsets = ints(buf, pos, numAnswers + 1);
+        pos += 4 * (numAnswers + 1);
+        this.answerOptions = ints(buf, pos, numAnswerOptions);
+        pos += 4 * numAnswerOptions;
+        this.optionPositions = ints(buf, pos, numAnswerOptions);
+
+        // Structural checks are a single pass over the integer columns; nothing is parsed.
+        checkOffsets(stringOffsets, stringBytes, "string");
+        checkOrdinals(questionIds, numStrings, false, "question id");
+        checkOrdinals(optionQuestions, numQuestions, false, "option question");
+        checkOrdinals(optionTexts, numStrings, true, "option id");
+        checkOrdinals(srids, numStrings, true, "response id");
+        checkOffsets(answerOffsets, numAnswers, "answer");
+        checkOrdinals(answerQuestions, numQuestions, false, "answer question");
+        checkOffsets(optionOffsets, numAnswerOptions, "option");
+        checkOrdinals(answerOptions, numOptions, false, "answer option");
+        int surveyHash = buf.getInt(36), resultsHash = buf.getInt(40);
+        if (surveyHash < -1 || surveyHash >= numStrings || resultsHash < -1 || resultsHash >= numStrings)
+            throw new ResponseArchiveException("Corrupt response archive: source hash out of range.");
+        this.surveyHash = string(surveyHash);
+        this.resultsHash = string(resultsHash);
+
+        if (survey == null) {
+            this.questions = null;
+            this.options = null;
+            return;
+        }
+        this.questions = new Question[numQuestions];
+        for (int i = 0; i < numQuestions; i++)
+            questions[i] = survey.getQuestionById(string(questionIds.get(i)));
+        this.options = new SurveyDatum[numOptions];
+        for (int i = 0; i < numOptions; i++)
+            options[i] = resolveOption(questions[optionQuestions.get(i)], string(optionTexts.get(i)));
+    }
+
+    private static long pad(int bytes) {
+        return (bytes + 3L) & ~3L;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int pos, int len) {
+        ByteBuffer dup = buf.duplicate();
+        dup.position(pos);
+        dup.limit(pos + len);
+        return dup.slice();
+    }
+
+    private static IntBuffer ints(ByteBuffer buf, int pos, int len) {
+        return slice(buf, pos, 4 * len).asIntBuffer();
+    }
+
+    private static void checkOffsets(IntBuffer offsets, int end, String what) throws ResponseArchiveException {
+        int prev = 0;
+        for (int i = 0; i < offsets.limit(); i++) {
+            int off = offsets.get(i);
+            if (off < prev || off > end || (i == 0 && off != 0))
+                throw new ResponseArchiveException(String.format("Corrupt response archive: bad %s offset %d at %d.",
+                        what, off, i));
+            prev = off;
+        }
+        if (prev != end)
+            throw new ResponseArchiveException(String.format("Corrupt response archive: %s offsets end at %d, not %d.",
+                    what, prev, end));
+    }
+
+    private static void checkOrdinals(IntBuffer ordinals, int size, boolean nullable, String what)
+            throws ResponseArchiveException {
+        for (int i = 0; i < ordinals.limit(); i++) {
+            int o = ordinals.get(i);
+            if (o >= size || o < (nullable ? -1 : 0))
+                throw new ResponseArchiveException(String.format("Corrupt response archive: %s %d out of range at %d.",
+                        what, o, i));
+        }
+    }
+
+    /**
+     * Mirrors the option lookup in {@link DynamicAnalysis#readSurveyResponses(Survey, Reader)}.
+     */
+    private static SurveyDatum resolveOption(Question q, String text) throws SurveyException {
+        if (text == null)
+            return null;
+        if (Question.customQuestion(q.id))
+            return new StringDatum(text, -1, -1, -1);
+        return q.getOptById(text);
+    }
+
+    private String string(int i) {
+        if (i < 0)
+            return null;
+        int start = stringOffsets.get(i), end = stringOffsets.get(i + 1);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer dup = strings.duplicate();
+        dup.position(start);
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param filename A path.
+     * @return true if the file exists and begins with the response archive magic number.
+     */
+    public static boolean isArchive(String filename) {
+        File file = new File(filename);
+        if (!file.isFile())
+            return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Computes the content hash of a Runtime results file, or of a directory of them, to record in an archive.
+     * @param resultsfile A results CSV, or a directory of them.
+     * @return Hex-encoded SHA-256 digest of the file contents, taken in name order for a directory.
+     * @throws IOException
+     */
+    public static String contentHash(String resultsfile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        File results = new File(resultsfile);
+        File[] files = results.isDirectory() ? results.listFiles() : new File[]{results};
+        if (files == null)
+            throw new IOException(String.format("Cannot list results directory %s", resultsfile));
+        Arrays.sort(files);
+        byte[] buffer = new byte[8192];
+        for (File f : files) {
+            digest.update(String.format("%s\0", f.getName()).getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = new FileInputStream(f)) {
+                for (int n; (n = in.read(buffer)) > 0; )
+                    digest.update(buffer, 0, n);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b & 0xff));
+        return hex.toString();
+    }
+
+    /**
+     * Checks whether an archive was converted from the given sources, without resolving it against a survey.
+     * @param file The archive.
+     * @param surveyHash The content hash of the survey source, or null to skip this check.
+     * @param resultsHash The {@link #contentHash(String)} of the results, or null to skip this check.
+     * @return false if the file is missing, is not a readable archive of this version, or was converted from other
+     * sources.
+     * @throws IOException
+     */
+    public static boolean isCurrent(File file, String surveyHash, String resultsHash) throws IOException {
+        if (!isArchive(file.getPath()))
+            return false;
+        ResponseArchive archive;
+        try {
+            archive = open(null, file);
+        } catch (SurveyException e) {
+            return false;
+        }
+        return (surveyHash == null || surveyHash.equals(archive.surveyHash))
+                && (resultsHash == null || resultsHash.equals(archive.resultsHash));
+    }
+
+    /**
+     * Maps an archive into memory and resolves its question and option tables against a survey.
+     * @param survey The survey the responses answer.
+     * @param file The archive.
+     * @return The archive.
+     * @throws IOException
+     * @throws ResponseArchiveException if the file is not a valid archive.
+     * @throws SurveyException if the archive refers to questions or options the survey does not have.
+     */
+    public static ResponseArchive open(Survey survey, File file) throws IOException, SurveyException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new ResponseArchiveException(String.format("Response archive %s is larger than 2GB.", file));
+            // The mapping outlives the channel.
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ResponseArchive(survey, buf);
+        }
+    }
+
+    /**
+     * Reads an archive that is already in memory.
+     * @see #open(Survey, File)
+     */
+    public static ResponseArchive read(Survey survey, byte[] bytes) throws SurveyException {
+        return new ResponseArchive(survey, ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Parses a Runtime results file once and writes its responses to an archive, recording the content hashes of both
+     * sources.
+     * @param survey The survey the responses answer.
+     * @param surveyHash The content hash of the survey source, or null.
+     * @param resultsfile A results CSV, or a directory of them.
+     * @param archive Where to write the archive.
+     * @throws IOException
+     * @throws SurveyException
+     */
+    public static void convert(Survey survey, String surveyHash, String resultsfile, File archive)
+            throws IOException, SurveyException {
+        String resultsHash = contentHash(resultsfile);
+        write(DynamicAnalysis.readSurveyResponses(survey, resultsfile), surveyHash, resultsHash, archive);
+    }
+
+    /**
+     * Writes responses to an archive file, without source hashes.
+     * @see #write(List, String, String, File)
+     */
+    public static void write(List<? extends SurveyResponse> responses, File file) throws IOException {
+        write(responses, null, null, file);
+    }
+
+    /**
+     * Writes responses to an archive file, atomically: readers never see a partially written archive.
+     * @see #write(List, String, String, OutputStream)
+     */
+    public static void write(List<? extends SurveyResponse> responses, String surveyHash, String resultsHash,
+                             File file) throws IOException {
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                write(responses, surveyHash, resultsHash, out);
+            }
+            if (!tmp.renameTo(file)) {
+                if (!file.delete() || !tmp.renameTo(file))
+                    throw new IOException(String.format("Could not move response archive into place at %s", file));
+            }
+        } finally {
+            if (tmp.exists() && !tmp.delete())
+                tmp.deleteOnExit();
+        }
+    }
+
+    /**
+     * Writes responses as an archive, without source hashes.
+     * @see #write(List, String, String, OutputStream)
+     */
+    public static void write(List<? extends SurveyResponse> responses, OutputStream stream) throws IOException {
+        write(responses, null, null, stream);
+    }
+
+    /**
+     * Writes responses as an archive.
+     * @param responses The responses, e.g. from {@link DynamicAnalysis#readSurveyResponses(Survey, String)}.
+     * @param surveyHash The content hash of the survey source, or null.
+     * @param resultsHash The {@link #contentHash(String)} of the results the responses were read from, or null.
+     * @param stream Where to write the archive. It is flushed, but not closed.
+     * @throws IOException
+     */
+    public static void write(List<? extends SurveyResponse> responses, String surveyHash, String resultsHash,
+                             OutputStream stream) throws IOException {
+        new Encoder(responses, surveyHash, resultsHash).encode(stream);
+    }
+
+    /**
+     * @return The survey the archive was resolved against.
+     */
+    public Survey getSurvey() {
+        return survey;
+    }
+
+    /**
+     * @return The content hash of the survey source the archive was converted against, or null if none was recorded.
+     */
+    public String getSurveyHash() {
+        return surveyHash;
+    }
+
+    /**
+     * @return The {@link #contentHash(String)} of the results the archive was converted from, or null if none was
+     * recorded.
+     */
+    public String getResultsHash() {
+        return resultsHash;
+    }
+
+    /**
+     * @return The number of respondents.
+     */
+    public int size() {
+        return srids.limit();
+    }
+
+    /**
+     * @return The total number of answers, across all respondents.
+     */
+    public int numAnswers() {
+        return answerQuestions.limit();
+    }
+
+    public String srid(int respondent) {
+        return string(srids.get(respondent));
+    }
+
+    /**
+     * @return The index of the respondent's first answer.
+     */
+    public int firstAnswer(int respondent) {
+        return answerOffsets.get(respondent);
+    }
+
+    /**
+     * @return One past the index of the respondent's last answer.
+     */
+    public int endAnswer(int respondent) {
+        return answerOffsets.get(respondent + 1);
+    }
+
+    public Question question(int answer) {
+        return questions[answerQuestions.get(answer)];
+    }
+
+    /**
+     * @return The position at which the respondent saw the answered question.
+     */
+    public int questionPosition(int answer) {
+        return answerPositions.get(answer);
+    }
+
+    /**
+     * @return The index of the answer's first selected option.
+     */
+    public int firstOption(int answer) {
+        return optionOffsets.get(answer);
+    }
+
+    /**
+     * @return One past the index of the answer's last selected option.
+     */
+    public int endOption(int answer) {
+        return optionOffsets.get(answer + 1);
+    }
+
+    public SurveyDatum option(int option) {
+        return options[answerOptions.get(option)];
+    }
+
+    /**
+     * @return The position at which the selected option was displayed, or null if it was not recorded.
+     */
+    public Integer optionPosition(int option) {
+        int pos = optionPositions.get(option);
+        return pos == NO_POSITION ? null : pos;
+    }
+
+    /**
+     * Materializes one respondent's answers.
+     * @param respondent The respondent's index.
+     * @return A new response object.
+     */
+    public DynamicAnalysis.DynamicSurveyResponse response(int respondent) {
+        DynamicAnalysis.DynamicSurveyResponse sr = new DynamicAnalysis.DynamicSurveyResponse(survey, null);
+        sr.setSrid(srid(respondent));
+        for (int a = firstAnswer(respondent); a < endAnswer(respondent); a++) {
+            DynamicAnalysis.QuestionResponse qr = new DynamicAnalysis.QuestionResponse(question(a),
+                    questionPosition(a));
+            for (int o = firstOption(a); o < endOption(a); o++)
+                qr.getOpts().add(new OptTuple(option(o), optionPosition(o)));
+            sr.addResponse(qr);
+        }
+        return sr;
+    }
+
+    /**
+     * Materializes every response in the archive.
+     * @return Responses in the order they were written.
+     */
+    public List<DynamicAnalysis.DynamicSurveyResponse> responses() {
+        List<DynamicAnalysis.DynamicSurveyResponse> retval = new ArrayList<>(size());
+        for (int r = 0; r < size(); r++)
+            retval.add(response(r));
+        return retval;
+    }
+
+    /**
+     * Interns strings and options, and lays the responses out as columns.
+     */
+    private static class Encoder {
+
+        private final List<? extends SurveyResponse> responses;
+        private final String surveyHash, resultsHash;
+        private final Map<String, Integer> stringIndex = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+        private final Map<Question, Integer> questionIndex = new IdentityHashMap<>();
+        private final IntColumn questionIds = new IntColumn();
+        // Keyed by question ordinal and option text.
+        private final Map<List<Object>, Integer> optionIndex = new HashMap<>();
+        private final IntColumn optionQuestions = new IntColumn(), optionTexts = new IntColumn();
+        private final IntColumn srids = new IntColumn(), answerOffsets = new IntColumn();
+        private final IntColumn answerQuestions = new IntColumn(), answerPositions = new IntColumn(),
+                optionOffsets = new IntColumn();
+        private final IntColumn answerOptions = new IntColumn(), optionPositions = new IntColumn();
+        private int stringBytes = 0;
+
+        Encoder(List<? extends SurveyResponse> responses, String surveyHash, String resultsHash) {
+            this.responses = responses;
+            this.surveyHash = surveyHash;
+            this.resultsHash = resultsHash;
+        }
+
+        private int string(String s) {
+            if (s == null)
+                return -1;
+            Integer i = stringIndex.get(s);
+            if (i == null) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                i = strings.size();
+                strings.add(bytes);
+                stringIndex.put(s, i);
+                stringBytes += bytes.length;
+            }
+            return i;
+        }
+
+        private int question(Question q) {
+            Integer i = questionIndex.get(q);
+            if (i == null) {
+                i = questionIds.size();
+                questionIds.add(string(q.id));
+                questionIndex.put(q, i);
+            }
+            return i;
+        }
+
+        private int option(int question, Question q, SurveyDatum c) {
+            String text;
+            if (c == null)
+                text = null;
+            else if (Question.customQuestion(q.id) && c instanceof StringDatum)
+                // Custom answers are recorded as text, not as survey data ids.
+                text = ((StringDatum) c).data;
+            else text = c.getId();
+            List<Object> key = Arrays.<Object>asList(question, text);
+            Integer i = optionIndex.get(key);
+            if (i == null) {
+                i = optionQuestions.size();
+                optionQuestions.add(question);
+                optionTexts.add(string(text));
+                optionIndex.put(key, i);
+            }
+            return i;
+        }
+
+        void encode(OutputStream stream) throws IOException {
+            int surveyHash = string(this.surveyHash), resultsHash = string(this.resultsHash);
+            answerOffsets.add(0);
+            optionOffsets.add(0);
+            for (SurveyResponse sr : responses) {
+                srids.add(string(sr.getSrid()));
+                // The same question response object may be listed more than once; store it once.
+                Set<IQuestionResponse> seen = Collections.newSetFromMap(new IdentityHashMap<IQuestionResponse, Boolean>());
+                for (IQuestionResponse qr : sr.getAllResponses()) {
+                    if (qr == null || !seen.add(qr))
+                        continue;
+                    int question = question(qr.getQuestion());
+                    answerQuestions.add(question);
+                    answerPositions.add(qr.getIndexSeen());
+                    for (OptTuple opt : qr.getOpts()) {
+                        answerOptions.add(option(question, qr.getQuestion(), opt.c));
+                        optionPositions.add(opt.i == null ? NO_POSITION : opt.i);
+                    }
+                    optionOffsets.add(answerOptions.size());
+                }
+                answerOffsets.add(answerQuestions.size());
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            out.writeInt(stringBytes);
+            out.writeInt(questionIds.size());
+            out.writeInt(optionQuestions.size());
+            out.writeInt(srids.size());
+            out.writeInt(answerQuestions.size());
+            out.writeInt(answerOptions.size());
+            out.writeInt(surveyHash);
+            out.writeInt(resultsHash);
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] s : strings)
+                out.writeInt(offset += s.length);
+            for (byte[] s : strings)
+                out.write(s);
+            for (long k = stringBytes; k < pad(stringBytes); k++)
+                out.writeByte(0);
+            for (IntColumn column : new IntColumn[]{questionIds, optionQuestions, optionTexts, srids, answerOffsets,
+                    answerQuestions, answerPositions, optionOffsets, answerOptions, optionPositions})
+                column.write(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * A growable column of ints.
+     */
+    private static class IntColumn {
+
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++)
+                out.writeInt(values[i]);
+        }
+    }
+}
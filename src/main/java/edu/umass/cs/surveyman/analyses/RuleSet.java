@@ -0,0 +1,366 @@
+package edu.umass.cs.surveyman.analyses;
+
+import edu.umass.cs.surveyman.analyses.rules.*;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.SurveyObj;
+import edu.umass.cs.surveyman.survey.exceptions.RuleTimeoutException;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An immutable, ordered collection of wellformedness rules. Rule sets are built and composed explicitly and passed to
+ * {@link StaticAnalysis#wellFormednessChecks(Survey, RuleSet)}, so concurrent callers never share mutable state. A
+ * rule set holds at most one rule of each class; adding a rule of a class already present replaces it in place.
+ */
+public final class RuleSet implements Iterable<AbstractRule> {
+
+    /**
+     * The result of running a single rule.
+     */
+    public static final class Outcome {
+
+        /**
+         * The rule that was run.
+         */
+        public final AbstractRule rule;
+
+        /**
+         * Wall time spent in the rule, in nanoseconds. For timed-out rules, this is the timeout.
+         */
+        public final long nanos;
+
+        /**
+         * The violation the rule reported, or null if the survey passed.
+         */
+        public final SurveyException violation;
+
+        Outcome(AbstractRule rule, long nanos, SurveyException violation) {
+            this.rule = rule;
+            this.nanos = nanos;
+            this.violation = violation;
+        }
+    }
+
+    /**
+     * The outcomes of checking a survey against a rule set, in rule order.
+     */
+    public static final class Result implements Iterable<Outcome> {
+
+        private final List<Outcome> outcomes;
+
+        Result(List<Outcome> outcomes) {
+            this.outcomes = Collections.unmodifiableList(outcomes);
+        }
+
+        @Override
+        public Iterator<Outcome> iterator() {
+            return outcomes.iterator();
+        }
+
+        /**
+         * @return The first violation in rule order, or null if every rule passed.
+         */
+        public SurveyException firstViolation() {
+            for (Outcome outcome : outcomes)
+                if (outcome.violation != null)
+                    return outcome.violation;
+            return null;
+        }
+
+        public boolean passed() {
+            return firstViolation() == null;
+        }
+
+        /**
+         * @return Map from rule class name to wall time in nanoseconds, in rule order.
+         */
+        public Map<String, Long> timings() {
+            Map<String, Long> retval = new LinkedHashMap<>();
+            for (Outcome outcome : outcomes)
+                retval.put(outcome.rule.getClass().getSimpleName(), outcome.nanos);
+            return retval;
+        }
+
+        /**
+         * Throws the first violation in rule order, if there is one.
+         * @throws SurveyException
+         */
+        public void rethrow() throws SurveyException {
+            SurveyException e = firstViolation();
+            if (e != null)
+                throw e;
+        }
+    }
+
+    /**
+     * The rule set with no rules.
+     */
+    public static final RuleSet EMPTY = new RuleSet(new ArrayList<AbstractRule>());
+
+    private final List<AbstractRule> rules;
+
+    private RuleSet(List<AbstractRule> rules) {
+        this.rules = Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * Builds a rule set from rule instances. Later rules replace earlier rules of the same class.
+     * @param rules The rules, in the order they should be reported.
+     * @return A new rule set.
+     */
+    public static RuleSet of(AbstractRule... rules) {
+        return EMPTY.with(rules);
+    }
+
+    /**
+     * @return A new rule set containing all of the rules shipped with SurveyMan.
+     */
+    public static RuleSet defaults() {
+        return of(
+                new BranchConsistency(),
+                new BranchForward(),
+                new BranchParadigm(),
+                new BranchTop(),
+                new Compactness(),
+                new ExclusiveBranching(),
+                new NoTopLevelBranching(),
+                new Reachability(),
+                new SampleHomogenousMaps(),
+                new NonEmptySurvey()
+        );
+    }
+
+    /**
+     * @return A snapshot of the rules currently in the global {@link AbstractRule} registry.
+     */
+    public static RuleSet fromRegistry() {
+        return of(AbstractRule.getRules().toArray(new AbstractRule[0]));
+    }
+
+    /**
+     * @param added Rules to add.
+     * @return A new rule set containing this set's rules and the added rules.
+     */
+    public RuleSet with(AbstractRule... added) {
+        List<AbstractRule> retval = new ArrayList<>(this.rules);
+        for (AbstractRule rule : added) {
+            int i = indexOf(retval, rule.getClass());
+            if (i < 0)
+                retval.add(rule);
+            else retval.set(i, rule);
+        }
+        return new RuleSet(retval);
+    }
+
+    /**
+     * @param other Another rule set.
+     * @return A new rule set containing the rules of both sets.
+     */
+    public RuleSet with(RuleSet other) {
+        return with(other.rules.toArray(new AbstractRule[other.rules.size()]));
+    }
+
+    /**
+     * @param removed Rule classes to drop.
+     * @return A new rule set without rules of the input classes.
+     */
+    @SafeVarargs
+    public final RuleSet without(Class<? extends AbstractRule>... removed) {
+        List<AbstractRule> retval = new ArrayList<>(this.rules);
+        for (Class<? extends AbstractRule> clz : removed) {
+            int i = indexOf(retval, clz);
+            if (i >= 0)
+                retval.remove(i);
+        }
+        return new RuleSet(retval);
+    }
+
+    /**
+     * @param classNames Fully qualified rule class names, e.g. those recorded in a
+     * {@link edu.umass.cs.surveyman.survey.SurveySnapshot}.
+     * @return A new rule set without rules of the named classes.
+     */
+    public RuleSet without(Collection<String> classNames) {
+        List<AbstractRule> retval = new ArrayList<>();
+        for (AbstractRule rule : this.rules)
+            if (!classNames.contains(rule.getClass().getName()))
+                retval.add(rule);
+        return new RuleSet(retval);
+    }
+
+    /**
+     * @return The fully qualified class names of this set's rules, in order.
+     */
+    public List<String> names() {
+        List<String> retval = new ArrayList<>();
+        for (AbstractRule rule : this.rules)
+            retval.add(rule.getClass().getName());
+        return retval;
+    }
+
+    public boolean contains(Class<? extends AbstractRule> clz) {
+        return indexOf(this.rules, clz) >= 0;
+    }
+
+    public int size() {
+        return this.rules.size();
+    }
+
+    @Override
+    public Iterator<AbstractRule> iterator() {
+        return this.rules.iterator();
+    }
+
+    private static int indexOf(List<AbstractRule> rules, Class<? extends AbstractRule> clz) {
+        for (int i = 0; i < rules.size(); i++)
+            if (rules.get(i).getClass().equals(clz))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Runs the rules one after another on the calling thread, stopping at the first violation.
+     * @param survey The survey to check.
+     * @return The outcomes of the rules that ran.
+     */
+    public Result check(Survey survey) {
+        List<Outcome> outcomes = new ArrayList<>();
+        for (AbstractRule rule : this.rules) {
+            Outcome outcome = run(rule, survey);
+            outcomes.add(outcome);
+            if (outcome.violation != null)
+                break;
+        }
+        return new Result(outcomes);
+    }
+
+    /**
+     * Runs every rule concurrently on the input executor. Rules that have not finished when the timeout elapses are
+     * cancelled and reported as {@link RuleTimeoutException} violations. Rules only read the survey, so they may
+     * safely share it.
+     * @param survey The survey to check.
+     * @param executor The executor to run rules on.
+     * @param timeout The wall-time budget for the whole set.
+     * @param unit The unit of the timeout.
+     * @return The outcome of every rule, in rule order.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public Result check(final Survey survey, ExecutorService executor, long timeout, TimeUnit unit)
+            throws InterruptedException
+    {
+        List<Callable<Outcome>> tasks = new ArrayList<>();
+        for (final AbstractRule rule : this.rules) {
+            tasks.add(new Callable<Outcome>() {
+                @Override
+                public Outcome call() {
+                    return run(rule, survey);
+                }
+            });
+        }
+        List<Future<Outcome>> futures = executor.invokeAll(tasks, timeout, unit);
+        List<Outcome> outcomes = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            AbstractRule rule = this.rules.get(i);
+            try {
+                outcomes.add(futures.get(i).get());
+            } catch (CancellationException e) {
+                outcomes.add(new Outcome(rule, unit.toNanos(timeout),
+                        new RuleTimeoutException(rule.getClass().getSimpleName(), unit.toMillis(timeout))));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new RuntimeException(cause);
+            }
+        }
+        return new Result(outcomes);
+    }
+
+    /**
+     * Runs every rule concurrently on the input executor and collects every violation each rule can find, instead of
+     * stopping at the first. Rules only read the survey and report into their own lists, so wall time is bounded by the
+     * slowest rule. Rules that have not finished when the timeout elapses are cancelled; they contribute a
+     * {@link RuleTimeoutException} diagnostic in place of whatever they had found so far.
+     * @param survey The survey to check.
+     * @param executor The executor to run rules on.
+     * @param timeout The wall-time budget for the whole set.
+     * @param unit The unit of the timeout.
+     * @return Every violation found, in source order.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public Diagnostics collect(final Survey survey, ExecutorService executor, long timeout, TimeUnit unit)
+            throws InterruptedException
+    {
+        long begin = System.nanoTime();
+        List<Callable<List<Diagnostics.Diagnostic>>> tasks = new ArrayList<>();
+        final long[] nanos = new long[this.rules.size()];
+        for (int i = 0; i < this.rules.size(); i++) {
+            final int index = i;
+            final AbstractRule rule = this.rules.get(i);
+            tasks.add(new Callable<List<Diagnostics.Diagnostic>>() {
+                @Override
+                public List<Diagnostics.Diagnostic> call() {
+                    long ruleBegin = System.nanoTime();
+                    List<Diagnostics.Diagnostic> found = collect(rule, survey);
+                    nanos[index] = System.nanoTime() - ruleBegin;
+                    return found;
+                }
+            });
+        }
+        List<Future<List<Diagnostics.Diagnostic>>> futures = executor.invokeAll(tasks, timeout, unit);
+        List<Diagnostics.Diagnostic> diagnostics = new ArrayList<>();
+        Map<String, Long> timings = new LinkedHashMap<>();
+        for (int i = 0; i < futures.size(); i++) {
+            AbstractRule rule = this.rules.get(i);
+            String name = rule.getClass().getSimpleName();
+            try {
+                diagnostics.addAll(futures.get(i).get());
+                timings.put(name, nanos[i]);
+            } catch (CancellationException e) {
+                diagnostics.add(new Diagnostics.Diagnostic(name,
+                        new RuleTimeoutException(name, unit.toMillis(timeout)), null));
+                timings.put(name, unit.toNanos(timeout));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new RuntimeException(cause);
+            }
+        }
+        return new Diagnostics(diagnostics, timings, System.nanoTime() - begin);
+    }
+
+    private static List<Diagnostics.Diagnostic> collect(AbstractRule rule, Survey survey) {
+        final String name = rule.getClass().getSimpleName();
+        final List<Diagnostics.Diagnostic> found = new ArrayList<>();
+        try {
+            rule.check(survey, new AbstractRule.Reporter() {
+                @Override
+                public void report(SurveyException violation, SurveyObj locus) {
+                    found.add(new Diagnostics.Diagnostic(name, violation, locus));
+                }
+            });
+        } catch (SurveyException e) {
+            // Only reached if the rule itself throws rather than reporting.
+            found.add(new Diagnostics.Diagnostic(name, e, null));
+        }
+        return found;
+    }
+
+    private static Outcome run(AbstractRule rule, Survey survey) {
+        long begin = System.nanoTime();
+        SurveyException violation = null;
+        try {
+            rule.check(survey);
+        } catch (SurveyException e) {
+            violation = e;
+        }
+        return new Outcome(rule, System.nanoTime() - begin, violation);
+    }
+}
@@ -9,7 +9,10 @@ import edu.umass.cs.surveyman.qc.respondents.AbstractRespondent;
 import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.TableWriter;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -41,13 +44,28 @@ public class Simulation {
         }
 
         public String toString() {
-            return String.format("%f,%f,%d,%d,%d,%d\n",
-                    this.percBots,
-                    this.empiricalEntropy,
-                    this.truePositive,
-                    this.falsePositive,
-                    this.trueNegative,
-                    this.falseNegative);
+            StringWriter sw = new StringWriter();
+            try {
+                write(new TableWriter(sw, ','));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return sw.toString();
+        }
+
+        /**
+         * Appends this point's cells to the current row and ends it.
+         * @param out The writer.
+         * @throws IOException
+         */
+        public void write(TableWriter out) throws IOException {
+            out.cell(this.percBots)
+                    .cell(this.empiricalEntropy)
+                    .cell(this.truePositive)
+                    .cell(this.falsePositive)
+                    .cell(this.trueNegative)
+                    .cell(this.falseNegative)
+                    .endRow();
         }
     }
 
@@ -78,7 +96,7 @@ public class Simulation {
         List<SurveyResponse> randomResponses = new ArrayList<>();
         List<SurveyResponse> realResponses = new ArrayList<>();
 
-        long numRandomRespondents = (int) Math.floor(totalResponses * percentAdversaries);
+        long numRandomRespondents = (long) Math.floor(totalResponses * percentAdversaries);
         long numRealRespondents = totalResponses - numRandomRespondents;
 
         while (numRandomRespondents > 0) {
@@ -11,15 +11,18 @@ import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
 import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
+import edu.umass.cs.surveyman.utils.TableWriter;
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class StaticAnalysis {
 
@@ -71,27 +74,28 @@ public class StaticAnalysis {
             return ctAboveString / (1.0 * numComparisons);
         }
 
+        /**
+         * Writes the summary statistics as tab-separated lines, followed by the ROC tables as comma-separated rows,
+         * through a buffer. The stream is flushed but not closed.
+         * @param stream Where to write the report.
+         */
         public void print(OutputStream stream) {
-            OutputStreamWriter osw = new OutputStreamWriter(stream);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+            TableWriter tsv = new TableWriter(writer);
+            TableWriter csv = new TableWriter(writer, ',');
             try {
-                osw.write(String.format(
-                        "Min Path Length:\t%d\n" +
-                                "Max Path Length:\t%d\n" +
-                                "Average Path Length:\t%f\n" +
-                                "Max Possible Entropy:\t%f\n" +
-                                "Prob. False Correlation:\t%f\n",
-                        this.minPathLength,
-                        this.maxPathLength,
-                        this.avgPathLength,
-                        this.maxPossibleEntropy,
-                        this.getFrequencyOfRandomCorrelation()
-                ));
-                osw.write("group,percentBots,entropy,TP,FP,TN,FN\n");
+                tsv.cell("Min Path Length:").cell(this.minPathLength).endRow();
+                tsv.cell("Max Path Length:").cell(this.maxPathLength).endRow();
+                tsv.cell("Average Path Length:").cell(this.avgPathLength).endRow();
+                tsv.cell("Max Possible Entropy:").cell(this.maxPossibleEntropy).endRow();
+                tsv.cell("Prob. False Correlation:").cell(this.getFrequencyOfRandomCorrelation()).endRow();
+                csv.cell("group").cell("percentBots").cell("entropy").cell("TP").cell("FP").cell("TN").cell("FN")
+                        .endRow();
                 for (Simulation.ROC roc : rocListBest)
-                    osw.write("best," + roc.toString());
+                    roc.write(csv.cell("best"));
                 for (Simulation.ROC roc : rocListWorst)
-                    osw.write("worst," + roc.toString());
-                osw.close();
+                    roc.write(csv.cell("worst"));
+                writer.flush();
             } catch (IOException e) {
                 SurveyMan.LOGGER.warn(e);
             }
@@ -158,12 +162,92 @@ public class StaticAnalysis {
     }
 
     public static void wellFormednessChecks(Survey survey) throws SurveyException{
-        SurveyMan.LOGGER.info(String.format("Testing %d rules...", AbstractRule.getRules().size()));
-        for (AbstractRule rule : AbstractRule.getRules()) {
-            SurveyMan.LOGGER.info(rule.getClass().getName());
-            rule.check(survey);
+        wellFormednessChecks(survey, RuleSet.fromRegistry());
+    }
+
+    /**
+     * Checks the survey against an explicit rule set, rather than the global registry. Rules run in order on the
+     * calling thread.
+     * @param survey The survey to check.
+     * @param rules The rules to apply.
+     * @return The outcome and timing of each rule.
+     * @throws SurveyException The first rule violation found.
+     */
+    public static RuleSet.Result wellFormednessChecks(Survey survey, RuleSet rules) throws SurveyException{
+        SurveyMan.LOGGER.info(String.format("Testing %d rules...", rules.size()));
+        RuleSet.Result result = rules.check(survey);
+        logTimings(result);
+        result.rethrow();
+        SurveyMan.LOGGER.info("Finished wellformedness checks.");
+        return result;
+    }
+
+    /**
+     * Checks the survey against an explicit rule set, running the rules in parallel on the input executor.
+     * @param survey The survey to check.
+     * @param rules The rules to apply.
+     * @param executor Where to run the rules.
+     * @param timeout Wall-time budget for all of the rules; rules still running afterwards are reported as timed out.
+     * @param unit The unit of the timeout.
+     * @return The outcome and timing of each rule.
+     * @throws SurveyException The first rule violation found, in rule order.
+     */
+    public static RuleSet.Result wellFormednessChecks(
+            Survey survey,
+            RuleSet rules,
+            ExecutorService executor,
+            long timeout,
+            TimeUnit unit
+    ) throws SurveyException {
+        SurveyMan.LOGGER.info(String.format("Testing %d rules in parallel...", rules.size()));
+        RuleSet.Result result;
+        try {
+            result = rules.check(survey, executor, timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
         }
+        logTimings(result);
+        result.rethrow();
         SurveyMan.LOGGER.info("Finished wellformedness checks.");
+        return result;
+    }
+
+    /**
+     * Checks the survey against every rule in parallel and collects all of the violations, rather than throwing the
+     * first. Use this to report every problem with a survey in one pass.
+     * @param survey The survey to check.
+     * @param rules The rules to apply.
+     * @param executor Where to run the rules.
+     * @param timeout Wall-time budget for all of the rules; rules still running afterwards are reported as timed out.
+     * @param unit The unit of the timeout.
+     * @return Every violation found, with source positions where the rules could supply them.
+     */
+    public static Diagnostics diagnose(
+            Survey survey,
+            RuleSet rules,
+            ExecutorService executor,
+            long timeout,
+            TimeUnit unit
+    ) {
+        SurveyMan.LOGGER.info(String.format("Collecting violations of %d rules...", rules.size()));
+        Diagnostics diagnostics;
+        try {
+            diagnostics = rules.collect(survey, executor, timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        for (Map.Entry<String, Long> entry : diagnostics.timings().entrySet())
+            SurveyMan.LOGGER.info(String.format("%s\t%.3fms", entry.getKey(), entry.getValue() / 1e6));
+        SurveyMan.LOGGER.info(String.format("Found %d violations in %.3fms.", diagnostics.size(),
+                diagnostics.wallNanos() / 1e6));
+        return diagnostics;
+    }
+
+    private static void logTimings(RuleSet.Result result) {
+        for (Map.Entry<String, Long> entry : result.timings().entrySet())
+            SurveyMan.LOGGER.info(String.format("%s\t%.3fms", entry.getKey(), entry.getValue() / 1e6));
     }
 
     public static Report staticAnalysis(
@@ -172,17 +256,48 @@ public class StaticAnalysis {
             double granularity,
             RandomRespondent.AdversaryType adversaryType
     ) throws SurveyException {
+        return staticAnalysis(survey, classifier, granularity, adversaryType, RuleSet.fromRegistry());
+    }
+
+    public static Report staticAnalysis(
+            Survey survey,
+            AbstractClassifier classifier,
+            double granularity,
+            RandomRespondent.AdversaryType adversaryType,
+            RuleSet rules
+    ) throws SurveyException {
+        return staticAnalysis(survey, classifier, granularity, adversaryType, rules, new MersenneRandom());
+    }
+
+    /**
+     * Checks the survey, then simulates populations of respondents and tests how well the classifier separates them.
+     * Each population, and the sample of random respondents used to estimate false correlation, draws from its own
+     * generator, seeded from {@code rng}. Analyses may run concurrently, so none of them shares a generator with
+     * another.
+     * @param rng The source of the populations' seeds and of their shuffles. An identically seeded generator simulates
+     *            the same populations.
+     */
+    public static Report staticAnalysis(
+            Survey survey,
+            AbstractClassifier classifier,
+            double granularity,
+            RandomRespondent.AdversaryType adversaryType,
+            RuleSet rules,
+            MersenneRandom rng
+    ) throws SurveyException {
 
         long begin = System.currentTimeMillis();
 
-        wellFormednessChecks(survey);
+        wellFormednessChecks(survey, rules);
 
         List<Simulation.ROC> rocListBest = new ArrayList<>();
         List<Simulation.ROC> rocListWorst = new ArrayList<>();
 
-        AbstractRespondent weakPopulation = new NonRandomRespondent(survey);
-        AbstractRespondent strongPopulation = new NoisyLexicographicRespondent(survey, 0.1);
-        AbstractRespondent rando = new RandomRespondent(survey, adversaryType);
+        AbstractRespondent weakPopulation = new NonRandomRespondent(survey, new MersenneRandom(rng.nextLong()));
+        AbstractRespondent strongPopulation = new NoisyLexicographicRespondent(survey, 0.1,
+                new MersenneRandom(rng.nextLong()));
+        AbstractRespondent rando = new RandomRespondent(survey, adversaryType, new MersenneRandom(rng.nextLong()));
+        MersenneRandom correlationRng = new MersenneRandom(rng.nextLong());
 
         QCMetrics qcMetrics = new QCMetrics(survey, classifier);
 
@@ -206,9 +321,9 @@ public class StaticAnalysis {
 
         for (double percAdversary = 0.0 ; percAdversary <= 1.0 ; percAdversary += granularity) {
 
-            Collections.shuffle(srsBest);
-            Collections.shuffle(srsWorst);
-            Collections.shuffle(randos);
+            Collections.shuffle(srsBest, rng);
+            Collections.shuffle(srsWorst, rng);
+            Collections.shuffle(randos, rng);
 
             int numRando = (int) Math.floor(percAdversary * randos.size());
             int numReal = srsBest.size() - numRando;
@@ -229,7 +344,7 @@ public class StaticAnalysis {
                 qcMetrics.maximumPathLength(),
                 qcMetrics.averagePathLength(),
                 qcMetrics.getMaxPossibleEntropy(),
-                qcMetrics.getFrequenciesOfRandomCorrelation(),
+                qcMetrics.getFrequenciesOfRandomCorrelation(correlationRng),
                 rocListBest,
                 rocListWorst
         );
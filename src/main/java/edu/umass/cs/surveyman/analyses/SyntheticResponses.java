@@ -0,0 +1,203 @@
+package edu.umass.cs.surveyman.analyses;
+
+import edu.umass.cs.surveyman.qc.Interpreter;
+import edu.umass.cs.surveyman.survey.InputOutputKeys;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.SurveyDatum;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.prefs.CsvPreference;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * A seeded, reproducible population of simulated respondents to a survey, generated one respondent at a time. Iterate
+ * it to analyze the responses in memory, or {@link #write(Writer) write} them as a SurveyMan Runtime results CSV,
+ * which {@link DynamicAnalysis#readSurveyResponses(Survey, String)} reads back. Neither holds more than one respondent
+ * at a time, so populations far larger than the heap can be streamed to disk.
+ *
+ * <p>Honest respondents share a preferred answer to every question, which they give unless noise makes them answer
+ * uniformly at random; bots always answer uniformly at random. Either may break off partway through. Responses are
+ * labelled with whether they came from a bot, so classifiers can be scored against them. Every iteration of the
+ * same population, on the same survey, yields the same responses.</p>
+ */
+public final class SyntheticResponses implements Iterable<DynamicAnalysis.DynamicSurveyResponse> {
+
+    /**
+     * The columns of a Runtime results file, before the survey's other headers.
+     */
+    public static final String[] HEADERS = {"responseid", "workerid", "surveyid", "questionid", "questiontext",
+            "questionpos", "optionid", "optiontext", "optionpos", "acceptTime", "submitTime"};
+
+    private final Survey survey;
+    private final long size;
+    private final long seed;
+    private final double bots;
+    private final double noise;
+    private final double breakoff;
+
+    /**
+     * @param survey The survey to respond to.
+     * @param size The number of respondents.
+     * @param seed Seeds every choice the respondents make, and the order the survey presents itself in.
+     * @param bots The probability that a respondent is a bot.
+     * @param noise The probability that an honest respondent answers a question at random instead.
+     * @param breakoff The probability that a respondent stops after a uniformly chosen number of questions.
+     */
+    public SyntheticResponses(Survey survey, long size, long seed, double bots, double noise, double breakoff) {
+        this.survey = survey;
+        this.size = size;
+        this.seed = seed;
+        this.bots = bots;
+        this.noise = noise;
+        this.breakoff = breakoff;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<DynamicAnalysis.DynamicSurveyResponse> iterator() {
+        return new Respondents();
+    }
+
+    /**
+     * Streams the population as a Runtime results CSV, one respondent at a time. The writer is flushed but not closed.
+     * @param out Where to write the results.
+     * @return The number of rows written, not counting the header.
+     * @throws IOException
+     */
+    public long write(Writer out) throws IOException {
+        CsvListWriter csv = new CsvListWriter(out, CsvPreference.STANDARD_PREFERENCE);
+        List<String> header = new ArrayList<>(Arrays.asList(HEADERS));
+        if (survey.otherHeaders != null)
+            Collections.addAll(header, survey.otherHeaders);
+        boolean correlated = survey.correlationMap != null && !survey.correlationMap.isEmpty();
+        if (correlated)
+            header.add(InputOutputKeys.CORRELATION);
+        csv.writeHeader(header.toArray(new String[header.size()]));
+        String[] row = new String[header.size()];
+        long rows = 0;
+        for (DynamicAnalysis.DynamicSurveyResponse sr : this) {
+            Arrays.fill(row, "");
+            row[0] = sr.getSrid();
+            row[1] = workerId(sr.getSrid());
+            row[2] = survey.sid;
+            for (IQuestionResponse qr : sr.getAllResponses()) {
+                Question q = qr.getQuestion();
+                row[3] = q.id;
+                row[4] = String.valueOf(q.data);
+                row[5] = Integer.toString(qr.getIndexSeen());
+                if (correlated)
+                    row[row.length - 1] = survey.getCorrelationLabel(q);
+                for (OptTuple opt : qr.getOpts()) {
+                    row[6] = opt.c.getId();
+                    row[7] = String.valueOf(opt.c);
+                    row[8] = Integer.toString(opt.i);
+                    csv.write(row);
+                    rows++;
+                }
+            }
+        }
+        csv.flush();
+        return rows;
+    }
+
+    private static String responseId(long respondent) {
+        return "R" + respondent;
+    }
+
+    private static String workerId(String responseId) {
+        return "W" + responseId.substring(1);
+    }
+
+    private class Respondents implements Iterator<DynamicAnalysis.DynamicSurveyResponse> {
+
+        private final MersenneRandom rng = new MersenneRandom(seed);
+        // Each question's answer options, in source order, and the one honest respondents prefer.
+        private final Map<Question, SurveyDatum[]> options = new HashMap<>();
+        private final Map<Question, SurveyDatum> preferred = new HashMap<>();
+        private long next = 0;
+
+        Respondents() {
+            for (Question q : survey.questions) {
+                if (q.options.isEmpty())
+                    continue;
+                SurveyDatum[] opts = q.options.values().toArray(new SurveyDatum[q.options.size()]);
+                Arrays.sort(opts);
+                options.put(q, opts);
+                preferred.put(q, opts[rng.nextInt(opts.length)]);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public DynamicAnalysis.DynamicSurveyResponse next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            try {
+                return respond(next++);
+            } catch (SurveyException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private DynamicAnalysis.DynamicSurveyResponse respond(long respondent) throws SurveyException {
+            boolean bot = rng.nextDouble() < bots;
+            int limit = rng.nextDouble() < breakoff ? 1 + rng.nextInt(survey.questions.size()) : Integer.MAX_VALUE;
+            String srid = responseId(respondent);
+            DynamicAnalysis.DynamicSurveyResponse sr = new DynamicAnalysis.DynamicSurveyResponse(survey, null);
+            sr.setSrid(srid);
+            sr.setKnownValidityStatus(bot ? KnownValidityStatus.NO : KnownValidityStatus.YES);
+            // The interpreter shuffles options starting from wherever the last respondent left them.
+            for (SurveyDatum[] opts : options.values())
+                for (int i = 0; i < opts.length; i++)
+                    opts[i].setIndex(i);
+            Interpreter interpreter = new Interpreter(survey, rng);
+            int position = 0;
+            do {
+                Question q = interpreter.getNextQuestion();
+                List<SurveyDatum> answers = options.containsKey(q) ? choose(q, bot) : new ArrayList<SurveyDatum>();
+                interpreter.answer(q, answers);
+                if (answers.isEmpty())
+                    continue;
+                DynamicAnalysis.QuestionResponse qr = new DynamicAnalysis.QuestionResponse(q, position++);
+                // The interpreter has just numbered the options in the order it displayed them.
+                for (SurveyDatum answer : answers)
+                    qr.getOpts().add(new OptTuple(answer, answer.getIndex()));
+                sr.addResponse(qr);
+            } while (!interpreter.terminated() && position < limit);
+            return sr;
+        }
+
+        private List<SurveyDatum> choose(Question q, boolean bot) {
+            SurveyDatum[] opts = options.get(q);
+            List<SurveyDatum> answers = new ArrayList<>();
+            if (q.exclusive == null || q.exclusive) {
+                answers.add(bot || rng.nextDouble() < noise ? opts[rng.nextInt(opts.length)] : preferred.get(q));
+                return answers;
+            }
+            // Checkboxes: bots tick each box with even odds, honest respondents their preference and the odd stray.
+            for (SurveyDatum opt : opts)
+                if (bot ? rng.nextBoolean() : opt == preferred.get(q) || rng.nextDouble() < noise)
+                    answers.add(opt);
+            if (answers.isEmpty())
+                answers.add(opts[rng.nextInt(opts.length)]);
+            return answers;
+        }
+    }
+}
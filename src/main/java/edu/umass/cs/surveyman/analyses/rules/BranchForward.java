@@ -12,31 +12,31 @@ import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
  */
 public class BranchForward extends AbstractRule {
 
-    /**
-     Adds itself to the {@link edu.umass.cs.surveyman.analyses.AbstractRule rule} registry.
-     */
-    public BranchForward() {
-        AbstractRule.registerRule(this);
-    }
-
-    private static void ensureBranchForward(int[] toBlock, Question q, Survey survey) throws SurveyException {
+    private static void ensureBranchForward(int[] toBlock, Question q, Survey survey, Reporter reporter)
+            throws SurveyException {
         int[] fromBlock = q.block.getBlockId();
         for (int i=0; i<toBlock.length; i++)
             if (fromBlock[i]>toBlock[i]) {
                 SurveyException e = new BranchException(q.block.getId(), Block.idToString(toBlock, survey.blocks));
                 LOGGER.warn(e);
-                throw e;
+                reporter.report(e, q);
+                return;
             }
     }
 
     @Override
     public void check(Survey survey) throws SurveyException {
+        check(survey, FAIL_FAST);
+    }
+
+    @Override
+    public void check(Survey survey, Reporter reporter) throws SurveyException {
         for (Question q : survey.questions) {
             if (!q.isBranchQuestion())
                 continue;
             for (Block b : q.getBranchDestinations()) {
                 if (b!=null) // if we aren't sampling
-                    ensureBranchForward(b.getBlockId(), q, survey);
+                    ensureBranchForward(b.getBlockId(), q, survey, reporter);
             }
         }
     }
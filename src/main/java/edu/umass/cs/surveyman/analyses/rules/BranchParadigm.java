@@ -14,13 +14,6 @@ import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
  */
 public class BranchParadigm extends AbstractRule {
 
-    /**
-     Adds itself to the {@link edu.umass.cs.surveyman.analyses.AbstractRule rule} registry.
-     */
-    public BranchParadigm() {
-        AbstractRule.registerRule(this);
-    }
-
     public static int ensureBranchParadigms(Block b) throws SurveyException {
         switch (b.getBranchParadigm()) {
             case NONE:
@@ -60,8 +53,17 @@ public class BranchParadigm extends AbstractRule {
 
     @Override
     public void check(Survey survey) throws SurveyException {
+        check(survey, FAIL_FAST);
+    }
+
+    @Override
+    public void check(Survey survey, Reporter reporter) throws SurveyException {
         for (Block b : survey.topLevelBlocks) {
-            ensureBranchParadigms(b);
+            try {
+                ensureBranchParadigms(b);
+            } catch (SurveyException e) {
+                reporter.report(e, b);
+            }
         }
     }
 }
@@ -11,13 +11,6 @@ import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
  */
 public class BranchTop extends AbstractRule {
 
-    /**
-     Adds itself to the {@link edu.umass.cs.surveyman.analyses.AbstractRule rule} registry.
-     */
-    public BranchTop() {
-        AbstractRule.registerRule(this);
-    }
-
     @Override
     public void check(Survey survey) throws SurveyException {
         for (Block b : survey.topLevelBlocks) {
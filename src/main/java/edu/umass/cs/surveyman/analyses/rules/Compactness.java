@@ -15,15 +15,13 @@ import java.util.Map;
  */
 public class Compactness extends AbstractRule {
 
-    /**
-     Adds itself to the {@link edu.umass.cs.surveyman.analyses.AbstractRule rule} registry.
-     */
-    public Compactness() {
-        AbstractRule.registerRule(this);
+    @Override
+    public void check(Survey survey) throws SurveyException {
+        check(survey, FAIL_FAST);
     }
 
     @Override
-    public void check(Survey survey) throws SurveyException {
+    public void check(Survey survey, Reporter reporter) throws SurveyException {
         //first check the top level
         List<Block> topLevelBlocks = survey.topLevelBlocks;
         Map<String, Block> allBlockLookUp = survey.blocks;
@@ -35,7 +33,7 @@ public class Compactness extends AbstractRule {
             else {
                 SurveyException e = new SyntaxException(String.format("Block %s is noncontiguous.", b.getId()));
                 LOGGER.warn(e);
-                throw e;
+                reporter.report(e, b);
             }
         }
         if (allBlockLookUp==null)
@@ -46,7 +44,7 @@ public class Compactness extends AbstractRule {
                     if (bb==null) {
                         SurveyException e = new SyntaxException(String.format("Detected noncontiguous subblock in parent block %s", b.getId()));
                         LOGGER.warn(e);
-                        throw e;
+                        reporter.report(e, b);
                     }
     }
 }
@@ -12,17 +12,15 @@ import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
  */
 public class ExclusiveBranching extends AbstractRule {
 
-    /**
-     Adds itself to the {@link edu.umass.cs.surveyman.analyses.AbstractRule rule} registry.
-     */
-    public ExclusiveBranching() {
-        AbstractRule.registerRule(this);
+    @Override
+    public void check(Survey survey) throws SurveyException {
+        check(survey, FAIL_FAST);
     }
 
     @Override
-    public void check(Survey survey) throws SurveyException {
+    public void check(Survey survey, Reporter reporter) throws SurveyException {
         for (Question q : survey.questions)
             if (q.isBranchQuestion() && !q.exclusive)
-                throw new BranchException(String.format("Question %s is nonexclusive and branches.", q));
+                reporter.report(new BranchException(String.format("Question %s is nonexclusive and branches.", q)), q);
     }
 }
@@ -8,10 +8,6 @@ import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 
 public class NoTopLevelBranching extends AbstractRule {
 
-    public NoTopLevelBranching() {
-        AbstractRule.registerRule(this);
-    }
-
     @Override
     public void check(Survey survey) throws SurveyException {
         for (Block b : survey.topLevelBlocks) {
@@ -10,8 +10,6 @@ import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
  */
 public class NonEmptySurvey extends AbstractRule {
 
-    public NonEmptySurvey() { AbstractRule.registerRule(this); }
-
     @Override
     public void check(Survey survey) throws SurveyException {
         if (survey.questions.isEmpty())
@@ -19,15 +19,13 @@ import java.util.Set;
  */
 public class Reachability extends AbstractRule {
 
-    /**
-     Adds itself to the {@link edu.umass.cs.surveyman.analyses.AbstractRule rule} registry.
-     */
-    public Reachability() {
-        AbstractRule.registerRule(this);
+    @Override
+    public void check(Survey survey) throws SurveyException {
+        check(survey, FAIL_FAST);
     }
 
     @Override
-    public void check(Survey survey) throws SurveyException {
+    public void check(Survey survey, Reporter reporter) throws SurveyException {
         // only need to check stationary top-level blocks
         List<Block> stationaryBlocks = Interpreter.partitionBlocks(survey).get(false);
         SurveyDAG dag = SurveyDAG.getDag(survey);
@@ -37,6 +35,6 @@ public class Reachability extends AbstractRule {
                 allVisited.add(b);
         for (Block b : stationaryBlocks)
             if (!allVisited.contains(b))
-                throw new UnreachableBlockException(b);
+                reporter.report(new UnreachableBlockException(b), b);
     }
 }
@@ -14,31 +14,29 @@ import java.util.Collection;
  */
 public class SampleHomogenousMaps extends AbstractRule {
 
-    /**
-     Adds itself to the {@link edu.umass.cs.surveyman.analyses.AbstractRule rule} registry.
-     */
-    public SampleHomogenousMaps() {
-        AbstractRule.registerRule(this);
-    }
-
-    private static void ensureSampleHomogenousMaps(Block block) throws SurveyException{
+    private static void ensureSampleHomogenousMaps(Block block, Reporter reporter) throws SurveyException{
         if (block.getBranchParadigm().equals(Block.BranchParadigm.ALL)){
             assert(block.subBlocks.size()==0);
             Collection<Block> dests = block.getBranchDestinations();
             for (Question q : block.questions){
                 Collection<Block> qDests = q.getBranchDestinations();
                 if (!qDests.containsAll(dests) || !dests.containsAll(qDests))
-                    throw new BranchException(String.format("Question %s has branch map %s; was expecting %s", q, qDests, dests));
+                    reporter.report(new BranchException(String.format("Question %s has branch map %s; was expecting %s", q, qDests, dests)), q);
             }
         } else {
             for (Block b : block.subBlocks)
-                ensureSampleHomogenousMaps(b);
+                ensureSampleHomogenousMaps(b, reporter);
         }
     }
 
     @Override
     public void check(Survey survey) throws SurveyException {
+        check(survey, FAIL_FAST);
+    }
+
+    @Override
+    public void check(Survey survey, Reporter reporter) throws SurveyException {
         for (Block b : survey.topLevelBlocks)
-            ensureSampleHomogenousMaps(b);
+            ensureSampleHomogenousMaps(b, reporter);
     }
 }
@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.Reader;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -25,19 +26,25 @@ public abstract class AbstractLexer {
     /**
      * XML/HTML conversion characters.
      */
-    public static HashMap<Character, String> xmlChars;
+    public static final HashMap<Character, String> xmlChars = new HashMap<Character, String>();
 
     /**
      * Recognized quotation marks.
      */
-    public static HashMap<Character, Character> quotMatches;
+    public static final HashMap<Character, Character> quotMatches = new HashMap<Character, Character>();
 
     /**
-     * Initializes xmlChars and quotMatches.
+     * The entity for each character below {@code ENTITIES.length}, or null if the character stands for itself.
      */
-    public static void init(){
-        xmlChars = new HashMap<Character, String>();
-        quotMatches  = new HashMap<Character, Character>();
+    private static final String[] ENTITIES;
+
+    /**
+     * The character for each entity in {@link #xmlChars}.
+     */
+    private static final Map<String, Character> ENTITY_CHARS = new HashMap<>();
+    private static final int LONGEST_ENTITY;
+
+    static {
         xmlChars.put('<', "&lt;");
         xmlChars.put('>', "&gt;");
         xmlChars.put('&', "&amp;");
@@ -48,7 +55,6 @@ public abstract class AbstractLexer {
         quotMatches.put((char) 0x2018, (char) 0x2019);
         quotMatches.put((char) 0x2019, (char) 0x2018);
         xmlChars.put((char) 0x201A, "&sbquo;");
-        xmlChars.put((char) 0x2018, "&lsquo;");
         quotMatches.put((char) 0x201A, (char) 0x2018);
         quotMatches.put((char) 0x2018, (char) 0x201A);
         xmlChars.put((char) 0x201C, "&ldquo;");
@@ -56,17 +62,30 @@ public abstract class AbstractLexer {
         quotMatches.put((char) 0x201C, (char) 0x201D);
         quotMatches.put((char) 0x201D, (char) 0x201C);
         xmlChars.put((char) 0x201E, "&bdquo;");
-        xmlChars.put((char) 0x201C, "&ldquo;");
         quotMatches.put((char) 0x201E, (char) 0x201C);
         quotMatches.put((char) 0x201C, (char) 0x201E);
-        xmlChars.put((char) 0x201E, "&bdquo;");
-        xmlChars.put((char) 0x201D, "&rdquo;");
         quotMatches.put((char) 0x201D, (char) 0x201E);
         quotMatches.put((char) 0x201E, (char) 0x201D);
         xmlChars.put((char) 0x2039, "&lsaquo;");
         xmlChars.put((char) 0x203A, "&rsaquo;");
         quotMatches.put((char) 0x2039, (char) 0x203A);
         quotMatches.put((char) 0x203A, (char) 0x2039);
+
+        ENTITIES = new String[Collections.max(xmlChars.keySet()) + 1];
+        int longest = 0;
+        for (Map.Entry<Character, String> e : xmlChars.entrySet()) {
+            ENTITIES[e.getKey()] = e.getValue();
+            ENTITY_CHARS.put(e.getValue(), e.getKey());
+            longest = Math.max(longest, e.getValue().length());
+        }
+        LONGEST_ENTITY = longest;
+    }
+
+    /**
+     * Formerly initialized xmlChars and quotMatches; they are now initialized when this class is loaded.
+     */
+    @Deprecated
+    public static void init(){
     }
 
     /**
@@ -76,48 +95,69 @@ public abstract class AbstractLexer {
      * @return Boolean indicating whether the input character is a quotation mark.
      */
     public static boolean isA(char possibleQuot) {
-
-        if (quotMatches==null)
-            init();
-
         return quotMatches.containsKey(possibleQuot);
     }
 
     /**
-     * Converts matched xml characters in s to html characters.
+     * Converts matched xml characters in s to html characters, in one pass over s.
      * @param s Input string containing XML characters.
      * @return The converted string.
      */
     public static String xmlChars2HTML(String s) {
 
-        if (xmlChars==null)
-            init();
-
         if (s==null)
             return "";
-        // this is a hack and will probably break later
-        //if (s.startsWith("<"))
-        //    return s;
-        s = s.replaceAll("&", xmlChars.get('&'));
-        for (Map.Entry<Character, String> e : xmlChars.entrySet())
-            if (! e.getKey().equals('&'))
-                s = s.replaceAll(String.valueOf(e.getKey()), e.getValue());
-        return s;
+        StringBuilder sb = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            String entity = c < ENTITIES.length ? ENTITIES[c] : null;
+            if (entity == null) {
+                if (sb != null)
+                    sb.append(c);
+            } else {
+                if (sb == null)
+                    sb = new StringBuilder(s.length() + 16).append(s, 0, i);
+                sb.append(entity);
+            }
+        }
+        return sb == null ? s : sb.toString();
     }
 
     /**
-     * Converts matched html strings to xml characters.
+     * Converts matched html strings to xml characters, in one pass over s. Each entity is decoded once, so
+     * {@code "&amp;lt;"} becomes {@code "&lt;"}, making this the inverse of {@link #xmlChars2HTML(String)}.
      * @param s Input string containing HTML characters.
      * @return The converted string.
      */
     public static String htmlChars2XML(String s) {
 
-        if (xmlChars==null)
-            init();
-
-        for (Map.Entry<Character, String> e : xmlChars.entrySet())
-            s = s.replaceAll(e.getValue(), String.valueOf(e.getKey()));
-        return s;
+        if (s==null)
+            return "";
+        int amp = s.indexOf('&');
+        if (amp < 0)
+            return s;
+        StringBuilder sb = new StringBuilder(s.length()).append(s, 0, amp);
+        for (int i = amp; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '&') {
+                int semi = -1;
+                for (int j = i + 1; j < Math.min(s.length(), i + LONGEST_ENTITY); j++)
+                    if (s.charAt(j) == ';') {
+                        semi = j;
+                        break;
+                    }
+                if (semi > 0) {
+                    Character decoded = ENTITY_CHARS.get(s.substring(i, semi + 1));
+                    if (decoded != null) {
+                        sb.append(decoded.charValue());
+                        i = semi;
+                        continue;
+                    }
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
     }
 
     /**
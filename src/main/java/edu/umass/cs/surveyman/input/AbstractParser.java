@@ -21,7 +21,8 @@ public abstract class AbstractParser {
      */
     public static final HashMap<String, Boolean> defaultValues = new HashMap<>();
     /**
-     * The schema against which JSON input is validated.
+     * The schema against which JSON input is validated, at its published location. Parsers validate against the copy
+     * bundled on the classpath; see {@link edu.umass.cs.surveyman.utils.Schemas}.
      */
     public static final String INPUT_SCHEMA = "http://surveyman.github.io/Schemata/survey_input.json";
 //    public static final String CONDITION = "CONDITION";
@@ -2,28 +2,38 @@ package edu.umass.cs.surveyman.input.csv;
 
 import edu.umass.cs.surveyman.input.AbstractLexer;
 import edu.umass.cs.surveyman.input.exceptions.HeaderException;
+import edu.umass.cs.surveyman.input.exceptions.MalformedBooleanException;
 import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
 import edu.umass.cs.surveyman.survey.InputOutputKeys;
-import org.supercsv.cellprocessor.Optional;
-import org.supercsv.cellprocessor.constraint.IsIncludedIn;
-import org.supercsv.cellprocessor.constraint.StrRegEx;
-import org.supercsv.cellprocessor.ift.CellProcessor;
-import org.supercsv.io.CsvListReader;
-import org.supercsv.io.ICsvListReader;
-import org.supercsv.prefs.CsvPreference;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 import edu.umass.cs.surveyman.utils.Gensym;
 
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * Class to lex SurveyMan CSV input.
+ * Class to lex SurveyMan CSV input. The input is read exactly once, header and body together, so any {@link Reader}
+ * or {@link InputStream} will do, including ones that cannot be reset.
  */
 public class CSVLexer extends AbstractLexer {
 
-    private int offset;
+    private static final Pattern BLOCK_PATTERN = Pattern.compile("(_|[a-z])?[1-9][0-9]*(\\.(_|[a-z])?[1-9][0-9]*)*");
+    private static final Pattern BRANCH_PATTERN = Pattern.compile("(NEXT)|(next)|([1-9][0-9]*)");
+    private static final Set<String> TRUTH_VALUES = new HashSet<>();
+
+    static {
+        assert trueValues.length == falseValues.length;
+        for (String[] values : new String[][]{trueValues, falseValues})
+            for (String value : values) {
+                TRUTH_VALUES.add(value);
+                TRUTH_VALUES.add(value.toUpperCase());
+            }
+    }
+
     /** instance fields */
     /**
      * String used to quote fields in the input file. Default is U+0022 ("\"").
@@ -49,14 +59,25 @@ public class CSVLexer extends AbstractLexer {
      * The map from header label to csv entries.
      */
     public HashMap<String, ArrayList<CSVEntry>> entries;
+    /**
+     * The same entries, by row.
+     */
+    public LexemeTable table;
 
+    private final Matcher blockMatcher = BLOCK_PATTERN.matcher("");
+    private final Matcher branchMatcher = BRANCH_PATTERN.matcher("");
+
+    /**
+     * Lexes a file, decoding it with the given encoding.
+     */
     public CSVLexer(String filename, String sep, String encoding)
             throws IOException, SurveyException, NoSuchMethodException, IllegalAccessException, InvocationTargetException {
         this.sep = sep;
         this.filename = filename;
         this.encoding = encoding;
-        this.offset = getHeaders();
-        this.entries = lex(new FileReader(filename));
+        try (Reader reader = new InputStreamReader(new FileInputStream(filename), Charset.forName(encoding))) {
+            this.entries = lex(reader);
+        }
     }
 
     public CSVLexer(String filename, String sep)
@@ -69,11 +90,29 @@ public class CSVLexer extends AbstractLexer {
         this(filename, ",");
     }
 
+    /**
+     * Lexes a byte stream, decoding it with the given encoding. The stream is read to the end, but not closed.
+     */
+    public CSVLexer(InputStream stream, String sep, String encoding) throws InvocationTargetException, SurveyException,
+            IllegalAccessException, NoSuchMethodException, IOException {
+        this.sep = sep;
+        this.encoding = encoding;
+        this.entries = lex(new InputStreamReader(stream, Charset.forName(encoding)));
+    }
+
+    public CSVLexer(InputStream stream, String sep) throws InvocationTargetException, SurveyException,
+            IllegalAccessException, NoSuchMethodException, IOException {
+        this(stream, sep, "UTF-8");
+    }
+
+    /**
+     * Lexes characters that have already been decoded; {@code encoding} is recorded, but not used. The reader is read
+     * to the end, but not closed.
+     */
     public CSVLexer(Reader reader, String sep, String encoding) throws InvocationTargetException, SurveyException,
             IllegalAccessException, NoSuchMethodException, IOException {
         this.sep = sep;
         this.encoding = encoding;
-        this.offset = getHeaders(reader);
         this.entries = lex(reader);
     }
 
@@ -93,39 +132,25 @@ public class CSVLexer extends AbstractLexer {
         return entries;
     }
 
-    private int getHeaders()
-            throws IOException,
-            InvocationTargetException,
-            SurveyException,
-            IllegalAccessException,
-            NoSuchMethodException
-    {
-        return getHeaders(new FileReader(this.filename));
+    private char separator() throws SyntaxException {
+        if (sep.equals(","))
+            return ',';
+        else if (sep.equals("\t") || sep.equals("\\t")) //hack that handles any weird string issues
+            return '\u0009';
+        else throw new SyntaxException("Unknown separator: " + sep);
     }
 
-    private int getHeaders(Reader reader) throws SurveyException, IOException, NoSuchMethodException,
-            InvocationTargetException, IllegalAccessException {
+    private String[] getHeaders(CSVTokenizer tokenizer) throws SurveyException, IOException {
 
         Gensym gensym = new Gensym("GENCOLHEAD");
         boolean hasQuestion = false, hasOption = false;
 
-        CsvPreference pref;
-        if (this.sep.equals(","))
-            pref = CsvPreference.EXCEL_PREFERENCE;
-        else if (this.sep.equals("\t") || this.sep.equals("\\t") || this.sep.equals("t")) //hack that handles any weird string issues
-            pref = CsvPreference.TAB_PREFERENCE;
-        else throw new SyntaxException("Unknown delimiter: " + this.sep);
-
-        assert reader.ready();
-
-        CsvListReader csvListReader = new CsvListReader(reader, pref);
-        String[] headers = csvListReader.getHeader(true);
-        int offset = 0;
-        for (int i = 0 ; i < headers.length; i++) {
-            offset += headers[i].length() + 1;
+        List<String> row = tokenizer.next();
+        String[] headers = new String[row == null ? 0 : row.size()];
+        for (int i = 0 ; i < headers.length ; i++) {
+            String header = row.get(i);
+            headers[i] = header == null ? "" : header.toUpperCase().trim();
         }
-        for (int i = 0 ; i < headers.length ; i++)
-            headers[i] = headers[i].toUpperCase().trim();
         for (int i = 0 ; i < headers.length ; i++) {
             if (headers[i].equals(InputOutputKeys.QUESTION))
                 hasQuestion = true;
@@ -137,90 +162,64 @@ public class CSVLexer extends AbstractLexer {
         if (!hasQuestion || !hasOption)
             throw new HeaderException(String.format("Missing header %s for edu.umass.cs.surveyman.survey %s with separator %s"
                     , hasQuestion? InputOutputKeys.OPTIONS: InputOutputKeys.QUESTION, this.filename, sep));
-
-        this.headers = headers;
-        return offset;
+        return headers;
     }
 
-
-    private CellProcessor[] makeProcessors() throws NoSuchMethodException, InvocationTargetException,
-            IllegalAccessException {
-        // returns a list of processors for the appropriate column type
-        CellProcessor[] cellProcessors = new CellProcessor[headers.length];
-        assert trueValues.length == falseValues.length;
-        int length = trueValues.length;
-        String[] truthValues = new String[length * 4];
-        System.arraycopy(trueValues, 0, truthValues, 0, length);
-        System.arraycopy(falseValues, 0, truthValues, length, length);
-        for (int i = 0; i < length; i++){
-            truthValues[i+(length*2)] = trueValues[i].toUpperCase();
-            truthValues[i+(length*3)] = falseValues[i].toUpperCase();
-        }
-
-        for (int i = 0 ; i < headers.length ; i++){
-            String header = headers[i];
-
-            if (header.equals(InputOutputKeys.BLOCK))
-                cellProcessors[i] = new Optional(new StrRegEx("(_|[a-z])?[1-9][0-9]*(\\.(_|[a-z])?[1-9][0-9]*)*"));
-
-            else if (header.equals(InputOutputKeys.BRANCH))
-                cellProcessors[i] = new Optional(new StrRegEx("(NEXT)|(next)|([1-9][0-9]*)"));
-
-//            else if (header.equals(AbstractParser.CONDITION))
-//                cellProcessors[i] = new Optional(new StrRegEx("([0-9]+)|(0?\\.[0-9]+)|([0-9][0-9]?[0-9]?\\%)"));
-
-
-            else if (header.equals(InputOutputKeys.EXCLUSIVE)
-                    || headers[i].equals(InputOutputKeys.ORDERED)
-                    || headers[i].equals(InputOutputKeys.RANDOMIZE))
-                cellProcessors[i] = new Optional(new IsIncludedIn(truthValues));
-
-            else
-                cellProcessors[i] = new Optional();
+    /**
+     * Checks the cells of columns that have a fixed syntax: block identifiers, branch destinations, and booleans.
+     */
+    private void validate(String header, String contents, int lineNo) throws SurveyException {
+        if (contents == null)
+            return;
+        if (header.equals(InputOutputKeys.BLOCK)) {
+            if (!blockMatcher.reset(contents).matches())
+                throw new SyntaxException(String.format("Malformed block identifier %s on line %d.", contents, lineNo));
+        } else if (header.equals(InputOutputKeys.BRANCH)) {
+            if (!branchMatcher.reset(contents).matches())
+                throw new SyntaxException(String.format("Malformed branch destination %s on line %d.", contents,
+                        lineNo));
+        } else if (header.equals(InputOutputKeys.EXCLUSIVE)
+                || header.equals(InputOutputKeys.ORDERED)
+                || header.equals(InputOutputKeys.RANDOMIZE)) {
+            if (!TRUTH_VALUES.contains(contents))
+                throw new MalformedBooleanException(contents, header);
         }
-
-        return cellProcessors;
     }
 
+    /**
+     * Reads the header and then every row from the reader, in a single pass, and sets {@link #headers} and
+     * {@link #table}.
+     * @param reader The CSV source. It is read to the end, but not closed.
+     * @return A map from header to the entries in that column, in row order.
+     */
     public HashMap<String, ArrayList<CSVEntry>> lex(Reader reader)
             throws IOException, RuntimeException, SurveyException, NoSuchMethodException, IllegalAccessException,
             InvocationTargetException {
 
-        char fieldSep;
-
-        if (sep.equals(","))
-            fieldSep = '\u002c';
-        else if (sep.equals("\t") || sep.equals("\\t"))
-            fieldSep = '\u0009';
-        else throw new SyntaxException("Unknown separator: " + sep);
-
-        final CsvPreference pref = new CsvPreference.Builder(fieldQuot.toCharArray()[0], fieldSep, "\n").build();
-        LOGGER.debug(reader.getClass().getName());
-        ICsvListReader csvReader = new CsvListReader(reader, pref);
-        final CellProcessor[] processors = makeProcessors();
-
-
-        if (reader instanceof StringReader) {
-            reader.reset();
-            reader.skip(offset);
-        }
-        if (reader instanceof FileReader) {
-            // getHeader is failing when the reader is a string reader
-            csvReader.getHeader(true); // skips the header column
-        }
+        CSVTokenizer tokenizer = new CSVTokenizer(reader, separator(), fieldQuot.charAt(0));
+        tokenizer.skipByteOrderMark();
+        this.headers = getHeaders(tokenizer);
 
         HashMap<String, ArrayList<CSVEntry>> entries = initializeEntries(this.headers);
+        ArrayList<CSVEntry>[] columns = new ArrayList[headers.length];
+        for (int i = 0; i < headers.length; i++)
+            columns[i] = entries.get(headers[i]);
+        this.table = new LexemeTable(this.headers);
 
-        List<Object> line;
-        while ((line = csvReader.read(processors))!=null) {
+        List<String> line;
+        while ((line = tokenizer.next()) != null) {
             // for each header, read an entry.
-            int lineNo = csvReader.getLineNumber();
+            int lineNo = tokenizer.getLineNumber();
+            if (line.size() != headers.length)
+                throw new SyntaxException(String.format("Line %d has %d cells, but the header has %d.",
+                        lineNo, line.size(), headers.length));
+            CSVEntry[] row = new CSVEntry[line.size()];
             for (int colNo = 0 ; colNo < line.size() ; colNo++) {
-                CSVEntry csvEntry = new CSVEntry((String) line.get(colNo), lineNo, colNo+1);
-                ArrayList<CSVEntry> csvEntries = entries.get(headers[colNo]);
-                csvEntries.add(csvEntries.size(), csvEntry);
-                entries.put(headers[colNo], csvEntries);
+                validate(headers[colNo], line.get(colNo), lineNo);
+                row[colNo] = new CSVEntry(line.get(colNo), lineNo, colNo+1);
+                columns[colNo].add(row[colNo]);
             }
+            table.add(row);
         }
         assert entries.get(InputOutputKeys.QUESTION).size() > 0 : "A survey must have at least one question";
         return entries;
@@ -18,8 +18,13 @@ import java.util.regex.Pattern;
 public class CSVParser extends AbstractParser {
 
     private HashMap<String, ArrayList<CSVEntry>> lexemes = null;
+    private final LexemeTable table;
     private String[] headers;
     private final CSVLexer csvLexer;
+    /**
+     * The question each input row belongs to, by row index.
+     */
+    private final List<Question> rowQuestions = new ArrayList<>();
 
     /**
      * Constructor for the parser; takes a {@link edu.umass.cs.surveyman.input.csv.CSVLexer} as input.
@@ -28,6 +33,7 @@ public class CSVParser extends AbstractParser {
     public CSVParser(CSVLexer lexer)
     {
         this.lexemes = lexer.entries;
+        this.table = lexer.table;
         this.headers = lexer.headers;
         this.csvLexer = lexer;
     }
@@ -104,9 +110,9 @@ public class CSVParser extends AbstractParser {
         return retval;
     }
 
-    private CSVEntry joinOnRow(String columnA, String columnB, CSVEntry csvEntry)
+    private static boolean isEmpty(CSVEntry entry)
     {
-        return lexemes.get(columnA).get(lexemes.get(columnB).indexOf(csvEntry));
+        return entry == null || entry.contents == null || entry.contents.equals("");
     }
 
 
@@ -116,8 +122,11 @@ public class CSVParser extends AbstractParser {
         // grab the branch column from lexemes
         // find the block with the corresponding blockid
         // put the cid and block into the
-        for (CSVEntry entry : getNonEmptyEntryForColumn(InputOutputKeys.BRANCH)) {
-            Question question = survey.getQuestionByLineNo(entry.lineNo);
+        for (int i = 0; i < table.size(); i++) {
+            CSVEntry entry = table.get(i, InputOutputKeys.BRANCH);
+            if (isEmpty(entry))
+                continue;
+            Question question = rowQuestions.get(i);
             // set this question's block's branchQ equal to this question
             if (question.block.branchQ == null) {
                 question.block.updateBranchParadigm(Block.BranchParadigm.ONE);
@@ -126,7 +135,7 @@ public class CSVParser extends AbstractParser {
                 question.block.updateBranchParadigm(Block.BranchParadigm.ALL);
             }
             // Set the branch destination in the question's branch map.
-            CSVEntry option = joinOnRow(InputOutputKeys.OPTIONS, InputOutputKeys.BRANCH, entry);
+            CSVEntry option = table.get(i, InputOutputKeys.OPTIONS);
             SurveyDatum c = question.getOptById(SurveyDatum.makeSurveyDatumId(option.lineNo, option.colNo));
             Block b = allBlockLookUp.get(entry.contents);
             if (b == null && !entry.contents.equals("NEXT")) {
@@ -215,6 +224,7 @@ public class CSVParser extends AbstractParser {
                 tempQ.options.put(SurveyDatum.makeSurveyDatumId(option.lineNo, option.colNo), parseComponent(option, tempQ.options.size()));
 
             tempQ.sourceLineNos.add(option.lineNo);
+            rowQuestions.add(tempQ);
 
             if (tempQ.otherValues.isEmpty()) {
                 for (String col : headers) {
@@ -302,14 +312,15 @@ public class CSVParser extends AbstractParser {
         return blocks;
     }
     
-    private void unifyBlocks(ArrayList<Question> questions)
+    private void unifyBlocks()
             throws SurveyException
     {
-        List<CSVEntry> blockLexemes = getNonEmptyEntryForColumn(InputOutputKeys.BLOCK);
         // associate questions with the appropriate block
-        // looping this way creates more work, but we can clean it up later.
-        for (CSVEntry blockLexeme : blockLexemes) {
-            CSVEntry questionLexeme = joinOnRow(InputOutputKeys.QUESTION, InputOutputKeys.BLOCK, blockLexeme);
+        for (int i = 0; i < table.size(); i++) {
+            CSVEntry blockLexeme = table.get(i, InputOutputKeys.BLOCK);
+            if (isEmpty(blockLexeme))
+                continue;
+            CSVEntry questionLexeme = table.get(i, InputOutputKeys.QUESTION);
             int lineNo = blockLexeme.lineNo;
             if (lineNo != questionLexeme.lineNo) {
                 SurveyException se = new SyntaxException("Misaligned linenumbers");
@@ -318,13 +329,8 @@ public class CSVParser extends AbstractParser {
             }
             String blockStr = blockLexeme.contents;
             // get question corresponding to this lineno
-            Question question = null;
-            for (Question q : questions)
-                if (q.sourceLineNos.contains(lineNo)) {
-                    question = q;
-                    break;
-                }
-            if (question == null) {
+            Question question = i < rowQuestions.size() ? rowQuestions.get(i) : null;
+            if (question == null || !question.sourceLineNos.contains(lineNo)) {
                 SurveyException e = new SyntaxException(String.format("No question found at line %d in edu.umass.cs.surveyman.survey %s", lineNo, csvLexer.filename));
 
 
@@ -338,6 +344,9 @@ public class CSVParser extends AbstractParser {
                 LOGGER.fatal(e);
                 throw e;
             }
+            // Every row of a question usually names the same block; add the question to it once.
+            if (question.block == block)
+                continue;
             question.block = block;
             //block.questions.add(question);
             block.addQuestion(question);
@@ -405,7 +414,7 @@ public class CSVParser extends AbstractParser {
         // add blocks to the edu.umass.cs.surveyman.survey
         if (lexemes.containsKey(InputOutputKeys.BLOCK)) {
             ArrayList<Block> blocks = initializeBlocks();
-            unifyBlocks(questions);
+            unifyBlocks();
             survey.blocks = new HashMap<>();
             for (Block b : blocks)
                 survey.blocks.put(cleanStrId(b.getId()), b);
@@ -426,6 +435,7 @@ public class CSVParser extends AbstractParser {
         propagateBranchParadigms(survey);
 
         survey.otherHeaders = extractOtherHeaders();
+        survey.freeze();
 
         return survey;
     }
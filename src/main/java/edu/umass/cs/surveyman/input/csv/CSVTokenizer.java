@@ -0,0 +1,143 @@
+package edu.umass.cs.surveyman.input.csv;
+
+import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits CSV input into records, reading each character exactly once. The quoting rules are those of the
+ * spreadsheet exports SurveyMan has always accepted:
+ * <ul>
+ *     <li>A quote character anywhere in a cell starts a quoted run; a doubled quote inside a run is a literal
+ *     quote.</li>
+ *     <li>Line breaks inside a quoted run belong to the cell, and are normalized to {@code \n}.</li>
+ *     <li>Blank lines between records are skipped.</li>
+ *     <li>Empty cells are null, whether or not they are quoted.</li>
+ * </ul>
+ * Lines end in {@code \n}, {@code \r\n}, or {@code \r}.
+ */
+class CSVTokenizer {
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final char separator;
+    private final char quote;
+    private final char[] buf = new char[8192];
+    private int pos = 0, len = 0;
+    private final StringBuilder cell = new StringBuilder();
+    private int lineNo = 0;
+
+    CSVTokenizer(Reader reader, char separator, char quote) {
+        this.reader = reader;
+        this.separator = separator;
+        this.quote = quote;
+    }
+
+    private int read() throws IOException {
+        if (pos == len) {
+            len = reader.read(buf, 0, buf.length);
+            pos = 0;
+            if (len <= 0) {
+                len = 0;
+                return EOF;
+            }
+        }
+        return buf[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == len) {
+            len = reader.read(buf, 0, buf.length);
+            pos = 0;
+            if (len <= 0) {
+                len = 0;
+                return EOF;
+            }
+        }
+        return buf[pos];
+    }
+
+    /**
+     * Consumes the rest of a line terminator, given its first character.
+     */
+    private void endLine(int c) throws IOException {
+        if (c == '\r' && peek() == '\n')
+            pos++;
+    }
+
+    /**
+     * Skips a byte order mark, if the input begins with one. Call before reading the first record.
+     */
+    void skipByteOrderMark() throws IOException {
+        if (peek() == '\uFEFF')
+            pos++;
+    }
+
+    /**
+     * @return The number of the last physical line of the most recently read record, counting from 1.
+     */
+    int getLineNumber() {
+        return lineNo;
+    }
+
+    /**
+     * Reads the next record.
+     * @return The record's cells, or null at the end of input.
+     * @throws SyntaxException if the input ends inside a quoted run.
+     */
+    List<String> next() throws IOException, SyntaxException {
+        int c;
+        // Skip blank lines.
+        while (true) {
+            c = read();
+            if (c == EOF)
+                return null;
+            lineNo++;
+            if (c != '\n' && c != '\r')
+                break;
+            endLine(c);
+        }
+        List<String> cells = new ArrayList<>();
+        int quoteStart = -1;
+        cell.setLength(0);
+        while (true) {
+            if (quoteStart < 0) {
+                if (c == EOF || c == '\n' || c == '\r') {
+                    addCell(cells);
+                    endLine(c);
+                    return cells;
+                } else if (c == separator) {
+                    addCell(cells);
+                    cell.setLength(0);
+                } else if (c == quote) {
+                    quoteStart = lineNo;
+                } else cell.append((char) c);
+            } else {
+                if (c == EOF)
+                    throw new SyntaxException(String.format("Unexpected end of input in a quoted cell beginning on " +
+                            "line %d.", quoteStart));
+                else if (c == '\n' || c == '\r') {
+                    endLine(c);
+                    cell.append('\n');
+                    lineNo++;
+                    c = read();
+                    continue;
+                } else if (c == quote) {
+                    if (peek() == quote) {
+                        pos++;
+                        cell.append(quote);
+                    } else quoteStart = -1;
+                } else cell.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private void addCell(List<String> cells) {
+        cells.add(cell.length() > 0 ? cell.toString() : null);
+    }
+}
@@ -0,0 +1,57 @@
+package edu.umass.cs.surveyman.input.csv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lexed input as a row-major table: one array of {@link CSVEntry}s per input row, in line order, with cells in
+ * header order. Looking a cell up by row and column takes constant time, so the parser can join one column against
+ * another without searching. The entries are the same objects as in {@link CSVLexer#entries}.
+ */
+public class LexemeTable {
+
+    private final Map<String, Integer> columns = new HashMap<>();
+    private final List<CSVEntry[]> rows = new ArrayList<>();
+
+    LexemeTable(String[] headers) {
+        for (int i = 0; i < headers.length; i++)
+            // Duplicate headers resolve to the first column of that name.
+            if (!columns.containsKey(headers[i]))
+                columns.put(headers[i], i);
+    }
+
+    void add(CSVEntry[] row) {
+        rows.add(row);
+    }
+
+    /**
+     * @return The number of rows, not counting the header.
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    public boolean hasColumn(String header) {
+        return columns.containsKey(header);
+    }
+
+    /**
+     * @param row The 0-based row index.
+     * @param header The column's header.
+     * @return The cell, or null if there is no such column.
+     */
+    public CSVEntry get(int row, String header) {
+        Integer col = columns.get(header);
+        return col == null ? null : rows.get(row)[col];
+    }
+
+    /**
+     * @param row The 0-based row index.
+     * @return The row's cells, in header order.
+     */
+    public CSVEntry[] getRow(int row) {
+        return rows.get(row);
+    }
+}
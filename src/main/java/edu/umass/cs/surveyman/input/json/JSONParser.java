@@ -1,22 +1,31 @@
 package edu.umass.cs.surveyman.input.json;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.github.fge.jackson.JsonLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.ProcessingMessage;
 import com.github.fge.jsonschema.core.report.ProcessingReport;
-import com.github.fge.jsonschema.main.JsonSchema;
-import com.github.fge.jsonschema.main.JsonSchemaFactory;
 import edu.umass.cs.surveyman.input.AbstractParser;
+import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
 import edu.umass.cs.surveyman.survey.*;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.Schemas;
 import edu.umass.cs.surveyman.utils.Slurpie;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 import java.util.regex.Pattern;
 
 /**
- * Class to parse SurveyMan JSON input.
+ * Class to parse SurveyMan JSON input. The input is read as a stream of tokens, and each question is built as soon as
+ * its closing brace has been read, so the parser never holds more than the survey it is building plus the question it
+ * is reading. The exception is schema validation, which needs the whole document as a tree.
  */
 public final class JSONParser extends AbstractParser {
 
@@ -27,9 +36,24 @@ public final class JSONParser extends AbstractParser {
     private static String SURVEY = "survey";
     private static String FILENAME = "filename";
     private static String BREAKOFF = "breakoff";
+    private static String CORRELATION = "correlation";
+    private static String OTHER_VALUES = "otherValues";
 
     /**
-     * The string JSON representation of the survey.
+     * The default limit on the size of streamed input, in bytes.
+     */
+    public static final long DEFAULT_SIZE_LIMIT = 64L * 1024 * 1024;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    static {
+        // Callers own the streams they pass in.
+        FACTORY.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    /**
+     * The string JSON representation of the survey, or null if this parser reads from a file or stream.
      */
     public final String json;
 
@@ -37,11 +61,92 @@ public final class JSONParser extends AbstractParser {
      * A String indicating the survey source (e.g., filename, url).
      */
     public final String source;
+    /**
+     * Whether {@link #parse()} checks the input against the bundled input schema first. Off by default.
+     */
+    public final boolean validate;
+    /**
+     * The largest input, in bytes, that {@link #parse()} will read from a file or stream.
+     */
+    public final long sizeLimit;
+    private final InputStream stream;
     private int row = 1;
     private final int QUESTION_COL = 1;
     private final int OPTION_COL = 2;
     private Map<String, Block> internalBlockLookup = new HashMap<> ();
-    private Map<String, String> internalIdMap = new HashMap<>();
+    private List<Branch> branches = new ArrayList<>();
+
+    /**
+     * A block whose questions have been built, but whose identifier cannot be assigned until the whole block has been
+     * read, since its {@code randomize} field may come last.
+     */
+    private static class PendingBlock {
+        String id;
+        boolean randomize;
+        final List<Question> questions = new ArrayList<>();
+        final List<PendingBlock> subblocks = new ArrayList<>();
+    }
+
+    /**
+     * A question's branch map, kept until every block has been read, since branches may jump forward.
+     */
+    private static class Branch {
+        final Question question;
+        final List<SurveyDatum> options = new ArrayList<>();
+        final List<String> destinations = new ArrayList<>();
+
+        Branch(Question question) {
+            this.question = question;
+        }
+    }
+
+    private static class SizeLimitException extends IOException {
+    }
+
+    /**
+     * Counts the bytes read through it, and fails once there are more than the limit.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long count = 0;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        private int count(int n) throws SizeLimitException {
+            if (n > 0 && (count += n) > limit)
+                throw new SizeLimitException();
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return count(super.read(b, off, len));
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count((int) Math.min(skipped, Integer.MAX_VALUE));
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
 
     /**
      * Returns a JSONParser for some string input JSON. This constructor should be used when constructing a programmatic
@@ -52,14 +157,41 @@ public final class JSONParser extends AbstractParser {
      */
     public JSONParser(String json)
     {
-        this.json = json;
-        this.source = "";
+        this(json, false);
     }
 
-    private JSONParser(String json, String filename)
+    /**
+     * Returns a JSONParser for some string input JSON.
+     *
+     * @param json The JSON representation of a survey.
+     * @param validate Whether to check the input against the bundled input schema before parsing.
+     */
+    public JSONParser(String json, boolean validate)
+    {
+        this(json, null, "", validate, DEFAULT_SIZE_LIMIT);
+    }
+
+    /**
+     * Returns a JSONParser that reads a survey from a byte stream. {@link #parse()} reads the stream to the end, but
+     * does not close it, so the parser can only be used once.
+     *
+     * @param stream The JSON representation of a survey, in any of the encodings JSON allows.
+     * @param source A String indicating the survey source, for error messages.
+     * @param validate Whether to check the input against the bundled input schema before parsing.
+     * @param sizeLimit The largest input to accept, in bytes.
+     */
+    public JSONParser(InputStream stream, String source, boolean validate, long sizeLimit)
+    {
+        this(null, stream, source, validate, sizeLimit);
+    }
+
+    private JSONParser(String json, InputStream stream, String filename, boolean validate, long sizeLimit)
     {
         this.json = json;
+        this.stream = stream;
         this.source = filename;
+        this.validate = validate;
+        this.sizeLimit = sizeLimit;
     }
 
     /**
@@ -72,44 +204,113 @@ public final class JSONParser extends AbstractParser {
     public static JSONParser makeParser(String filename)
             throws IOException
     {
-        String json = Slurpie.slurp(filename);
-        return new JSONParser(json, filename);
+        return makeParser(filename, false);
+    }
+
+    /**
+     * Creates a JSONParser from a source file containing the JSON represenatation of a survey.
+     *
+     * @param filename The source file name for the JSON represenation of the survey.
+     * @param validate Whether to check the input against the bundled input schema before parsing.
+     * @return A JSONParser instance.
+     * @throws IOException
+     */
+    public static JSONParser makeParser(String filename, boolean validate)
+            throws IOException
+    {
+        return makeParser(filename, validate, DEFAULT_SIZE_LIMIT);
     }
 
-    private boolean validateInput()
+    /**
+     * Creates a JSONParser from a source file containing the JSON represenatation of a survey. The file is opened
+     * again, and streamed, by {@link #parse()}.
+     *
+     * @param filename The source file name for the JSON represenation of the survey.
+     * @param validate Whether to check the input against the bundled input schema before parsing.
+     * @param sizeLimit The largest file to accept, in bytes.
+     * @return A JSONParser instance.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static JSONParser makeParser(String filename, boolean validate, long sizeLimit)
+            throws IOException
     {
+        // Fail now, rather than in parse(), if the file is missing.
+        Slurpie.getInputStream(filename).close();
+        return new JSONParser(null, null, filename, validate, sizeLimit);
+    }
+
+    private void validateInput(JsonNode tree)
+            throws SurveyException
+    {
+        ProcessingReport report;
         try {
-            final JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
-            String schemaString = Slurpie.slurp(INPUT_SCHEMA);
-            final JsonNode jsonSchema = JsonLoader.fromString(schemaString);
-            final JsonNode instance = JsonLoader.fromString(this.json);
-            final JsonSchema schema = factory.getJsonSchema(jsonSchema);
-            ProcessingReport report = schema.validate(instance);
-            LOGGER.info(report.toString());
-            return true;
-        } catch (IOException io) {
-            LOGGER.fatal(io.getStackTrace());
-            return false;
+            report = Schemas.validate(Schemas.input(), tree);
         } catch (ProcessingException pe) {
-            LOGGER.fatal(pe.getStackTrace());
-            return false;
+            LOGGER.fatal(pe);
+            throw new RuntimeException(pe);
+        }
+        LOGGER.debug(report.toString());
+        if (!report.isSuccess()) {
+            List<String> messages = new ArrayList<>();
+            for (ProcessingMessage pm : report)
+                messages.add(pm.getMessage());
+            throw new SyntaxException(String.format("Survey %s does not conform to the input schema: %s",
+                    this.source, messages));
+        }
+    }
+
+    /**
+     * @return The current value as text, the way {@link JsonNode#asText()} would render it. Arrays and objects are
+     * skipped, and read as the empty string.
+     */
+    private static String text(JsonParser p)
+            throws IOException
+    {
+        JsonToken token = p.getCurrentToken();
+        if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return "";
         }
+        return p.getText();
+    }
+
+    /**
+     * Moves past the start of an array. A null value reads as an empty array.
+     *
+     * @return Whether there is an array to read.
+     */
+    private boolean startArray(JsonParser p, String field)
+            throws IOException, SurveyException
+    {
+        if (p.getCurrentToken() == JsonToken.VALUE_NULL)
+            return false;
+        if (p.getCurrentToken() != JsonToken.START_ARRAY)
+            throw new SyntaxException(String.format("Survey %s: expected an array for \"%s\" at %s.",
+                    this.source, field, p.getCurrentLocation()));
+        return true;
+    }
+
+    private void startObject(JsonParser p, String what)
+            throws SurveyException
+    {
+        if (p.getCurrentToken() != JsonToken.START_OBJECT)
+            throw new SyntaxException(String.format("Survey %s: expected %s at %s.",
+                    this.source, what, p.getCurrentLocation()));
     }
 
-    private Boolean assignBool(JsonNode question, String tag, int r)
+    private Boolean assignBool(String value, String tag, int r)
             throws SurveyException
     {
-        if (question.has(tag))
-            return parseBool(null, tag, question.get(tag).asText(), r, -1);
+        if (value != null)
+            return parseBool(null, tag, value, r, -1);
         else return defaultValues.get(tag.toUpperCase());
     }
 
-    private boolean handleFreetext(Question question, JsonNode jsonQuestion)
+    private boolean handleFreetext(Question question, String ft)
     {
-        if (!jsonQuestion.has(InputOutputKeys.FREETEXT.toLowerCase()))
+        if (ft == null)
             question.freetext = defaultValues.get(InputOutputKeys.FREETEXT);
         else {
-            String ft = jsonQuestion.get(InputOutputKeys.FREETEXT.toLowerCase()).asText();
             if (ft.toLowerCase().equals(Boolean.TRUE.toString()))
                 question.freetext = true;
             else if (ft.toLowerCase().equals(Boolean.FALSE.toString()))
@@ -125,59 +326,159 @@ public final class JSONParser extends AbstractParser {
         return question.freetext;
     }
 
-    private SurveyDatum makeComponent(JsonNode option, int r, int index)
+    private SurveyDatum makeComponent(String data, int r, int index)
     {
-        String data = option.get("otext").asText();
-        String id = option.get("id").asText();
-        SurveyDatum c;
         if (HTMLDatum.isHTMLComponent(data))
-            c = new HTMLDatum(data, r, OPTION_COL, index);
+            return new HTMLDatum(data, r, OPTION_COL, index);
         else
-            c = new StringDatum(data, r, OPTION_COL, index);
-        internalIdMap.put(id, c.getId());
-        return c;
+            return new StringDatum(data, r, OPTION_COL, index);
     }
 
-    private OptionMap getOptions(JsonNode options, int r)
+    /**
+     * Reads one option object.
+     *
+     * @return The option's JSON id and text.
+     */
+    private String[] readOption(JsonParser p)
+            throws IOException, SurveyException
     {
-        OptionMap map = new OptionMap();
-        Iterator<JsonNode> array = options.elements();
-        int index = 0;
-        while (array.hasNext()) {
-            JsonNode arrayItem = array.next();
-            SurveyDatum c = makeComponent(arrayItem, map.size() + r, index);
-            map.put(c.getId(), c);
-            index++;
+        startObject(p, "an option object");
+        String id = null, otext = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            if (field.equals("id"))
+                id = text(p);
+            else if (field.equals("otext"))
+                otext = text(p);
+            else p.skipChildren();
         }
-        return map;
+        if (id == null || otext == null)
+            throw new SyntaxException(String.format("Survey %s: option ending at %s needs both an id and an otext.",
+                    this.source, p.getCurrentLocation()));
+        return new String[]{id, otext};
     }
 
-    private Question makeQuestion(Block block, JsonNode question, int r)
-            throws SurveyException
+    /**
+     * Reads one question object, and builds the question once its last field has been read.
+     */
+    private Question readQuestion(JsonParser p)
+            throws IOException, SurveyException
     {
-        String data = question.get(InputOutputKeys.QTEXT).asText();
-        Question q = Question.makeQuestion(data, r, QUESTION_COL);
-        q.block = block;
-        q.data = HTMLDatum.isHTMLComponent(data) ?
-                new HTMLDatum(data, r, OPTION_COL, -1) :
-                new StringDatum(data, r, OPTION_COL, -1);
-        q.exclusive = assignBool(question, InputOutputKeys.EXCLUSIVE.toLowerCase(), r);
-        q.ordered = assignBool(question, InputOutputKeys.ORDERED.toLowerCase(), r);
-        q.permitBreakoff = assignBool(question, InputOutputKeys.BREAKOFF.toLowerCase(), r);
-        q.randomize = assignBool(question, InputOutputKeys.RANDOMIZE.toLowerCase(), r);
-        handleFreetext(q, question);
-        if (question.has(InputOutputKeys.OPTIONS.toLowerCase())) {
-            q.options = getOptions(question.get(InputOutputKeys.OPTIONS.toLowerCase()), r);
+        startObject(p, "a question object");
+        String qtext = null, exclusive = null, ordered = null, breakoff = null, randomize = null, freetext = null;
+        List<String[]> options = new ArrayList<>();
+        List<String[]> branchMap = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            if (field.equals(InputOutputKeys.QTEXT))
+                qtext = text(p);
+            else if (field.equals(InputOutputKeys.EXCLUSIVE.toLowerCase()))
+                exclusive = text(p);
+            else if (field.equals(InputOutputKeys.ORDERED.toLowerCase()))
+                ordered = text(p);
+            else if (field.equals(InputOutputKeys.BREAKOFF.toLowerCase()))
+                breakoff = text(p);
+            else if (field.equals(InputOutputKeys.RANDOMIZE.toLowerCase()))
+                randomize = text(p);
+            else if (field.equals(InputOutputKeys.FREETEXT.toLowerCase()))
+                freetext = text(p);
+            else if (field.equals(InputOutputKeys.OPTIONS.toLowerCase())) {
+                if (startArray(p, field))
+                    while (p.nextToken() != JsonToken.END_ARRAY)
+                        options.add(readOption(p));
+            } else if (field.equals("branchMap")) {
+                branchMap = new ArrayList<>();
+                if (p.getCurrentToken() != JsonToken.VALUE_NULL) {
+                    startObject(p, "a branch map");
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String option = p.getCurrentName();
+                        p.nextToken();
+                        branchMap.add(new String[]{option, text(p)});
+                    }
+                }
+            } else p.skipChildren();
+        }
+        if (qtext == null)
+            throw new SyntaxException(String.format("Survey %s: question ending at %s has no %s.",
+                    this.source, p.getCurrentLocation(), InputOutputKeys.QTEXT));
+
+        int r = row;
+        Question q = Question.makeQuestion(qtext, r, QUESTION_COL);
+        q.data = HTMLDatum.isHTMLComponent(qtext) ?
+                new HTMLDatum(qtext, r, OPTION_COL, -1) :
+                new StringDatum(qtext, r, OPTION_COL, -1);
+        q.exclusive = assignBool(exclusive, InputOutputKeys.EXCLUSIVE.toLowerCase(), r);
+        q.ordered = assignBool(ordered, InputOutputKeys.ORDERED.toLowerCase(), r);
+        q.permitBreakoff = assignBool(breakoff, InputOutputKeys.BREAKOFF.toLowerCase(), r);
+        q.randomize = assignBool(randomize, InputOutputKeys.RANDOMIZE.toLowerCase(), r);
+        handleFreetext(q, freetext);
+        Map<String, SurveyDatum> byJsonId = new HashMap<>();
+        for (int index = 0; index < options.size(); index++) {
+            SurveyDatum c = makeComponent(options.get(index)[1], r + index, index);
+            q.options.put(c.getId(), c);
+            byJsonId.put(options.get(index)[0], c);
+        }
+        row += q.options.size();
+
+        if (branchMap != null) {
+            Branch branch = new Branch(q);
+            for (String[] entry : branchMap) {
+                if (entry[1].equals(Block.NEXT))
+                    continue;
+                SurveyDatum opt = byJsonId.get(entry[0]);
+                if (opt == null)
+                    throw new Question.OptionNotFoundException(entry[0], q.id);
+                branch.options.add(opt);
+                branch.destinations.add(entry[1]);
+            }
+            this.branches.add(branch);
         }
         return q;
     }
 
-    private Block makeBlock(Block parent, JsonNode jsonBlock, int nth) {
+    /**
+     * Reads one block object. Its questions are built as they are read; the block itself is built by
+     * {@link #makeBlock}.
+     */
+    private PendingBlock readBlock(JsonParser p)
+            throws IOException, SurveyException
+    {
+        startObject(p, "a block object");
+        PendingBlock block = new PendingBlock();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            if (field.equals("id"))
+                block.id = text(p);
+            else if (field.equals("randomize")) {
+                if (p.getCurrentToken().isScalarValue())
+                    block.randomize = p.getValueAsBoolean();
+                else p.skipChildren();
+            } else if (field.equals("questions")) {
+                if (startArray(p, field))
+                    while (p.nextToken() != JsonToken.END_ARRAY)
+                        block.questions.add(readQuestion(p));
+            } else if (field.equals("subblocks")) {
+                if (startArray(p, field))
+                    while (p.nextToken() != JsonToken.END_ARRAY)
+                        block.subblocks.add(readBlock(p));
+            } else p.skipChildren();
+        }
+        return block;
+    }
+
+    /**
+     * Builds a block and its descendants, numbering each among its siblings, and adds their questions to
+     * {@code questions}: a block's own questions first, then those of each sub-block in turn.
+     */
+    private Block makeBlock(Block parent, PendingBlock pending, int nth, List<Question> questions) {
 
         Block b;
         String thisID;
 
-        if (jsonBlock.has("randomize") && jsonBlock.get("randomize").asBoolean())
+        if (pending.randomize)
             thisID = "a" + nth;
         else thisID = Integer.toString(nth);
 
@@ -188,170 +489,151 @@ public final class JSONParser extends AbstractParser {
         } else b = new Block(thisID);
 
         this.allBlockLookUp.put(b.getId(), b);
-        this.internalBlockLookup.put(jsonBlock.get("id").asText(), b);
-
-        if (jsonBlock.has("subblocks")) {
-            Iterator<JsonNode> subblocks = jsonBlock.get("subblocks").elements();
-            int i = 0;
-            while (subblocks.hasNext()) {
-                makeBlock(b, subblocks.next(), i + 1);
-                i++;
-            }
-        }
+        this.internalBlockLookup.put(pending.id, b);
+
+        for (Question q : pending.questions)
+            q.block = b;
+        b.questions.addAll(pending.questions);
+        questions.addAll(pending.questions);
+
+        for (int i = 0; i < pending.subblocks.size(); i++)
+            makeBlock(b, pending.subblocks.get(i), i + 1, questions);
 
         return b;
     }
 
-    private List<Question> getQuestionsFromBlock(
-            Block b,
-            JsonNode block)
-            throws SurveyException
+    private static Question findQuestion(
+            Map<String, Question> questions,
+            String quid)
     {
-        List<Question> qs = new ArrayList<>();
-        if (block.has("questions")){
-            Iterator<JsonNode> possibleQuestions = block.get("questions").elements();
-            while (possibleQuestions.hasNext()) {
-                JsonNode jsonQuestion = possibleQuestions.next();
-                Question q = makeQuestion(b, jsonQuestion, row);
-                qs.add(q);
-                row += q.options.size();
-                internalIdMap.put(jsonQuestion.get("id").asText(), q.id);
-            }
-        }
-        b.questions.addAll(qs);
-        if (block.has("subblocks")) {
-            Iterator<JsonNode> subblocks = block.get("subblocks").elements();
-            int i = 0;
-            while (subblocks.hasNext()){
-                JsonNode jsonBlock = subblocks.next();
-                Block bb = makeBlock(b, jsonBlock, i+1);
-                qs.addAll(getQuestionsFromBlock(bb, jsonBlock));
-            }
-        }
-        return qs;
+        Question question = questions.get(quid);
+        if (question == null)
+            throw new RuntimeException(String.format("Could not find question for id %s", quid));
+        return question;
     }
 
-    private Question findQuestion(
-            List<Question> questions,
-            String quid)
-    {
-        for (Question question : questions) {
-            if (question.id.equals(quid))
-                return question;
-        }
-        throw new RuntimeException(String.format("Could not find question for id %s", quid));
+    private Block findBlock(String blockid) {
+        return this.internalBlockLookup.get(blockid);
     }
 
-    private SurveyDatum findOption(
-            Question question,
-            String optionid)
-            throws SurveyException
+    private Map<String, List<String>> readCorrelation(JsonParser p)
+            throws IOException, SurveyException
     {
-        return question.getOptById(optionid);
+        Map<String, List<String>> correlation = new HashMap<>();
+        if (p.getCurrentToken() == JsonToken.VALUE_NULL)
+            return correlation;
+        startObject(p, "a correlation map");
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String key = p.getCurrentName();
+            p.nextToken();
+            List<String> ids = new ArrayList<>();
+            if (startArray(p, key))
+                while (p.nextToken() != JsonToken.END_ARRAY)
+                    ids.add(text(p));
+            correlation.put(key, ids);
+        }
+        return correlation;
     }
 
-    private Block findBlock(String blockid) {
-        return this.internalBlockLookup.get(blockid);
+    private Map<String, Map<String, String>> readOtherValues(JsonParser p)
+            throws IOException, SurveyException
+    {
+        Map<String, Map<String, String>> otherValues = new LinkedHashMap<>();
+        if (p.getCurrentToken() == JsonToken.VALUE_NULL)
+            return otherValues;
+        startObject(p, "a map of other values");
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String quid = p.getCurrentName();
+            p.nextToken();
+            Map<String, String> values = new LinkedHashMap<>();
+            if (p.getCurrentToken() == JsonToken.START_OBJECT) {
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String key = p.getCurrentName();
+                    p.nextToken();
+                    values.put(key, text(p));
+                }
+            } else p.skipChildren();
+            otherValues.put(quid, values);
+        }
+        return otherValues;
     }
 
     private Map<String, List<Question>> makeCorrelationMap(
-            List<Question> questions,
-            JsonNode correlationMap)
+            Map<String, Question> questions,
+            Map<String, List<String>> correlation)
     {
         Map<String, List<Question>> corrMap = new HashMap<>();
-        if (correlationMap == null) return corrMap;
-        Iterator<Map.Entry<String, JsonNode>> fields = correlationMap.fields();
-        while (fields.hasNext()) {
-            Map.Entry<String, JsonNode> entry = fields.next();
-           String key = entry.getKey();
-            corrMap.put(key, new ArrayList<Question>());
-            for (JsonNode e : entry.getValue()) {
-                corrMap.get(key).add(findQuestion(questions, e.asText()));
-            }
+        for (Map.Entry<String, List<String>> entry : correlation.entrySet()) {
+            List<Question> correlated = new ArrayList<>();
+            for (String quid : entry.getValue())
+                correlated.add(findQuestion(questions, quid));
+            corrMap.put(entry.getKey(), correlated);
         }
         return corrMap;
     }
 
     private void setOtherValues(
-            List<Question> questions,
+            Map<String, Question> questions,
             Survey s,
-            JsonNode jsonOtherValues)
+            Map<String, Map<String, String>> otherValues)
     {
         Set<String> otherHeaders = new HashSet<>();
-        Iterator<Map.Entry<String, JsonNode>> otherValues = jsonOtherValues.fields();
-        while (otherValues.hasNext()) {
-            Map.Entry<String, JsonNode> e = otherValues.next();
+        for (Map.Entry<String, Map<String, String>> e : otherValues.entrySet()) {
             Question q = findQuestion(questions, e.getKey());
-            JsonNode map = e.getValue();
-            Iterator<Map.Entry<String, JsonNode>> mapIterator = map.fields();
-            while (mapIterator.hasNext()) {
-                Map.Entry<String, JsonNode> ee = mapIterator.next();
-                q.otherValues.put(ee.getKey(), ee.getValue().asText());
+            for (Map.Entry<String, String> ee : e.getValue().entrySet()) {
+                q.otherValues.put(ee.getKey(), ee.getValue());
                 otherHeaders.add(ee.getKey());
             }
         }
         s.otherHeaders = otherHeaders.toArray(new String[otherHeaders.size()]);
     }
 
-    private void unifyBranching(
-            Survey survey,
-            JsonNode jsonBlocks)
+    private void unifyBranching()
             throws SurveyException
     {
-        Iterator<JsonNode> blockArray = jsonBlocks.elements();
-        while (blockArray.hasNext()) {
-            JsonNode block = blockArray.next();
-            if (block.has("questions")) {
-                Iterator<JsonNode> questionArray = block.get("questions").elements();
-                while (questionArray.hasNext()) {
-                    JsonNode q = questionArray.next();
-                    if (q.has("branchMap")) {
-                        String jsonQuestionId = q.get("id").asText();
-                        Question question = findQuestion(survey.questions, internalIdMap.get(jsonQuestionId));
-                        Iterator<Map.Entry<String, JsonNode>> branchMapElements = q.get("branchMap").fields();
-                        while (branchMapElements.hasNext()) {
-                            Map.Entry<String, JsonNode> ee = branchMapElements.next();
-                            String jsonOptionId = ee.getKey();
-                            String jsonBlockId = ee.getValue().asText();
-                            if (jsonBlockId.equals(Block.NEXT))
-                                continue;
-                            SurveyDatum opt = findOption(question, internalIdMap.get(jsonOptionId));
-                            Block dest = findBlock(jsonBlockId);
-                            //question.addOption(opt, dest);
-                            question.setBranchDest(opt, dest);
-                        }
-                        if (question.block.branchQ==null) {
-                            question.block.updateBranchParadigm(Block.BranchParadigm.ONE);
-                            question.block.branchQ = question;
-                        } else if (question.block.branchQ != question) {
-                            question.block.updateBranchParadigm(Block.BranchParadigm.ALL);
-                        }
-                    }
-                }
-            }
-            if (block.has("subblocks")) {
-                unifyBranching(survey, block.get("subblocks"));
+        for (Branch branch : this.branches) {
+            Question question = branch.question;
+            for (int i = 0; i < branch.options.size(); i++)
+                question.setBranchDest(branch.options.get(i), findBlock(branch.destinations.get(i)));
+            if (question.block.branchQ==null) {
+                question.block.updateBranchParadigm(Block.BranchParadigm.ONE);
+                question.block.branchQ = question;
+            } else if (question.block.branchQ != question) {
+                question.block.updateBranchParadigm(Block.BranchParadigm.ALL);
             }
         }
     }
 
     private void populateSurvey(
-            Survey survey)
+            Survey survey,
+            JsonParser p)
             throws SurveyException, IOException {
 
         List<Question> questions = new ArrayList<>();
-        JsonNode jsonObject = JsonLoader.fromString(this.json);
-        JsonNode topLevelBlocks = jsonObject.get("survey");
-
-        Iterator<JsonNode> blockList = topLevelBlocks.elements();
-        int i = 0;
-
-        while (blockList.hasNext()) {
-            JsonNode jsonBlock = blockList.next();
-            Block block = makeBlock(null, jsonBlock, i+1);
-            this.topLevelBlocks.add(block);
-            questions.addAll(getQuestionsFromBlock(block, jsonBlock));
+        Map<String, List<String>> correlation = new HashMap<>();
+        Map<String, Map<String, String>> otherValues = null;
+        boolean hasSurvey = false;
+
+        if (p.nextToken() == null)
+            throw new SyntaxException(String.format("Survey %s is empty.", this.source));
+        startObject(p, "a survey object");
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            p.nextToken();
+            if (field.equals(SURVEY)) {
+                hasSurvey = true;
+                if (startArray(p, field))
+                    // Build each top-level block as soon as it has been read.
+                    for (int i = 0; p.nextToken() != JsonToken.END_ARRAY; i++)
+                        this.topLevelBlocks.add(makeBlock(null, readBlock(p), i + 1, questions));
+            } else if (field.equals(CORRELATION))
+                correlation = readCorrelation(p);
+            else if (field.equals(OTHER_VALUES))
+                otherValues = readOtherValues(p);
+            else p.skipChildren();
         }
+        if (!hasSurvey)
+            throw new SyntaxException(String.format("Survey %s has no \"%s\" field.", this.source, SURVEY));
 
         addPhantomBlocks(allBlockLookUp);
         Block.getSorted(this.topLevelBlocks);
@@ -362,18 +644,42 @@ public final class JSONParser extends AbstractParser {
         for (Block b : survey.topLevelBlocks)
             b.setParentPointer();
 
-        unifyBranching(survey, topLevelBlocks);
+        unifyBranching();
         propagateBranchParadigms(survey);
 
-        survey.correlationMap = makeCorrelationMap(questions, jsonObject.get("correlation"));
+        Map<String, Question> questionsById = new HashMap<>();
+        for (Question q : questions)
+            questionsById.put(q.id, q);
+        survey.correlationMap = makeCorrelationMap(questionsById, correlation);
         survey.encoding = "UTF-8";
         survey.source = this.source;
-        if (jsonObject.has("otherValues"))
-            setOtherValues(questions, survey, jsonObject.get("otherValues"));
+        if (otherValues != null)
+            setOtherValues(questionsById, survey, otherValues);
+        survey.freeze();
+    }
+
+    private Survey parse(JsonParser p)
+            throws SurveyException, IOException
+    {
+        try {
+            if (this.validate) {
+                JsonNode tree = MAPPER.readTree(p);
+                if (tree == null)
+                    throw new SyntaxException(String.format("Survey %s is empty.", this.source));
+                validateInput(tree);
+                p.close();
+                p = tree.traverse();
+            }
+            Survey s = new Survey();
+            populateSurvey(s, p);
+            return s;
+        } finally {
+            p.close();
+        }
     }
 
     /**
-     * Validates and parses the survey.
+     * Parses the survey, validating it first if this parser was created with validation on.
      *
      * @return A {@link edu.umass.cs.surveyman.survey.Survey} object.
      * @throws SurveyException
@@ -381,15 +687,24 @@ public final class JSONParser extends AbstractParser {
     public Survey parse()
             throws SurveyException
     {
-        validateInput();
-        Survey s = new Survey();
         try {
-            populateSurvey(s);
+            if (this.json != null)
+                return parse(FACTORY.createParser(this.json));
+            if (this.stream != null)
+                return parse(FACTORY.createParser(new LimitedInputStream(this.stream, this.sizeLimit)));
+            try (InputStream in = Slurpie.getInputStream(this.source)) {
+                return parse(FACTORY.createParser(new LimitedInputStream(in, this.sizeLimit)));
+            }
+        } catch (SizeLimitException se) {
+            throw new SyntaxException(String.format("Survey %s is larger than the limit of %d bytes.",
+                    this.source, this.sizeLimit));
+        } catch (JsonProcessingException jpe) {
+            throw new SyntaxException(String.format("Survey %s is not well-formed JSON: %s", this.source,
+                    jpe.getMessage()));
         } catch (IOException io) {
             LOGGER.fatal(io);
             throw new RuntimeException(io);
         }
-        return s;
     }
 
 }
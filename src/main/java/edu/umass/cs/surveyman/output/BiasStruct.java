@@ -5,23 +5,46 @@ import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.SurveyObj;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import edu.umass.cs.surveyman.utils.Jsonable;
-import edu.umass.cs.surveyman.utils.jsonify.Jsonify;
 import edu.umass.cs.surveyman.utils.Tabularable;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 public abstract class BiasStruct implements Jsonable, Tabularable {
 
     public static <K extends SurveyObj, V extends Jsonable> java.lang.String jsonize(Map<K, V> map) throws SurveyException {
-        Map<java.lang.String, Jsonable> m = new HashMap<>();
-        for (Map.Entry<K, V> e : map.entrySet()) {
-            K key = e.getKey();
-            V val = e.getValue();
-            m.put(key.getId(), val);
+        StringWriter sw = new StringWriter();
+        try {
+            write(map, new JsonWriter(sw));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        return Jsonify.jsonify(m);
+        return sw.toString();
+    }
+
+    /**
+     * Streams a map keyed by survey objects as a JSON object keyed by their identifiers. Keys are written in sorted
+     * order, so the output does not depend on hash order.
+     * @param map The map to write.
+     * @param out The writer.
+     * @throws SurveyException
+     * @throws IOException
+     */
+    public static <K extends SurveyObj, V extends Jsonable> void write(Map<K, V> map, JsonWriter out)
+            throws SurveyException, IOException {
+        SortedMap<java.lang.String, V> sorted = new TreeMap<>();
+        for (Map.Entry<K, V> e : map.entrySet())
+            sorted.put(e.getKey().getId(), e.getValue());
+        out.beginObject();
+        for (Map.Entry<java.lang.String, V> e : sorted.entrySet())
+            out.name(e.getKey()).value(e.getValue());
+        out.endObject();
     }
 
     protected static class InnerCorrelationStruct extends HashMap<Question, CorrelationStruct> implements Jsonable {
@@ -29,7 +52,13 @@ public abstract class BiasStruct implements Jsonable, Tabularable {
         @Override
         public java.lang.String jsonize() throws SurveyException
         {
-            return BiasStruct.jsonize(this);
+            return JsonWriter.toString(this);
+        }
+
+        @Override
+        public void write(JsonWriter out) throws SurveyException, IOException
+        {
+            BiasStruct.write(this, out);
         }
     }
 
@@ -38,7 +67,13 @@ public abstract class BiasStruct implements Jsonable, Tabularable {
         @Override
         public java.lang.String jsonize() throws SurveyException
         {
-            return BiasStruct.jsonize(this);
+            return JsonWriter.toString(this);
+        }
+
+        @Override
+        public void write(JsonWriter out) throws SurveyException, IOException
+        {
+            BiasStruct.write(this, out);
         }
 
         public static void populateStruct(Survey survey, OrderBiasStruct that) {
@@ -59,7 +94,13 @@ public abstract class BiasStruct implements Jsonable, Tabularable {
         @Override
         public java.lang.String jsonize() throws SurveyException
         {
-            return BiasStruct.jsonize(this);
+            return JsonWriter.toString(this);
+        }
+
+        @Override
+        public void write(JsonWriter out) throws SurveyException, IOException
+        {
+            BiasStruct.write(this, out);
         }
 
         public static void populateStruct(Survey survey, WordingBiasStruct that) {
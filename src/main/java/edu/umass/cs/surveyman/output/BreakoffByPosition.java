@@ -1,46 +1,33 @@
 package edu.umass.cs.surveyman.output;
 
-import edu.umass.cs.surveyman.analyses.IQuestionResponse;
 import edu.umass.cs.surveyman.analyses.SurveyResponse;
 import edu.umass.cs.surveyman.qc.QCMetrics;
-import edu.umass.cs.surveyman.qc.SurveyDAG;
+import edu.umass.cs.surveyman.qc.PathStatistics;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
-import edu.umass.cs.surveyman.utils.Tuple;
-import edu.umass.cs.surveyman.utils.jsonify.Jsonify;
-import org.apache.commons.lang3.StringUtils;
+import edu.umass.cs.surveyman.utils.JsonWriter;
+import edu.umass.cs.surveyman.utils.TableWriter;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
 
 public class BreakoffByPosition extends BreakoffStruct<Integer> {
 
     public BreakoffByPosition(Survey survey) {
-        SurveyDAG surveyDAG = SurveyDAG.getDag(survey);
-        int maxpos = surveyDAG.maximumPathLength();
+        int maxpos = new PathStatistics(survey).maximumPathLength();
         for (int i = 0 ; i < maxpos ; i++)
             this.put(new Integer(i), new Integer(0));
     }
 
     /**
-     * Aggregates the breakoff according to the last position answered.
+     * Aggregates the breakoff according to the last position answered. To get both breakoff structs, use
+     * {@link BreakoffTally#count(QCMetrics, List)}, which fills them in one pass.
      * @param responses The list of actual or simulated responses to the survey.
      * @return A BreakoffByPosition object containing all of the values just computed.
      */
     public static BreakoffByPosition makeStruct(QCMetrics qcMetrics, List<? extends SurveyResponse> responses) {
         // for now this just reports breakoff, rather than statistically significant breakoff
-
-        BreakoffByPosition breakoffMap = new BreakoffByPosition(qcMetrics.survey);
-
-        for (SurveyResponse sr : responses) {
-            IQuestionResponse qr = sr.getLastQuestionAnswered();
-            if (!qcMetrics.isFinalQuestion(qr.getQuestion(), sr)) {
-                breakoffMap.update(qr.getIndexSeen());
-            }
-        }
-        return breakoffMap;
+        return BreakoffTally.count(qcMetrics, responses).byPosition;
     }
 
     @Override
@@ -50,12 +37,15 @@ public class BreakoffByPosition extends BreakoffStruct<Integer> {
 
     @Override
     public java.lang.String jsonize() throws SurveyException {
-        List<Object> m = new ArrayList<>();
-        for (Map.Entry<Integer, Integer> e : this.entrySet()) {
-            m.add(e.getKey().toString());
-            m.add(e.getValue());
-        }
-        return Jsonify.jsonify(Jsonify.mapify(m.toArray()));
+        return JsonWriter.toString(this);
+    }
+
+    @Override
+    public void write(JsonWriter out) throws IOException {
+        out.beginObject();
+        for (Map.Entry<Integer, Integer> e : new TreeMap<>(this).entrySet())
+            out.name(e.getKey().toString()).value(e.getValue());
+        out.endObject();
     }
 
     @Override
@@ -65,22 +55,19 @@ public class BreakoffByPosition extends BreakoffStruct<Integer> {
 
     @Override
     public java.lang.String tabularize() {
+        return TableWriter.toString(this);
+    }
 
-        List<java.lang.String> retval = new ArrayList<>();
-        List<Tuple<Integer, Integer>> pairs = new ArrayList<>();
-
-        for (Map.Entry<Integer, Integer> entry : this.entrySet()) {
-            Integer pos = entry.getKey();
+    @Override
+    public void tabularize(TableWriter out) throws IOException {
+        out.cell("Position").cell("Count").endRow();
+        for (Map.Entry<Integer, Integer> entry : new TreeMap<>(this).entrySet()) {
             int ct = entry.getValue();
             if (ct > 0) {
                 // Positions are 0-indexed. We need to make them 1-indexed.
-                pairs.add(new Tuple<>(pos + 1, ct));
+                out.cell(entry.getKey() + 1).cell(ct).endRow();
             }
         }
-        Collections.sort(pairs);
-        for (Tuple p : pairs)
-            retval.add(java.lang.String.format("%s\t%s", p.fst.toString(), p.snd.toString()));
-        return "Position\tCount\n" + StringUtils.join(retval, "\n") + "\n";
     }
 
 }
@@ -1,19 +1,16 @@
 package edu.umass.cs.surveyman.output;
 
-import edu.umass.cs.surveyman.analyses.IQuestionResponse;
 import edu.umass.cs.surveyman.analyses.SurveyResponse;
 import edu.umass.cs.surveyman.qc.QCMetrics;
 import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
-import edu.umass.cs.surveyman.utils.jsonify.Jsonify;
+import edu.umass.cs.surveyman.utils.JsonWriter;
+import edu.umass.cs.surveyman.utils.TableWriter;
 import edu.umass.cs.surveyman.utils.Tuple;
-import org.apache.commons.lang3.StringUtils;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
 
 public class BreakoffByQuestion extends BreakoffStruct<Question> {
 
@@ -24,18 +21,13 @@ public class BreakoffByQuestion extends BreakoffStruct<Question> {
     }
 
     /**
-     * Aggregates the breakoff according to which question was last answered.
+     * Aggregates the breakoff according to which question was last answered. To get both breakoff structs, use
+     * {@link BreakoffTally#count(QCMetrics, List)}, which fills them in one pass.
      * @param responses The list of actual or simulated responses to the survey.
      * @return A BreakoffByQuestion object containing all of the values just computed.
      */
     public static BreakoffByQuestion makeStruct(QCMetrics qcMetrics, List<? extends SurveyResponse> responses) {
-        BreakoffByQuestion breakoffMap = new BreakoffByQuestion(qcMetrics.survey);
-        for (SurveyResponse sr : responses) {
-            IQuestionResponse lastQuestionResponse = sr.getLastQuestionAnswered();
-            if (!qcMetrics.isFinalQuestion(lastQuestionResponse.getQuestion(), sr))
-                breakoffMap.update(lastQuestionResponse.getQuestion());
-        }
-        return breakoffMap;
+        return BreakoffTally.count(qcMetrics, responses).byQuestion;
     }
 
     @Override
@@ -45,7 +37,11 @@ public class BreakoffByQuestion extends BreakoffStruct<Question> {
 
     @Override
     public java.lang.String tabularize() {
-        List<java.lang.String> retval = new ArrayList<>();
+        return TableWriter.toString(this);
+    }
+
+    @Override
+    public void tabularize(TableWriter out) throws IOException {
         List<Tuple> pairs = new ArrayList<>();
         for (Map.Entry<Question, Integer> entry : this.entrySet()) {
             Question question = entry.getKey();
@@ -55,21 +51,25 @@ public class BreakoffByQuestion extends BreakoffStruct<Question> {
             }
         }
         Collections.sort(pairs);
+        out.cell("Question Text").cell("Count").endRow();
         for (Tuple p : pairs)
-            retval.add(java.lang.String.format("%s\t%d", p.fst, p.snd));
-        return "Question Text\tCount\n" + StringUtils.join(retval, "\n") + "\n";
+            out.cell(p.fst).cell(p.snd).endRow();
     }
 
     @Override
     public java.lang.String jsonize() throws SurveyException {
-        List<Object> m = new ArrayList<>();
-        for (Map.Entry<Question, Integer> e : this.entrySet()) {
-            java.lang.String key = e.getKey().getId();
-            Object val = e.getValue();
-            m.add(key);
-            m.add(val);
-        }
-        return Jsonify.jsonify(Jsonify.mapify(m.toArray()));
+        return JsonWriter.toString(this);
+    }
+
+    @Override
+    public void write(JsonWriter out) throws IOException {
+        SortedMap<java.lang.String, Integer> sorted = new TreeMap<>();
+        for (Map.Entry<Question, Integer> e : this.entrySet())
+            sorted.put(e.getKey().getId(), e.getValue());
+        out.beginObject();
+        for (Map.Entry<java.lang.String, Integer> e : sorted.entrySet())
+            out.name(e.getKey()).value(e.getValue());
+        out.endObject();
     }
 
     @Override
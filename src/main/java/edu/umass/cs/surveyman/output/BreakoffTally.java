@@ -0,0 +1,140 @@
+package edu.umass.cs.surveyman.output;
+
+import edu.umass.cs.surveyman.analyses.IQuestionResponse;
+import edu.umass.cs.surveyman.analyses.SurveyResponse;
+import edu.umass.cs.surveyman.qc.BlockMembership;
+import edu.umass.cs.surveyman.qc.QCMetrics;
+import edu.umass.cs.surveyman.qc.Shards;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Both breakoff histograms, filled in one pass over the responses. A respondent broke off if they did not finish the
+ * top-level block of the last question they answered; the breakoff is counted against that question and the position
+ * it was seen in.
+ *
+ * <p>Each response is read once: the pass finds the last answer and counts the answers in every block at the same
+ * time, and {@link BlockMembership} makes every lookup constant-time. Responses are split into shards that tally
+ * concurrently, and the shards' counts are then summed.
+ */
+public final class BreakoffTally {
+
+    public final BreakoffByPosition byPosition;
+    public final BreakoffByQuestion byQuestion;
+
+    private BreakoffTally(BreakoffByPosition byPosition, BreakoffByQuestion byQuestion) {
+        this.byPosition = byPosition;
+        this.byQuestion = byQuestion;
+    }
+
+    /**
+     * One shard's counts.
+     */
+    private static final class Counts {
+        final BlockMembership membership;
+        // positions[i] counts breakoffs after the question seen at position i.
+        int[] positions = new int[0];
+        // questions[i] counts breakoffs after survey.questions[i].
+        final int[] questions;
+        // Answers per block in the current response; only the blocks in touched[0..numTouched) are non-zero.
+        private final int[] answered;
+        private final int[] touched;
+
+        Counts(BlockMembership membership, int numQuestions) {
+            this.membership = membership;
+            this.questions = new int[numQuestions];
+            this.answered = new int[membership.blocks.size()];
+            this.touched = new int[membership.blocks.size()];
+        }
+
+        void add(SurveyResponse sr) {
+            IQuestionResponse last = null;
+            int lastIndexSeen = -1, numTouched = 0;
+            for (IQuestionResponse qr : sr.getAllResponses()) {
+                int indexSeen = qr.getIndexSeen();
+                if (indexSeen > lastIndexSeen) {
+                    lastIndexSeen = indexSeen;
+                    last = qr;
+                }
+                int block = membership.blockOf(qr.getQuestion());
+                if (block >= 0 && answered[block]++ == 0)
+                    touched[numTouched++] = block;
+            }
+            if (last != null) {
+                int block = membership.blockOf(last.getQuestion());
+                if (block < 0 || answered[block] != membership.blockSize(block))
+                    record(last.getQuestion(), lastIndexSeen);
+            }
+            for (int i = 0; i < numTouched; i++)
+                answered[touched[i]] = 0;
+        }
+
+        private void record(Question question, int position) {
+            if (position >= positions.length)
+                positions = Arrays.copyOf(positions, Math.max(position + 1, 2 * positions.length));
+            positions[position]++;
+            int q = membership.questionIndex(question);
+            // Custom questions are not in the survey, so they have no row in the histogram.
+            if (q >= 0)
+                questions[q]++;
+        }
+
+        void merge(Counts that) {
+            if (that.positions.length > positions.length)
+                positions = Arrays.copyOf(positions, that.positions.length);
+            for (int i = 0; i < that.positions.length; i++)
+                positions[i] += that.positions[i];
+            for (int i = 0; i < questions.length; i++)
+                questions[i] += that.questions[i];
+        }
+    }
+
+    /**
+     * Tallies breakoff on a temporary thread pool with one thread per processor.
+     */
+    public static BreakoffTally count(QCMetrics qcMetrics, List<? extends SurveyResponse> responses) {
+        return count(qcMetrics, responses, null);
+    }
+
+    /**
+     * Tallies breakoff by position and by question.
+     * @param qcMetrics The metrics for the survey the responses answer.
+     * @param responses The list of actual or simulated responses to the survey.
+     * @param executor The executor to run shards on, or null for a temporary pool; see {@link Shards}.
+     * @return Both histograms.
+     */
+    public static BreakoffTally count(QCMetrics qcMetrics, final List<? extends SurveyResponse> responses,
+                                      ExecutorService executor) {
+        final Survey survey = qcMetrics.survey;
+        final BlockMembership membership = qcMetrics.getBlockMembership();
+        Counts total = new Counts(membership, survey.questions.size());
+        for (Counts counts : Shards.run(Shards.count(responses.size()), new Shards.Shard<Counts>() {
+            @Override
+            public Counts run(int shard, int shards) {
+                int from = (int) ((long) responses.size() * shard / shards);
+                int to = (int) ((long) responses.size() * (shard + 1) / shards);
+                Counts counts = new Counts(membership, survey.questions.size());
+                for (SurveyResponse sr : responses.subList(from, to))
+                    counts.add(sr);
+                return counts;
+            }
+        }, executor))
+            total.merge(counts);
+
+        BreakoffByPosition byPosition = new BreakoffByPosition(survey);
+        for (int i = 0; i < total.positions.length; i++)
+            if (total.positions[i] > 0)
+                byPosition.put(i, (byPosition.containsKey(i) ? byPosition.get(i) : 0) + total.positions[i]);
+        BreakoffByQuestion byQuestion = new BreakoffByQuestion(survey);
+        for (int i = 0; i < total.questions.length; i++)
+            if (total.questions[i] > 0) {
+                Question q = survey.questions.get(i);
+                byQuestion.put(q, byQuestion.get(q) + total.questions[i]);
+            }
+        return new BreakoffTally(byPosition, byQuestion);
+    }
+}
@@ -4,9 +4,12 @@ import edu.umass.cs.surveyman.analyses.SurveyResponse;
 import edu.umass.cs.surveyman.qc.classifiers.AbstractClassifier;
 import edu.umass.cs.surveyman.survey.InputOutputKeys;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import edu.umass.cs.surveyman.utils.Jsonable;
-import edu.umass.cs.surveyman.utils.jsonify.Jsonify;
 import edu.umass.cs.surveyman.utils.Tabularable;
+import edu.umass.cs.surveyman.utils.TableWriter;
+
+import java.io.IOException;
 
 public class ClassificationStruct implements Jsonable, Tabularable {
 
@@ -38,23 +41,36 @@ public class ClassificationStruct implements Jsonable, Tabularable {
     @Override
     public java.lang.String tabularize ()
     {
-        return java.lang.String.format("%s, %s, %d, %f, %f, %b",
-                this.surveyResponse.getSrid(),
-                this.classifier.getClass().getName(),
-                this.numanswered,
-                this.score,
-                this.threshold,
-                this.valid);
+        return TableWriter.toString(this);
+    }
+
+    @Override
+    public void tabularize(TableWriter out) throws IOException
+    {
+        out.cell(this.surveyResponse.getSrid())
+                .cell(this.classifier.getClass().getName())
+                .cell(this.numanswered)
+                .cell(this.score)
+                .cell(this.threshold)
+                .cell(this.valid)
+                .endRow();
     }
 
     public java.lang.String jsonize() throws SurveyException
     {
-        return Jsonify.jsonify(Jsonify.mapify(
-                InputOutputKeys.RESPONSEID, this.surveyResponse.getSrid(),
-                InputOutputKeys.CLASSIFIER, this.classifier.getClass().getName(),
-                InputOutputKeys.NUMANSWERED, this.numanswered,
-                InputOutputKeys.SCORE, this.score,
-                InputOutputKeys.THRESHOLD, this.threshold,
-                InputOutputKeys.VALID, this.valid));
+        return JsonWriter.toString(this);
+    }
+
+    @Override
+    public void write(JsonWriter out) throws IOException
+    {
+        out.beginObject();
+        out.name(InputOutputKeys.RESPONSEID).value(this.surveyResponse.getSrid());
+        out.name(InputOutputKeys.CLASSIFIER).value(this.classifier.getClass().getName());
+        out.name(InputOutputKeys.NUMANSWERED).value(this.numanswered);
+        out.name(InputOutputKeys.SCORE).value(this.score);
+        out.name(InputOutputKeys.THRESHOLD).value(this.threshold);
+        out.name(InputOutputKeys.VALID).value(this.valid);
+        out.endObject();
     }
 }
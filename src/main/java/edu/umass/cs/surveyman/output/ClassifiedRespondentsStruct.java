@@ -1,44 +1,63 @@
 package edu.umass.cs.surveyman.output;
 
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import edu.umass.cs.surveyman.utils.Jsonable;
 import edu.umass.cs.surveyman.utils.Tabularable;
-import org.apache.commons.lang3.StringUtils;
+import edu.umass.cs.surveyman.utils.TableWriter;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
 
 public class ClassifiedRespondentsStruct extends ArrayList<ClassificationStruct> implements Jsonable, Tabularable {
 
     @Override
     public java.lang.String jsonize() throws SurveyException {
-        List<java.lang.String> strings = new ArrayList<>();
-        for (ClassificationStruct classificationStruct : this) {
-            strings.add(classificationStruct.jsonize());
-        }
-        return java.lang.String.format("[ %s ] ", StringUtils.join(strings, ", "));
+        return JsonWriter.toString(this);
+    }
+
+    /**
+     * Streams one classification per respondent. Memory use does not grow with the number of respondents.
+     */
+    @Override
+    public void write(JsonWriter out) throws SurveyException, IOException {
+        out.beginArray();
+        for (ClassificationStruct classificationStruct : this)
+            classificationStruct.write(out);
+        out.endArray();
     }
 
     @Override
     public java.lang.String tabularize() {
-        List<java.lang.String> strings = new ArrayList<>();
-        for (ClassificationStruct classificationStruct : this){
-            strings.add(classificationStruct.toString());
-        }
-        return StringUtils.join(strings, "\n");
+        return TableWriter.toString(this);
     }
 
+    /**
+     * Streams one row per respondent.
+     */
     @Override
-    public java.lang.String toString() {
+    public void tabularize(TableWriter out) throws IOException {
+        for (ClassificationStruct classificationStruct : this)
+            classificationStruct.tabularize(out);
+    }
+
+    @Override
+    public void print(TableWriter out) throws IOException {
         int numvalid = 0;
         int n = this.size();
         for (ClassificationStruct classificationStruct : this) {
             numvalid += classificationStruct.isValid() ? 1 : 0;
         }
-        return java.lang.String.format("Response classifications (%d valid, %f perc. of sample)\n" +
-                "srid\tclassifiername\tnumanswered\tscore\tthreshold\tisvalid\n",
-                numvalid, ((double) numvalid) / n) + tabularize();
+        out.raw(java.lang.String.format("Response classifications (%d valid, %f perc. of sample)\n",
+                numvalid, ((double) numvalid) / n));
+        out.cell("srid").cell("classifiername").cell("numanswered").cell("score").cell("threshold").cell("isvalid")
+                .endRow();
+        tabularize(out);
+    }
 
+    @Override
+    public java.lang.String toString() {
+        return TableWriter.printed(this);
     }
 
 }
@@ -7,11 +7,12 @@ import edu.umass.cs.surveyman.survey.InputOutputKeys;
 import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.SurveyDatum;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import edu.umass.cs.surveyman.utils.Jsonable;
-import edu.umass.cs.surveyman.utils.jsonify.Jsonify;
 import edu.umass.cs.surveyman.utils.Tabularable;
 import edu.umass.cs.surveyman.utils.Tuple;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -103,16 +104,25 @@ public class CorrelationStruct implements Jsonable, Tabularable {
 
     public java.lang.String jsonize() throws SurveyException
     {
-        if (this.empty) return "\"\"";
-        return Jsonify.jsonify(Jsonify.mapify(
-                InputOutputKeys.COEFFICIENTTYPE, this.coefficientType.toString(),
-                InputOutputKeys.COEFFICIENTVALUE, this.coefficientValue,
-                InputOutputKeys.COEFFICIENTPVALUE, this.coefficientPValue,
-                InputOutputKeys.THINGA, this.thingA.getId(),
-                this.numSamplesA, this.numSamplesA,
-                InputOutputKeys.THINGB, this.thingB.getId(),
-                InputOutputKeys.NUMSAMPLESB, this.numSamplesB
-        ));
+        return JsonWriter.toString(this);
+    }
+
+    @Override
+    public void write(JsonWriter out) throws IOException
+    {
+        if (this.empty) {
+            out.value("");
+            return;
+        }
+        out.beginObject();
+        out.name(InputOutputKeys.COEFFICIENTTYPE).value(this.coefficientType.toString());
+        out.name(InputOutputKeys.COEFFICIENTVALUE).value(this.coefficientValue);
+        out.name(InputOutputKeys.COEFFICIENTPVALUE).value(this.coefficientPValue);
+        out.name(InputOutputKeys.THINGA).value(this.thingA.getId());
+        out.name(InputOutputKeys.NUMSAMPLESA).value(this.numSamplesA);
+        out.name(InputOutputKeys.THINGB).value(this.thingB.getId());
+        out.name(InputOutputKeys.NUMSAMPLESB).value(this.numSamplesB);
+        out.endObject();
     }
 
     @Override
@@ -4,17 +4,23 @@ import edu.umass.cs.surveyman.SurveyMan;
 import edu.umass.cs.surveyman.analyses.IQuestionResponse;
 import edu.umass.cs.surveyman.analyses.SurveyResponse;
 import edu.umass.cs.surveyman.qc.CoefficentsAndTests;
+import edu.umass.cs.surveyman.qc.ContingencyTable;
 import edu.umass.cs.surveyman.qc.QCMetrics;
+import edu.umass.cs.surveyman.qc.RankTests;
+import edu.umass.cs.surveyman.qc.Shards;
 import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.SurveyDatum;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import edu.umass.cs.surveyman.utils.Jsonable;
 import edu.umass.cs.surveyman.utils.Tabularable;
-import org.apache.commons.lang3.StringUtils;
+import edu.umass.cs.surveyman.utils.TableWriter;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 public class OrderBiasStruct extends BiasStruct implements Jsonable, Tabularable {
 
@@ -32,7 +38,164 @@ public class OrderBiasStruct extends BiasStruct implements Jsonable, Tabularable
     }
 
     /**
-     * Searches for significant order biases observed in survey responses.
+     * Counts, for every pair of analyzable, exclusive questions, how often each answer to the earlier question in the
+     * survey was given when it was seen before the later one, and when it was seen after it. The counts are filled in
+     * with one pass over each response, rather than one pass over all responses per pair.
+     */
+    static class OrderCounts {
+
+        static final int BEFORE = 0, AFTER = 1;
+
+        /**
+         * The questions that are counted, in survey order.
+         */
+        final List<Question> questions = new ArrayList<>();
+        /**
+         * Each question's options, by index.
+         */
+        final SurveyDatum[][] options;
+        // counts[a][2 * ((b - a - 1) * options[a].length + k) + side] is the number of respondents who chose option k
+        // of question a, having seen it on the given side of question b, for b > a.
+        private final int[][] counts;
+        private final Map<Question, Integer> questionIndex = new HashMap<>();
+        private final List<Map<SurveyDatum, Integer>> optionIndex = new ArrayList<>();
+        // Scratch space for add(), indexed by question.
+        private final int[] answered, seen, choice, mark;
+        private int stamp = 0;
+
+        OrderCounts(Survey survey) throws SurveyException {
+            for (Question q : survey.questions)
+                if (QCMetrics.isAnalyzable(q) && q.exclusive) {
+                    questionIndex.put(q, questions.size());
+                    questions.add(q);
+                }
+            int n = questions.size();
+            this.options = new SurveyDatum[n][];
+            this.counts = new int[n][];
+            for (int a = 0; a < n; a++) {
+                options[a] = questions.get(a).getOptListByIndex();
+                Map<SurveyDatum, Integer> index = new HashMap<>();
+                for (int k = 0; k < options[a].length; k++)
+                    index.put(options[a][k], k);
+                optionIndex.add(index);
+                counts[a] = new int[2 * (n - a - 1) * options[a].length];
+            }
+            this.answered = new int[n];
+            this.seen = new int[n];
+            this.choice = new int[n];
+            this.mark = new int[n];
+        }
+
+        /**
+         * Counts one response. Only the first answer to each question is counted.
+         */
+        void add(SurveyResponse sr) {
+            int n = 0;
+            stamp++;
+            for (IQuestionResponse qr : sr.getAllResponses()) {
+                Integer a = questionIndex.get(qr.getQuestion());
+                if (a == null || mark[a] == stamp || qr.getOpts().isEmpty())
+                    continue;
+                Integer k = optionIndex.get(a).get(qr.getOpts().get(0).c);
+                if (k == null)
+                    continue;
+                mark[a] = stamp;
+                answered[n++] = a;
+                seen[a] = qr.getIndexSeen();
+                choice[a] = k;
+            }
+            for (int i = 0; i < n; i++)
+                for (int j = i + 1; j < n; j++) {
+                    int a = Math.min(answered[i], answered[j]), b = Math.max(answered[i], answered[j]);
+                    if (seen[a] == seen[b])
+                        continue;
+                    counts[a][2 * ((b - a - 1) * options[a].length + choice[a]) + (seen[a] < seen[b] ? BEFORE : AFTER)]++;
+                }
+        }
+
+        /**
+         * @return The number of respondents who chose option k of question a, having seen a on the given side of b.
+         */
+        int count(int a, int b, int k, int side) {
+            return counts[a][2 * ((b - a - 1) * options[a].length + k) + side];
+        }
+
+        /**
+         * @return The number of respondents who saw question a on the given side of question b.
+         */
+        int total(int a, int b, int side) {
+            int total = 0;
+            for (int k = 0; k < options[a].length; k++)
+                total += count(a, b, k, side);
+            return total;
+        }
+
+        /**
+         * @return How many respondents chose each of question a's options on the given side of question b, in option
+         * order.
+         */
+        int[] counts(int a, int b, int side) {
+            int[] counts = new int[options[a].length];
+            for (int k = 0; k < options[a].length; k++)
+                counts[k] = count(a, b, k, side);
+            return counts;
+        }
+
+        /**
+         * @return The answers to question a, tabulated against whether a was seen before or after b.
+         */
+        ContingencyTable contingencyTable(int a, int b) {
+            int[] table = new int[options[a].length * 2];
+            for (int k = 0; k < options[a].length; k++) {
+                table[2 * k + BEFORE] = count(a, b, k, BEFORE);
+                table[2 * k + AFTER] = count(a, b, k, AFTER);
+            }
+            return new ContingencyTable(options[a].length, 2, table);
+        }
+    }
+
+    // If the difference in the observations is large, the orderings are incomparable.
+    // Make this more principled in the future.
+    private static boolean imbalanced(Question q1, Question q2, int numq1q2, int numq2q1) {
+        double ratio = numq1q2 / (double) numq2q1;
+        return ((!q1.ordered || !q2.ordered) && (numq1q2 < 5 || numq2q1 < 5)) || (ratio < 0.5 || ratio > 1.5);
+    }
+
+    private static CorrelationStruct test(OrderCounts counts, int a, int b) {
+        Question q1 = counts.questions.get(a), q2 = counts.questions.get(b);
+        int numq1q2 = counts.total(a, b, OrderCounts.BEFORE), numq2q1 = counts.total(a, b, OrderCounts.AFTER);
+        if (imbalanced(q1, q2, numq1q2, numq2q1))
+            return null;
+        if (q1.ordered && q2.ordered) {
+            // Both samples are answers to q1, so both are ranked by q1's options.
+            ImmutablePair<Double, Double> pair = RankTests.mannWhitney(
+                    counts.counts(a, b, OrderCounts.BEFORE), counts.counts(a, b, OrderCounts.AFTER));
+            return new CorrelationStruct(
+                    CoefficentsAndTests.U,
+                    pair.getLeft(),
+                    pair.getRight(),
+                    q1,
+                    q2,
+                    numq1q2,
+                    numq2q1);
+        } else {
+            ContingencyTable table = counts.contingencyTable(a, b);
+            double testStatistic = table.chiSquared();
+            double pvalue = ContingencyTable.chiSquaredPValue(table.degreesOfFreedom(), testStatistic);
+            return new CorrelationStruct(
+                    CoefficentsAndTests.CHI,
+                    testStatistic,
+                    pvalue,
+                    q1,
+                    q2,
+                    numq1q2,
+                    numq2q1);
+        }
+    }
+
+    /**
+     * Searches for significant order biases observed in survey responses, testing question pairs on a temporary
+     * thread pool with one thread per processor.
      * @param qcMetrics
      * @param responses The list of actual or simulated responses to the survey.
      * @param alpha The cutoff used for determining whether the bias is significant.
@@ -44,79 +207,60 @@ public class OrderBiasStruct extends BiasStruct implements Jsonable, Tabularable
             List<? extends SurveyResponse> responses,
             double alpha)
             throws SurveyException
+    {
+        return makeStruct(qcMetrics, responses, alpha, null);
+    }
+
+    /**
+     * Searches for significant order biases observed in survey responses. The responses are tallied in one pass; the
+     * question pairs are then split into shards, which are tested concurrently on the input executor.
+     * @param qcMetrics
+     * @param responses The list of actual or simulated responses to the survey.
+     * @param alpha The cutoff used for determining whether the bias is significant.
+     * @param executor The executor to run the tests on, or null for a temporary pool; see {@link Shards}.
+     * @return An OrderBiasStruct object containing all of the values just computed.
+     * @throws SurveyException
+     */
+    public static OrderBiasStruct makeStruct(
+            QCMetrics qcMetrics,
+            List<? extends SurveyResponse> responses,
+            double alpha,
+            ExecutorService executor)
+            throws SurveyException
     {
         Survey survey = qcMetrics.survey;
         OrderBiasStruct retval = new OrderBiasStruct(survey, alpha);
-        for (int i = 0; i < survey.questions.size() - 1; i++) {
-            Question q1 = survey.questions.get(i);
-            if (!QCMetrics.isAnalyzable(q1) || !q1.exclusive) continue;
-            for (int j = i + 1; j < survey.questions.size(); j++) {
-                Question q2 = survey.questions.get(j);
-                if (!QCMetrics.isAnalyzable(q2) || !q2.exclusive) continue;
-                // q1 answers when q1 comes first
-                List<SurveyDatum> q1q2 = new ArrayList<>();
-                // q1 answers when q1 comes second
-                List<SurveyDatum> q2q1 = new ArrayList<>();
-                for (SurveyResponse sr : responses) {
-                    if (sr.hasResponseForQuestion(q1) && sr.hasResponseForQuestion(q2)) {
-                        IQuestionResponse qr1 = sr.getResponseForQuestion(q1);
-                        IQuestionResponse qr2 = sr.getResponseForQuestion(q2);
-                        if (qr1.getIndexSeen() < qr2.getIndexSeen())
-                            // add the response to question 1 to the list of q1s that precede q2s
-                            q1q2.add(qr1.getOpts().get(0).c);
-                        else if (qr1.getIndexSeen() > qr2.getIndexSeen())
-                            // add the response to question 1 to the list of q1s that succeed q2s
-                            q2q1.add(qr1.getOpts().get(0).c);
-                    }
-                }
-                // if the difference in the observations is large, the orderings is incomparable
-                // make this more principled in the future.
-                int numq1q2 = q1q2.size(), numq2q1 = q2q1.size();
-                double ratio = numq1q2 / (double) numq2q1;
-                if (((!q1.ordered || !q2.ordered) && (numq1q2 < 5 || numq2q1 < 5)) || (ratio < 0.5 || ratio > 1.5)) {
+        final OrderCounts counts = new OrderCounts(survey);
+        for (SurveyResponse sr : responses)
+            counts.add(sr);
+
+        final int n = counts.questions.size();
+        final CorrelationStruct[][] results = new CorrelationStruct[n][];
+        for (int a = 0; a < n; a++)
+            results[a] = new CorrelationStruct[n - a - 1];
+        Shards.run(Shards.count(n), new Shards.Shard<Void>() {
+            @Override
+            public Void run(int shard, int shards) {
+                for (int a = shard; a < n; a += shards)
+                    for (int b = a + 1; b < n; b++)
+                        results[a][b - a - 1] = test(counts, a, b);
+                return null;
+            }
+        }, executor);
+
+        for (int a = 0; a < n; a++)
+            for (int b = a + 1; b < n; b++) {
+                CorrelationStruct result = results[a][b - a - 1];
+                if (result == null) {
+                    int numq1q2 = counts.total(a, b, OrderCounts.BEFORE), numq2q1 = counts.total(a, b, OrderCounts.AFTER);
                     retval.numImbalances++;
-                    SurveyMan.LOGGER.warn(java.lang.String.format("Difference in observations is imbalanced: %d vs. %d (%f)", numq1q2, numq2q1, ratio));
-                    continue;
+                    SurveyMan.LOGGER.warn(java.lang.String.format("Difference in observations is imbalanced: %d vs. %d (%f)",
+                            numq1q2, numq2q1, numq1q2 / (double) numq2q1));
                 } else {
                     retval.numComparisons++;
-                }
-                if (q1.ordered && q2.ordered) {
-                    ImmutablePair<Double, Double> pair = QCMetrics.mannWhitney(q1, q2, q1q2, q2q1);
-                    retval.update(q1, q2, new CorrelationStruct(
-                                    CoefficentsAndTests.U,
-                                    pair.getLeft(),
-                                    pair.getRight(),
-                                    q1,
-                                    q2,
-                                    q1q2.size(),
-                                    q2q1.size())
-                    );
-                } else {
-                    SurveyDatum[] categoryA = q1.getOptListByIndex();
-                    int[][] contingencyTable = new int[categoryA.length][2];
-                    for (int k = 0 ; k < categoryA.length ; k++ ){
-                        contingencyTable[k][0] = 0;
-                        contingencyTable[k][1] = 0;
-                    }
-                    for (SurveyDatum c : q1q2)
-                        contingencyTable[Arrays.asList(categoryA).indexOf(c)][0] += 1;
-                    for (SurveyDatum c : q2q1)
-                        contingencyTable[Arrays.asList(categoryA).indexOf(c)][1] += 1;
-
-                    int df = categoryA.length - 1;
-                    double testStatistic = QCMetrics.chiSquared(contingencyTable, categoryA, new List[]{q1q2, q2q1});
-                    double pvalue = QCMetrics.chiSquareTest(df, testStatistic);
-                    retval.update(q1, q2, new CorrelationStruct(
-                            CoefficentsAndTests.CHI,
-                            testStatistic,
-                            pvalue,
-                            q1,
-                            q2,
-                            numq1q2,
-                            numq2q1));
+                    retval.update(counts.questions.get(a), counts.questions.get(b), result);
                 }
             }
-        }
         return retval;
     }
 
@@ -124,6 +268,24 @@ public class OrderBiasStruct extends BiasStruct implements Jsonable, Tabularable
         this.biases.get(q1).put(q2, correlationStruct);
     }
 
+    /**
+     * @param q1 The question that comes first in the survey.
+     * @param q2 A later question.
+     * @return The test of whether the answers to q1 depend on whether it was seen before or after q2; an empty struct
+     * if the pair was too imbalanced to test.
+     */
+    public CorrelationStruct get(Question q1, Question q2) {
+        return this.biases.get(q1).get(q2);
+    }
+
+    public int getNumImbalances() {
+        return numImbalances;
+    }
+
+    public int getNumComparisons() {
+        return numComparisons;
+    }
+
     private boolean flagCondition(CorrelationStruct struct)
     {
         double ratio = struct.numSamplesA / (double) struct.numSamplesB;
@@ -137,41 +299,54 @@ public class OrderBiasStruct extends BiasStruct implements Jsonable, Tabularable
 
     @Override
     public java.lang.String tabularize() {
-        List<java.lang.String> biases = new ArrayList<>();
-        for (Question q1 : this.biases.keySet()) {
-            for (Question q2: this.biases.get(q1).keySet()) {
-                CorrelationStruct structs = this.biases.get(q1).get(q2);
-                if (structs.empty)
+        return TableWriter.toString(this);
+    }
+
+    @Override
+    public void tabularize(TableWriter out) throws IOException {
+        out.cell("question1").cell("question2").cell("coefficient").cell("value").cell("pvalue")
+                .cell("numquestion1").cell("numquestion2").endRow();
+        for (Map.Entry<Question, InnerCorrelationStruct> row : this.biases.entrySet()) {
+            Question q1 = row.getKey();
+            for (Map.Entry<Question, CorrelationStruct> entry : row.getValue().entrySet()) {
+                CorrelationStruct structs = entry.getValue();
+                if (structs.empty || !flagCondition(structs))
                     continue;
-                java.lang.String data = java.lang.String.format(
-                        "\"%s\"\t\"%s\"\t\"%s\"\t%f\t%f\t%d\t%d",
-                        q1.data,
-                        q2.data,
-                        structs.coefficientType.name(),
-                        structs.coefficientValue,
-                        structs.coefficientPValue,
-                        structs.numSamplesA,
-                        structs.numSamplesB);
-                if (flagCondition(structs))
-                    biases.add(data);
+                out.quoted(q1.data)
+                        .quoted(entry.getKey().data)
+                        .quoted(structs.coefficientType.name())
+                        .cell(structs.coefficientValue)
+                        .cell(structs.coefficientPValue)
+                        .cell(structs.numSamplesA)
+                        .cell(structs.numSamplesB)
+                        .endRow();
             }
         }
-        return "question1\tquestion2\tcoefficient\tvalue\tpvalue\tnumquestion1\tnumquestion2\n" +
-        StringUtils.join(biases, "\n");
+    }
+
+    @Override
+    public void print(TableWriter out) throws IOException {
+        out.raw("Order Biases\n" +
+                "Num Imbalances: " + this.numImbalances + "\n" +
+                "Num Comparisons: " + this.numComparisons + "\n");
+        tabularize(out);
     }
 
     @Override
     public java.lang.String toString()
     {
-        return "Order Biases\n" +
-                "Num Imbalances: " + this.numImbalances + "\n" +
-                "Num Comparisons: " + this.numComparisons + "\n" +
-                tabularize() + "\n";
+        return TableWriter.printed(this);
     }
 
     @Override
     public java.lang.String jsonize() throws SurveyException
     {
-        return BiasStruct.jsonize(this.biases);
+        return JsonWriter.toString(this);
+    }
+
+    @Override
+    public void write(JsonWriter out) throws SurveyException, IOException
+    {
+        BiasStruct.write(this.biases, out);
     }
 }
@@ -1,25 +1,30 @@
 package edu.umass.cs.surveyman.output;
 
 import edu.umass.cs.surveyman.SurveyMan;
+import edu.umass.cs.surveyman.analyses.IQuestionResponse;
 import edu.umass.cs.surveyman.analyses.SurveyResponse;
 import edu.umass.cs.surveyman.qc.CoefficentsAndTests;
+import edu.umass.cs.surveyman.qc.ContingencyTable;
 import edu.umass.cs.surveyman.qc.QCMetrics;
+import edu.umass.cs.surveyman.qc.RankTests;
 import edu.umass.cs.surveyman.survey.Block;
 import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.SurveyDatum;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import edu.umass.cs.surveyman.utils.Jsonable;
 import edu.umass.cs.surveyman.utils.Tabularable;
-import org.apache.commons.lang3.StringUtils;
+import edu.umass.cs.surveyman.utils.TableWriter;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 public class WordingBiasStruct extends BiasStruct implements Jsonable, Tabularable {
 
@@ -36,19 +41,85 @@ public class WordingBiasStruct extends BiasStruct implements Jsonable, Tabularab
     }
 
 
-    private static Set<Set<Question>> getAllVariants(Survey survey)
-    {
-        Set<Set<Question>> allVariants = new HashSet<>();
-        for (Question question : survey.questions) {
-            List<Question> variants = question.getVariants();
-            if (variants.size() > 1) {
-                allVariants.add(new HashSet<>(variants));
+    /**
+     * The answers to the variant questions of one block, counted by option ordinal. Variants list their options in the
+     * same order, so an option's ordinal -- its position among its question's options, by source row -- is the same for
+     * every option in its equivalence class. The mapping from options to ordinals is built once, and a single pass over
+     * the responses then fills the count matrix for every variant at once.
+     */
+    static class VariantCounts {
+
+        final Block block;
+        /**
+         * The block's questions, in block order.
+         */
+        final List<Question> variants;
+        // ordinals.get(v) maps each option of variant v to its ordinal.
+        private final List<Map<SurveyDatum, Integer>> ordinals = new ArrayList<>();
+        // ranks[v][o] is the rank of variant v's option o, counted from v's own source row.
+        private final double[][] ranks;
+        /**
+         * counts[v][o] is the number of respondents who chose option o of variant v.
+         */
+        final int[][] counts;
+        /**
+         * The number of respondents who answered each variant.
+         */
+        final int[] totals;
+
+        VariantCounts(Block block) throws SurveyException {
+            this.block = block;
+            this.variants = new ArrayList<>(block.questions);
+            int n = variants.size();
+            this.ranks = new double[n][];
+            this.counts = new int[n][];
+            this.totals = new int[n];
+            for (int v = 0; v < n; v++) {
+                Question q = variants.get(v);
+                // sort by their source rows
+                SurveyDatum[] options = q.getOptListByIndex();
+                Arrays.sort(options);
+                Map<SurveyDatum, Integer> ordinal = new HashMap<>();
+                ranks[v] = new double[options.length];
+                for (int o = 0; o < options.length; o++) {
+                    ordinal.put(options[o], o);
+                    ranks[v][o] = options[o].getSourceRow() - q.getSourceRow() + 1;
+                }
+                ordinals.add(ordinal);
+                counts[v] = new int[options.length];
             }
         }
-        return allVariants;
+
+        void add(int v, SurveyDatum answer) {
+            Integer o = ordinals.get(v).get(answer);
+            if (o == null)
+                return;
+            counts[v][o]++;
+            totals[v]++;
+        }
+
+        /**
+         * @return The Mann-Whitney test of the answers to variants v1 and v2.
+         */
+        ImmutablePair<Double, Double> mannWhitney(int v1, int v2) {
+            return RankTests.mannWhitney(ranks[v1], counts[v1], ranks[v2], counts[v2]);
+        }
+
+        /**
+         * @return The answers to variants v1 and v2, tabulated by ordinal.
+         */
+        ContingencyTable contingencyTable(int v1, int v2) {
+            int rows = Math.max(counts[v1].length, counts[v2].length);
+            int[] table = new int[rows * 2];
+            for (int o = 0; o < counts[v1].length; o++)
+                table[2 * o] = counts[v1][o];
+            for (int o = 0; o < counts[v2].length; o++)
+                table[2 * o + 1] = counts[v2][o];
+            return new ContingencyTable(rows, 2, table);
+        }
     }
 
-    private static boolean variantSetIsAnalyzable(Set<Question> variantSet)
+    private static boolean variantSetIsAnalyzable(Collection<Question> variantSet)
     {
         for (Question q : variantSet) {
             if (!QCMetrics.isAnalyzable(q)) return false;
@@ -56,7 +127,7 @@ public class WordingBiasStruct extends BiasStruct implements Jsonable, Tabularab
         return true;
     }
 
-    private static boolean variantSetIsExclusive(Set<Question> variantSet)
+    private static boolean variantSetIsExclusive(Collection<Question> variantSet)
     {
         for (Question q : variantSet) {
             if (!q.exclusive) return false;
@@ -64,6 +135,45 @@ public class WordingBiasStruct extends BiasStruct implements Jsonable, Tabularab
         return true;
     }
 
+    /**
+     * Counts the answers to every analyzable, exclusive variant block in one pass over the responses. Only the first
+     * answer to each question in a response is counted.
+     */
+    static List<VariantCounts> countVariants(Survey survey, List<? extends SurveyResponse> responses)
+            throws SurveyException
+    {
+        List<VariantCounts> blocks = new ArrayList<>();
+        Map<Question, Integer> slots = new HashMap<>();
+        List<VariantCounts> slotBlocks = new ArrayList<>();
+        List<Integer> slotVariants = new ArrayList<>();
+        for (Block b : survey.getAllBlocks()) {
+            if (!b.getBranchParadigm().equals(Block.BranchParadigm.ALL) || b.questions.size() < 2)
+                continue;
+            if (! variantSetIsAnalyzable(b.questions)) continue;
+            if (! variantSetIsExclusive(b.questions)) continue;
+            VariantCounts counts = new VariantCounts(b);
+            blocks.add(counts);
+            for (int v = 0; v < counts.variants.size(); v++) {
+                slots.put(counts.variants.get(v), slotBlocks.size());
+                slotBlocks.add(counts);
+                slotVariants.add(v);
+            }
+        }
+        int[] mark = new int[slotBlocks.size()];
+        int stamp = 0;
+        for (SurveyResponse sr : responses) {
+            stamp++;
+            for (IQuestionResponse qr : sr.getAllResponses()) {
+                Integer slot = slots.get(qr.getQuestion());
+                if (slot == null || mark[slot] == stamp || qr.getOpts().isEmpty())
+                    continue;
+                mark[slot] = stamp;
+                slotBlocks.get(slot).add(slotVariants.get(slot), qr.getOpts().get(0).c);
+            }
+        }
+        return blocks;
+    }
+
     public static boolean imbalanced(Question q1, Question q2, int numq1answers, int numq2answers)
     {
         double ratio = numq1answers / (double) numq2answers;
@@ -74,7 +184,8 @@ public class WordingBiasStruct extends BiasStruct implements Jsonable, Tabularab
     }
 
     /**
-     * Searches for significant wording biases observed in survey responses.
+     * Searches for significant wording biases observed in survey responses. The responses are counted once, and
+     * every pair of variants is then tested against the counts.
      * @param responses The list of actual or simulated responses to the survey.
      * @param alpha The cutoff used for determining whether the bias is significant.
      * @return A WordingBiasStruct object containing all of the values just computed.
@@ -82,79 +193,45 @@ public class WordingBiasStruct extends BiasStruct implements Jsonable, Tabularab
      */
     public static WordingBiasStruct makeStruct(QCMetrics qcMetrics, List<? extends SurveyResponse> responses, double alpha) throws SurveyException {
         WordingBiasStruct retval = new WordingBiasStruct(qcMetrics.survey, alpha);
-        for (Set<Question> variantSet : getAllVariants(qcMetrics.survey)) {
-            if (! variantSetIsAnalyzable(variantSet)) continue;
-            if (! variantSetIsExclusive(variantSet)) continue;
-            List<Question> variants = new ArrayList<>(variantSet);
-            for (int k = 0; k < variants.size() - 1; k++) {
-                Question q1 = variants.get(k);
-                for (int j = k + 1; j < variants.size(); j++) {
-                    Question q2 = variants.get(j);
-                    List<SurveyDatum> q1answers = new ArrayList<>();
-                    List<SurveyDatum> q2answers = new ArrayList<>();
-                    for (SurveyResponse sr : responses) {
-                        if (sr.hasResponseForQuestion(q1))
-                            q1answers.add(sr.getResponseForQuestion(q1).getOpts().get(0).c);
-                        if (sr.hasResponseForQuestion(q2))
-                            q2answers.add(sr.getResponseForQuestion(q2).getOpts().get(0).c);
-                    }
-                    if (imbalanced(q1, q2, q1answers.size(), q2answers.size())) {
+        for (VariantCounts counts : countVariants(qcMetrics.survey, responses)) {
+            for (int k = 0; k < counts.variants.size() - 1; k++) {
+                Question q1 = counts.variants.get(k);
+                for (int j = k + 1; j < counts.variants.size(); j++) {
+                    Question q2 = counts.variants.get(j);
+                    int numq1answers = counts.totals[k], numq2answers = counts.totals[j];
+                    if (imbalanced(q1, q2, numq1answers, numq2answers)) {
                         retval.numImbalances++; continue;
                     } else {
                         retval.numComparisons++;
                     }
                     if (q1.ordered && q2.ordered) {
-                        ImmutablePair<Double, Double> pair = QCMetrics.mannWhitney(q1, q2, q1answers, q2answers);
-                        retval.update(q1.block, q1, q2, new CorrelationStruct(
-                                            CoefficentsAndTests.U,
-                                            pair.getLeft(),
-                                            pair.getRight(),
-                                            q1,
-                                            q2,
-                                            q1answers.size(),
-                                            q2answers.size())
-                            );
-                        } else {
-                            // sort by their source rows
-                            List<SurveyDatum> categoryA = Arrays.asList(q1.getOptListByIndex());
-                            List<SurveyDatum> categoryB = Arrays.asList(q2.getOptListByIndex());
-                            Collections.sort(categoryA);
-                            Collections.sort(categoryB);
-                            int[][] contingencyTable = new int[categoryA.size()][2];
-                            // initialize the contingency table
-                            for (int i = 0 ; i < categoryA.size() ; i++) {
-                                contingencyTable[i][0] = 0;
-                                contingencyTable[i][1] = 0;
-                            }
-
-                            for (SurveyDatum c : q1answers)
-                                contingencyTable[categoryA.indexOf(c)][0] += 1;
-                            for (SurveyDatum c : q2answers) {
-                                SurveyDatum c_ = q1.getVariantOption(q2, c);
-                                System.out.println( c.toString() + " "
-                                        + categoryB.indexOf(c) + " "
-                                        + c_.toString() + " "
-                                        + categoryA.indexOf(c_));
-                                contingencyTable[categoryB.indexOf(c)][1] += 1;
-                            }
-
-                            int df = categoryA.size() - 1;
-                            double testStatistic = QCMetrics.chiSquared(contingencyTable, categoryA.toArray(), new List[]{q1answers, q2answers});
-                            double pvalue = QCMetrics.chiSquareTest(df, testStatistic);
-
-                            retval.update(q1.block, q1, q2, new CorrelationStruct(
-                                    CoefficentsAndTests.CHI,
-                                    testStatistic,
-                                    pvalue,
-                                    q1,
-                                    q2,
-                                    q1answers.size(),
-                                    q2answers.size())
-                            );
-                        }
+                        ImmutablePair<Double, Double> pair = counts.mannWhitney(k, j);
+                        retval.update(counts.block, q1, q2, new CorrelationStruct(
+                                CoefficentsAndTests.U,
+                                pair.getLeft(),
+                                pair.getRight(),
+                                q1,
+                                q2,
+                                numq1answers,
+                                numq2answers)
+                        );
+                    } else {
+                        ContingencyTable table = counts.contingencyTable(k, j);
+                        double testStatistic = table.chiSquared();
+                        double pvalue = ContingencyTable.chiSquaredPValue(table.degreesOfFreedom(), testStatistic);
+                        retval.update(counts.block, q1, q2, new CorrelationStruct(
+                                CoefficentsAndTests.CHI,
+                                testStatistic,
+                                pvalue,
+                                q1,
+                                q2,
+                                numq1answers,
+                                numq2answers)
+                        );
                     }
                 }
             }
+        }
         return retval;
     }
 
@@ -162,6 +239,25 @@ public class WordingBiasStruct extends BiasStruct implements Jsonable, Tabularab
         this.biases.get(b).get(q1).put(q2, correlationStruct);
     }
 
+    /**
+     * @param b A variant block.
+     * @param q1 A variant in the block.
+     * @param q2 A later variant in the block.
+     * @return The test of whether the answers to q1 and q2 differ; an empty struct if the pair was too imbalanced to
+     * test.
+     */
+    public CorrelationStruct get(Block b, Question q1, Question q2) {
+        return this.biases.get(b).get(q1).get(q2);
+    }
+
+    public int getNumImbalances() {
+        return numImbalances;
+    }
+
+    public int getNumComparisons() {
+        return numComparisons;
+    }
+
     private boolean flagCondition(CorrelationStruct struct) {
 //        double ratio = struct.numSamplesA / (double) struct.numSamplesB;
 //        return struct.coefficientValue > 0.0 &&
@@ -176,44 +272,57 @@ public class WordingBiasStruct extends BiasStruct implements Jsonable, Tabularab
     @Override
     public java.lang.String jsonize() throws SurveyException
     {
-        return BiasStruct.jsonize(biases);
+        return JsonWriter.toString(this);
+    }
+
+    @Override
+    public void write(JsonWriter out) throws SurveyException, IOException
+    {
+        BiasStruct.write(this.biases, out);
     }
 
     @Override
     public java.lang.String tabularize() {
-        List<java.lang.String> biases = new ArrayList<>();
+        return TableWriter.toString(this);
+    }
+
+    @Override
+    public void tabularize(TableWriter out) throws IOException {
         for (QuestionCorrelationStruct variants: this.biases.values()) {
-            for (Question q1 : variants.keySet()) {
-                for (Question q2: variants.get(q1).keySet()) {
-                    CorrelationStruct structs = variants.get(q1).get(q2);
-                    if (structs.empty)
+            for (Map.Entry<Question, InnerCorrelationStruct> row : variants.entrySet()) {
+                Question q1 = row.getKey();
+                for (Map.Entry<Question, CorrelationStruct> entry : row.getValue().entrySet()) {
+                    CorrelationStruct structs = entry.getValue();
+                    if (structs.empty || !flagCondition(structs))
                         continue;
-                    java.lang.String data = java.lang.String.format(
-                            "\"%s\"\t\"%s\"\t%s\t%f\t%f\t%d\t%d",
-                            q1.data,
-                            q2.data,
-                            structs.coefficientType.name(),
-                            structs.coefficientValue,
-                            structs.coefficientPValue,
-                            structs.numSamplesA,
-                            structs.numSamplesB);
-                    if (flagCondition(structs))
-                        biases.add(data);
+                    out.quoted(q1.data)
+                            .quoted(entry.getKey().data)
+                            .cell(structs.coefficientType.name())
+                            .cell(structs.coefficientValue)
+                            .cell(structs.coefficientPValue)
+                            .cell(structs.numSamplesA)
+                            .cell(structs.numSamplesB)
+                            .endRow();
                 }
             }
         }
-        return StringUtils.join(biases, "\n");
     }
 
     @Override
-    public java.lang.String toString()
+    public void print(TableWriter out) throws IOException
     {
-        return "Wording Biases\n" +
+        out.raw("Wording Biases\n" +
                 "Num Imbalances: " + this.numImbalances + "\n" +
-                "Num Comparisons: " + this.numComparisons + "\n" +
-                "question1\tquestion2\tcoefficient\tvalue\tpvalue\tnumq1q2\tnumq2q1\n" +
-                 this.tabularize() +
-                "\n";
+                "Num Comparisons: " + this.numComparisons + "\n");
+        out.cell("question1").cell("question2").cell("coefficient").cell("value").cell("pvalue")
+                .cell("numq1q2").cell("numq2q1").endRow();
+        tabularize(out);
+    }
+
+    @Override
+    public java.lang.String toString()
+    {
+        return TableWriter.printed(this);
     }
 
 
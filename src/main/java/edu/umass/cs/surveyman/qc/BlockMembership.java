@@ -0,0 +1,94 @@
+package edu.umass.cs.surveyman.qc;
+
+import edu.umass.cs.surveyman.analyses.IQuestionResponse;
+import edu.umass.cs.surveyman.analyses.SurveyResponse;
+import edu.umass.cs.surveyman.input.AbstractParser;
+import edu.umass.cs.surveyman.survey.Block;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
+
+import java.util.*;
+
+/**
+ * Which top-level block each question belongs to, and how many questions a respondent answers in each block, computed
+ * once per survey. Only the top-level blocks that lie on some path through the survey are numbered; questions in other
+ * blocks, and custom questions, belong to no block.
+ */
+public final class BlockMembership {
+
+    /**
+     * The top-level blocks on the survey's paths, numbered in the order of {@link PathStatistics#getBlocks()}.
+     */
+    public final List<Block> blocks;
+    // Block numbers by question id.
+    private final Map<String, Integer> blockOf = new HashMap<>();
+    private final int[] blockSize;
+    private final Map<String, Integer> questionIndex = new HashMap<>();
+
+    public BlockMembership(Survey survey) {
+        this(survey, new PathStatistics(survey).getBlocks());
+    }
+
+    BlockMembership(Survey survey, List<Block> blocksOnPaths) {
+        Map<Block, Integer> number = new LinkedHashMap<>();
+        for (Block block : blocksOnPaths)
+            if (!number.containsKey(block))
+                number.put(block, number.size());
+        this.blocks = Collections.unmodifiableList(new ArrayList<>(number.keySet()));
+        this.blockSize = new int[blocks.size()];
+        for (int b = 0; b < blockSize.length; b++)
+            blockSize[b] = blocks.get(b).blockSize();
+        for (int i = 0; i < survey.questions.size(); i++) {
+            Question q = survey.questions.get(i);
+            if (q.id.equals(AbstractParser.CUSTOM_ID))
+                continue;
+            questionIndex.put(q.id, i);
+            if (q.block == null)
+                continue;
+            Integer b = number.get(q.block.getFarthestContainingBlock());
+            if (b != null)
+                blockOf.put(q.id, b);
+        }
+    }
+
+    /**
+     * @return The number of the question's top-level block, or -1 if it belongs to none.
+     */
+    public int blockOf(Question question) {
+        Integer b = blockOf.get(question.id);
+        return b == null ? -1 : b;
+    }
+
+    /**
+     * @return The number of questions a respondent answers in the numbered block.
+     */
+    public int blockSize(int block) {
+        return blockSize[block];
+    }
+
+    /**
+     * @return The question's index in {@link Survey#questions}, or -1 if it is not in the survey.
+     */
+    public int questionIndex(Question question) {
+        Integer i = questionIndex.get(question.id);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Determines whether the respondent answered every question in the given question's top-level block, in one pass
+     * over the response.
+     * @param question A question the respondent answered.
+     * @param surveyResponse The response.
+     * @return True if the question's block is complete; false if it is not, or if the question belongs to no block.
+     */
+    public boolean isFinalQuestion(Question question, SurveyResponse surveyResponse) {
+        int block = blockOf(question);
+        if (block < 0)
+            return false;
+        int answered = 0;
+        for (IQuestionResponse qr : surveyResponse.getAllResponses())
+            if (blockOf(qr.getQuestion()) == block)
+                answered++;
+        return answered == blockSize[block];
+    }
+}
@@ -0,0 +1,137 @@
+package edu.umass.cs.surveyman.qc;
+
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+
+/**
+ * A two-way contingency table of counts, stored row-major in a flat array, with its row and column totals computed
+ * once on construction. Tables are immutable, so they can be shared across threads.
+ *
+ * <p>Empty rows and columns are kept: they count towards the degrees of freedom, but contribute nothing to the
+ * statistics.
+ */
+public final class ContingencyTable {
+
+    // Chi-squared distributions by degrees of freedom. Distributions are immutable once built, so a racing thread at
+    // worst builds a duplicate.
+    private static volatile ChiSquaredDistribution[] distributions = new ChiSquaredDistribution[16];
+
+    public final int rows;
+    public final int cols;
+    /**
+     * The sum of all the counts.
+     */
+    public final long n;
+    private final int[] counts;
+    private final long[] rowTotals;
+    private final long[] colTotals;
+
+    /**
+     * Wraps a flat table. The array is not copied, and must not change afterwards.
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     * @param counts The counts, row-major: cell (r, c) is {@code counts[r * cols + c]}.
+     */
+    public ContingencyTable(int rows, int cols, int[] counts) {
+        if (counts.length != rows * cols)
+            throw new IllegalArgumentException(String.format("A %d x %d table needs %d counts, not %d.",
+                    rows, cols, rows * cols, counts.length));
+        this.rows = rows;
+        this.cols = cols;
+        this.counts = counts;
+        this.rowTotals = new long[rows];
+        this.colTotals = new long[cols];
+        long n = 0;
+        for (int r = 0, i = 0; r < rows; r++)
+            for (int c = 0; c < cols; c++, i++) {
+                rowTotals[r] += counts[i];
+                colTotals[c] += counts[i];
+                n += counts[i];
+            }
+        this.n = n;
+    }
+
+    /**
+     * Copies a table of rows. The rows must all have the same length.
+     */
+    public static ContingencyTable of(int[][] table) {
+        int rows = table.length, cols = rows == 0 ? 0 : table[0].length;
+        int[] counts = new int[rows * cols];
+        for (int r = 0; r < rows; r++)
+            System.arraycopy(table[r], 0, counts, r * cols, cols);
+        return new ContingencyTable(rows, cols, counts);
+    }
+
+    public int get(int r, int c) {
+        return counts[r * cols + c];
+    }
+
+    public long rowTotal(int r) {
+        return rowTotals[r];
+    }
+
+    public long colTotal(int c) {
+        return colTotals[c];
+    }
+
+    public int degreesOfFreedom() {
+        return (rows - 1) * (cols - 1);
+    }
+
+    private double expected(int r, int c) {
+        return rowTotals[r] * colTotals[c] / (double) n;
+    }
+
+    /**
+     * @return Pearson's chi-squared statistic. Cells with no expected count are skipped.
+     */
+    public double chiSquared() {
+        double testStatistic = 0.0;
+        for (int r = 0, i = 0; r < rows; r++)
+            for (int c = 0; c < cols; c++, i++) {
+                double eij = expected(r, c);
+                if (eij == 0.0)
+                    continue;
+                double d = counts[i] - eij;
+                testStatistic += d * d / eij;
+            }
+        return testStatistic;
+    }
+
+    /**
+     * @return Cramer's V, or NaN if the table is empty or has a single row or column.
+     */
+    public double cramersV() {
+        return Math.sqrt((chiSquared() / n) / Math.min(rows - 1, cols - 1));
+    }
+
+    /**
+     * @return The chi-squared distribution with the given degrees of freedom, shared across calls.
+     */
+    static ChiSquaredDistribution distribution(int df) {
+        ChiSquaredDistribution[] cache = distributions;
+        if (df < cache.length && cache[df] != null)
+            return cache[df];
+        ChiSquaredDistribution chi = new ChiSquaredDistribution(df);
+        synchronized (ContingencyTable.class) {
+            cache = distributions;
+            if (df >= cache.length) {
+                ChiSquaredDistribution[] grown = new ChiSquaredDistribution[Math.max(df + 1, 2 * cache.length)];
+                System.arraycopy(cache, 0, grown, 0, cache.length);
+                cache = grown;
+            }
+            if (cache[df] == null)
+                cache[df] = chi;
+            distributions = cache;
+            return cache[df];
+        }
+    }
+
+    /**
+     * @return The probability of a chi-squared statistic at least this large under independence.
+     */
+    public static double chiSquaredPValue(int df, double testStatistic) {
+        if (df <= 0 || Double.isNaN(testStatistic))
+            return Double.NaN;
+        return 1.0 - distribution(df).cumulativeProbability(testStatistic);
+    }
+}
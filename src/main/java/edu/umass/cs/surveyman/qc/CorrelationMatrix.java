@@ -0,0 +1,244 @@
+package edu.umass.cs.surveyman.qc;
+
+import edu.umass.cs.surveyman.SurveyMan;
+import edu.umass.cs.surveyman.analyses.IQuestionResponse;
+import edu.umass.cs.surveyman.analyses.SurveyResponse;
+import edu.umass.cs.surveyman.output.CorrelationStruct;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.SurveyDatum;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.Tuple;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Correlations between the answers to every pair of questions that can be tested (see
+ * {@link QCMetrics#validToTestCorrelation(Question, Question)}). Pairs of ordered questions get Spearman's rho; all
+ * other pairs get Cramer's V.
+ *
+ * <p>Each response is first encoded once, as the option ordinals of the questions it answers. The contingency table
+ * of every pair is then filled by counting co-occurrences within each response, so a pair costs nothing for the
+ * responses that skip either of its questions. Tables are owned by their row question, and rows are dealt out to
+ * shards that count and test concurrently without sharing any counters.
+ */
+public final class CorrelationMatrix {
+
+    /**
+     * The questions that can be correlated, in survey order.
+     */
+    public final List<Question> questions;
+    /**
+     * The number of pairs that were tested.
+     */
+    public final int numComparisons;
+    /**
+     * The number of pairs skipped because no response answered both questions.
+     */
+    public final int numInsufficientData;
+    // cells[a][b - a - 1] is the correlation of questions a and b, or null if the pair was not tested.
+    private final CorrelationStruct[][] cells;
+
+    private CorrelationMatrix(List<Question> questions, CorrelationStruct[][] cells, int numComparisons,
+                              int numInsufficientData) {
+        this.questions = Collections.unmodifiableList(questions);
+        this.cells = cells;
+        this.numComparisons = numComparisons;
+        this.numInsufficientData = numInsufficientData;
+    }
+
+    /**
+     * The responses, encoded as parallel arrays of question indices, in increasing order, and option ordinals.
+     */
+    private static final class Encoded {
+        final int[][] questions;
+        final int[][] ordinals;
+
+        Encoded(int n) {
+            this.questions = new int[n][];
+            this.ordinals = new int[n][];
+        }
+    }
+
+    /**
+     * Computes the matrix on a temporary thread pool with one thread per processor.
+     */
+    public static CorrelationMatrix compute(Survey survey, List<? extends SurveyResponse> responses)
+            throws SurveyException
+    {
+        return compute(survey, responses, null);
+    }
+
+    /**
+     * Computes the matrix, counting and testing on the input executor.
+     * @param survey The survey the responses answer.
+     * @param responses Actual or simulated responses. Only the first answer to each question is counted.
+     * @param executor The executor to run shards on, or null for a temporary pool; see {@link Shards}.
+     * @return The correlation of every pair of questions that can be tested.
+     * @throws SurveyException
+     */
+    public static CorrelationMatrix compute(Survey survey, List<? extends SurveyResponse> responses,
+                                            ExecutorService executor)
+            throws SurveyException
+    {
+        final List<Question> questions = new ArrayList<>();
+        for (Question q : survey.questions)
+            if (QCMetrics.isAnalyzable(q) && q.exclusive && !q.freetext && q.options.size() > 0)
+                questions.add(q);
+        final int n = questions.size();
+
+        // Options by ordinal, in source order, so that ranks follow the order the options were written in.
+        final SurveyDatum[][] options = new SurveyDatum[n][];
+        Map<Question, Integer> questionIndex = new HashMap<>();
+        List<Map<SurveyDatum, Integer>> optionIndex = new ArrayList<>();
+        for (int a = 0; a < n; a++) {
+            Question q = questions.get(a);
+            questionIndex.put(q, a);
+            options[a] = q.getOptListByIndex();
+            Arrays.sort(options[a]);
+            Map<SurveyDatum, Integer> index = new HashMap<>();
+            for (int o = 0; o < options[a].length; o++)
+                index.put(options[a][o], o);
+            optionIndex.add(index);
+        }
+
+        final boolean[][] valid = new boolean[n][];
+        // tables[a] holds the contingency tables of a against every b > a, one after another, each row-major.
+        final int[][] tables = new int[n][];
+        final int[][] offsets = new int[n][];
+        for (int a = 0; a < n; a++) {
+            valid[a] = new boolean[n - a - 1];
+            offsets[a] = new int[n - a - 1];
+            int size = 0;
+            for (int b = a + 1; b < n; b++) {
+                valid[a][b - a - 1] = QCMetrics.validToTestCorrelation(questions.get(a), questions.get(b));
+                offsets[a][b - a - 1] = size;
+                size += options[a].length * options[b].length;
+            }
+            tables[a] = new int[size];
+        }
+
+        final Encoded encoded = encode(responses, questionIndex, optionIndex);
+
+        final CorrelationStruct[][] cells = new CorrelationStruct[n][];
+        for (int a = 0; a < n; a++)
+            cells[a] = new CorrelationStruct[n - a - 1];
+        // Each shard counts into, then tests, only the tables of the rows it was dealt.
+        Shards.run(Shards.count(n), new Shards.Shard<Void>() {
+            @Override
+            public Void run(int shard, int shards) {
+                for (int r = 0; r < encoded.questions.length; r++) {
+                    int[] qs = encoded.questions[r], os = encoded.ordinals[r];
+                    for (int i = 0; i < qs.length; i++) {
+                        int a = qs[i];
+                        if (a % shards != shard)
+                            continue;
+                        int[] table = tables[a];
+                        int row = os[i];
+                        for (int j = i + 1; j < qs.length; j++) {
+                            int b = qs[j];
+                            table[offsets[a][b - a - 1] + row * options[b].length + os[j]]++;
+                        }
+                    }
+                }
+                for (int a = shard; a < n; a += shards)
+                    for (int b = a + 1; b < n; b++) {
+                        if (!valid[a][b - a - 1])
+                            continue;
+                        int from = offsets[a][b - a - 1], size = options[a].length * options[b].length;
+                        ContingencyTable table = new ContingencyTable(options[a].length, options[b].length,
+                                Arrays.copyOfRange(tables[a], from, from + size));
+                        cells[a][b - a - 1] = test(questions.get(a), questions.get(b), table);
+                    }
+                return null;
+            }
+        }, executor);
+
+        int numComparisons = 0, numInsufficientData = 0;
+        for (int a = 0; a < n; a++)
+            for (int b = a + 1; b < n; b++) {
+                if (!valid[a][b - a - 1])
+                    continue;
+                if (cells[a][b - a - 1] == null) {
+                    SurveyMan.LOGGER.warn(String.format("No one answered both questions: [%s], [%s]",
+                            questions.get(a), questions.get(b)));
+                    numInsufficientData++;
+                } else numComparisons++;
+            }
+        return new CorrelationMatrix(questions, cells, numComparisons, numInsufficientData);
+    }
+
+    private static Encoded encode(List<? extends SurveyResponse> responses, Map<Question, Integer> questionIndex,
+                                  List<Map<SurveyDatum, Integer>> optionIndex)
+    {
+        Encoded encoded = new Encoded(responses.size());
+        int[] ordinal = new int[questionIndex.size()];
+        Arrays.fill(ordinal, -1);
+        List<Integer> answered = new ArrayList<>();
+        for (int r = 0; r < responses.size(); r++) {
+            answered.clear();
+            for (IQuestionResponse qr : responses.get(r).getAllResponses()) {
+                Integer a = questionIndex.get(qr.getQuestion());
+                if (a == null || ordinal[a] >= 0 || qr.getOpts().isEmpty())
+                    continue;
+                Integer o = optionIndex.get(a).get(qr.getOpts().get(0).c);
+                if (o == null)
+                    continue;
+                ordinal[a] = o;
+                answered.add(a);
+            }
+            Collections.sort(answered);
+            int[] qs = new int[answered.size()], os = new int[answered.size()];
+            for (int i = 0; i < qs.length; i++) {
+                qs[i] = answered.get(i);
+                os[i] = ordinal[qs[i]];
+                ordinal[qs[i]] = -1;
+            }
+            encoded.questions[r] = qs;
+            encoded.ordinals[r] = os;
+        }
+        return encoded;
+    }
+
+    /**
+     * @return The correlation of the pair, or null if no response answered both questions.
+     */
+    private static CorrelationStruct test(Question q1, Question q2, ContingencyTable table) {
+        if (table.n == 0)
+            return null;
+        int n = (int) table.n;
+        if (q1.ordered && q2.ordered)
+            return new CorrelationStruct(CoefficentsAndTests.RHO, QCMetrics.spearmansRho(table), -1., q1, q2, n, n);
+        Tuple<Double, Double> v = QCMetrics.cramersV(table);
+        return new CorrelationStruct(CoefficentsAndTests.V, v.fst, v.snd, q1, q2, n, n);
+    }
+
+    /**
+     * @return The correlation of the two questions, or null if the pair was not tested.
+     */
+    public CorrelationStruct get(Question q1, Question q2) {
+        int a = questions.indexOf(q1), b = questions.indexOf(q2);
+        if (a < 0 || b < 0 || a == b)
+            return null;
+        return a < b ? cells[a][b - a - 1] : cells[b][a - b - 1];
+    }
+
+    /**
+     * @return Every tested pair, keyed by the earlier question in the survey and then the later one.
+     */
+    public Map<Question, Map<Question, CorrelationStruct>> asMap() {
+        Map<Question, Map<Question, CorrelationStruct>> corrs = new HashMap<>();
+        for (int a = 0; a < cells.length; a++)
+            for (int b = a + 1; b < cells.length; b++) {
+                CorrelationStruct cell = cells[a][b - a - 1];
+                if (cell == null)
+                    continue;
+                Map<Question, CorrelationStruct> row = corrs.get(questions.get(a));
+                if (row == null)
+                    corrs.put(questions.get(a), row = new HashMap<>());
+                row.put(questions.get(b), cell);
+            }
+        return corrs;
+    }
+}
@@ -76,14 +76,25 @@ public class Interpreter {
     private Block branchTo = null;
     private Map<Question, List<SurveyDatum>> responseMap = new HashMap<>();
     private List<Question> questionList = new ArrayList<>();
-    private MersenneRandom random = new MersenneRandom();
+    private final MersenneRandom random;
 
     /**
      * Constructs an interpreter for a given survey.
      * @param survey The survey we would like a respondent to take.
      */
     public Interpreter(Survey survey) {
+        this(survey, new MersenneRandom());
+    }
+
+    /**
+     * Constructs an interpreter for a given survey, drawing every block, question, and option order from the supplied
+     * source. Interpreters given identically seeded sources present the survey identically.
+     * @param survey The survey we would like a respondent to take.
+     * @param random The source of randomness.
+     */
+    public Interpreter(Survey survey, MersenneRandom random) {
         this.survey = survey;
+        this.random = random;
         this.topLevelBlockStack = new ArrayList<>(getShuffledTopLevel(survey));
         assert(!this.topLevelBlockStack.isEmpty());
         this.questionStack = new ArrayList<>(getQuestionsForBlock(topLevelBlockStack.remove(0)));
@@ -160,7 +171,7 @@ public class Interpreter {
         } else if (top.equals(branchTo)) {
             questionStack = getQuestionsForBlock(topLevelBlockStack.remove(0));
             branchTo = null;
-            return questionStack.get(0);
+            return questionStack.remove(0);
         } else {
             topLevelBlockStack.remove(0);
             return nextQ();
@@ -227,7 +238,7 @@ public class Interpreter {
     }
 
     private List<Block> getShuffledTopLevel(Survey survey) {
-        return Arrays.asList(Block.shuffle(survey.topLevelBlocks));
+        return Arrays.asList(Block.shuffle(survey.topLevelBlocks, random));
     }
 
     /**
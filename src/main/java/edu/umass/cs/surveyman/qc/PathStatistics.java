@@ -0,0 +1,258 @@
+package edu.umass.cs.surveyman.qc;
+
+import edu.umass.cs.surveyman.survey.Block;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.SurveyDatum;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+
+import java.util.*;
+
+/**
+ * Statistics over every path through a survey, computed by dynamic programming over its top-level blocks rather than
+ * by enumerating the paths, whose number can grow exponentially with the number of branch blocks.
+ *
+ * <p>The paths are those of {@link SurveyDAG#getPaths(Survey)}: the fixed top-level blocks are visited in order,
+ * except that a block with a branch question continues at one of its branch destinations, and every floating
+ * (randomized) top-level block is visited once, wherever it lands. A quantity that adds up over the blocks of a path
+ * -- see {@link Weight} -- can then be minimized, maximized, or averaged over the paths in time linear in the number
+ * of blocks and branch edges.
+ */
+public final class PathStatistics {
+
+    /**
+     * A quantity contributed by each top-level block a respondent visits.
+     */
+    public interface Weight {
+        double of(Block block);
+    }
+
+    /**
+     * The number of questions a respondent answers in the block and its sub-blocks.
+     */
+    public static final Weight LENGTH = new Weight() {
+        @Override
+        public double of(Block block) {
+            return block.blockSize();
+        }
+    };
+
+    /**
+     * The most entropy, in bits, that the answers to the block and its sub-blocks can carry: the sum over its
+     * questions of log2 of the number of options. Of a set of variants, only the largest counts, since a respondent
+     * sees one of them.
+     */
+    public static final Weight MAX_ENTROPY = new Weight() {
+        @Override
+        public double of(Block block) {
+            double entropy = 0.0;
+            if (block.getBranchParadigm() == Block.BranchParadigm.ALL) {
+                for (Question q : block.questions)
+                    entropy = Math.max(entropy, QCMetrics.maxEntropyOneQuestion(q));
+            } else entropy = QCMetrics.maxEntropyQuestionList(block.questions);
+            for (Block b : block.subBlocks)
+                entropy += of(b);
+            return entropy;
+        }
+    };
+
+    /**
+     * The fixed top-level blocks, in survey order.
+     */
+    private final List<Block> fixed;
+    /**
+     * The floating top-level blocks.
+     */
+    private final List<Block> floating;
+    // successors[i] lists the blocks a respondent may go to after fixed block i; fixed.size() stands for the end.
+    private final int[][] successors;
+    // probabilities[i][k] is the chance that a respondent choosing uniformly among the branch question's options goes
+    // to successors[i][k].
+    private final double[][] probabilities;
+    // complete[i] holds if some path from fixed block i reaches the end.
+    private final boolean[] complete;
+    // onPath[i] holds if fixed block i lies on some path through the survey.
+    private final boolean[] onPath;
+
+    /**
+     * The number of paths through the survey, or {@link Long#MAX_VALUE} if there are more than that.
+     */
+    public final long numPaths;
+
+    public PathStatistics(Survey survey) {
+        Map<Boolean, List<Block>> partitionedBlocks = Interpreter.partitionBlocks(survey);
+        this.floating = partitionedBlocks.get(true);
+        List<Block> nonrandomizableBlocks = partitionedBlocks.get(false);
+        Collections.sort(nonrandomizableBlocks);
+        this.fixed = Block.getSorted(nonrandomizableBlocks);
+        int n = fixed.size();
+        Map<Block, Integer> index = new HashMap<>();
+        for (int i = 0; i < n; i++)
+            index.put(fixed.get(i), i);
+
+        this.successors = new int[n][];
+        this.probabilities = new double[n][];
+        for (int i = 0; i < n; i++) {
+            Block block = fixed.get(i);
+            if (!block.hasBranchQuestion()) {
+                successors[i] = new int[]{i + 1};
+                probabilities[i] = new double[]{1.0};
+                continue;
+            }
+            // A respondent picks each option equally often; options without a destination go on to the next block.
+            // Destinations that come before this block are not on any path.
+            Map<Integer, Integer> choices = new TreeMap<>();
+            for (Block dest : block.getBranchDestinations()) {
+                int j = destination(index, i, dest);
+                if (j > i)
+                    choices.put(j, 0);
+            }
+            for (SurveyDatum option : block.branchQ.options.values()) {
+                int j = destination(index, i, branchDestination(block.branchQ, option));
+                if (j > i)
+                    choices.put(j, choices.containsKey(j) ? choices.get(j) + 1 : 1);
+            }
+            successors[i] = new int[choices.size()];
+            probabilities[i] = new double[choices.size()];
+            int k = 0;
+            for (Map.Entry<Integer, Integer> e : choices.entrySet()) {
+                successors[i][k] = e.getKey();
+                probabilities[i][k++] = e.getValue();
+            }
+        }
+
+        // Count the paths, and find the blocks that can reach the end, from the last block back.
+        this.complete = new boolean[n + 1];
+        long[] paths = new long[n + 1];
+        complete[n] = true;
+        paths[n] = 1;
+        for (int i = n - 1; i >= 0; i--)
+            for (int j : successors[i])
+                if (complete[j]) {
+                    complete[i] = true;
+                    paths[i] = paths[i] + paths[j] < 0 ? Long.MAX_VALUE : paths[i] + paths[j];
+                }
+        // Normalize each block's branch probabilities over the destinations that can reach the end.
+        for (int i = 0; i < n; i++) {
+            double total = 0.0;
+            for (int k = 0; k < successors[i].length; k++)
+                if (complete[successors[i][k]])
+                    total += probabilities[i][k];
+            for (int k = 0; k < successors[i].length; k++)
+                probabilities[i][k] = complete[successors[i][k]] && total > 0 ? probabilities[i][k] / total : 0.0;
+        }
+        this.onPath = new boolean[n + 1];
+        if (n == 0 || complete[0]) {
+            onPath[0] = true;
+            for (int i = 0; i < n; i++)
+                if (onPath[i])
+                    for (int j : successors[i])
+                        if (complete[j])
+                            onPath[j] = true;
+        }
+        this.numPaths = n == 0 ? 1 : (complete[0] ? paths[0] : 0);
+    }
+
+    private static int destination(Map<Block, Integer> index, int i, Block dest) {
+        if (dest == null)
+            return i + 1;
+        Integer j = index.get(dest);
+        return j == null ? -1 : j;
+    }
+
+    private static Block branchDestination(Question branchQuestion, SurveyDatum option) {
+        try {
+            return branchQuestion.getBranchDest(option);
+        } catch (SurveyException e) {
+            // Only called on blocks that have a branch question.
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The top-level blocks that lie on some path through the survey: the fixed ones in survey order, then the
+     * floating ones.
+     */
+    public List<Block> getBlocks() {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < fixed.size(); i++)
+            if (onPath[i])
+                blocks.add(fixed.get(i));
+        blocks.addAll(floating);
+        return blocks;
+    }
+
+    private double floatingWeight(Weight weight) {
+        double total = 0.0;
+        for (Block block : floating)
+            total += weight.of(block);
+        return total;
+    }
+
+    /**
+     * @return The largest total weight of any path, or NaN if there are no paths.
+     */
+    public double max(Weight weight) {
+        return extreme(weight, true);
+    }
+
+    /**
+     * @return The smallest total weight of any path, or NaN if there are no paths.
+     */
+    public double min(Weight weight) {
+        return extreme(weight, false);
+    }
+
+    private double extreme(Weight weight, boolean max) {
+        if (numPaths == 0)
+            return Double.NaN;
+        int n = fixed.size();
+        double[] best = new double[n + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            if (!complete[i])
+                continue;
+            double rest = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            for (int j : successors[i])
+                if (complete[j])
+                    rest = max ? Math.max(rest, best[j]) : Math.min(rest, best[j]);
+            best[i] = weight.of(fixed.get(i)) + rest;
+        }
+        return best[0] + floatingWeight(weight);
+    }
+
+    /**
+     * @return The expected total weight of the path taken by a respondent who chooses uniformly among the options of
+     * every branch question, or NaN if there are no paths.
+     */
+    public double expected(Weight weight) {
+        if (numPaths == 0)
+            return Double.NaN;
+        int n = fixed.size();
+        double[] expected = new double[n + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            if (!complete[i])
+                continue;
+            double rest = 0.0;
+            for (int k = 0; k < successors[i].length; k++)
+                rest += probabilities[i][k] * expected[successors[i][k]];
+            expected[i] = weight.of(fixed.get(i)) + rest;
+        }
+        return expected[0] + floatingWeight(weight);
+    }
+
+    public int minimumPathLength() {
+        return numPaths == 0 ? 0 : (int) min(LENGTH);
+    }
+
+    public int maximumPathLength() {
+        return numPaths == 0 ? 0 : (int) max(LENGTH);
+    }
+
+    public double expectedPathLength() {
+        return expected(LENGTH);
+    }
+
+    public double maxEntropy() {
+        return numPaths == 0 ? 0.0 : max(MAX_ENTROPY);
+    }
+}
@@ -15,12 +15,9 @@ import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.SurveyDatum;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
-import edu.umass.cs.surveyman.utils.LookUpMap;
 import edu.umass.cs.surveyman.utils.MersenneRandom;
 import edu.umass.cs.surveyman.utils.Tuple;
 import org.apache.commons.lang3.tuple.ImmutablePair;
-import org.apache.commons.math3.distribution.ChiSquaredDistribution;
-import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
 
 import java.io.Serializable;
 import java.util.*;
@@ -43,8 +40,8 @@ public class QCMetrics implements Serializable {
         return Math.log(p) / Math.log(2.0);
     }
 
-    private SurveyDAG surveyDAG;
-    private List<SurveyPath> surveyPaths;
+    private PathStatistics pathStatistics;
+    private BlockMembership blockMembership;
     private ImmutablePair<Long, Double> sampleSize;
 
     /**
@@ -57,11 +54,11 @@ public class QCMetrics implements Serializable {
      */
     public AbstractClassifier classifier;
 
-    private static Set<Question> notAnalyzable = new HashSet<>();
+    private static final Set<Question> notAnalyzable = Collections.synchronizedSet(new HashSet<Question>());
 
     protected QCMetrics(Survey survey) {
-        this.surveyDAG = SurveyDAG.getDag(survey);
-        this.surveyPaths = SurveyDAG.getPaths(survey);
+        this.pathStatistics = new PathStatistics(survey);
+        this.blockMembership = new BlockMembership(survey, this.pathStatistics.getBlocks());
         this.survey = survey;
         this.classifier = null;
     }
@@ -77,48 +74,63 @@ public class QCMetrics implements Serializable {
         this(survey);
         this.classifier = classifier;
         // Compute the sample size we need to figure out false correlation
-        long maxSampleSize = 0;
-        // double p = 0.0;
         int maxWidth = 1;
-        int nonAnalyzableQuestions = 0;
-        long sampleSize = 0;
-        for (SurveyPath path: this.surveyPaths) {
-            // int pathLength = path.getPathLength();
-            // double p = pathLength * Math.log(0.95);
-            sampleSize = 0;
-            // double pp = 1.0;
-            for (Question question : path.getQuestionsFromPath()) {
+        int analyzableQuestions = 0;
+        for (Block block : this.blockMembership.blocks)
+            for (Question question : block.getAllQuestions())
+                if (isAnalyzable(question)) {
+                    analyzableQuestions++;
+                    maxWidth = Math.max(maxWidth, question.getVariants().size());
+                }
+        if (analyzableQuestions == 0) {
+            throw new UnanalyzableException("This survey has no analyzable questions.");
+        }
+        // The largest sample any one path needs, found without enumerating the paths.
+        long maxSampleSize = (long) this.pathStatistics.max(SAMPLE_SIZE);
+        assert maxSampleSize > 0 : String.format("Sample size cannot be less than 0: %d", maxSampleSize);
+        long sampleSize;
+        try {
+            sampleSize = Math.multiplyExact(Math.multiplyExact(maxSampleSize, this.pathStatistics.numPaths), maxWidth);
+        } catch (ArithmeticException e) {
+            sampleSize = Long.MAX_VALUE;
+        }
+        // Heavily branched surveys have more paths than a long holds; numPaths saturates, and so does this.
+        if (this.pathStatistics.numPaths == Long.MAX_VALUE)
+            sampleSize = Long.MAX_VALUE;
+        this.sampleSize = new ImmutablePair<>(sampleSize, null);
+    }
+
+    /**
+     * The number of responses needed to see every option of the block's analyzable questions enough times to test
+     * them. Of a set of variants, only the largest counts, since a respondent sees one of them.
+     */
+    private static final PathStatistics.Weight SAMPLE_SIZE = new PathStatistics.Weight() {
+        @Override
+        public double of(Block block) {
+            long sampleSize = 0;
+            for (Question question : block.questions)
                 if (isAnalyzable(question)) {
                     int n = question.getVariants().size();
-                    if (n > maxWidth) maxWidth = n;
                     int m = question.options.size();
                     int thisSampleSize = (int) Math.ceil(5 * m * n * Math.pow(0.95, 0.2));
-                    // pp *= 1.0 - (CombinatoricsUtils.binomialCoefficient(thisSampleSize, 5) * Math.pow(1.0 / m, 5));
-                    // p += (5.0 * Math.log(question.options.size()));
-                    sampleSize += thisSampleSize;
-                } else {
-                    notAnalyzable.add(question);
-                    nonAnalyzableQuestions++;
+                    sampleSize = block.getBranchParadigm() == Block.BranchParadigm.ALL
+                            ? Math.max(sampleSize, thisSampleSize)
+                            : sampleSize + thisSampleSize;
                 }
-            }
-            // sampleSize = (long) Math.ceil(Math.exp((p + (5.0 * Math.log(5.0))) / 5.0));
-            if (sampleSize > maxSampleSize) maxSampleSize = sampleSize;
-            // p += pp;
-        }
-        if (nonAnalyzableQuestions == survey.questions.size()) {
-            throw new UnanalyzableException("This survey has no analyzable questions.");
+            for (Block b : block.subBlocks)
+                sampleSize += (long) of(b);
+            return sampleSize;
         }
-        assert sampleSize > 0 : String.format("Sample size cannot be less than 0: %d", sampleSize);
-        // this.sampleSize = new ImmutablePair<>(maxSampleSize * surveyPaths.size() * maxWidth, Math.exp(p));
-        this.sampleSize = new ImmutablePair<>(maxSampleSize * surveyPaths.size() * maxWidth, null);
-    }
+    };
 
     /**
      * Computes the maximum path length through the survey.
      * @return The length of the longest path through the survey.
      */
     public int maximumPathLength() {
-        return surveyDAG.maximumPathLength();
+        int max = pathStatistics.maximumPathLength();
+        SurveyMan.LOGGER.info(String.format("Survey %s has maximum path length of %d", survey.sourceName, max));
+        return max;
     }
 
     private static boolean alreadyWarned(Question question) {
@@ -256,7 +268,7 @@ public class QCMetrics implements Serializable {
      * @return The maximum possible entropy for this source.
      */
     public double getMaxPossibleEntropy() {
-        double maxEnt = maxEntropyQuestionList(getMaxPathForEntropy(surveyPaths).getQuestionsFromPath());
+        double maxEnt = pathStatistics.maxEntropy();
         SurveyMan.LOGGER.info(String.format("Maximum possible entropy for survey %s: %f", survey.sourceName, maxEnt));
         return maxEnt;
     }
@@ -266,115 +278,70 @@ public class QCMetrics implements Serializable {
      * @return The minimum path length through the survey.
      */
     public int minimumPathLength() {
-        int min = Integer.MAX_VALUE;
-        for (SurveyPath path : surveyPaths) {
-            int pathLength = path.getPathLength();
-            if (pathLength < min)
-                min = pathLength;
-        }
+        int min = pathStatistics.minimumPathLength();
         SurveyMan.LOGGER.info(String.format("Survey %s has minimum path length of %d", survey.sourceName, min));
         return min;
     }
 
     /**
-     * Simulates the survey for 5000 uniform random respondents and returns the average path length.
+     * Computes the expected path length of a uniform random respondent, who picks each option of a branch question
+     * equally often.
      * @return average path length.
      * @throws SurveyException
      */
     public double averagePathLength() throws SurveyException {
-        int n = 5000;
-        int stuff = 0;
-        for (int i = 0 ; i < n ; i++) {
-            RandomRespondent rr = new RandomRespondent(survey, RandomRespondent.AdversaryType.UNIFORM);
-            stuff += rr.getResponse().getNonCustomResponses().size();
-        }
-        double avg = (double) stuff / n;
+        double avg = pathStatistics.expectedPathLength();
         SurveyMan.LOGGER.info(String.format("Survey %s has average path length of %f", survey.sourceName, avg));
         return avg;
     }
 
     /**
-     * Fills the input array with ranks of the contents of the input list.
+     * Fills the input array with ranks of the contents of the input list. Equal items share the mean of the ranks
+     * they span.
      * @param xranks The array containing ranks.
-     * @param xs The contents we want sorted and inserted into the array.
+     * @param xs The contents, already sorted.
      */
     static void computeRanks(double[] xranks, List<SurveyDatum> xs) {
         assert xranks.length == xs.size() : "The number of ranks must equal the number of sorted items.";
-        Object lastComponent = null;
-        int startRun = Integer.MAX_VALUE;
-        int endRun = 0;
-
-        for (int i = 0 ; i < xs.size() ; i++) {
-            if (lastComponent==null || !lastComponent.equals(xs.get(i))) {
-                if (endRun > startRun) {
-                    // then we need to distribute the ranks of the run of equals
-                    double denominator = endRun - startRun + 1.0;
-                    int numerator = ((endRun^2 + endRun) / 2) - ((startRun^2 + startRun) / 2) + startRun;
-                    double rank = numerator / denominator;
-                    for (; startRun <= endRun ; startRun++){
-                        xranks[startRun] = rank;
-                    }
-                }
-                xranks[i] = i+1;
-                lastComponent = xs.get(i);
-            } else {
-                if (startRun >= endRun)
-                    startRun = i;
-                endRun = i;
-            }
+        int startRun = 0;
+        for (int i = 1 ; i <= xs.size() ; i++) {
+            if (i < xs.size() && xs.get(i).equals(xs.get(startRun)))
+                continue;
+            // Items startRun..i-1 are equal, and span ranks startRun+1..i.
+            double rank = (startRun + 1 + i) / 2.0;
+            for (; startRun < i ; startRun++)
+                xranks[startRun] = rank;
         }
     }
 
     /**
-     *
-     * @param listA
-     * @param listB
-     * @return
+     * Computes Spearman's rho over the respondents who answered both questions, pairing answers by respondent. The
+     * answers are ranked by option order, and tied answers share the mean of the ranks they span.
+     * @param listA Answers to the first question, by respondent id.
+     * @param listB Answers to the second question, by respondent id.
+     * @return Spearman's rho, as {@link #spearmansRho(ContingencyTable)}; NaN if no respondent answered both questions
+     * or either question got the same answer from everyone.
+     * @throws SurveyException
      */
-    public static double spearmansRho(Map<String, IQuestionResponse> listA, Map<String, IQuestionResponse> listB) {
-        // order the IQuestionResponses
-        List<SurveyDatum> xs = new ArrayList<>(), ys = new ArrayList<>();
-
-        for (IQuestionResponse qr : listA.values()) {
-            xs.add(qr.getOpts().get(0).c);
-        }
-        for (IQuestionResponse qr : listB.values()) {
-            ys.add(qr.getOpts().get(0).c);
-        }
-        Collections.sort(xs);
-        Collections.sort(ys);
-
-        // compute ranks
-        double[] xranks = new double[xs.size()];
-        double[] yranks = new double[ys.size()];
-        computeRanks(xranks, xs);
-        computeRanks(yranks, ys);
-
-        double sumOfSquares = 0.0;
-        for (int i = 0; i < xranks.length; i++){
-            sumOfSquares += Math.pow(xranks[i] - yranks[i], 2);
+    public static double spearmansRho(Map<String, IQuestionResponse> listA, Map<String, IQuestionResponse> listB)
+            throws SurveyException
+    {
+        if (listA.isEmpty() || listB.isEmpty())
+            return Double.NaN;
+        SurveyDatum[] optsA = getQuestion(listA).getOptListByIndex(), optsB = getQuestion(listB).getOptListByIndex();
+        Arrays.sort(optsA);
+        Arrays.sort(optsB);
+        List<SurveyDatum> orderA = Arrays.asList(optsA), orderB = Arrays.asList(optsB);
+        int[] counts = new int[optsA.length * optsB.length];
+        for (Map.Entry<String, IQuestionResponse> e : listA.entrySet()) {
+            IQuestionResponse qrB = listB.get(e.getKey());
+            if (qrB == null)
+                continue;
+            int x = orderA.indexOf(e.getValue().getOpts().get(0).c), y = orderB.indexOf(qrB.getOpts().get(0).c);
+            if (x >= 0 && y >= 0)
+                counts[x * optsB.length + y]++;
         }
-
-        int n = xranks.length;
-
-        return 1 - ((6 * sumOfSquares) / (n * (n^2 - 1)));
-    }
-
-    /**
-     *
-     * @param contingencyTable
-     * @param i
-     * @param j
-     * @param n
-     * @return
-     */
-    static double cellExpectation(int[][] contingencyTable, int i, int j, int n) {
-        int o1 = 0, o2 = 0;
-        for (int[] aContingencyTable : contingencyTable)
-            o1 += aContingencyTable[j];
-        for (int c = 0 ; c < contingencyTable[0].length; c++)
-            o2 += contingencyTable[i][c];
-        return o1 * o2 / ((double) n);
+        return spearmansRho(new ContingencyTable(optsA.length, optsB.length, counts));
     }
 
     /**
@@ -385,64 +352,21 @@ public class QCMetrics implements Serializable {
      * @return
      */
     public static double chiSquared(int[][] contingencyTable, Object[] categoryA, Object[] categoryB) {
-        double testStatistic = 0.0;
-        int numSamples = 0;
-        for (int[] aContingencyTable : contingencyTable)
-            for (int anAContingencyTable : aContingencyTable) numSamples += anAContingencyTable;
-        for (int r = 0; r < categoryA.length; r++)
-            for (int c = 0; c < categoryB.length; c++) {
-                double eij = cellExpectation(contingencyTable, r, c, numSamples);
-                if (eij == 0.0)
-                    continue;
-                testStatistic += Math.pow(contingencyTable[r][c] - eij, 2.0) / eij;
-            }
-        return testStatistic;
+        return ContingencyTable.of(contingencyTable).chiSquared();
     }
 
     /**
-     *
+     * Returns the chi-squared density at the test statistic, which is not a p-value.
      * @param df
      * @param testStatistic
      * @return
+     * @deprecated Use {@link ContingencyTable#chiSquaredPValue(int, double)} for the upper-tail p-value.
      */
+    @Deprecated
     public static double chiSquareTest(int df, double testStatistic) {
-        ChiSquaredDistribution chi = new ChiSquaredDistribution(df);
-        return chi.density(testStatistic);
+        return ContingencyTable.distribution(df).density(testStatistic);
     }
 
-    /**
-     * The contingency table contains counts for tuples of type (A, B). Rows have type A. Columns have type B. The cells
-     * count all occurances in the input tuple list of (A, B). Types A and B must have their hashcodes over-ridden so we
-     * can accurately look them up.
-     * @param categoryA An iterable object of type A.
-     * @param categoryB An iterable object of type B.
-     * @param items An iterable object of tuples containing instances of a <: A and b <: B.
-     * @return A lookup map of the counts of all occurances of (a, b) <: A x B
-     */
-    static <A extends Comparable, B extends Comparable> LookUpMap<A, B, Integer> makeContingencyTable(
-            Collection<A> categoryA,
-            Collection<B> categoryB,
-            Collection<Tuple<A, B>> items)
-    {
-
-        int r = categoryA.size();
-        int c = categoryB.size();
-        if (r==0 || c==0)
-            return new LookUpMap<>();
-
-        LookUpMap<A, B, Integer> mp = new LookUpMap<>(categoryA, categoryB, 0);
-
-        for (Tuple<A, B> tupe : items)  {
-            // Tabulate the places where A and B agree
-            A key1 = tupe.fst;
-            B key2 = tupe.snd;
-            int ct = mp.get(key1, key2);
-            mp.put(key1, key2, ct + 1);
-        }
-        return mp;
-    }
-
-
     private static Question getQuestion(Map<String, IQuestionResponse> responseMap) {
         return ((IQuestionResponse) responseMap.values().toArray()[0]).getQuestion();
     }
@@ -494,32 +418,59 @@ public class QCMetrics implements Serializable {
             Collection<Tuple<A,B>> sample1, Collection<Tuple<A,B>> sample2)
     {
 
-        Collection<Tuple<A,B>> coll = new ArrayList<>();
-        coll.addAll(sample1);
-        coll.addAll(sample2);
-        LookUpMap<A, B, Integer> mp = makeContingencyTable(rows, cols, coll);
-
-        // data massage into something chiSquared can use
-        int[][] contingencyTable = new int[rows.size()][cols.size()];
-        int r = 0, c = 0;
-        for (A row : rows) {
-            for (B col : cols) {
-                contingencyTable[r][c] = mp.get(row, col);
-                c++;
-            }
-            c = 0;
-            r++;
-        }
+        Map<A, Integer> rowIndex = new HashMap<>();
+        Map<B, Integer> colIndex = new HashMap<>();
+        for (A row : rows)
+            rowIndex.put(row, rowIndex.size());
+        for (B col : cols)
+            colIndex.put(col, colIndex.size());
+        int[] counts = new int[rows.size() * cols.size()];
+        for (Collection<Tuple<A,B>> sample : Arrays.asList(sample1, sample2))
+            for (Tuple<A,B> tupe : sample)
+                counts[rowIndex.get(tupe.fst) * cols.size() + colIndex.get(tupe.snd)]++;
+        return cramersV(new ContingencyTable(rows.size(), cols.size(), counts));
+    }
 
-        int n = sample1.size() + sample2.size();
-        int dfr = rows.size() - 1;
-        int dfc = cols.size() - 1;
-        double chi = chiSquared(contingencyTable, rows.toArray(), cols.toArray());
-        double v = Math.sqrt((chi / n) / Math.min(dfr, dfc));
-        double p = chiSquareTest(dfr*dfc, chi) * 2;
+    /**
+     * Computes Cramer's V from a contingency table of paired answers.
+     * @param contingencyTable Counts of each (row, column) answer pair.
+     * @return Cramer's V and the p-value of its chi-squared statistic, computed as in
+     * {@link #cramersV(Collection, Collection, Collection, Collection)}.
+     */
+    public static Tuple<Double, Double> cramersV(int[][] contingencyTable) {
+        return cramersV(ContingencyTable.of(contingencyTable));
+    }
+
+    /**
+     * Computes Cramer's V from a contingency table of paired answers.
+     * @param table Counts of each (row, column) answer pair.
+     * @return Cramer's V and the p-value of its chi-squared statistic.
+     */
+    public static Tuple<Double, Double> cramersV(ContingencyTable table) {
+        double chi = table.chiSquared();
+        double v = Math.sqrt((chi / table.n) / Math.min(table.rows - 1, table.cols - 1));
+        double p = ContingencyTable.chiSquaredPValue(table.degreesOfFreedom(), chi);
         return new Tuple<>(v, p);
     }
 
+    /**
+     * Computes Spearman's rho from a contingency table of paired answers to two ordered questions. Rows and columns
+     * must be in option order. Tied answers share the mean of the ranks they span.
+     * @param contingencyTable Counts of each (row, column) answer pair.
+     * @return Spearman's rho, or NaN if either question got the same answer from everyone.
+     */
+    public static double spearmansRho(int[][] contingencyTable) {
+        return spearmansRho(ContingencyTable.of(contingencyTable));
+    }
+
+    /**
+     * Computes Spearman's rho from a contingency table of paired answers to two ordered questions; see
+     * {@link #spearmansRho(int[][])}.
+     */
+    public static double spearmansRho(ContingencyTable table) {
+        return RankTests.spearmansRho(table);
+    }
+
     /**
      * Mann-Whitney statistic, specialized for comparing survey questions.
      * @param q1
@@ -533,23 +484,43 @@ public class QCMetrics implements Serializable {
             SurveyMan.LOGGER.warn(String.format("Cannot compare response lists of sizes: %d and %d", list1.size(), list2.size()));
             return new ImmutablePair<>(-0.0, -0.0);
         }
-        // make ranks on the basis of the source row index
-        Collections.sort(list1);
-        Collections.sort(list2);
-        double[] list1ranks = new double[list1.size()];
-        double[] list2ranks = new double[list2.size()];
-        for (int i = 0 ; i < list1.size() ; i++)
-            list1ranks[i] = (double) list1.get(i).getSourceRow() - q1.getSourceRow() + 1;
-        for (int i = 0 ; i < list2.size() ; i++)
-            list2ranks[i] = (double) list2.get(i).getSourceRow() - q2.getSourceRow() + 1;
-        // default constructor for mann whitney averages ties.
-        MannWhitneyUTest test = new MannWhitneyUTest();
-        double testStatistic = test.mannWhitneyU(list1ranks, list2ranks);
-        double pvalue = test.mannWhitneyUTest(list1ranks, list2ranks);
-        return new ImmutablePair<>(testStatistic, pvalue);
-    }
-
-    private static boolean validToTestCorrelation(Question q1, Question q2) {
+        // make ranks on the basis of the source row index, looking each distinct answer up once
+        SortedMap<Double, Integer> sample1 = tally(q1, list1), sample2 = tally(q2, list2);
+        return RankTests.mannWhitney(keys(sample1), values(sample1), keys(sample2), values(sample2));
+    }
+
+    private static SortedMap<Double, Integer> tally(Question q, List<SurveyDatum> answers) {
+        Map<SurveyDatum, Integer> counts = new HashMap<>();
+        for (SurveyDatum answer : answers) {
+            Integer count = counts.get(answer);
+            counts.put(answer, count == null ? 1 : count + 1);
+        }
+        SortedMap<Double, Integer> tally = new TreeMap<>();
+        for (Map.Entry<SurveyDatum, Integer> e : counts.entrySet()) {
+            double rank = (double) e.getKey().getSourceRow() - q.getSourceRow() + 1;
+            Integer count = tally.get(rank);
+            tally.put(rank, count == null ? e.getValue() : count + e.getValue());
+        }
+        return tally;
+    }
+
+    private static double[] keys(SortedMap<Double, Integer> tally) {
+        double[] keys = new double[tally.size()];
+        int i = 0;
+        for (double key : tally.keySet())
+            keys[i++] = key;
+        return keys;
+    }
+
+    private static int[] values(SortedMap<Double, Integer> tally) {
+        int[] values = new int[tally.size()];
+        int i = 0;
+        for (int value : tally.values())
+            values[i++] = value;
+        return values;
+    }
+
+    static boolean validToTestCorrelation(Question q1, Question q2) {
         List<Question> questions =  q1.getVariants();
         return !questions.contains(q2) &&
                 q1.exclusive && q2.exclusive &&
@@ -561,94 +532,66 @@ public class QCMetrics implements Serializable {
     /**
      * Returns the total number of bins whose contents we need to be at least 5.
      * @return
+     * @throws UnanalyzableException If the sample size does not fit in a long. No simulation could draw that many
+     * responses, so callers fail here rather than loop over a saturated count.
      */
-    public ImmutablePair<Long, Double> getSampleSize() {
+    public ImmutablePair<Long, Double> getSampleSize() throws UnanalyzableException {
+        if (this.sampleSize.getLeft() == Long.MAX_VALUE)
+            throw new UnanalyzableException(String.format("Survey %s has too many paths to simulate a sample for.",
+                    survey.sourceName));
         return this.sampleSize;
     }
 
     /**
      * Simulates a survey of 100% random uniform respondents over sampleSize and calculates a prior on false correlation.
+     * Every valid pair of questions is tested; see {@link CorrelationMatrix}.
      * @return Empirical false correlation.
      * @throws SurveyException
      */
     public Map<Question, Map<Question, CorrelationStruct>> getFrequenciesOfRandomCorrelation() throws SurveyException {
+        return getFrequenciesOfRandomCorrelation(new RandomRespondent(survey, RandomRespondent.AdversaryType.UNIFORM));
+    }
+
+    /**
+     * As {@link #getFrequenciesOfRandomCorrelation()}, drawing the random respondents from the given generator.
+     * @param random The generator; an identically seeded one gives the same result.
+     * @return Empirical false correlation.
+     * @throws SurveyException
+     */
+    public Map<Question, Map<Question, CorrelationStruct>> getFrequenciesOfRandomCorrelation(MersenneRandom random)
+            throws SurveyException {
+        return getFrequenciesOfRandomCorrelation(
+                new RandomRespondent(survey, RandomRespondent.AdversaryType.UNIFORM, random));
+    }
 
-        Map<Question, Map<Question, CorrelationStruct>> corrs = new HashMap<>();
-        List<RandomRespondent> randomRespondents = new ArrayList<>();
-        int numInsufficientData = 0;
-        int numComparisons = 0;
+    private Map<Question, Map<Question, CorrelationStruct>> getFrequenciesOfRandomCorrelation(
+            RandomRespondent respondent) throws SurveyException {
 
         ImmutablePair<Long, Double> pair = getSampleSize();
         long sampleSize = pair.getLeft();
         // double p = pair.getRight();
         SurveyMan.LOGGER.debug(String.format("Sample size: %d; prob. of too few in any cell: %f", sampleSize, 0.0));
 
-        for (int i = 0 ; i < sampleSize; i++){
-            randomRespondents.add(new RandomRespondent(survey, RandomRespondent.AdversaryType.UNIFORM));
+        List<SurveyResponse> responses = new ArrayList<>();
+        for (long i = 0 ; i < sampleSize; i++){
+            responses.add(respondent.getResponse());
         }
 
-        for (int i = 0; i < survey.questions.size() - 1; i++) {
-            Question q1 = survey.questions.get(i);
-            for (int j = i + 1; j < survey.questions.size(); j++) {
-                Question q2 = survey.questions.get(j);
-                if (!validToTestCorrelation(q1, q2)) continue;
-                // get responses having answered both questions
-                Map<String, IQuestionResponse> q1responses = new HashMap<>();
-                Map<String, IQuestionResponse> q2responses = new HashMap<>();
-                for (RandomRespondent rr : randomRespondents) {
-
-                    IQuestionResponse qr1 = null;
-                    IQuestionResponse qr2 = null;
-
-                    for (IQuestionResponse qr : rr.getResponse().getNonCustomResponses()) {
-                        if (qr.getQuestion().equals(q1))
-                            qr1 = qr;
-                        if (qr.getQuestion().equals(q2))
-                            qr2 = qr;
-                        if (qr1!=null && qr2!=null)
-                            break;
-                    }
-
-                    if (qr1!=null && qr2!=null){
-                        q1responses.put(rr.id, qr1);
-                        q2responses.put(rr.id, qr2);
-                    }
-                }
-                if (q1responses.size()==0 && q2responses.size()==0) {
-                    SurveyMan.LOGGER.warn(String.format("No one answered both questions: [%s], [%s]", q1, q2));
-                    numInsufficientData++;
-                    continue;
-                }
-                numComparisons++;
-                // compute the appropriate correlation coefficient
-                Map<Question, CorrelationStruct> stuff = new HashMap<>();
-                stuff.put(q2, CorrelationStruct.makeStruct(q1, q2, q1responses, q2responses));
-                corrs.put(q1, stuff);
-                return corrs; //UNCOMMENT ME
-                // count how many p-values are below the threshhold.
-            }
-        }
+        CorrelationMatrix matrix = CorrelationMatrix.compute(survey, responses);
         SurveyMan.LOGGER.info(String.format("Number of comparison made vs. number of comparisons with insufficient " +
-                "data: %d vs. %d", numComparisons, numInsufficientData));
-        return corrs;
+                "data: %d vs. %d", matrix.numComparisons, matrix.numInsufficientData));
+        return matrix.asMap();
     }
 
     public boolean isFinalQuestion(Question question, SurveyResponse surveyResponse) {
-        for (SurveyPath path : this.surveyPaths) {
-            for (Block block : path) {
-                if (block.containsQuestion(question)) {
-                    int questionsInBlock = block.blockSize();
-                    int questionsAnsweredFromBlock = 0;
-                    for (IQuestionResponse qr: surveyResponse.getAllResponses()) {
-                        if (block.containsQuestion(qr.getQuestion())) {
-                            questionsAnsweredFromBlock++;
-                        }
-                    }
-                    return questionsAnsweredFromBlock == questionsInBlock;
-                }
-            }
-        }
-        return false;
+        return this.blockMembership.isFinalQuestion(question, surveyResponse);
+    }
+
+    /**
+     * @return The top-level block of every question on the survey's paths, computed when this object was created.
+     */
+    public BlockMembership getBlockMembership() {
+        return this.blockMembership;
     }
 
     /**
@@ -0,0 +1,177 @@
+package edu.umass.cs.surveyman.qc;
+
+import edu.umass.cs.surveyman.SurveyMan;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.math3.distribution.NormalDistribution;
+
+/**
+ * Rank statistics for answers to ordered questions, computed from how many respondents chose each option rather
+ * than from one rank per respondent. Respondents who chose the same option are tied, and share the mean of the ranks
+ * they span, so a test over k options costs O(k) (or O(k<sup>2</sup>) for a table of paired answers) however many
+ * respondents there are.
+ */
+public final class RankTests {
+
+    private static final NormalDistribution STANDARD_NORMAL = new NormalDistribution(0, 1);
+
+    private RankTests() {}
+
+    /**
+     * @param totals The number of observations in each category, in order.
+     * @return The mean rank of the observations in each category.
+     */
+    public static double[] midranks(long[] totals) {
+        double[] ranks = new double[totals.length];
+        long below = 0;
+        for (int i = 0; i < totals.length; i++) {
+            ranks[i] = below + (totals[i] + 1) / 2.0;
+            below += totals[i];
+        }
+        return ranks;
+    }
+
+    /**
+     * Mann-Whitney U test of two samples drawn from the same ordered categories.
+     * @param counts1 The number of observations in each category in the first sample.
+     * @param counts2 The same for the second sample. Missing trailing categories count as empty.
+     * @return The larger of the two U statistics and its two-sided p-value, under the normal approximation with the
+     * variance corrected for ties, or a pair of negative zeros if either sample is empty.
+     */
+    public static ImmutablePair<Double, Double> mannWhitney(int[] counts1, int[] counts2) {
+        int k = Math.max(counts1.length, counts2.length);
+        long[] a = new long[k], b = new long[k];
+        for (int i = 0; i < counts1.length; i++)
+            a[i] = counts1[i];
+        for (int i = 0; i < counts2.length; i++)
+            b[i] = counts2[i];
+        return mannWhitney(a, b);
+    }
+
+    /**
+     * Mann-Whitney U test of two samples of values, each given as its distinct values in increasing order and how
+     * often each occurs.
+     * @param values1 The first sample's distinct values, in increasing order.
+     * @param counts1 How many times each of the first sample's values occurs.
+     * @param values2 The second sample's distinct values, in increasing order.
+     * @param counts2 How many times each of the second sample's values occurs.
+     * @return As {@link #mannWhitney(int[], int[])}.
+     */
+    public static ImmutablePair<Double, Double> mannWhitney(double[] values1, int[] counts1,
+                                                            double[] values2, int[] counts2) {
+        // Merge the two value lists into one list of categories.
+        long[] a = new long[values1.length + values2.length], b = new long[a.length];
+        int i = 0, j = 0, k = 0;
+        while (i < values1.length || j < values2.length) {
+            if (j == values2.length || (i < values1.length && values1[i] < values2[j]))
+                a[k++] = counts1[i++];
+            else if (i == values1.length || values2[j] < values1[i])
+                b[k++] = counts2[j++];
+            else {
+                a[k] = counts1[i++];
+                b[k++] = counts2[j++];
+            }
+        }
+        return mannWhitney(a, b);
+    }
+
+    private static ImmutablePair<Double, Double> mannWhitney(long[] counts1, long[] counts2) {
+        long n1 = 0, n2 = 0;
+        long[] totals = new long[counts1.length];
+        for (int i = 0; i < totals.length; i++) {
+            n1 += counts1[i];
+            n2 += counts2[i];
+            totals[i] = counts1[i] + counts2[i];
+        }
+        if (n1 == 0 || n2 == 0) {
+            SurveyMan.LOGGER.warn(String.format("Cannot compare response lists of sizes: %d and %d", n1, n2));
+            return new ImmutablePair<>(-0.0, -0.0);
+        }
+        double[] ranks = midranks(totals);
+        double rankSum = 0.0, ties = 0.0;
+        for (int i = 0; i < totals.length; i++) {
+            rankSum += counts1[i] * ranks[i];
+            ties += (double) totals[i] * totals[i] * totals[i] - totals[i];
+        }
+        double n = n1 + n2, product = (double) n1 * n2;
+        double u1 = rankSum - n1 * (n1 + 1) / 2.0;
+        double uMax = Math.max(u1, product - u1), uMin = product - uMax;
+        double variance = product / 12.0 * ((n + 1) - ties / (n * (n - 1)));
+        double p;
+        if (variance <= 0.0)
+            // Everyone gave the same answer: the samples cannot be told apart.
+            p = 1.0;
+        else p = Math.min(1.0, 2 * STANDARD_NORMAL.cumulativeProbability((uMin - product / 2) / Math.sqrt(variance)));
+        return new ImmutablePair<>(uMax, p);
+    }
+
+    /**
+     * Computes Spearman's rho from a contingency table of paired answers to two ordered questions. Rows and columns
+     * must be in option order.
+     * @param table Counts of each (row, column) answer pair.
+     * @return Spearman's rho, or NaN if either question got the same answer from everyone.
+     */
+    public static double spearmansRho(ContingencyTable table) {
+        long[] rowTotals = rowTotals(table), colTotals = colTotals(table);
+        double mean = (table.n + 1) / 2.0;
+        double[] rowRanks = midranks(rowTotals), colRanks = midranks(colTotals);
+        double cov = 0.0, rowVar = 0.0, colVar = 0.0;
+        for (int r = 0; r < table.rows; r++) {
+            rowVar += rowTotals[r] * (rowRanks[r] - mean) * (rowRanks[r] - mean);
+            for (int c = 0; c < table.cols; c++)
+                cov += table.get(r, c) * (rowRanks[r] - mean) * (colRanks[c] - mean);
+        }
+        for (int c = 0; c < table.cols; c++)
+            colVar += colTotals[c] * (colRanks[c] - mean) * (colRanks[c] - mean);
+        if (rowVar == 0.0 || colVar == 0.0)
+            return Double.NaN;
+        return cov / Math.sqrt(rowVar * colVar);
+    }
+
+    /**
+     * Computes Kendall's tau-b from a contingency table of paired answers to two ordered questions. Rows and columns
+     * must be in option order.
+     * @param table Counts of each (row, column) answer pair.
+     * @return Kendall's tau-b, or NaN if either question got the same answer from everyone.
+     */
+    public static double kendallsTauB(ContingencyTable table) {
+        int rows = table.rows, cols = table.cols;
+        // below[r][c] counts the pairs in rows after r and columns after c; the extra row and column stay 0.
+        long[][] below = new long[rows + 1][cols + 1];
+        for (int r = rows - 1; r >= 0; r--)
+            for (int c = cols - 1; c >= 0; c--)
+                below[r][c] = table.get(r, c) + below[r + 1][c] + below[r][c + 1] - below[r + 1][c + 1];
+        double concordant = 0.0, discordant = 0.0;
+        for (int r = 0; r < rows; r++)
+            for (int c = 0; c < cols; c++) {
+                int count = table.get(r, c);
+                if (count == 0)
+                    continue;
+                concordant += (double) count * below[r + 1][c + 1];
+                // Later rows, earlier columns: everything after row r, less the columns from c on.
+                discordant += (double) count * (below[r + 1][0] - below[r + 1][c]);
+            }
+        double pairs = table.n * (table.n - 1) / 2.0, rowTies = 0.0, colTies = 0.0;
+        for (long t : rowTotals(table))
+            rowTies += t * (t - 1) / 2.0;
+        for (long t : colTotals(table))
+            colTies += t * (t - 1) / 2.0;
+        double denominator = Math.sqrt((pairs - rowTies) * (pairs - colTies));
+        if (denominator == 0.0)
+            return Double.NaN;
+        return (concordant - discordant) / denominator;
+    }
+
+    private static long[] rowTotals(ContingencyTable table) {
+        long[] totals = new long[table.rows];
+        for (int r = 0; r < table.rows; r++)
+            totals[r] = table.rowTotal(r);
+        return totals;
+    }
+
+    private static long[] colTotals(ContingencyTable table) {
+        long[] totals = new long[table.cols];
+        for (int c = 0; c < table.cols; c++)
+            totals[c] = table.colTotal(c);
+        return totals;
+    }
+}
@@ -0,0 +1,94 @@
+package edu.umass.cs.surveyman.qc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a computation split into shards, one task per shard, and collects their results in shard order. This is where
+ * the analyses that count or test in parallel get their threads: a caller either passes its own executor, which is
+ * left running, or none, in which case a pool with one thread per shard is started for the call and shut down after.
+ *
+ * <p>Shards should not share mutable state. When the work is the rows of a triangular matrix, deal the rows out
+ * round-robin (shard {@code s} takes rows {@code s, s + shards, ...}), so that every shard gets a similar mix of long
+ * and short rows.</p>
+ */
+public final class Shards {
+
+    /**
+     * One shard's share of the work.
+     * @param <T> What the shard produces.
+     */
+    public interface Shard<T> {
+        /**
+         * @param shard Which shard this is, from 0.
+         * @param shards How many shards there are.
+         * @return This shard's result.
+         */
+        T run(int shard, int shards);
+    }
+
+    private Shards() {}
+
+    /**
+     * @param units The number of units of work, e.g. responses or matrix rows.
+     * @return One shard per processor, but no more shards than units and never fewer than one.
+     */
+    public static int count(int units) {
+        return Math.max(1, Math.min(units, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Runs every shard and waits for all of them. An exception thrown by a shard is rethrown here; checked ones are
+     * wrapped in a RuntimeException.
+     * @param shards The number of shards.
+     * @param body The work of each shard.
+     * @param executor The executor to run the shards on, or null to run them on a temporary pool.
+     * @return The shards' results, in shard order.
+     */
+    public static <T> List<T> run(int shards, final Shard<T> body, ExecutorService executor) {
+        if (shards == 1) {
+            List<T> results = new ArrayList<>();
+            results.add(body.run(0, 1));
+            return results;
+        }
+        if (executor == null) {
+            ExecutorService pool = Executors.newFixedThreadPool(shards);
+            try {
+                return run(shards, body, pool);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        List<Callable<T>> tasks = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            final int s = shard, n = shards;
+            tasks.add(new Callable<T>() {
+                @Override
+                public T call() {
+                    return body.run(s, n);
+                }
+            });
+        }
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> future : executor.invokeAll(tasks))
+                results.add(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+        return results;
+    }
+}
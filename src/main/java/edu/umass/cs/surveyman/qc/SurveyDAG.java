@@ -13,7 +13,8 @@ public class SurveyDAG extends ArrayList<SurveyPath> {
     private SurveyDAG() {
     }
 
-    private static HashMap<Survey, List<SurveyPath>> cache = new HashMap<>();
+    private static final Map<Survey, List<SurveyPath>> cache =
+            Collections.synchronizedMap(new HashMap<Survey, List<SurveyPath>>());
 
     public SurveyDAG(Survey survey, SurveyPath ...paths) {
         this();
@@ -0,0 +1,102 @@
+package edu.umass.cs.surveyman.qc.random;
+
+import java.util.Random;
+
+/**
+ * Vose's alias method for sampling from a fixed discrete distribution. Construction is linear in the number of
+ * outcomes; every draw afterwards costs one bounded integer and one uniform double, regardless of the number of
+ * outcomes. Tables are immutable and may be shared between respondents and threads.
+ */
+public final class AliasTable {
+
+    private final double[] prob;
+    private final int[] alias;
+
+    /**
+     * Builds an alias table from unnormalized, non-negative weights.
+     * @param weights The weight of each outcome. Must contain at least one positive entry.
+     * @throws IllegalArgumentException if the weights are empty, negative, or sum to zero.
+     */
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        if (n == 0)
+            throw new IllegalArgumentException("Cannot build an alias table over zero outcomes.");
+        double total = 0.0;
+        for (double w : weights) {
+            if (w < 0.0 || Double.isNaN(w))
+                throw new IllegalArgumentException(String.format("Invalid outcome weight %f.", w));
+            total += w;
+        }
+        if (total <= 0.0)
+            throw new IllegalArgumentException("Outcome weights must sum to a positive value.");
+
+        this.prob = new double[n];
+        this.alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int numSmall = 0, numLarge = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0)
+                small[numSmall++] = i;
+            else large[numLarge++] = i;
+        }
+        while (numSmall > 0 && numLarge > 0) {
+            int l = small[--numSmall];
+            int g = large[--numLarge];
+            this.prob[l] = scaled[l];
+            this.alias[l] = g;
+            scaled[g] = (scaled[g] + scaled[l]) - 1.0;
+            if (scaled[g] < 1.0)
+                small[numSmall++] = g;
+            else large[numLarge++] = g;
+        }
+        // Whatever remains is (up to rounding error) exactly full.
+        while (numLarge > 0) {
+            int g = large[--numLarge];
+            this.prob[g] = 1.0;
+            this.alias[g] = g;
+        }
+        while (numSmall > 0) {
+            int l = small[--numSmall];
+            this.prob[l] = 1.0;
+            this.alias[l] = l;
+        }
+    }
+
+    /**
+     * Builds an alias table for a cumulative-walk preference vector: the outcome chosen is the first index whose
+     * running sum exceeds a uniform draw on [0, 1). Mass past 1.0 is unreachable under that scheme, so it is clipped
+     * here to produce the same distribution.
+     * @param prefs The preference vector.
+     * @return An alias table equivalent to walking {@code prefs} cumulatively.
+     */
+    public static AliasTable fromCumulativePreferences(double[] prefs) {
+        double[] weights = new double[prefs.length];
+        double cumulative = 0.0;
+        for (int i = 0; i < prefs.length; i++) {
+            double previous = Math.min(cumulative, 1.0);
+            cumulative += prefs[i];
+            weights[i] = Math.max(0.0, Math.min(cumulative, 1.0) - previous);
+        }
+        return new AliasTable(weights);
+    }
+
+    /**
+     * @return The number of outcomes in this table.
+     */
+    public int size() {
+        return this.prob.length;
+    }
+
+    /**
+     * Draws an outcome index in constant time.
+     * @param rng The source of randomness.
+     * @return An index in [0, size()).
+     */
+    public int sample(Random rng) {
+        int column = rng.nextInt(this.prob.length);
+        return rng.nextDouble() < this.prob[column] ? column : this.alias[column];
+    }
+}
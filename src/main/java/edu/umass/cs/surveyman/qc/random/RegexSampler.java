@@ -0,0 +1,449 @@
+package edu.umass.cs.surveyman.qc.random;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Generates random strings matching a regular expression. The pattern is compiled once into a tree of generators;
+ * sampling walks that tree and never touches the regex engine. Compiled samplers are immutable and thread-safe.
+ *
+ * Supported syntax: literals, {@code .}, escapes ({@code \d \w \s}, their negations, control characters, hex and
+ * unicode escapes, {@code \Q...\E} quoting), character classes with ranges and negation, groups (capturing,
+ * non-capturing and named), alternation, and the greedy/lazy/possessive quantifiers {@code * + ? {n} {n,} {n,m}}.
+ * Anchors at the ends of the pattern are accepted and ignored. Anything else (lookaround, back references, class
+ * intersection, inline flags) is rejected with an {@link IllegalArgumentException}.
+ */
+public final class RegexSampler {
+
+    /**
+     * Upper bound on the number of extra repetitions generated for unbounded quantifiers.
+     */
+    public static final int MAX_EXTRA_REPEATS = 8;
+
+    /**
+     * Number of samples checked against the source pattern before a compiled sampler is handed out.
+     */
+    private static final int SELF_CHECK_SAMPLES = 16;
+
+    private static final char MIN_PRINTABLE = ' ';
+    private static final char MAX_PRINTABLE = '~';
+
+    private interface Node {
+        void generate(Random rng, StringBuilder out);
+    }
+
+    private static final class Literal implements Node {
+        private final String text;
+        Literal(String text) {
+            this.text = text;
+        }
+        public void generate(Random rng, StringBuilder out) {
+            out.append(text);
+        }
+    }
+
+    private static final class Sequence implements Node {
+        private final Node[] nodes;
+        Sequence(List<Node> nodes) {
+            this.nodes = nodes.toArray(new Node[nodes.size()]);
+        }
+        public void generate(Random rng, StringBuilder out) {
+            for (Node node : nodes)
+                node.generate(rng, out);
+        }
+    }
+
+    private static final class Alternation implements Node {
+        private final Node[] choices;
+        Alternation(List<Node> choices) {
+            this.choices = choices.toArray(new Node[choices.size()]);
+        }
+        public void generate(Random rng, StringBuilder out) {
+            choices[rng.nextInt(choices.length)].generate(rng, out);
+        }
+    }
+
+    private static final class Repeat implements Node {
+        private final Node body;
+        private final int min, max;
+        Repeat(Node body, int min, int max) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+        }
+        public void generate(Random rng, StringBuilder out) {
+            int times = min + rng.nextInt(max - min + 1);
+            for (int i = 0; i < times; i++)
+                body.generate(rng, out);
+        }
+    }
+
+    /**
+     * A set of characters stored as sorted, disjoint, inclusive ranges, sampled uniformly by binary search over
+     * cumulative range sizes.
+     */
+    private static final class CharClass implements Node {
+        private final char[] lo, hi;
+        private final int[] cumulative;
+        CharClass(char[] lo, char[] hi) {
+            this.lo = lo;
+            this.hi = hi;
+            this.cumulative = new int[lo.length];
+            int total = 0;
+            for (int i = 0; i < lo.length; i++) {
+                total += hi[i] - lo[i] + 1;
+                cumulative[i] = total;
+            }
+        }
+        boolean isEmpty() {
+            return lo.length == 0;
+        }
+        public void generate(Random rng, StringBuilder out) {
+            int k = rng.nextInt(cumulative[cumulative.length - 1]);
+            int i = Arrays.binarySearch(cumulative, k + 1);
+            if (i < 0)
+                i = -i - 1;
+            int offset = k - (i == 0 ? 0 : cumulative[i - 1]);
+            out.append((char) (lo[i] + offset));
+        }
+    }
+
+    /**
+     * Mutable builder for {@link CharClass}; normalizes ranges and computes complements over printable ASCII.
+     */
+    private static final class CharSet {
+        private final List<char[]> ranges = new ArrayList<>();
+        void add(char lo, char hi) {
+            ranges.add(new char[]{lo, hi});
+        }
+        void addAll(CharSet other) {
+            ranges.addAll(other.ranges);
+        }
+        CharSet normalized() {
+            List<char[]> sorted = new ArrayList<>(ranges);
+            Collections.sort(sorted, new Comparator<char[]>() {
+                public int compare(char[] a, char[] b) {
+                    return Character.compare(a[0], b[0]);
+                }
+            });
+            CharSet retval = new CharSet();
+            for (char[] r : sorted) {
+                if (!retval.ranges.isEmpty()) {
+                    char[] last = retval.ranges.get(retval.ranges.size() - 1);
+                    if (r[0] <= last[1] + 1) {
+                        last[1] = (char) Math.max(last[1], r[1]);
+                        continue;
+                    }
+                }
+                retval.ranges.add(new char[]{r[0], r[1]});
+            }
+            return retval;
+        }
+        CharSet complement() {
+            CharSet norm = normalized();
+            CharSet retval = new CharSet();
+            int next = MIN_PRINTABLE;
+            for (char[] r : norm.ranges) {
+                if (r[0] > next)
+                    retval.add((char) next, (char) Math.min(r[0] - 1, MAX_PRINTABLE));
+                next = Math.max(next, r[1] + 1);
+                if (next > MAX_PRINTABLE)
+                    break;
+            }
+            if (next <= MAX_PRINTABLE)
+                retval.add((char) next, MAX_PRINTABLE);
+            return retval;
+        }
+        CharClass toNode() {
+            CharSet norm = normalized();
+            char[] lo = new char[norm.ranges.size()];
+            char[] hi = new char[norm.ranges.size()];
+            for (int i = 0; i < lo.length; i++) {
+                lo[i] = norm.ranges.get(i)[0];
+                hi[i] = norm.ranges.get(i)[1];
+            }
+            return new CharClass(lo, hi);
+        }
+    }
+
+    private final Pattern pattern;
+    private final Node root;
+
+    private RegexSampler(Pattern pattern, Node root) {
+        this.pattern = pattern;
+        this.root = root;
+    }
+
+    /**
+     * Compiles a pattern into a sampler. The sampler is checked against the pattern before it is returned.
+     * @param pattern The pattern to sample from.
+     * @return A reusable sampler.
+     * @throws IllegalArgumentException if the pattern uses syntax this sampler does not support, or if the compiled
+     * sampler fails to produce matching strings.
+     */
+    public static RegexSampler compile(Pattern pattern) {
+        int unsupportedFlags = Pattern.COMMENTS | Pattern.CANON_EQ;
+        if ((pattern.flags() & unsupportedFlags) != 0)
+            throw new IllegalArgumentException(String.format("Unsupported flags on pattern %s", pattern.pattern()));
+        Node root;
+        if ((pattern.flags() & Pattern.LITERAL) != 0)
+            root = new Literal(pattern.pattern());
+        else root = new Parser(pattern.pattern()).parse();
+        RegexSampler sampler = new RegexSampler(pattern, root);
+        Random probe = new Random(pattern.pattern().hashCode());
+        for (int i = 0; i < SELF_CHECK_SAMPLES; i++) {
+            String s = sampler.sample(probe);
+            if (!pattern.matcher(s).matches())
+                throw new IllegalArgumentException(String.format("Generated string \"%s\" does not match pattern %s",
+                        s, pattern.pattern()));
+        }
+        return sampler;
+    }
+
+    /**
+     * @return The pattern this sampler was compiled from.
+     */
+    public Pattern getPattern() {
+        return this.pattern;
+    }
+
+    /**
+     * Generates a string matching the pattern.
+     * @param rng The source of randomness.
+     * @return A matching string.
+     */
+    public String sample(Random rng) {
+        StringBuilder out = new StringBuilder();
+        root.generate(rng, out);
+        return out.toString();
+    }
+
+    /**
+     * Recursive-descent parser from pattern source to generator tree.
+     */
+    private static final class Parser {
+
+        private final String src;
+        private int pos = 0;
+
+        Parser(String src) {
+            this.src = src;
+        }
+
+        private IllegalArgumentException unsupported(String what) {
+            return new IllegalArgumentException(String.format("Unsupported regex syntax (%s) at index %d in %s",
+                    what, pos, src));
+        }
+
+        private boolean more() {
+            return pos < src.length();
+        }
+
+        private char peek() {
+            return src.charAt(pos);
+        }
+
+        private char next() {
+            if (!more())
+                throw unsupported("unexpected end of pattern");
+            return src.charAt(pos++);
+        }
+
+        Node parse() {
+            Node node = alternation();
+            if (more())
+                throw unsupported("unbalanced ')'");
+            return node;
+        }
+
+        private Node alternation() {
+            List<Node> choices = new ArrayList<>();
+            choices.add(sequence());
+            while (more() && peek() == '|') {
+                pos++;
+                choices.add(sequence());
+            }
+            return choices.size() == 1 ? choices.get(0) : new Alternation(choices);
+        }
+
+        private Node sequence() {
+            List<Node> nodes = new ArrayList<>();
+            while (more() && peek() != '|' && peek() != ')') {
+                char c = peek();
+                if (c == '^' || c == '$') {
+                    if (!(pos == 0 && c == '^') && !(pos == src.length() - 1 && c == '$'))
+                        throw unsupported("interior anchor");
+                    pos++;
+                    continue;
+                }
+                Node atom = atom();
+                nodes.add(quantify(atom));
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new Sequence(nodes);
+        }
+
+        private Node quantify(Node atom) {
+            if (!more())
+                return atom;
+            int min, max;
+            switch (peek()) {
+                case '*': pos++; min = 0; max = MAX_EXTRA_REPEATS; break;
+                case '+': pos++; min = 1; max = 1 + MAX_EXTRA_REPEATS; break;
+                case '?': pos++; min = 0; max = 1; break;
+                case '{':
+                    int close = src.indexOf('}', pos);
+                    if (close < 0)
+                        throw unsupported("unterminated repetition");
+                    String[] bounds = src.substring(pos + 1, close).split(",", -1);
+                    try {
+                        min = Integer.parseInt(bounds[0].trim());
+                        if (bounds.length == 1)
+                            max = min;
+                        else if (bounds[1].trim().isEmpty())
+                            max = min + MAX_EXTRA_REPEATS;
+                        else max = Integer.parseInt(bounds[1].trim());
+                    } catch (NumberFormatException e) {
+                        throw unsupported("malformed repetition");
+                    }
+                    if (bounds.length > 2 || max < min)
+                        throw unsupported("malformed repetition");
+                    pos = close + 1;
+                    break;
+                default:
+                    return atom;
+            }
+            // Lazy and possessive modifiers do not change the language.
+            if (more() && (peek() == '?' || peek() == '+'))
+                pos++;
+            return quantify(new Repeat(atom, min, max));
+        }
+
+        private Node atom() {
+            char c = next();
+            switch (c) {
+                case '(':
+                    if (more() && peek() == '?') {
+                        pos++;
+                        char kind = next();
+                        if (kind == '<' && more() && Character.isLetter(peek())) {
+                            while (next() != '>') { }
+                        } else if (kind != ':')
+                            throw unsupported("group construct (?" + kind);
+                    }
+                    Node inner = alternation();
+                    if (!more() || next() != ')')
+                        throw unsupported("unbalanced '('");
+                    return inner;
+                case '[':
+                    return charClass().toNode();
+                case '.':
+                    CharSet any = new CharSet();
+                    any.add(MIN_PRINTABLE, MAX_PRINTABLE);
+                    return any.toNode();
+                case '\\':
+                    return escape();
+                case '*': case '+': case '?': case '{':
+                    throw unsupported("dangling quantifier");
+                default:
+                    return new Literal(String.valueOf(c));
+            }
+        }
+
+        private Node escape() {
+            char c = next();
+            if (c == 'Q') {
+                int end = src.indexOf("\\E", pos);
+                String quoted = end < 0 ? src.substring(pos) : src.substring(pos, end);
+                pos = end < 0 ? src.length() : end + 2;
+                return new Literal(quoted);
+            }
+            CharSet predefined = predefinedClass(c);
+            if (predefined != null)
+                return predefined.toNode();
+            return new Literal(String.valueOf(escapedChar(c)));
+        }
+
+        private CharSet predefinedClass(char c) {
+            CharSet set = new CharSet();
+            switch (c) {
+                case 'd': set.add('0', '9'); return set;
+                case 'w': set.add('a', 'z'); set.add('A', 'Z'); set.add('0', '9'); set.add('_', '_'); return set;
+                case 's': set.add(' ', ' '); set.add('\t', '\r'); return set;
+                case 'D': case 'W': case 'S': return predefinedClass(Character.toLowerCase(c)).complement();
+                default: return null;
+            }
+        }
+
+        private char escapedChar(char c) {
+            switch (c) {
+                case 't': return '\t';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                case 'a': return '\u0007';
+                case 'e': return '\u001B';
+                case 'x': return hex(2);
+                case 'u': return hex(4);
+                default:
+                    if (Character.isLetterOrDigit(c))
+                        throw unsupported("escape \\" + c);
+                    return c;
+            }
+        }
+
+        private char hex(int digits) {
+            if (pos + digits > src.length())
+                throw unsupported("truncated hex escape");
+            try {
+                char retval = (char) Integer.parseInt(src.substring(pos, pos + digits), 16);
+                pos += digits;
+                return retval;
+            } catch (NumberFormatException e) {
+                throw unsupported("malformed hex escape");
+            }
+        }
+
+        private CharSet charClass() {
+            boolean negated = more() && peek() == '^';
+            if (negated)
+                pos++;
+            CharSet set = new CharSet();
+            boolean first = true;
+            while (true) {
+                char c = next();
+                if (c == ']' && !first)
+                    break;
+                first = false;
+                if (c == '[' || (c == '&' && more() && peek() == '&'))
+                    throw unsupported("nested character class");
+                char lo;
+                if (c == '\\') {
+                    char e = next();
+                    CharSet predefined = predefinedClass(e);
+                    if (predefined != null) {
+                        set.addAll(predefined);
+                        continue;
+                    }
+                    lo = escapedChar(e);
+                } else lo = c;
+                if (more() && peek() == '-' && pos + 1 < src.length() && src.charAt(pos + 1) != ']') {
+                    pos++;
+                    char h = next();
+                    char hi = h == '\\' ? escapedChar(next()) : h;
+                    if (hi < lo)
+                        throw unsupported("reversed range");
+                    set.add(lo, hi);
+                } else set.add(lo, lo);
+            }
+            CharSet retval = negated ? set.complement() : set;
+            if (retval.toNode().isEmpty())
+                throw unsupported("empty character class");
+            return retval;
+        }
+    }
+}
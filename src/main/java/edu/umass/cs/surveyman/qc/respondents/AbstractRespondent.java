@@ -1,13 +1,10 @@
 package edu.umass.cs.surveyman.qc.respondents;
 
-import clojure.lang.PersistentVector;
-import clojure.lang.RT;
-import clojure.lang.Symbol;
-import clojure.lang.Var;
 import edu.umass.cs.surveyman.SurveyMan;
 import edu.umass.cs.surveyman.analyses.SurveyResponse;
 import edu.umass.cs.surveyman.qc.Interpreter;
 import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 import edu.umass.cs.surveyman.utils.MersenneRandom;
 import org.apache.commons.math3.random.MersenneTwister;
@@ -19,7 +16,33 @@ import org.apache.logging.log4j.Logger;
 public abstract class AbstractRespondent {
 
     public static final Logger LOGGER = SurveyMan.LOGGER;
-    protected static final MersenneRandom rng = new MersenneRandom();
+    protected static final MersenneRandom sharedRng = new MersenneRandom();
+
+    /**
+     * The source of this respondent's answers: its own generator if it was given one, and otherwise the one shared by
+     * all respondents.
+     */
+    protected final MersenneRandom rng;
+
+    protected AbstractRespondent() {
+        this.rng = sharedRng;
+    }
+
+    /**
+     * @param rng The generator this respondent and its copies draw their paths and answers from. A population built
+     *            from an identically seeded generator, and drawn on one thread, is the same from run to run.
+     */
+    protected AbstractRespondent(MersenneRandom rng) {
+        this.rng = rng;
+    }
+
+    /**
+     * @return An interpreter to walk the survey with. Respondents given a generator draw their path from it too;
+     * others get a fresh interpreter of their own.
+     */
+    protected Interpreter newInterpreter(Survey survey) {
+        return rng == sharedRng ? new Interpreter(survey) : new Interpreter(survey, rng);
+    }
 
     /**
      * Method to obtain the simulated survey response for the survey that this respondent was instantiated with.
@@ -46,23 +69,16 @@ public abstract class AbstractRespondent {
 
     /**
      * Generates a string for freetext questions. If the input question's freetextPattern field is not null, it will
-     * generate a random regular expression. If the freetextPattern field is null, but the freetextDefault field is not,
-     * it will return the default string. Otherwise, it will return the string "DEFAULT".
+     * generate a random string matching that regular expression; each pattern is compiled once and the generator is
+     * shared across respondents and threads. If the freetextPattern field is null, but the freetextDefault field is
+     * not, it will return the default string. Otherwise, it will return the string "DEFAULT".
      * @param q The question whose string response we wish to generate.
      * @return A string for this respondent's response.
      */
     protected String generateStringComponent(Question q) {
-        if (q.freetextPattern!=null){
-            String pat = String.format("(re-rand/re-rand #\"%s\")", q.freetextPattern.pattern());
-            Var require = RT.var("clojure.core", "require");
-            Var eval = RT.var("clojure.core", "eval");
-            Var readString = RT.var("clojure.core", "read-string");
-            require.invoke(Symbol.intern("re-rand"));
-            Object str = eval.invoke(readString.invoke(pat));
-            if (str instanceof String)
-                return (String) str;
-            return (String) ((PersistentVector) str).nth(0);
-        } else if (q.freetextDefault!=null)
+        if (q.freetextPattern!=null)
+            return FreetextGenerators.forPattern(q.freetextPattern).generate(rng);
+        else if (q.freetextDefault!=null)
             return q.freetextDefault;
         else return "DEFAULT";
     }
@@ -0,0 +1,96 @@
+package edu.umass.cs.surveyman.qc.respondents;
+
+import clojure.lang.IFn;
+import clojure.lang.PersistentVector;
+import clojure.lang.RT;
+import clojure.lang.Symbol;
+import clojure.lang.Var;
+import edu.umass.cs.surveyman.SurveyMan;
+import edu.umass.cs.surveyman.qc.random.RegexSampler;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Cache of compiled freetext generators, keyed by regular expression. Each pattern is compiled at most once per JVM:
+ * natively via {@link RegexSampler} where possible, otherwise into a single re-rand closure. Safe for concurrent use.
+ */
+final class FreetextGenerators {
+
+    interface Generator {
+        String generate(Random rng);
+    }
+
+    private static final class NativeGenerator implements Generator {
+        private final RegexSampler sampler;
+        NativeGenerator(RegexSampler sampler) {
+            this.sampler = sampler;
+        }
+        public String generate(Random rng) {
+            return sampler.sample(rng);
+        }
+    }
+
+    /**
+     * Falls back to re-rand for syntax the native sampler rejects. The Clojure form is read and evaluated once, into
+     * a no-argument fn; generating a string is then a plain fn call. re-rand draws from Clojure's own source of
+     * randomness, so the supplied {@link Random} is ignored.
+     */
+    private static final class ReRandGenerator implements Generator {
+        private final IFn fn;
+        ReRandGenerator(Pattern pattern) {
+            synchronized (FreetextGenerators.class) {
+                Var require = RT.var("clojure.core", "require");
+                Var eval = RT.var("clojure.core", "eval");
+                Var readString = RT.var("clojure.core", "read-string");
+                require.invoke(Symbol.intern("re-rand"));
+                String form = String.format("(fn [] (re-rand/re-rand #\"%s\"))", pattern.pattern());
+                this.fn = (IFn) eval.invoke(readString.invoke(form));
+            }
+        }
+        public String generate(Random rng) {
+            Object str = fn.invoke();
+            if (str instanceof String)
+                return (String) str;
+            return (String) ((PersistentVector) str).nth(0);
+        }
+    }
+
+    private static final ConcurrentMap<String, Generator> cache = new ConcurrentHashMap<>();
+
+    private FreetextGenerators() {
+    }
+
+    private static String key(Pattern pattern) {
+        return pattern.flags() + "/" + pattern.pattern();
+    }
+
+    /**
+     * Returns the compiled generator for the input pattern, compiling it on first use.
+     * @param pattern The freetext pattern.
+     * @return A generator whose output matches the pattern.
+     */
+    static Generator forPattern(Pattern pattern) {
+        String key = key(pattern);
+        Generator generator = cache.get(key);
+        if (generator == null) {
+            generator = compile(pattern);
+            Generator existing = cache.putIfAbsent(key, generator);
+            if (existing != null)
+                generator = existing;
+        }
+        return generator;
+    }
+
+    private static Generator compile(Pattern pattern) {
+        try {
+            return new NativeGenerator(RegexSampler.compile(pattern));
+        } catch (IllegalArgumentException e) {
+            SurveyMan.LOGGER.info(String.format("Falling back to re-rand for freetext pattern %s: %s",
+                    pattern.pattern(), e.getMessage()));
+            return new ReRandGenerator(pattern);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import edu.umass.cs.surveyman.analyses.SurveyResponse;
 import edu.umass.cs.surveyman.qc.Interpreter;
 import edu.umass.cs.surveyman.survey.*;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -16,6 +17,10 @@ public class LexicographicRespondent extends AbstractRespondent {
     public LexicographicRespondent() {
     }
 
+    protected LexicographicRespondent(MersenneRandom rng) {
+        super(rng);
+    }
+
     static protected void sortByData(List<SurveyDatum> surveyDatumList) {
         for (int i = 0 ; i < surveyDatumList.size()-1 ; i++) {
             for (int j = i + 1 ; j < surveyDatumList.size() ; j++) {
@@ -32,7 +37,7 @@ public class LexicographicRespondent extends AbstractRespondent {
     }
 
     protected SurveyResponse simulate(Survey survey) throws SurveyException {
-        Interpreter interpreter = new Interpreter(survey);
+        Interpreter interpreter = newInterpreter(survey);
         do {
             Question q = interpreter.getNextQuestion();
             List<SurveyDatum> possibleAnswers = new ArrayList<>(q.options.values());
@@ -53,6 +58,7 @@ public class LexicographicRespondent extends AbstractRespondent {
     }
 
     private LexicographicRespondent(final LexicographicRespondent lexicographicRespondent) {
+        super(lexicographicRespondent.rng);
         this.survey = lexicographicRespondent.survey;
         this.surveyResponse = lexicographicRespondent.getResponse().copy();
     }
@@ -9,6 +9,7 @@ import edu.umass.cs.surveyman.survey.SurveyDatum;
 import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -18,6 +19,15 @@ public class NoisyLexicographicRespondent extends LexicographicRespondent {
     private double epsilon;
 
     public NoisyLexicographicRespondent(Survey survey, double epsilon) throws SurveyException {
+        this(survey, epsilon, sharedRng);
+    }
+
+    /**
+     * @param rng The generator this respondent draws its paths and answers from; see
+     * {@link AbstractRespondent#AbstractRespondent(MersenneRandom)}.
+     */
+    public NoisyLexicographicRespondent(Survey survey, double epsilon, MersenneRandom rng) throws SurveyException {
+        super(rng);
         this.survey = survey;
         this.epsilon = epsilon;
     }
@@ -37,7 +47,7 @@ public class NoisyLexicographicRespondent extends LexicographicRespondent {
 
     @Override
     public SurveyResponse getResponse() {
-        Interpreter interpreter = new Interpreter(survey);
+        Interpreter interpreter = newInterpreter(survey);
         try {
             do {
                 Question q = interpreter.getNextQuestion();
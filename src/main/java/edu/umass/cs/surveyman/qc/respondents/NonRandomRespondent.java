@@ -6,6 +6,7 @@ import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.SurveyDatum;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -22,6 +23,15 @@ public class NonRandomRespondent extends AbstractRespondent {
     protected Map<SurveyDatum, Double> strength = new HashMap<>();
 
     public NonRandomRespondent(Survey survey)  {
+        this(survey, sharedRng);
+    }
+
+    /**
+     * @param rng The generator this respondent draws its preferences, paths, and answers from; see
+     * {@link AbstractRespondent#AbstractRespondent(MersenneRandom)}.
+     */
+    public NonRandomRespondent(Survey survey, MersenneRandom rng) {
+        super(rng);
         this.survey = survey;
         for (Question q : survey.questions) {
             if (!q.freetext && !q.options.isEmpty()) {
@@ -41,6 +51,7 @@ public class NonRandomRespondent extends AbstractRespondent {
     }
 
     private NonRandomRespondent(NonRandomRespondent nonRandomRespondent) {
+        super(nonRandomRespondent.rng);
         this.survey = nonRandomRespondent.survey;
         this.answers = new HashMap<>(nonRandomRespondent.answers);
         this.strength = new HashMap<>(nonRandomRespondent.strength);
@@ -48,7 +59,7 @@ public class NonRandomRespondent extends AbstractRespondent {
 
     @Override
     public SurveyResponse getResponse() throws SurveyException {
-        Interpreter interpreter = new Interpreter(survey);
+        Interpreter interpreter = newInterpreter(survey);
         do {
             Question q = interpreter.getNextQuestion();
             SurveyDatum c = answers.get(q);
@@ -3,13 +3,14 @@ package edu.umass.cs.surveyman.qc.respondents;
 import edu.umass.cs.surveyman.analyses.KnownValidityStatus;
 import edu.umass.cs.surveyman.analyses.SurveyResponse;
 import edu.umass.cs.surveyman.qc.Interpreter;
+import edu.umass.cs.surveyman.qc.random.AliasTable;
 import edu.umass.cs.surveyman.survey.StringDatum;
 import edu.umass.cs.surveyman.survey.SurveyDatum;
 import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 import edu.umass.cs.surveyman.utils.Gensym;
-import org.apache.commons.lang3.StringUtils;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
 
 import java.util.*;
 
@@ -24,9 +25,22 @@ public class RandomRespondent extends AbstractRespondent {
     public final String id = gensym.next();
     private SurveyResponse response;
     private HashMap<Question, double[]> posPref;
+    /**
+     * Samplers compiled from {@code posPref}. These are immutable, so copies of this respondent share them.
+     */
+    private HashMap<Question, AliasTable> samplers;
     private final double UNSET = -1.0;
 
     public RandomRespondent(Survey survey, AdversaryType adversaryType) throws SurveyException {
+        this(survey, adversaryType, sharedRng);
+    }
+
+    /**
+     * @param rng The generator this respondent draws its paths and answers from; see
+     * {@link AbstractRespondent#AbstractRespondent(MersenneRandom)}.
+     */
+    public RandomRespondent(Survey survey, AdversaryType adversaryType, MersenneRandom rng) throws SurveyException {
+        super(rng);
         this.survey = survey;
         this.adversaryType = adversaryType;
         posPref = new HashMap<>();
@@ -38,13 +52,15 @@ public class RandomRespondent extends AbstractRespondent {
             posPref.put(q, prefs);
         }
         populatePosPreferences();
+        compileSamplers();
     }
 
     private RandomRespondent(RandomRespondent randomRespondent) throws SurveyException {
+        super(randomRespondent.rng);
         this.survey = randomRespondent.survey;
         this.adversaryType = randomRespondent.adversaryType;
-        this.posPref = new HashMap<>(randomRespondent.posPref);
-        populatePosPreferences();
+        this.posPref = randomRespondent.posPref;
+        this.samplers = randomRespondent.samplers;
     }
 
     @Override
@@ -95,16 +111,25 @@ public class RandomRespondent extends AbstractRespondent {
         }
     }
 
+    private void compileSamplers() {
+        samplers = new HashMap<>();
+        for (Map.Entry<Question, double[]> entry : posPref.entrySet())
+            if (entry.getValue().length > 0)
+                samplers.put(entry.getKey(), AliasTable.fromCumulativePreferences(entry.getValue()));
+    }
+
+    /**
+     * Decodes a position in the response space into answer options. Positions below the number of options denote a
+     * single option; larger positions are bitmasks over the options, with the most significant bit corresponding to
+     * the first option.
+     */
     private List<SurveyDatum> selectOptions(int i, SurveyDatum[] options) {
         List<SurveyDatum> retval = new ArrayList<>();
         if (i >= options.length) {
-            String binstr = Integer.toBinaryString(i);
-            assert binstr.length() <= options.length : String.format("binary string : %s; total option size : %d", binstr, options.length);
-            char[] selections = StringUtils.leftPad(binstr, options.length, '0').toCharArray();
-            assert i < Math.pow(2.0, (double) options.length);
-            assert selections.length == options.length : String.format("Told to select from %d options; actual number of options is %d", selections.length, options.length);
-            for (int j = 0 ; j < selections.length ; j++){
-                if (selections[j]=='1')
+            assert i < (1L << options.length) : String.format("Selection %d exceeds total option size %d", i, options.length);
+            int msb = options.length - 1;
+            for (int j = 0 ; j < options.length ; j++) {
+                if (((i >>> (msb - j)) & 1) == 1)
                     retval.add(options[j]);
             }
         } else retval.add(options[i]);
@@ -112,7 +137,7 @@ public class RandomRespondent extends AbstractRespondent {
     }
 
     private void populateResponses() throws SurveyException {
-        Interpreter interpreter = new Interpreter(survey);
+        Interpreter interpreter = newInterpreter(survey);
         do {
             Question q = interpreter.getNextQuestion();
             SurveyDatum[] c = q.getOptListByIndex();
@@ -120,20 +145,12 @@ public class RandomRespondent extends AbstractRespondent {
             // calculate our answer
             if (q.freetext) {
                 answers.add(new StringDatum(generateStringComponent(q), -1, -1, -1));
-            } else {
-                int denom = getDenominator(q);
-                double prob = rng.nextDouble();
-                double cumulativeProb = 0.0;
-                for (int j = 0 ; j < denom ; j++) {
-                    assert posPref.get(q).length == denom :
-                            String.format("Expected position preference question options and denom to be equal (%d = %d)",
-                            posPref.get(q).length, denom);
-                    cumulativeProb += posPref.get(q)[j];
-                    if (prob < cumulativeProb) {
-                        answers.addAll(selectOptions(j, c));
-                        break;
-                    }
-                }
+            } else if (c.length > 0) {
+                AliasTable sampler = samplers.get(q);
+                assert sampler.size() == getDenominator(q) :
+                        String.format("Expected position preference question options and denom to be equal (%d = %d)",
+                        sampler.size(), getDenominator(q));
+                answers.addAll(selectOptions(sampler.sample(rng), c));
             }
             interpreter.answer(q, answers);
         } while (!interpreter.terminated());
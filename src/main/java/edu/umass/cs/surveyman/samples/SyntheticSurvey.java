@@ -0,0 +1,287 @@
+package edu.umass.cs.surveyman.samples;
+
+import edu.umass.cs.surveyman.analyses.SyntheticResponses;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates surveys of any size and shape, for finding where the analyses stop scaling. A survey is determined by its
+ * {@link Shape} and a seed: the same two always produce the same CSV, and so the same question and option ids. Pair it
+ * with {@link SyntheticResponses} to simulate respondents.
+ *
+ * <p>Questions are laid out in leaf blocks of {@link Shape#blockSize}, nested {@link Shape#depth} deep with
+ * {@link Shape#breadth} sub-blocks to each block. Some top-level blocks branch, from their first question, to one of
+ * the next {@link Shape#fanOut} fixed top-level blocks; some leaves are variant blocks, from which each respondent
+ * sees one question; some questions are checkboxes; and some blocks float.</p>
+ *
+ * <pre>
+ *     java -cp surveyman.jar edu.umass.cs.surveyman.samples.SyntheticSurvey --questions=5000 --depth=3 \
+ *         --respondents=1000000 --results=synthetic_results.csv synthetic.csv
+ * </pre>
+ */
+public class SyntheticSurvey {
+
+    /**
+     * The size and structure of a generated survey. Fractions are the probability that each block or question has
+     * the property.
+     */
+    public static class Shape {
+        public int questions = 100;
+        public int options = 5;
+        public int blockSize = 5;
+        public int depth = 1;
+        public int breadth = 2;
+        public double branching = 0.0;
+        public int fanOut = 2;
+        public double variants = 0.0;
+        public double checkboxes = 0.0;
+        public double floating = 0.0;
+    }
+
+    private final Shape shape;
+    private final long seed;
+
+    public SyntheticSurvey(Shape shape, long seed) {
+        this.shape = shape;
+        this.seed = seed;
+    }
+
+    /**
+     * Streams the survey as CSV. Only the top-level layout is held in memory, so surveys larger than the heap can be
+     * written straight to disk. The writer is flushed but not closed.
+     * @param out Where to write the survey.
+     * @throws IOException
+     */
+    public void writeCsv(Writer out) throws IOException {
+        new Layout(out).write();
+        out.flush();
+    }
+
+    /**
+     * Generates the survey and parses it.
+     * @return The parsed survey.
+     * @throws SurveyException
+     */
+    public Survey survey()
+            throws SurveyException,
+            IOException,
+            NoSuchMethodException,
+            IllegalAccessException,
+            InvocationTargetException
+    {
+        StringWriter csv = new StringWriter();
+        writeCsv(csv);
+        return new CSVParser(new CSVLexer(new StringReader(csv.toString()), ",")).parse();
+    }
+
+    /**
+     * Writes the survey as JSON. The whole survey is parsed in memory first.
+     * @param out Where to write the survey.
+     * @throws IOException
+     * @throws SurveyException
+     */
+    public void writeJson(Writer out)
+            throws SurveyException,
+            IOException,
+            NoSuchMethodException,
+            IllegalAccessException,
+            InvocationTargetException
+    {
+        out.write(survey().jsonize());
+        out.flush();
+    }
+
+    /**
+     * Lays out one survey. Block and question properties are drawn in the order they are written, so the output only
+     * depends on the shape and the seed.
+     */
+    private class Layout {
+
+        private final Writer out;
+        private final MersenneRandom rng = new MersenneRandom(seed);
+        private final int leavesPerTop;
+        private final boolean[] floats;
+        private int question = 0;
+        private int variantSets = 0;
+
+        Layout(Writer out) {
+            this.out = out;
+            int leaves = (shape.questions + shape.blockSize - 1) / shape.blockSize;
+            int perTop = 1;
+            for (int d = 1; d < shape.depth && perTop < leaves; d++)
+                perTop *= shape.breadth;
+            this.leavesPerTop = perTop;
+            // Floating top-level blocks cannot be branched to, so they have to be known up front.
+            this.floats = new boolean[(leaves + perTop - 1) / perTop];
+            for (int t = 0; t < floats.length; t++)
+                floats[t] = rng.nextDouble() < shape.floating;
+        }
+
+        void write() throws IOException {
+            out.write("BLOCK,QUESTION,OPTIONS,BRANCH,EXCLUSIVE,ORDERED\n");
+            for (int t = 0; t < floats.length; t++) {
+                String id = (floats[t] ? "_" : "") + (t + 1);
+                List<String> destinations = new ArrayList<>();
+                if (!floats[t] && rng.nextDouble() < shape.branching)
+                    for (int d = t + 1; d < floats.length && destinations.size() < shape.fanOut; d++)
+                        if (!floats[d])
+                            destinations.add(Integer.toString(d + 1));
+                block(id, leavesPerTop, destinations);
+            }
+        }
+
+        /**
+         * Writes a block and everything under it.
+         * @param leaves The number of leaf blocks under this one.
+         * @param destinations Where the first question under this block branches to, if anywhere. Blocks on the path
+         *                     to that question are neither floating nor variants.
+         */
+        private void block(String id, int leaves, List<String> destinations) throws IOException {
+            if (question >= shape.questions)
+                return;
+            if (leaves == 1) {
+                leaf(id, destinations);
+                return;
+            }
+            int perChild = leaves / shape.breadth;
+            for (int c = 0; c < shape.breadth; c++) {
+                boolean branches = c == 0 && !destinations.isEmpty();
+                String child = id + "." + (!branches && rng.nextDouble() < shape.floating ? "_" : "") + (c + 1);
+                block(child, perChild, branches ? destinations : new ArrayList<String>());
+            }
+        }
+
+        private void leaf(String id, List<String> destinations) throws IOException {
+            int size = Math.min(shape.blockSize, shape.questions - question);
+            boolean variant = destinations.isEmpty() && rng.nextDouble() < shape.variants;
+            if (variant) {
+                variantSets++;
+                // Only sub-blocks are sampled from; a top-level variant block would show every variant.
+                if (id.indexOf('.') < 0)
+                    id += ".1";
+            }
+            for (int q = 0; q < size; q++) {
+                question++;
+                boolean branch = q == 0 && !destinations.isEmpty();
+                boolean checkbox = !branch && !variant && rng.nextDouble() < shape.checkboxes;
+                String text = variant
+                        ? String.format("Question %d (variant %d of set %d).", question, q + 1, variantSets)
+                        : String.format("Question %d.", question);
+                for (int o = 0; o < shape.options; o++) {
+                    String target = branch ? destinations.get(o % destinations.size()) : variant ? "NEXT" : "";
+                    out.write(o == 0 ? id + "," + text : ",");
+                    out.write(",Option " + (o + 1) + "," + target + ",");
+                    out.write(o == 0 ? (checkbox ? "FALSE,FALSE\n" : "TRUE,TRUE\n") : ",\n");
+                }
+            }
+        }
+    }
+
+    private static ArgumentParser makeArgParser() {
+        Shape defaults = new Shape();
+        ArgumentParser parser = ArgumentParsers.newArgumentParser(SyntheticSurvey.class.getName(), true, "-")
+                .description("Generates a synthetic survey and, optionally, simulated responses to it.");
+        parser.addArgument("survey").required(true)
+                .help("Where to write the survey. Files ending in .json are written as JSON, anything else as CSV.");
+        parser.addArgument("--questions").type(Integer.class).setDefault(defaults.questions);
+        parser.addArgument("--options").type(Integer.class).setDefault(defaults.options)
+                .help("Answer options per question.");
+        parser.addArgument("--blocksize").type(Integer.class).setDefault(defaults.blockSize)
+                .help("Questions per innermost block.");
+        parser.addArgument("--depth").type(Integer.class).setDefault(defaults.depth)
+                .help("Levels of block nesting; 1 is a flat survey.");
+        parser.addArgument("--breadth").type(Integer.class).setDefault(defaults.breadth)
+                .help("Sub-blocks per nested block.");
+        parser.addArgument("--branching").type(Double.class).setDefault(defaults.branching)
+                .help("Fraction of top-level blocks that branch.");
+        parser.addArgument("--fanout").type(Integer.class).setDefault(defaults.fanOut)
+                .help("Distinct destinations per branch question.");
+        parser.addArgument("--variants").type(Double.class).setDefault(defaults.variants)
+                .help("Fraction of innermost blocks that are variant blocks.");
+        parser.addArgument("--checkboxes").type(Double.class).setDefault(defaults.checkboxes)
+                .help("Fraction of questions that are checkboxes.");
+        parser.addArgument("--floating").type(Double.class).setDefault(defaults.floating)
+                .help("Fraction of blocks that float.");
+        parser.addArgument("--seed").type(Long.class).setDefault(0L);
+        parser.addArgument("--respondents").type(Long.class).setDefault(0L)
+                .help("Respondents to simulate. Their responses are streamed to the results file.");
+        parser.addArgument("--bots").type(Double.class).setDefault(0.1).help("Fraction of respondents who are bots.");
+        parser.addArgument("--noise").type(Double.class).setDefault(0.1)
+                .help("How often an honest respondent answers at random.");
+        parser.addArgument("--breakoff").type(Double.class).setDefault(0.05)
+                .help("Fraction of respondents who stop partway through.");
+        parser.addArgument("--results").setDefault("synthetic_results.csv")
+                .help("Where to write the simulated responses, in the SurveyMan Runtime results format.");
+        return parser;
+    }
+
+    /**
+     * Execute `java -cp /path/to/surveyman.jar edu.umass.cs.surveyman.samples.SyntheticSurvey --help` for options.
+     * @param args The output file, and the shape of the survey and its population.
+     * @throws IOException
+     * @throws SurveyException
+     */
+    public static void main(
+            String[] args)
+            throws SurveyException,
+            IOException,
+            NoSuchMethodException,
+            IllegalAccessException,
+            InvocationTargetException
+    {
+        ArgumentParser parser = makeArgParser();
+        Namespace ns;
+        try {
+            ns = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            System.exit(1);
+            return;
+        }
+        Shape shape = new Shape();
+        shape.questions = ns.getInt("questions");
+        shape.options = ns.getInt("options");
+        shape.blockSize = ns.getInt("blocksize");
+        shape.depth = ns.getInt("depth");
+        shape.breadth = ns.getInt("breadth");
+        shape.branching = ns.getDouble("branching");
+        shape.fanOut = ns.getInt("fanout");
+        shape.variants = ns.getDouble("variants");
+        shape.checkboxes = ns.getDouble("checkboxes");
+        shape.floating = ns.getDouble("floating");
+        long seed = ns.getLong("seed");
+        SyntheticSurvey generator = new SyntheticSurvey(shape, seed);
+
+        String filename = ns.getString("survey");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename),
+                StandardCharsets.UTF_8))) {
+            if (filename.endsWith(".json"))
+                generator.writeJson(out);
+            else generator.writeCsv(out);
+        }
+
+        long respondents = ns.getLong("respondents");
+        if (respondents > 0) {
+            Survey survey = generator.survey();
+            SyntheticResponses responses = new SyntheticResponses(survey, respondents, seed, ns.getDouble("bots"),
+                    ns.getDouble("noise"), ns.getDouble("breakoff"));
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(ns.getString("results")),
+                    StandardCharsets.UTF_8))) {
+                responses.write(out);
+            }
+        }
+    }
+}
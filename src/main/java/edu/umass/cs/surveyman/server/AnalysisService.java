@@ -0,0 +1,280 @@
+package edu.umass.cs.surveyman.server;
+
+import edu.umass.cs.surveyman.SurveyMan;
+import edu.umass.cs.surveyman.analyses.Diagnostics;
+import edu.umass.cs.surveyman.analyses.RuleSet;
+import edu.umass.cs.surveyman.analyses.StaticAnalysis;
+import edu.umass.cs.surveyman.analyses.rules.Compactness;
+import edu.umass.cs.surveyman.qc.classifiers.AbstractClassifier;
+import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs static analyses asynchronously. Jobs are executed on a bounded pool with a bounded queue; when the queue is
+ * full, {@link #submit} throws {@link RejectedExecutionException} so that callers can push back on clients. Finished
+ * reports are cached by a content hash of the survey and the analysis parameters, so resubmitting an identical survey
+ * returns immediately, and identical submissions that are still in flight share one job.
+ */
+public class AnalysisService implements AutoCloseable {
+
+  public static int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+  public static int DEFAULT_QUEUE_CAPACITY = 64;
+  public static int DEFAULT_CACHE_SIZE = 256;
+  public static long DEFAULT_RULE_TIMEOUT_MS = 30000;
+
+  public enum Status { PENDING, RUNNING, DONE, FAILED }
+
+  /**
+   * A single submitted analysis. All fields are safe to read from any thread.
+   */
+  public static class Job {
+    public final String id;
+    public final String key;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Status status = Status.PENDING;
+    private volatile String report;
+    private volatile Throwable error;
+
+    Job(String id, String key) {
+      this.id = id;
+      this.key = key;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    /**
+     * @return The printed report, or null if the job has not finished successfully.
+     */
+    public String getReport() {
+      return report;
+    }
+
+    /**
+     * @return The exception that ended this job, or null if it has not failed.
+     */
+    public Throwable getError() {
+      return error;
+    }
+
+    /**
+     * Blocks until the job finishes or the timeout elapses.
+     * @return true if the job finished.
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+      return finished.await(timeout, unit);
+    }
+
+    void running() {
+      status = Status.RUNNING;
+    }
+
+    void succeed(String report) {
+      this.report = report;
+      this.status = Status.DONE;
+      finished.countDown();
+    }
+
+    void fail(Throwable error) {
+      this.error = error;
+      this.status = Status.FAILED;
+      finished.countDown();
+    }
+  }
+
+  /**
+   * What a job needs in order to run. Parsing happens on the worker thread, not the request thread.
+   */
+  public interface SurveySource {
+    Survey parse() throws SurveyException;
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final ExecutorService ruleExecutor;
+  private final Map<String, String> reportCache;
+  private final Map<String, Job> jobs;
+  private final ConcurrentMap<String, Job> inFlight = new ConcurrentHashMap<>();
+  private final RuleSet rules;
+  private final AtomicLong nextId = new AtomicLong();
+
+  public AnalysisService() {
+    this(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY, DEFAULT_CACHE_SIZE);
+  }
+
+  public AnalysisService(int threads, int queueCapacity, final int cacheSize) {
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+    // Rules get their own pool: jobs block on their rules, so sharing the job pool could deadlock.
+    this.ruleExecutor = Executors.newFixedThreadPool(threads);
+    this.reportCache = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > cacheSize;
+      }
+    });
+    // Keep enough job handles around for clients to poll everything that is queued, running, or recently done.
+    final int retained = cacheSize + queueCapacity + threads;
+    this.jobs = Collections.synchronizedMap(new LinkedHashMap<String, Job>(16, 0.75f, false) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+        return size() > retained;
+      }
+    });
+    this.rules = RuleSet.defaults().without(Compactness.class);
+  }
+
+  /**
+   * @return The rules jobs are checked against. The server skips {@link Compactness}, since surveys posted to it are
+   * usually generated.
+   */
+  public RuleSet getRules() {
+    return rules;
+  }
+
+  /**
+   * Computes the cache key for a submission.
+   * @param contentType The media type of the survey body.
+   * @param body The raw survey.
+   * @param params Analysis parameters; order does not matter.
+   * @return Hex-encoded SHA-256 digest.
+   */
+  public static String contentHash(String contentType, String body, Map<String, String> params) {
+    return contentHash(contentType, body.getBytes(StandardCharsets.UTF_8), params);
+  }
+
+  /**
+   * Computes the cache key for a submission whose body is still in the bytes it was posted as.
+   */
+  public static String contentHash(String contentType, byte[] body, Map<String, String> params) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(contentType.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      for (Map.Entry<String, String> entry : new TreeMap<>(params).entrySet()) {
+        digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '=');
+        digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+      }
+      digest.update(body);
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest())
+        hex.append(String.format("%02x", b & 0xff));
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Submits a survey for analysis.
+   * @param key The content hash of this submission (see {@link #contentHash}).
+   * @param source Parses the survey on the worker thread.
+   * @param params Analysis parameters (classifier, n, alpha, smoothing, granularity).
+   * @return A job handle. If the report is cached, the job is already done.
+   * @throws RejectedExecutionException if the work queue is full.
+   */
+  public Job submit(String key, final SurveySource source, final Map<String, String> params) {
+    String cached = reportCache.get(key);
+    if (cached != null) {
+      Job job = newJob(key);
+      job.succeed(cached);
+      return job;
+    }
+    final Job job = newJob(key);
+    Job existing = inFlight.putIfAbsent(key, job);
+    if (existing != null) {
+      jobs.remove(job.id);
+      return existing;
+    }
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          job.running();
+          try {
+            String report = analyze(source.parse(), params);
+            reportCache.put(job.key, report);
+            job.succeed(report);
+          } catch (Throwable t) {
+            SurveyMan.LOGGER.warn(String.format("Analysis job %s failed: %s", job.id, t.getMessage()));
+            job.fail(t);
+          } finally {
+            inFlight.remove(job.key, job);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlight.remove(key, job);
+      jobs.remove(job.id);
+      throw e;
+    }
+    return job;
+  }
+
+  /**
+   * Checks a survey against this service's rules, collecting every violation. Runs on the rule pool, so it does not
+   * wait behind queued analysis jobs.
+   * @param survey The parsed survey.
+   * @return Every violation found.
+   * @throws InterruptedException if the calling thread is interrupted while waiting on the rules.
+   */
+  public Diagnostics validate(Survey survey) throws InterruptedException {
+    return rules.collect(survey, ruleExecutor, DEFAULT_RULE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param id A job identifier returned by {@link #submit}.
+   * @return The job, or null if it is unknown or has been evicted.
+   */
+  public Job getJob(String id) {
+    return jobs.get(id);
+  }
+
+  private Job newJob(String key) {
+    Job job = new Job(Long.toString(nextId.incrementAndGet()), key);
+    jobs.put(job.id, job);
+    return job;
+  }
+
+  private String analyze(Survey survey, Map<String, String> params) throws SurveyException {
+    AbstractClassifier classifier = SurveyMan.resolveClassifier(
+            survey,
+            StaticAnalysisServer.getOrElse(params, "classifier", "stacked").toUpperCase(),
+            Integer.parseInt(StaticAnalysisServer.getOrElse(params, "n",
+                    Integer.toString(StaticAnalysisServer.DEFAULT_N))),
+            Double.parseDouble(StaticAnalysisServer.getOrElse(params, "alpha",
+                    Double.toString(StaticAnalysisServer.DEFAULT_ALPHA))),
+            Boolean.parseBoolean(StaticAnalysisServer.getOrElse(params, "smoothing", "false"))
+    );
+    double granularity = Double.parseDouble(StaticAnalysisServer.getOrElse(params, "granularity",
+            Double.toString(StaticAnalysisServer.DEFAULT_GRANULARITY)));
+    StaticAnalysis.wellFormednessChecks(survey, rules, ruleExecutor, DEFAULT_RULE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    StaticAnalysis.Report report = StaticAnalysis.staticAnalysis(survey, classifier, granularity,
+            RandomRespondent.AdversaryType.UNIFORM, RuleSet.EMPTY);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    report.print(out);
+    try {
+      return out.toString(StandardCharsets.UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    ruleExecutor.shutdownNow();
+  }
+}
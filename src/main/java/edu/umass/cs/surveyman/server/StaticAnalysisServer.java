@@ -1,18 +1,13 @@
 package edu.umass.cs.surveyman.server;
 
 import edu.umass.cs.surveyman.SurveyMan;
-import edu.umass.cs.surveyman.analyses.AbstractRule;
-import edu.umass.cs.surveyman.analyses.StaticAnalysis;
-import edu.umass.cs.surveyman.analyses.rules.Compactness;
+import edu.umass.cs.surveyman.analyses.Diagnostics;
 import edu.umass.cs.surveyman.input.csv.CSVLexer;
 import edu.umass.cs.surveyman.input.csv.CSVParser;
 import edu.umass.cs.surveyman.input.json.JSONParser;
-import edu.umass.cs.surveyman.qc.classifiers.AbstractClassifier;
-import edu.umass.cs.surveyman.qc.classifiers.StackedClassifier;
-import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
-import edu.umass.cs.surveyman.utils.Slurpie;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.AbstractHandler;
@@ -20,14 +15,20 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author jfoley.
@@ -37,10 +38,22 @@ public class StaticAnalysisServer implements AutoCloseable {
   public static int DEFAULT_N = 100;
   public static double DEFAULT_GRANULARITY = 0.1;
   public static double DEFAULT_ALPHA = 0.1;
+  // The largest survey, in bytes, that the server will read from a request; larger posts are refused with 413.
+  public static long MAX_SURVEY_BYTES = JSONParser.DEFAULT_SIZE_LIMIT;
+  // How long POST /analyze waits for its report before answering with the job id instead.
+  public static long ANALYZE_TIMEOUT_MILLIS = 60 * 1000;
+
+  private static final String JOBS_PREFIX = "/jobs/";
 
   private final Server server;
+  private final AnalysisService service;
 
   public StaticAnalysisServer(int port) {
+    this(port, new AnalysisService());
+  }
+
+  public StaticAnalysisServer(int port, AnalysisService service) {
+    this.service = service;
     this.server = new Server(port);
     this.server.setHandler(new AbstractHandler() {
       @Override
@@ -98,67 +111,203 @@ public class StaticAnalysisServer implements AutoCloseable {
   }
 
 
-  public static void analyzeRequest(HttpServletRequest request, HttpServletResponse response) throws IOException, SurveyException {
+  /**
+   * Dispatches a request. Supported routes:
+   * <ul>
+   *   <li><code>POST /analyze</code>: analyzes the posted survey and responds with the report once it is done. If it
+   *   is not done within {@link #ANALYZE_TIMEOUT_MILLIS}, responds as <code>POST /jobs</code> would, so that the
+   *   client can poll for the report without holding a server thread.</li>
+   *   <li><code>POST /jobs</code>: queues the posted survey and responds immediately (202) with the job id.</li>
+   *   <li><code>GET /jobs/{id}</code>: responds with the report if the job is done, or its status (202) if not.</li>
+   *   <li><code>POST /validate</code>: checks the posted survey against every rule and responds with all of the
+   *   violations found, as JSON {@link Diagnostics}.</li>
+   * </ul>
+   * Posted surveys are parsed and analyzed on the service's worker pool. When the pool's queue is full, posts are
+   * refused with 503 and a Retry-After header. Posts larger than {@link #MAX_SURVEY_BYTES} are refused with 413.
+   */
+  public void analyzeRequest(HttpServletRequest request, HttpServletResponse response) throws IOException, SurveyException {
     String path = request.getPathInfo();
-    if(!path.equals("/analyze")) {
-      response.sendError(400, "No method for path.");
-      return;
-    }
     String method = request.getMethod();
     SurveyMan.LOGGER.info("Method: " + method);
-    switch(method) {
-      case "POST": break;
-      case "OPTIONS":
-        response.setStatus(200);
-        response.setContentType("text/plain");
+    if (method.equals("OPTIONS")) {
+      response.setStatus(200);
+      response.setContentType("text/plain");
+      return;
+    }
+    if (path.equals("/analyze") || path.equals("/jobs")) {
+      if (!method.equals("POST")) {
+        response.sendError(400, "Bad request method.");
         return;
-      default:
+      }
+      AnalysisService.Job job = submit(request, response);
+      if (job == null)
+        return;
+      if (path.equals("/jobs")) {
+        writeStatus(job, response);
+        return;
+      }
+      boolean finished;
+      try {
+        finished = job.await(ANALYZE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+      if (finished)
+        writeResult(job, response);
+      else writeStatus(job, response);
+    } else if (path.equals("/validate")) {
+      if (!method.equals("POST")) {
+        response.sendError(400, "Bad request method.");
+        return;
+      }
+      validate(request, response);
+    } else if (path.startsWith(JOBS_PREFIX)) {
+      if (!method.equals("GET")) {
         response.sendError(400, "Bad request method.");
         return;
+      }
+      AnalysisService.Job job = service.getJob(path.substring(JOBS_PREFIX.length()));
+      if (job == null)
+        response.sendError(404, "No such job.");
+      else if (job.getStatus() == AnalysisService.Status.DONE || job.getStatus() == AnalysisService.Status.FAILED)
+        writeResult(job, response);
+      else writeStatus(job, response);
+    } else {
+      response.sendError(400, "No method for path.");
     }
+  }
 
+  private static String mediaType(HttpServletRequest request) {
     String contentType = request.getContentType();
+    if (contentType == null)
+      return null;
     int semicolon = contentType.indexOf(';');
     if(semicolon >= 0) {
       contentType = contentType.substring(0, semicolon);
     }
+    return contentType;
+  }
+
+  /**
+   * Reads the request body, but no more than {@link #MAX_SURVEY_BYTES} of it. The body is kept, rather than parsed
+   * straight off the stream, because the survey is parsed later on a worker thread and its bytes are part of the
+   * cache key.
+   * @return The body, or null if it is larger than the limit, in which case the request has been answered with 413.
+   */
+  private static byte[] readBody(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    long limit = MAX_SURVEY_BYTES;
+    if (request.getContentLength() <= limit) {
+      ByteArrayOutputStream body = new ByteArrayOutputStream(Math.max(request.getContentLength(), 32));
+      byte[] buffer = new byte[8192];
+      try (InputStream in = request.getInputStream()) {
+        int n;
+        while ((n = in.read(buffer)) != -1 && body.size() <= limit)
+          body.write(buffer, 0, (int) Math.min(n, limit + 1 - body.size()));
+      }
+      if (body.size() <= limit)
+        return body.toByteArray();
+    }
+    response.sendError(413, String.format("Survey is larger than the limit of %d bytes.", limit));
+    return null;
+  }
 
-    Survey survey;
-    AbstractRule.getDefaultRules();
-    AbstractRule.unregisterRule(Compactness.class);
+  /**
+   * @return A source that parses the body according to its media type, or null if the media type is unsupported.
+   */
+  private static AnalysisService.SurveySource sourceFor(String contentType, final String uri, final byte[] body) {
+    if (contentType == null)
+      return null;
     switch (contentType) {
       case "application/json":
-        survey = parseJSON(request);
-        break;
       case "text/json":
-        survey = parseJSON(request);
-        break;
+        return new AnalysisService.SurveySource() {
+          @Override
+          public Survey parse() throws SurveyException {
+            return new JSONParser(new ByteArrayInputStream(body), uri, false, MAX_SURVEY_BYTES).parse();
+          }
+        };
       case "text/csv":
-        survey = parseCSV(request);
-        break;
+        return new AnalysisService.SurveySource() {
+          @Override
+          public Survey parse() throws SurveyException {
+            try {
+              return new CSVParser(new CSVLexer(new ByteArrayInputStream(body), ",")).parse();
+            } catch (IOException | InvocationTargetException | IllegalAccessException | NoSuchMethodException e) {
+              throw new RuntimeException(e);
+            }
+          }
+        };
       default:
-        response.sendError(400, "Bad content-type of request.");
-        return;
+        return null;
     }
+  }
 
-    Map<String,String> qp = parseQueryParams(request);
+  private void validate(HttpServletRequest request, HttpServletResponse response) throws IOException, SurveyException {
+    byte[] body = readBody(request, response);
+    if (body == null)
+      return;
+    AnalysisService.SurveySource source = sourceFor(mediaType(request), request.getRequestURI(), body);
+    if (source == null) {
+      response.sendError(400, "Bad content-type of request.");
+      return;
+    }
+    Diagnostics diagnostics;
+    try {
+      diagnostics = service.validate(source.parse());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    response.setStatus(200);
+    response.setContentType("application/json");
+    try (JsonWriter out = new JsonWriter(response.getOutputStream())) {
+      diagnostics.write(out);
+    }
+  }
 
-    AbstractClassifier classifier = SurveyMan.resolveClassifier(
-            survey,
-            getOrElse(qp, "classifier", "stacked"),
-            Integer.parseInt(getOrElse(qp, "n", Integer.toString(DEFAULT_N))),
-            Double.parseDouble(getOrElse(qp, "alpha", Double.toString(DEFAULT_ALPHA))),
-            Boolean.parseBoolean(getOrElse(qp, "smoothing", "false"))
-            );
+  private AnalysisService.Job submit(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String contentType = mediaType(request);
+    byte[] body = readBody(request, response);
+    if (body == null)
+      return null;
+    AnalysisService.SurveySource source = sourceFor(contentType, request.getRequestURI(), body);
+    if (source == null) {
+      response.sendError(400, "Bad content-type of request.");
+      return null;
+    }
 
-    double granularity = Double.parseDouble(getOrElse(qp, "granularity", Double.toString(DEFAULT_GRANULARITY)));
+    Map<String,String> qp = parseQueryParams(request);
+    try {
+      return service.submit(AnalysisService.contentHash(contentType, body, qp), source, qp);
+    } catch (RejectedExecutionException e) {
+      response.addHeader("Retry-After", "1");
+      response.sendError(503, "Analysis queue is full.");
+      return null;
+    }
+  }
 
-    StaticAnalysis.Report report = StaticAnalysis.staticAnalysis(survey, classifier, granularity, RandomRespondent.AdversaryType.UNIFORM);
+  private static void writeStatus(AnalysisService.Job job, HttpServletResponse response) throws IOException {
+    response.setStatus(202);
+    response.setContentType("application/json");
+    try (OutputStream out = response.getOutputStream()) {
+      out.write(String.format("{\"id\" : \"%s\", \"status\" : \"%s\"}", job.id, job.getStatus())
+              .getBytes(StandardCharsets.UTF_8));
+    }
+  }
 
+  private static void writeResult(AnalysisService.Job job, HttpServletResponse response) throws IOException {
+    if (job.getStatus() == AnalysisService.Status.FAILED) {
+      Throwable e = job.getError();
+      if (e instanceof SurveyException)
+        response.sendError(400, "SurveyException: " + e.getMessage());
+      else response.sendError(501, e.getMessage());
+      return;
+    }
+    response.setStatus(200);
+    response.setContentType("text/plain");
     try (OutputStream out = response.getOutputStream()) {
-      report.print(out);
-      response.setStatus(200);
-      response.setContentType("text/plain");
+      out.write(job.getReport().getBytes(StandardCharsets.UTF_8));
     }
   }
 
@@ -178,26 +327,23 @@ public class StaticAnalysisServer implements AutoCloseable {
     return results;
   }
 
-  public static Survey parseCSV(HttpServletRequest request) throws IOException, SurveyException {
-    try (BufferedReader reader = request.getReader()) {
-      CSVParser parser = new CSVParser(new CSVLexer(reader));
+  public static Survey parseCSV(String csv) throws SurveyException {
+    try {
+      CSVParser parser = new CSVParser(new CSVLexer(new StringReader(csv)));
       return parser.parse();
-    } catch (InvocationTargetException | IllegalAccessException | NoSuchMethodException e) {
+    } catch (IOException | InvocationTargetException | IllegalAccessException | NoSuchMethodException e) {
       throw new RuntimeException(e);
     }
   }
 
-  public static Survey parseJSON(HttpServletRequest request) throws IOException, SurveyException {
-    String json;
-    try (BufferedReader reader = request.getReader()) {
-      json = Slurpie.slurp(reader, Integer.MAX_VALUE);
-    }
+  public static Survey parseJSON(String json) throws SurveyException {
     JSONParser parser = new JSONParser(json);
     return parser.parse();
   }
 
   public void close() throws Exception {
     server.stop();
+    service.close();
   }
 
 }
@@ -5,8 +5,12 @@ import edu.umass.cs.surveyman.qc.QCMetrics;
 import org.apache.commons.lang3.StringUtils;
 import edu.umass.cs.surveyman.survey.exceptions.BlockException;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -156,6 +160,14 @@ public class Block extends SurveyObj implements Comparable, Serializable {
      * The internal block representation; used for sorting, suffling, and generating "phantom" blocks.
      */
     private int[] id = null;
+    /**
+     * The survey's frozen block tree, if this block is in one; see {@link Survey#freeze()}.
+     */
+    private transient BlockHierarchy hierarchy = null;
+    /**
+     * This block's ordinal in {@link #hierarchy}.
+     */
+    private transient int ordinal = -1;
 
     /**
      * Constructs a block with the appropriate string id.
@@ -169,6 +181,35 @@ public class Block extends SurveyObj implements Comparable, Serializable {
         this.branchParadigm = BranchParadigm.NONE;
     }
 
+    /**
+     * Restores a block exactly as it was compiled, e.g. from a {@link SurveySnapshot}.
+     */
+    Block(String strId, int[] id, boolean randomize, BranchParadigm branchParadigm) {
+        this.strId = strId;
+        this.id = id;
+        this.randomize = randomize;
+        this.branchParadigm = branchParadigm;
+    }
+
+    void freeze(BlockHierarchy hierarchy, int ordinal) {
+        this.hierarchy = hierarchy;
+        this.ordinal = ordinal;
+    }
+
+    private boolean isFrozen() {
+        return hierarchy != null && hierarchy.valid;
+    }
+
+    /**
+     * Discards the frozen hierarchy this block belongs to, if any, since this block is about to change.
+     */
+    void thaw() {
+        if (hierarchy != null)
+            hierarchy.valid = false;
+        hierarchy = null;
+        ordinal = -1;
+    }
+
     /**
      * Returns the identifier for this block in the source file.
      * @return The String representation of the source identifier.
@@ -307,6 +348,7 @@ public class Block extends SurveyObj implements Comparable, Serializable {
      * Sets the parent pointer of this block, according to its source string identifier.
      */
     public void setParentPointer(){
+        thaw();
         for (Block b : this.subBlocks){
             if (b.parentBlock==null)
                 b.parentBlock = this;
@@ -316,6 +358,7 @@ public class Block extends SurveyObj implements Comparable, Serializable {
 
     public void updateBranchParadigm(BranchParadigm branchParadigm)
     {
+        thaw();
         this.branchParadigm = branchParadigm;
         if (this.parentBlock!=null) this.parentBlock.branchParadigm = BranchParadigm.UNKNOWN ;
     }
@@ -401,7 +444,11 @@ public class Block extends SurveyObj implements Comparable, Serializable {
      */
     public boolean isSubblockOf(Block b) {
         // test whether this is a subblock of b
+        if (this.isFrozen() && b.hierarchy == this.hierarchy)
+            return hierarchy.isDescendant(this.ordinal, b.ordinal);
         int[] yourId = b.getBlockId();
+        if (yourId.length > this.id.length)
+            return false;
         for (int i = 0 ; i < yourId.length ; i++) {
             if (yourId[i] != this.id[i])
                 return false;
@@ -414,6 +461,7 @@ public class Block extends SurveyObj implements Comparable, Serializable {
      * @param id The input block identifier.
      */
     public void setIdArray(int[] id) {
+        thaw();
         this.id = id;
     }
 
@@ -440,6 +488,18 @@ public class Block extends SurveyObj implements Comparable, Serializable {
      * @return A sorted block list.
      */
     public static List<Block> getSorted(List<Block> blockList){
+        if (isFrozenTopLevel(blockList)) {
+            // Fixed top-level blocks precede each other exactly in id order, so a stable sort on the precomputed keys
+            // gives the same order as the insertion sort below.
+            List<Block> retval = new ArrayList<>(blockList);
+            Collections.sort(retval, new Comparator<Block>() {
+                @Override
+                public int compare(Block a, Block b) {
+                    return Integer.compare(a.hierarchy.sortKey(a.ordinal), b.hierarchy.sortKey(b.ordinal));
+                }
+            });
+            return retval;
+        }
         List<Block> retval = new ArrayList<>();
         for (Block b : blockList) {
             int i = 0;
@@ -453,12 +513,23 @@ public class Block extends SurveyObj implements Comparable, Serializable {
         return retval;
     }
 
+    private static boolean isFrozenTopLevel(List<Block> blockList) {
+        BlockHierarchy shared = null;
+        for (Block b : blockList) {
+            if (!b.isFrozen() || !b.isTopLevel() || b.randomize || (shared != null && b.hierarchy != shared))
+                return false;
+            shared = b.hierarchy;
+        }
+        return true;
+    }
+
     /**
      * Counts the number of questions directly in this block and in all sub-blocks.
      * @return The total number of questions in this block and all of its descendants.
      */
     public int blockSize(){
-        //re-implement this is non-recursive later
+        if (isFrozen())
+            return hierarchy.size(ordinal);
         int size = this.branchParadigm.equals(BranchParadigm.ALL) ? 1 : questions.size();
         if (subBlocks!=null)
             for (Block b : subBlocks)
@@ -487,9 +558,12 @@ public class Block extends SurveyObj implements Comparable, Serializable {
 
     /**
      * Returns all of the questions for this block and all of its sub-blocks. The instance version of that other one.
-     * @return A list of all the questions this block and its descendants contain.
+     * @return A list of all the questions this block and its descendants contain. The list is read-only once the
+     * survey is frozen.
      */
     public List<Question> getAllQuestions() {
+        if (isFrozen())
+            return hierarchy.allQuestions(ordinal);
         List<Question> qs = this.questions==null ? new ArrayList<Question>() : new ArrayList<>(this.questions);
         if (subBlocks==null)
             return qs;
@@ -500,6 +574,8 @@ public class Block extends SurveyObj implements Comparable, Serializable {
     }
 
     public boolean containsQuestion(Question question) {
+        if (isFrozen())
+            return hierarchy.contains(ordinal, question);
         return this.getAllQuestions().contains(question);
     }
 
@@ -509,6 +585,16 @@ public class Block extends SurveyObj implements Comparable, Serializable {
      * @return A shuffled Block array.
      */
     public static Block[] shuffle(List<Block> blockList) {
+        return shuffle(blockList, QCMetrics.rng);
+    }
+
+    /**
+     * Shuffles the input block list, respecting static vs floating blocks.
+     * @param blockList The block list to be shuffled.
+     * @param rng The source of the permutation.
+     * @return A shuffled Block array.
+     */
+    public static Block[] shuffle(List<Block> blockList, MersenneRandom rng) {
 
         Block[] retval = new Block[blockList.size()];
         List<Block> floating = new ArrayList<>();
@@ -522,9 +608,9 @@ public class Block extends SurveyObj implements Comparable, Serializable {
         for (int i = 0 ; i < retval.length ; i++)
             indices.add(i);
 
-        QCMetrics.rng.shuffle(floating);
+        rng.shuffle(floating);
         Collections.sort(normal);
-        QCMetrics.rng.shuffle(indices);
+        rng.shuffle(indices);
 
         List<Integer> indexList1 = indices.subList(0, floating.size());
         List<Integer> indexList2 = indices.subList(floating.size(), blockList.size());
@@ -544,22 +630,52 @@ public class Block extends SurveyObj implements Comparable, Serializable {
     public String jsonize()
             throws SurveyException
     {
-        return String.format("{ \"id\" : \"%s\", \"questions\" : %s %s %s}"
-                , this.getId()
-                , Question.jsonize(this.questions)
-                , this.isRandomized() ? String.format(", \"randomize\" : %s", this.isRandomized()) : ""
-                , this.subBlocks.size() > 0 ? String.format(", \"subblocks\" : %s", Block.jsonize(this.subBlocks)) : ""
-        );
+        StringWriter sw = new StringWriter();
+        try {
+            write(new JsonWriter(sw));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return sw.toString();
+    }
+
+    /**
+     * Streams this block, its questions, and its sub-blocks.
+     * @param out The writer.
+     * @throws SurveyException
+     * @throws IOException
+     */
+    public void write(JsonWriter out)
+            throws SurveyException, IOException
+    {
+        out.beginObject();
+        out.name("id").value(this.getId());
+        out.name("questions");
+        Question.write(out, this.questions);
+        if (this.isRandomized())
+            out.name("randomize").value(true);
+        if (this.subBlocks.size() > 0) {
+            out.name("subblocks");
+            Block.write(out, this.subBlocks);
+        }
+        out.endObject();
     }
 
     public static String jsonize(List<Block> blockList) throws SurveyException {
-        Iterator<Block> bs = blockList.iterator();
-        StringBuilder s = new StringBuilder(bs.next().jsonize());
-        while (bs.hasNext()) {
-            Block b = bs.next();
-            s.append(String.format(", %s", b.jsonize()));
+        StringWriter sw = new StringWriter();
+        try {
+            write(new JsonWriter(sw), blockList);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-        return String.format("[ %s ]", s.toString());
+        return sw.toString();
+    }
+
+    public static void write(JsonWriter out, List<Block> blockList) throws SurveyException, IOException {
+        out.beginArray();
+        for (Block b : blockList)
+            b.write(out);
+        out.endArray();
     }
 
     public boolean hasBranchQuestion() {
@@ -579,6 +695,7 @@ public class Block extends SurveyObj implements Comparable, Serializable {
     }
 
     public void addBranchQuestion(Question q) {
+        thaw();
         setDefaults(q);
         if (this.questions.contains(q)) return;
         if (this.branchParadigm.equals(BranchParadigm.NONE)) {
@@ -592,6 +709,7 @@ public class Block extends SurveyObj implements Comparable, Serializable {
     }
 
     public void addQuestion(Question q) throws SurveyException {
+        thaw();
         setDefaults(q);
         if (q.isBranchQuestion()) {
             throw new BranchException("Trying to add a branch question using the wrong method.");
@@ -614,6 +732,7 @@ public class Block extends SurveyObj implements Comparable, Serializable {
     public void addBlock(Block b)
             throws SurveyException
     {
+        thaw();
         if (this.branchParadigm.equals(BranchParadigm.ALL))
             throw new BlockException("Cannot add a subblock to a branch-all block.");
         else {
@@ -629,6 +748,8 @@ public class Block extends SurveyObj implements Comparable, Serializable {
      */
     public Block getFarthestContainingBlock()
     {
+        if (isFrozen())
+            return hierarchy.topLevel(ordinal);
         Block retval = this;
         while (retval.parentBlock!=null) {
             retval = retval.parentBlock;
@@ -0,0 +1,142 @@
+package edu.umass.cs.surveyman.survey;
+
+import java.util.*;
+
+/**
+ * A survey's block tree, fixed at {@link Survey#freeze()}. Every block reachable from the top-level blocks is given an
+ * ordinal in pre-order, and its size, its questions and those of its descendants, its top-level ancestor, and its
+ * position in id order are stored by ordinal, so that the {@link Block} queries that used to walk the tree are array
+ * lookups.
+ *
+ * <p>Any change to a frozen block through {@link Block} or {@link Survey} invalidates the whole hierarchy, and the
+ * blocks go back to walking the tree until the survey is frozen again.
+ */
+final class BlockHierarchy {
+
+    /**
+     * False once any block in the hierarchy has changed.
+     */
+    boolean valid = true;
+    // blocks[o] is the block with ordinal o; its descendants are blocks[o + 1 .. end[o]).
+    private final List<Block> blocks = new ArrayList<>();
+    private int[] end;
+    private int[] size;
+    private int[] sortKey;
+    private Block[] topLevel;
+    // descendants[o] holds the numbers of the questions in block o and its descendants.
+    private BitSet[] descendants;
+    private List<List<Question>> allQuestions;
+    // Question numbers by question id, in the order the questions first appear.
+    private final Map<String, Integer> questionNumber = new HashMap<>();
+    private final List<Question> questions = new ArrayList<>();
+
+    BlockHierarchy(List<Block> topLevelBlocks) {
+        Map<Block, Integer> ordinals = new IdentityHashMap<>();
+        List<Integer> ends = new ArrayList<>();
+        List<Block> tops = new ArrayList<>();
+        for (Block top : topLevelBlocks)
+            number(top, top, ordinals, ends, tops);
+        int n = blocks.size();
+        this.end = new int[n];
+        this.topLevel = new Block[n];
+        for (int o = 0; o < n; o++) {
+            end[o] = ends.get(o);
+            topLevel[o] = tops.get(o);
+        }
+
+        // Sizes, questions and bitsets, from the leaves up: a block's descendants all come after it.
+        this.size = new int[n];
+        this.descendants = new BitSet[n];
+        List<List<Question>> all = new ArrayList<>(Collections.<List<Question>>nCopies(n, null));
+        for (int o = n - 1; o >= 0; o--) {
+            Block block = blocks.get(o);
+            BitSet bits = new BitSet();
+            List<Question> qs = new ArrayList<>(block.questions);
+            for (Question q : block.questions)
+                bits.set(number(q));
+            int s = block.getBranchParadigm().equals(Block.BranchParadigm.ALL) ? 1 : block.questions.size();
+            for (Block sub : block.subBlocks) {
+                int c = ordinals.get(sub);
+                s += size[c];
+                qs.addAll(all.get(c));
+                bits.or(descendants[c]);
+            }
+            size[o] = s;
+            descendants[o] = bits;
+            all.set(o, Collections.unmodifiableList(qs));
+        }
+        this.allQuestions = all;
+
+        // Rank the blocks by id, as compareTo orders them.
+        Integer[] byId = new Integer[n];
+        for (int o = 0; o < n; o++)
+            byId[o] = o;
+        Arrays.sort(byId, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int[] x = blocks.get(a).getBlockId(), y = blocks.get(b).getBlockId();
+                for (int i = 0; i < Math.min(x.length, y.length); i++)
+                    if (x[i] != y[i])
+                        return x[i] < y[i] ? -1 : 1;
+                return Integer.compare(x.length, y.length);
+            }
+        });
+        this.sortKey = new int[n];
+        for (int rank = 0; rank < n; rank++)
+            sortKey[byId[rank]] = rank;
+
+        for (int o = 0; o < n; o++)
+            blocks.get(o).freeze(this, o);
+    }
+
+    private void number(Block block, Block top, Map<Block, Integer> ordinals, List<Integer> ends, List<Block> tops) {
+        if (ordinals.containsKey(block))
+            return;
+        int o = blocks.size();
+        ordinals.put(block, o);
+        blocks.add(block);
+        ends.add(-1);
+        tops.add(top);
+        for (Block sub : block.subBlocks)
+            number(sub, top, ordinals, ends, tops);
+        ends.set(o, blocks.size());
+    }
+
+    private int number(Question q) {
+        Integer k = questionNumber.get(q.id);
+        if (k == null) {
+            k = questions.size();
+            questionNumber.put(q.id, k);
+            questions.add(q);
+        }
+        return k;
+    }
+
+    int size(int ordinal) {
+        return size[ordinal];
+    }
+
+    int sortKey(int ordinal) {
+        return sortKey[ordinal];
+    }
+
+    Block topLevel(int ordinal) {
+        return topLevel[ordinal];
+    }
+
+    List<Question> allQuestions(int ordinal) {
+        return allQuestions.get(ordinal);
+    }
+
+    boolean isDescendant(int ordinal, int ancestor) {
+        return ancestor <= ordinal && ordinal < end[ancestor];
+    }
+
+    boolean contains(int ordinal, Question question) {
+        Integer k = questionNumber.get(question.id);
+        if (k == null || !descendants[ordinal].get(k))
+            return false;
+        Question q = questions.get(k);
+        return q == question || q.equals(question);
+    }
+}
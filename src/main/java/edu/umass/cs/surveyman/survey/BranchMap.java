@@ -2,10 +2,12 @@ package edu.umass.cs.surveyman.survey;
 
 import edu.umass.cs.surveyman.survey.exceptions.BlockException;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import edu.umass.cs.surveyman.utils.Jsonable;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.ArrayList;
@@ -25,20 +27,28 @@ public class BranchMap implements Map<SurveyDatum, Block>, Serializable, Jsonabl
     private Block[] vals = new Block[initSize];
 
     public String jsonize() throws SurveyException {
-        Iterator<Entry<SurveyDatum, Block>> entrySet = this.entrySet().iterator();
-        if (!entrySet.hasNext())
+        if (this.isEmpty())
             return "";
-        Entry<SurveyDatum, Block> entry = entrySet.next();
-        String oid = entry.getKey().getId();
-        String bid = entry.getValue() == null ? "null" : "\"" + entry.getValue().getId()+ "\"";
-        StringBuilder s = new StringBuilder(String.format("\"%s\" : %s", oid, bid));
-        while (entrySet.hasNext()) {
-            entry = entrySet.next();
-            oid = entry.getKey().getId();
-            bid = entry.getValue() == null ? "null" : "\"" + entry.getValue().getId() + "\"";
-            s.append(String.format(", \"%s\" : %s", oid, bid));
-        }
-        return "{" + s.toString() + "}";
+        return JsonWriter.toString(this);
+    }
+
+    /**
+     * Writes an object from option id to destination block id (null when sampling), in insertion order.
+     */
+    @Override
+    public void write(JsonWriter out) throws IOException {
+        out.beginObject();
+        for (int i = 0; i < count; i++)
+            out.name(keys[i].getId()).value(vals[i] == null ? null : vals[i].getId());
+        out.endObject();
+    }
+
+    SurveyDatum keyAt(int i) {
+        return keys[i];
+    }
+
+    Block valueAt(int i) {
+        return vals[i];
     }
 
     @Override
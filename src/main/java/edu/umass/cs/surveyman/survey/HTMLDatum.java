@@ -1,9 +1,14 @@
 package edu.umass.cs.surveyman.survey;
 
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.safety.Whitelist;
 
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * SurveyDatum subtype representing arbitrary HTML. Questions used to be a mix of HTMLDatums and
  * {@link StringDatum}s when the RESOURCE column was in use. Now a question is one of
@@ -11,6 +16,35 @@ import org.jsoup.safety.Whitelist;
  */
 public class HTMLDatum extends SurveyDatum {
 
+    /**
+     * The number of distinct fragments each cache holds before it is emptied and starts over.
+     */
+    static final int CACHE_LIMIT = 1 << 14;
+    // Whitelists are only read once built, so one instance can be shared by every thread.
+    private static final Whitelist WHITELIST = Whitelist.basicWithImages();
+    // Results of parsing and validating, keyed by the fragment itself. Surveys repeat the same fragments across
+    // questions, and the same surveys are parsed again and again by the server, so these are shared by all parses.
+    private static final ConcurrentMap<String, String> NORMALIZED = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Boolean> VALID = new ConcurrentHashMap<>();
+
+    private static <V> V remember(ConcurrentMap<String, V> cache, String key, V value) {
+        if (cache.size() >= CACHE_LIMIT)
+            cache.clear();
+        cache.put(key, value);
+        return value;
+    }
+
+    /**
+     * @return The fragment, parsed and normalized by Jsoup.
+     */
+    static String normalize(String html) {
+        String normalized = NORMALIZED.get(html);
+        if (normalized != null)
+            return normalized;
+        Document doc = Jsoup.parseBodyFragment(html).normalise();
+        return remember(NORMALIZED, html, doc.body().html());
+    }
+
     /**
      * The normalized HTML String associated with this SurveyDatum.
      */
@@ -27,8 +61,15 @@ public class HTMLDatum extends SurveyDatum {
     public HTMLDatum(String html, int row, int col, int index) {
         super(row, col, index);
         assert !html.isEmpty() : "Should not be calling the HTMLDatum constructor on an empty data string.";
-        Document doc = Jsoup.parseBodyFragment(html).normalise();
-        this.data = doc.body().html();
+        this.data = normalize(html);
+    }
+
+    /**
+     * Restores an HTMLDatum whose HTML has already been normalized, without parsing it again.
+     */
+    HTMLDatum(String id, String normalizedHtml, int row, int col, int index) {
+        super(id, row, col, index);
+        this.data = normalizedHtml;
     }
 
     public HTMLDatum(String html){
@@ -40,14 +81,15 @@ public class HTMLDatum extends SurveyDatum {
     }
 
     @Override
-    public String jsonize() {
+    public void write(JsonWriter out) throws IOException {
         if(data.isEmpty()) {
             throw new RuntimeException(String.format("Data field in component %s located at (%d, %d) is empty.",
                     this.data, this.getSourceRow(), this.getSourceCol()));
         }
-        return String.format("{ \"id\" : \"%s\", \"otext\" : \"%s\" }"
-                , this.getId()
-                , data.replace("\"", "\\\""));
+        out.beginObject()
+                .name("id").value(this.getId())
+                .name("otext").value(data)
+                .endObject();
     }
 
     /**
@@ -56,7 +98,12 @@ public class HTMLDatum extends SurveyDatum {
      * @return boolean indicating whether the input is valid HTML5.
      */
     public static boolean isHTMLComponent(String data){
-        return !data.isEmpty() && Jsoup.isValid(data, Whitelist.basicWithImages());
+        if (data.isEmpty())
+            return false;
+        Boolean valid = VALID.get(data);
+        if (valid != null)
+            return valid;
+        return remember(VALID, data, Jsoup.isValid(data, WHITELIST));
     }
 
     /**
@@ -2,16 +2,37 @@ package edu.umass.cs.surveyman.survey;
 
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 import edu.umass.cs.surveyman.utils.Jsonable;
-import edu.umass.cs.surveyman.utils.jsonify.Jsonify;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.*;
 
 public class OptionMap extends HashMap<String, SurveyDatum> implements Serializable, Jsonable {
 
     @Override
     public String jsonize() throws SurveyException
     {
-        return Jsonify.jsonify(this);
+        return JsonWriter.toString(this);
+    }
+
+    /**
+     * Writes an object from option id to option, in option order.
+     */
+    @Override
+    public void write(JsonWriter out) throws IOException {
+        List<SurveyDatum> opts = new ArrayList<>(this.values());
+        Collections.sort(opts, new Comparator<SurveyDatum>() {
+            @Override
+            public int compare(SurveyDatum a, SurveyDatum b) {
+                return Integer.compare(a.getIndex(), b.getIndex());
+            }
+        });
+        out.beginObject();
+        for (SurveyDatum opt : opts) {
+            out.name(opt.getId());
+            opt.write(out);
+        }
+        out.endObject();
     }
 }
@@ -9,11 +9,12 @@ import edu.umass.cs.surveyman.input.exceptions.OptionException;
 import edu.umass.cs.surveyman.qc.QCMetrics;
 import edu.umass.cs.surveyman.survey.exceptions.QuestionConsistencyException;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import edu.umass.cs.surveyman.utils.Jsonable;
-import edu.umass.cs.surveyman.utils.jsonify.Jsonify;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 import java.util.regex.Pattern;
@@ -652,13 +653,13 @@ public class Question extends SurveyObj implements Serializable, Comparable, Jso
         throw new OptionNotFoundException(o.getId(), this.id);
     }
 
-    private String getFreetextValue()
+    private void writeFreetextValue(JsonWriter out) throws IOException
     {
         if ( this.freetextDefault != null )
-            return String.format("\"%s\"", this.freetextDefault);
+            out.value(this.freetextDefault);
         else if ( this.freetextPattern != null )
-            return String.format("\"#{%s}\"", this.freetextPattern.pattern());
-        else return "true";
+            out.value(String.format("#{%s}", this.freetextPattern.pattern()));
+        else out.value(true);
     }
 
     protected String jsonizeOrdering()
@@ -672,47 +673,49 @@ public class Question extends SurveyObj implements Serializable, Comparable, Jso
 
     @Override
     public String jsonize() throws SurveyException {
+        return JsonWriter.toString(this);
+    }
+
+    /**
+     * Writes this question's fields in a fixed order. Flags are only written when they differ from the defaults.
+     */
+    @Override
+    public void write(JsonWriter out) throws SurveyException, IOException {
 
         boolean randomizeDefault = CSVParser.defaultValues.get(InputOutputKeys.RANDOMIZE);
         boolean orderedDefault = CSVParser.defaultValues.get(InputOutputKeys.ORDERED);
         boolean exclusiveDefault = CSVParser.defaultValues.get(InputOutputKeys.EXCLUSIVE);
 
-        return Jsonify.jsonify(Jsonify.mapify(
-                (this.options.isEmpty() ? "" : InputOutputKeys.OPTIONS),
-                (this.options.isEmpty() ? "" : this.options),
-                (this.freetext ? InputOutputKeys.FREETEXT : ""),
-                (this.freetext ? this.getFreetextValue() : ""),
-                (this.branchMap.isEmpty() ? "" : InputOutputKeys.BRANCH_MAP),
-                (this.branchMap.isEmpty() ? "" : this.branchMap),
-                (this.randomize == randomizeDefault ? "" : InputOutputKeys.RANDOMIZE),
-                (this.randomize == randomizeDefault ? "" : Boolean.toString(this.randomize)),
-                (this.ordered == orderedDefault ? "" : InputOutputKeys.ORDERED),
-                (this.ordered == orderedDefault ? "" : this.ordered),
-                (this.exclusive == exclusiveDefault ? "" : InputOutputKeys.EXCLUSIVE),
-                (this.exclusive == exclusiveDefault ? "" : Boolean.toString(this.exclusive)),
-                (InputOutputKeys.BREAKOFF),
-                (Boolean.toString(this.permitBreakoff)),
-                (this.correlation.equals("") ? "" : InputOutputKeys.CORRELATION),
-                (this.correlation.equals("") ? "" : this.correlation),
-                (this.answer == null ? "" : InputOutputKeys.ANSWER),
-                (this.answer == null ? "" : this.answer.getId()),
-                "id",
-                this.id,
-                InputOutputKeys.QTEXT,
-                SurveyDatum.html(this.data)
-        ));
-    }
-
-    protected static String jsonize(List<Question> questionList) throws SurveyException {
-        Iterator<Question> qs = questionList.iterator();
-        if (!qs.hasNext())
-            return "[]";
-        StringBuilder s = new StringBuilder(qs.next().jsonize());
-        while (qs.hasNext()) {
-            Question q = qs.next();
-            s.append(String.format(", %s", q.jsonize()));
+        out.beginObject();
+        out.name("id").value(this.id);
+        out.name(InputOutputKeys.QTEXT).value(SurveyDatum.htmlText(this.data));
+        if (!this.options.isEmpty())
+            out.name(InputOutputKeys.OPTIONS).value(this.options);
+        if (this.freetext) {
+            out.name(InputOutputKeys.FREETEXT);
+            writeFreetextValue(out);
         }
-        return String.format("[ %s ]", s.toString());
+        if (!this.branchMap.isEmpty())
+            out.name(InputOutputKeys.BRANCH_MAP).value(this.branchMap);
+        if (this.randomize != randomizeDefault)
+            out.name(InputOutputKeys.RANDOMIZE).value(Boolean.toString(this.randomize));
+        if (this.ordered != orderedDefault)
+            out.name(InputOutputKeys.ORDERED).value(this.ordered);
+        if (this.exclusive != exclusiveDefault)
+            out.name(InputOutputKeys.EXCLUSIVE).value(Boolean.toString(this.exclusive));
+        out.name(InputOutputKeys.BREAKOFF).value(Boolean.toString(this.permitBreakoff));
+        if (!this.correlation.equals(""))
+            out.name(InputOutputKeys.CORRELATION).value(this.correlation);
+        if (this.answer != null)
+            out.name(InputOutputKeys.ANSWER).value(this.answer.getId());
+        out.endObject();
+    }
+
+    protected static void write(JsonWriter out, List<Question> questionList) throws SurveyException, IOException {
+        out.beginArray();
+        for (Question q : questionList)
+            q.write(out);
+        out.endArray();
     }
 
     @Override
@@ -1,6 +1,9 @@
 package edu.umass.cs.surveyman.survey;
 
 import edu.umass.cs.surveyman.input.AbstractLexer;
+import edu.umass.cs.surveyman.utils.JsonWriter;
+
+import java.io.IOException;
 
 /**
  * SurveyDatum subtype representing String data.
@@ -24,6 +27,11 @@ public class StringDatum extends SurveyDatum {
         this.data = data;
     }
 
+    StringDatum(String id, String data, int row, int col, int index) {
+        super(id, row, col, index);
+        this.data = data;
+    }
+
     public StringDatum(String data) {
         super(SurveyDatum.SYSTEM_DEFINED, SurveyDatum.DEFAULT_SOURCE_COL, -1);
         this.data = data;
@@ -39,14 +47,15 @@ public class StringDatum extends SurveyDatum {
     }
 
     @Override
-    public String jsonize() {
+    public void write(JsonWriter out) throws IOException {
         if(data.isEmpty()) {
             throw new RuntimeException(String.format("Data field in component %s located at (%d, %d) is empty.",
                     this.data, this.getSourceRow(), this.getSourceCol()));
         }
-        return String.format("{ \"id\" : \"%s\", \"otext\" : \"%s\" }"
-                , this.getId()
-                , AbstractLexer.htmlChars2XML(data));
+        out.beginObject()
+                .name("id").value(this.getId())
+                .name("otext").value(AbstractLexer.htmlChars2XML(data))
+                .endObject();
     }
 
     /**
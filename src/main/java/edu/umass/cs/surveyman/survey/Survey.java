@@ -1,17 +1,14 @@
 package edu.umass.cs.surveyman.survey;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.github.fge.jackson.JsonLoader;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
 import com.github.fge.jsonschema.core.report.ProcessingMessage;
 import com.github.fge.jsonschema.core.report.ProcessingReport;
-import com.github.fge.jsonschema.main.JsonSchema;
-import com.github.fge.jsonschema.main.JsonSchemaFactory;
 import edu.umass.cs.surveyman.input.AbstractParser;
 import edu.umass.cs.surveyman.survey.exceptions.QuestionNotFoundException;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 import edu.umass.cs.surveyman.utils.Gensym;
-import edu.umass.cs.surveyman.utils.Slurpie;
+import edu.umass.cs.surveyman.utils.JsonWriter;
+import edu.umass.cs.surveyman.utils.Schemas;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,6 +18,7 @@ import org.supercsv.cellprocessor.ift.CellProcessor;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.net.URLEncoder;
 import java.util.*;
 
@@ -30,7 +28,6 @@ import java.util.*;
 public class Survey implements Serializable {
 
     // schemata
-    private static final String OUTPUT_SCHEMA = "http://surveyman.github.io/Schemata/survey_output.json";
     private static final String TLBID = "1";
     private static final Logger LOGGER = LogManager.getLogger(Survey.class);
     private static final Gensym gensym = new Gensym("survey");
@@ -71,6 +68,10 @@ public class Survey implements Serializable {
      * Map from correlation labels to the Questions that are correlated.
      */
     public Map<String, List<Question>> correlationMap;
+    /**
+     * The frozen block tree; see {@link #freeze()}.
+     */
+    private transient BlockHierarchy hierarchy;
 
     public Survey()
     {
@@ -250,56 +251,41 @@ public class Survey implements Serializable {
         return "";
     }
 
-    private String getSchema()
+    /**
+     * Serializes this survey to JSON, without validating the result.
+     * @return The JSON representation of this survey.
+     * @throws SurveyException
+     * @throws IOException
+     */
+    public String jsonize()
+            throws SurveyException,
+            IOException
     {
-        String[] locations = {
-                OUTPUT_SCHEMA,
-                "Schemata/local/survey_output.json",
-        };
-        for (String loc : locations) {
-            try {
-                String stuff = Slurpie.slurp(loc);
-                LOGGER.info("Pulled schema from " + loc);
-                return stuff;
-            } catch (IOException e) {
-                LOGGER.warn(e);
-            }
-        }
-        LOGGER.fatal(String.format("Could not find schema in any of the locations:\n\t%s",
-                StringUtils.join(locations, "\n\t")));
-        throw new RuntimeException("Cannot find schema.");
+        return jsonize(false);
     }
 
-    public String jsonize()
+    /**
+     * Serializes this survey to JSON.
+     * @param validate Whether to check the output against the bundled output schema (see {@link Schemas#output()}).
+     * @return The JSON representation of this survey.
+     * @throws SurveyException
+     * @throws IOException
+     */
+    public String jsonize(boolean validate)
             throws SurveyException,
             IOException
     {
-        String jsonizedBlocks, json;
-        if (this.topLevelBlocks.size() > 0)
-            jsonizedBlocks = Block.jsonize(this.topLevelBlocks);
-        else {
-            Block b = new Block("");
-            b.questions = this.questions;
-            b.setIdArray(new int[]{1});
-            List<Block> blist = new LinkedList<>();
-            blist.add(b);
-            jsonizedBlocks = Block.jsonize(blist);
-        }
-        json = String.format("{ \"filename\" : \"%s\", \"breakoff\" :  %s, \"survey\" : %s }"
-                , URLEncoder.encode(this.source == null? "" : this.source, "UTF-8")
-                , Boolean.toString(this.permitsBreakoff())
-                , jsonizedBlocks);
+        StringWriter sw = new StringWriter();
+        write(new JsonWriter(sw));
+        String json = sw.toString();
 
         LOGGER.debug(json);
 
-        final JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
-        String stuff = getSchema();
-        final JsonNode jsonSchema = JsonLoader.fromString(stuff);
-        final JsonNode instance = JsonLoader.fromString(json);
+        if (!validate)
+            return json;
         try {
-            final JsonSchema schema = factory.getJsonSchema(jsonSchema);
-            ProcessingReport report = schema.validate(instance);
-            LOGGER.info(report.toString());
+            ProcessingReport report = Schemas.validate(Schemas.output(), json);
+            LOGGER.debug(report.toString());
             if (!report.isSuccess()) {
                 for (ProcessingMessage pm : report) {
                     LOGGER.warn(pm.toString());
@@ -313,7 +299,59 @@ public class Survey implements Serializable {
         return json;
     }
 
+    /**
+     * Streams this survey's JSON representation. Nothing is buffered beyond what the writer itself buffers, so large
+     * surveys can be written straight to a file or socket.
+     * @param out The writer.
+     * @throws SurveyException
+     * @throws IOException
+     */
+    public void write(JsonWriter out)
+            throws SurveyException,
+            IOException
+    {
+        out.beginObject();
+        out.name("filename").value(URLEncoder.encode(this.source == null ? "" : this.source, "UTF-8"));
+        out.name("breakoff").value(this.permitsBreakoff());
+        out.name("survey");
+        if (this.topLevelBlocks.size() > 0)
+            Block.write(out, this.topLevelBlocks);
+        else {
+            Block b = new Block("");
+            b.questions = this.questions;
+            b.setIdArray(new int[]{1});
+            Block.write(out, Collections.singletonList(b));
+        }
+        out.endObject();
+        out.flush();
+    }
+
+    /**
+     * Fixes the block tree once the survey is built, so that {@link Block#blockSize()},
+     * {@link Block#getAllQuestions()}, {@link Block#containsQuestion(Question)},
+     * {@link Block#getFarthestContainingBlock()}, {@link Block#isSubblockOf(Block)}, and
+     * {@link Block#getSorted(List)} no longer walk the tree. The parsers freeze the surveys they return.
+     *
+     * <p>Building the survey through the {@link Survey} and {@link Block} methods afterwards still works, and undoes
+     * the freeze. Changes made directly to the public fields are not seen until the survey is frozen again.
+     */
+    public void freeze() {
+        thaw();
+        this.hierarchy = new BlockHierarchy(this.topLevelBlocks);
+    }
+
+    public boolean isFrozen() {
+        return this.hierarchy != null && this.hierarchy.valid;
+    }
+
+    private void thaw() {
+        if (this.hierarchy != null)
+            this.hierarchy.valid = false;
+        this.hierarchy = null;
+    }
+
     public void addBlock(Block b) {
+        thaw();
         this.topLevelBlocks.add(b);
         this.blocks.put(b.getId(), b);
         this.questions.addAll(b.getAllQuestions());
@@ -325,6 +363,7 @@ public class Survey implements Serializable {
      * @param surveyQuestions The questions to be added to the top-level block of the survey.
      */
     public void addQuestions(Question... surveyQuestions) throws SurveyException {
+        thaw();
         Block topLevelBlock;
         if (this.blocks.containsKey(TLBID))
             topLevelBlock = this.blocks.get(TLBID);
@@ -345,6 +384,7 @@ public class Survey implements Serializable {
     }
 
     public void addQuestion(Question q) throws SurveyException {
+        thaw();
         Block topLevelBlock;
         if (this.blocks.containsKey(TLBID))
             topLevelBlock = this.blocks.get(TLBID);
@@ -2,9 +2,11 @@ package edu.umass.cs.surveyman.survey;
 
 import edu.umass.cs.surveyman.input.csv.CSVLexer;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
 import edu.umass.cs.surveyman.utils.Jsonable;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.List;
@@ -61,6 +63,21 @@ public abstract class SurveyDatum extends SurveyObj implements Comparable, Seria
         this.index = index;
     }
 
+    /**
+     * Restores a datum with an existing identifier, e.g. from a {@link SurveySnapshot}.
+     * @param id The internal identifier.
+     * @param row The source line number.
+     * @param col The source column.
+     * @param index The index of this datum in its containing set.
+     */
+    protected SurveyDatum(String id, int row, int col, int index) {
+        SurveyDatum.TOTAL_COMPONENTS++;
+        this.id = id;
+        this.row = row;
+        this.col = col;
+        this.index = index;
+    }
+
     /**
      * Returns the internal data identifier.
      * @return A String of the internal component identifier.
@@ -131,7 +148,12 @@ public abstract class SurveyDatum extends SurveyObj implements Comparable, Seria
     public abstract boolean dataEquals(String data);
 
     @Override
-    public abstract String jsonize() throws SurveyException;
+    public String jsonize() throws SurveyException {
+        return JsonWriter.toString(this);
+    }
+
+    @Override
+    public abstract void write(JsonWriter out) throws IOException;
 
     protected static String jsonize(List<SurveyDatum> options) throws SurveyException {
         Iterator<SurveyDatum> opts = options.iterator();
@@ -145,6 +167,18 @@ public abstract class SurveyDatum extends SurveyObj implements Comparable, Seria
         return String.format("[ %s ]", s.toString());
     }
 
+    /**
+     * The text of {@link #html(SurveyDatum)}, before it is escaped for inclusion in hand-built JSON. Pass this to a
+     * {@link JsonWriter}, which does its own escaping.
+     * @param c A datum.
+     * @return Its HTML surface text.
+     */
+    public static String htmlText(SurveyDatum c) {
+        if (c instanceof StringDatum)
+            return CSVLexer.xmlChars2HTML(((StringDatum) c).data).replace("\"", "&quot;");
+        else return ((HTMLDatum) c).data.replace("\n", "<br/>");
+    }
+
     public static String html(SurveyDatum c) {
         if (c instanceof StringDatum)
             return CSVLexer.xmlChars2HTML(((StringDatum) c).data).replace("\"", "&quot;");
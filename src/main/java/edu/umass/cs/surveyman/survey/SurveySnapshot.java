@@ -0,0 +1,588 @@
+package edu.umass.cs.surveyman.survey;
+
+import edu.umass.cs.surveyman.survey.exceptions.SnapshotException;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * A compact, versioned binary image of a parsed survey. A snapshot stores the compiled tables -- every datum, block,
+ * and question, with the links between them as table indices -- so loading one skips lexing, parsing, block
+ * construction, and branch unification entirely. It also records which wellformedness rules the survey passed before
+ * it was written, so that callers can skip re-running them.
+ *
+ * Unlike Java serialization, the format does not depend on class layout: it changes only when {@link #VERSION} does,
+ * and snapshots written by any other version are rejected rather than misread.
+ *
+ * Question subclasses such as {@link RadioButtonQuestion} are restored as plain {@link Question}s; they differ only in
+ * the flags they set, and those are stored.
+ */
+public final class SurveySnapshot {
+
+    /**
+     * Conventional file extension for snapshots.
+     */
+    public static final String EXTENSION = ".smsnap";
+    /**
+     * Format version. Bump this whenever the layout below changes.
+     */
+    public static final int VERSION = 1;
+
+    // "SMSN"
+    private static final int MAGIC = 0x534d534e;
+    private static final byte STRING_DATUM = 0, HTML_DATUM = 1;
+    private static final byte NULL = -1, FALSE = 0, TRUE = 1;
+
+    /**
+     * The restored survey.
+     */
+    public final Survey survey;
+    /**
+     * Content hash of the source the survey was compiled from (see {@link #contentHash}), or null.
+     */
+    public final String sourceHash;
+    /**
+     * Class names of the rules the survey passed before it was written.
+     */
+    public final List<String> checkedRules;
+
+    private SurveySnapshot(Survey survey, String sourceHash, List<String> checkedRules) {
+        this.survey = survey;
+        this.sourceHash = sourceHash;
+        this.checkedRules = Collections.unmodifiableList(checkedRules);
+    }
+
+    /**
+     * Computes the key under which a compiled snapshot of some source may be cached. The key covers the source bytes,
+     * how they are to be parsed, and the snapshot version, so a cached snapshot is never reused for a different
+     * reading of the same file.
+     * @param source The raw survey source.
+     * @param format The input format, e.g. "csv" or "json".
+     * @param separator The field separator, for CSV input; may be empty.
+     * @return Hex-encoded SHA-256 digest.
+     */
+    public static String contentHash(byte[] source, String format, String separator) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.format("%d\0%s\0%s\0", VERSION, format, separator).getBytes(StandardCharsets.UTF_8));
+            digest.update(source);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest())
+                hex.append(String.format("%02x", b & 0xff));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param filename A path.
+     * @return true if the file exists and begins with the snapshot magic number.
+     */
+    public static boolean isSnapshot(String filename) {
+        File file = new File(filename);
+        if (!file.isFile())
+            return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes a snapshot of a survey.
+     * @param survey The survey, fully parsed.
+     * @param sourceHash The content hash of the survey's source, or null.
+     * @param checkedRules Class names of the rules the survey has passed.
+     * @param stream Where to write the snapshot. It is flushed, but not closed.
+     * @throws IOException
+     */
+    public static void write(Survey survey, String sourceHash, Collection<String> checkedRules, OutputStream stream)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        writeString(out, sourceHash);
+        out.writeInt(checkedRules.size());
+        for (String rule : checkedRules)
+            writeString(out, rule);
+        new Encoder(survey, out).encode();
+        out.flush();
+    }
+
+    /**
+     * Writes a snapshot to a file, atomically: readers never see a partially written snapshot.
+     * @see #write(Survey, String, Collection, OutputStream)
+     */
+    public static void write(Survey survey, String sourceHash, Collection<String> checkedRules, File file)
+            throws IOException {
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                write(survey, sourceHash, checkedRules, out);
+            }
+            if (!tmp.renameTo(file)) {
+                if (!file.delete() || !tmp.renameTo(file))
+                    throw new IOException(String.format("Could not move snapshot into place at %s", file));
+            }
+        } finally {
+            if (tmp.exists() && !tmp.delete())
+                tmp.deleteOnExit();
+        }
+    }
+
+    /**
+     * Reads a snapshot.
+     * @param stream The snapshot bytes. Read to the end, so that lengths can be checked against what is left, but not
+     *               closed.
+     * @return The restored survey and its metadata.
+     * @throws IOException
+     * @throws SnapshotException if the input is not a snapshot, was written by another version, or is corrupt.
+     */
+    public static SurveySnapshot read(InputStream stream) throws IOException, SurveyException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = stream.read(buffer)) > 0; )
+            bytes.write(buffer, 0, n);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new SnapshotException("Not a survey snapshot.");
+            int version = in.readUnsignedShort();
+            if (version != VERSION)
+                throw new SnapshotException(String.format("Snapshot version %d is not supported (expected %d).",
+                        version, VERSION));
+            String sourceHash = readString(in);
+            int n = readCount(in, 4);
+            List<String> checkedRules = new ArrayList<>(Math.max(n, 0));
+            for (int i = 0; i < n; i++)
+                checkedRules.add(readString(in));
+            Survey survey = new Decoder(in).decode();
+            return new SurveySnapshot(survey, sourceHash, checkedRules);
+        } catch (EOFException | IndexOutOfBoundsException | NegativeArraySizeException
+                | IllegalArgumentException e) {
+            throw new SnapshotException(String.format("Corrupt survey snapshot: %s", e));
+        }
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     * @see #read(InputStream)
+     */
+    public static SurveySnapshot load(String filename) throws IOException, SurveyException {
+        try (InputStream in = new FileInputStream(filename)) {
+            return read(in);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads the length of an array about to be allocated, and checks it against the bytes left in the snapshot, so that
+     * a corrupt length is reported instead of exhausting the heap.
+     * @param elementBytes The fewest bytes each element takes up in the snapshot.
+     * @return The length. Negative lengths, which stand for null, are returned as they are.
+     */
+    private static int readCount(DataInputStream in, int elementBytes) throws IOException, SnapshotException {
+        int n = in.readInt();
+        int remaining = in.available();
+        if (n > remaining / elementBytes)
+            throw new SnapshotException(String.format("Corrupt survey snapshot: %d elements of at least %d bytes each, "
+                    + "but only %d bytes remain.", n, elementBytes, remaining));
+        return n;
+    }
+
+    private static String readString(DataInputStream in) throws IOException, SnapshotException {
+        int n = readCount(in, 1);
+        if (n < 0)
+            return null;
+        byte[] bytes = new byte[n];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+        if (ints == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(ints.length);
+        for (int i : ints)
+            out.writeInt(i);
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException, SnapshotException {
+        int n = readCount(in, 4);
+        if (n < 0)
+            return null;
+        int[] ints = new int[n];
+        for (int i = 0; i < n; i++)
+            ints[i] = in.readInt();
+        return ints;
+    }
+
+    private static void writeFlag(DataOutputStream out, Boolean b) throws IOException {
+        out.writeByte(b == null ? NULL : b ? TRUE : FALSE);
+    }
+
+    private static Boolean readFlag(DataInputStream in) throws IOException {
+        byte b = in.readByte();
+        return b == NULL ? null : b == TRUE;
+    }
+
+    /**
+     * Flattens the survey's object graph into tables. Every datum, block, and question gets an index by identity, so
+     * shared references (a question's block, a branch destination) are written once and restored as shared.
+     */
+    private static final class Encoder {
+
+        private final Survey survey;
+        private final DataOutputStream out;
+        private final Map<SurveyDatum, Integer> datumIndex = new IdentityHashMap<>();
+        private final List<SurveyDatum> datums = new ArrayList<>();
+        private final Map<Block, Integer> blockIndex = new IdentityHashMap<>();
+        private final List<Block> blocks = new ArrayList<>();
+        private final Map<Question, Integer> questionIndex = new IdentityHashMap<>();
+        private final List<Question> questions = new ArrayList<>();
+
+        Encoder(Survey survey, DataOutputStream out) {
+            this.survey = survey;
+            this.out = out;
+        }
+
+        private static <T> void add(T t, Map<T, Integer> index, List<T> list) {
+            if (t != null && !index.containsKey(t)) {
+                index.put(t, list.size());
+                list.add(t);
+            }
+        }
+
+        private static <T> int indexOf(T t, Map<T, Integer> index) {
+            return t == null ? -1 : index.get(t);
+        }
+
+        private int[] questionIndices(List<Question> qs) {
+            int[] retval = new int[qs.size()];
+            for (int i = 0; i < retval.length; i++)
+                retval[i] = indexOf(qs.get(i), questionIndex);
+            return retval;
+        }
+
+        private int[] blockIndices(List<Block> bs) {
+            int[] retval = new int[bs.size()];
+            for (int i = 0; i < retval.length; i++)
+                retval[i] = indexOf(bs.get(i), blockIndex);
+            return retval;
+        }
+
+        private void collect() {
+            for (Question q : survey.questions)
+                add(q, questionIndex, questions);
+            for (Block b : survey.topLevelBlocks)
+                add(b, blockIndex, blocks);
+            for (Block b : new TreeMap<>(survey.blocks).values())
+                add(b, blockIndex, blocks);
+            // Blocks and questions refer to each other; close over both.
+            int b = 0, q = 0;
+            while (b < blocks.size() || q < questions.size()) {
+                for (; b < blocks.size(); b++) {
+                    Block block = blocks.get(b);
+                    add(block.parentBlock, blockIndex, blocks);
+                    for (Block sub : block.subBlocks)
+                        add(sub, blockIndex, blocks);
+                    for (Question question : block.questions)
+                        add(question, questionIndex, questions);
+                    add(block.branchQ, questionIndex, questions);
+                }
+                for (; q < questions.size(); q++) {
+                    Question question = questions.get(q);
+                    add(question.block, blockIndex, blocks);
+                    for (int i = 0; i < question.branchMap.size(); i++)
+                        add(question.branchMap.valueAt(i), blockIndex, blocks);
+                }
+            }
+            for (Question question : questions) {
+                add(question.data, datumIndex, datums);
+                for (Map.Entry<String, SurveyDatum> opt : sortedOptions(question))
+                    add(opt.getValue(), datumIndex, datums);
+                add(question.answer, datumIndex, datums);
+                for (int i = 0; i < question.branchMap.size(); i++)
+                    add(question.branchMap.keyAt(i), datumIndex, datums);
+            }
+        }
+
+        /**
+         * Options are keyed by datum id, except for special entries such as freetext, so keys are stored as well.
+         */
+        private static List<Map.Entry<String, SurveyDatum>> sortedOptions(Question question) {
+            List<Map.Entry<String, SurveyDatum>> opts = new ArrayList<>(question.options.entrySet());
+            Collections.sort(opts, new Comparator<Map.Entry<String, SurveyDatum>>() {
+                @Override
+                public int compare(Map.Entry<String, SurveyDatum> a, Map.Entry<String, SurveyDatum> b) {
+                    int cmp = Integer.compare(a.getValue().getIndex(), b.getValue().getIndex());
+                    return cmp != 0 ? cmp : a.getKey().compareTo(b.getKey());
+                }
+            });
+            return opts;
+        }
+
+        void encode() throws IOException {
+            collect();
+
+            out.writeInt(datums.size());
+            for (SurveyDatum datum : datums) {
+                if (datum instanceof HTMLDatum) {
+                    out.writeByte(HTML_DATUM);
+                    writeString(out, ((HTMLDatum) datum).data);
+                } else if (datum instanceof StringDatum) {
+                    out.writeByte(STRING_DATUM);
+                    writeString(out, ((StringDatum) datum).data);
+                } else throw new IOException(String.format("Cannot snapshot datum of type %s",
+                        datum.getClass().getName()));
+                writeString(out, datum.getId());
+                out.writeInt(datum.getSourceRow());
+                out.writeInt(datum.getSourceCol());
+                out.writeInt(datum.getIndex());
+            }
+
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                writeString(out, block.getId());
+                writeInts(out, block.getBlockId());
+                out.writeBoolean(block.isRandomized());
+                out.writeByte(block.branchParadigm.ordinal());
+            }
+
+            out.writeInt(questions.size());
+            for (Question question : questions) {
+                writeString(out, question.id);
+                out.writeInt(indexOf(question.data, datumIndex));
+                out.writeInt(indexOf(question.answer, datumIndex));
+                List<Map.Entry<String, SurveyDatum>> opts = sortedOptions(question);
+                out.writeInt(opts.size());
+                for (Map.Entry<String, SurveyDatum> opt : opts) {
+                    writeString(out, opt.getKey());
+                    out.writeInt(indexOf(opt.getValue(), datumIndex));
+                }
+                out.writeInt(question.sourceLineNos.size());
+                for (int lineNo : question.sourceLineNos)
+                    out.writeInt(lineNo);
+                out.writeInt(question.otherValues.size());
+                for (Map.Entry<String, String> entry : new TreeMap<>(question.otherValues).entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue());
+                }
+                out.writeInt(indexOf(question.block, blockIndex));
+                writeFlag(out, question.exclusive);
+                writeFlag(out, question.ordered);
+                writeFlag(out, question.randomize);
+                writeFlag(out, question.freetext);
+                writeString(out, question.freetextPattern == null ? null : question.freetextPattern.pattern());
+                out.writeInt(question.freetextPattern == null ? 0 : question.freetextPattern.flags());
+                writeString(out, question.freetextDefault);
+                out.writeBoolean(question.permitBreakoff);
+                writeString(out, question.correlation);
+                out.writeInt(question.branchMap.size());
+                for (int i = 0; i < question.branchMap.size(); i++) {
+                    out.writeInt(indexOf(question.branchMap.keyAt(i), datumIndex));
+                    out.writeInt(indexOf(question.branchMap.valueAt(i), blockIndex));
+                }
+            }
+
+            // Block links refer to questions, so they follow the question table.
+            for (Block block : blocks) {
+                out.writeInt(indexOf(block.parentBlock, blockIndex));
+                out.writeInt(indexOf(block.branchQ, questionIndex));
+                writeInts(out, questionIndices(block.questions));
+                writeInts(out, blockIndices(block.subBlocks));
+            }
+
+            writeString(out, survey.sid);
+            writeString(out, survey.encoding);
+            writeString(out, survey.sourceName);
+            writeString(out, survey.source);
+            if (survey.otherHeaders == null)
+                out.writeInt(-1);
+            else {
+                out.writeInt(survey.otherHeaders.length);
+                for (String header : survey.otherHeaders)
+                    writeString(out, header);
+            }
+            writeInts(out, questionIndices(survey.questions));
+            writeInts(out, blockIndices(survey.topLevelBlocks));
+            out.writeInt(survey.blocks.size());
+            for (Map.Entry<String, Block> entry : new TreeMap<>(survey.blocks).entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(indexOf(entry.getValue(), blockIndex));
+            }
+            if (survey.correlationMap == null)
+                out.writeInt(-1);
+            else {
+                out.writeInt(survey.correlationMap.size());
+                for (Map.Entry<String, List<Question>> entry : new TreeMap<>(survey.correlationMap).entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeInts(out, questionIndices(entry.getValue()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the object graph from the tables written by {@link Encoder}.
+     */
+    private static final class Decoder {
+
+        private final DataInputStream in;
+        private SurveyDatum[] datums;
+        private Block[] blocks;
+        private Question[] questions;
+
+        Decoder(DataInputStream in) {
+            this.in = in;
+        }
+
+        private SurveyDatum datum(int i) {
+            return i < 0 ? null : datums[i];
+        }
+
+        private Block block(int i) {
+            return i < 0 ? null : blocks[i];
+        }
+
+        private Question question(int i) {
+            return i < 0 ? null : questions[i];
+        }
+
+        private List<Question> questionList(int[] indices) {
+            List<Question> retval = new ArrayList<>(indices.length);
+            for (int i : indices)
+                retval.add(question(i));
+            return retval;
+        }
+
+        private List<Block> blockList(int[] indices) {
+            List<Block> retval = new ArrayList<>(indices.length);
+            for (int i : indices)
+                retval.add(block(i));
+            return retval;
+        }
+
+        Survey decode() throws IOException, SurveyException {
+            datums = new SurveyDatum[readCount(in, 4)];
+            for (int i = 0; i < datums.length; i++) {
+                byte kind = in.readByte();
+                String data = readString(in);
+                String id = readString(in);
+                int row = in.readInt();
+                int col = in.readInt();
+                int index = in.readInt();
+                switch (kind) {
+                    case STRING_DATUM:
+                        datums[i] = new StringDatum(id, data, row, col, index);
+                        break;
+                    case HTML_DATUM:
+                        datums[i] = new HTMLDatum(id, data, row, col, index);
+                        break;
+                    default:
+                        throw new SnapshotException(String.format("Unknown datum kind %d", kind));
+                }
+            }
+
+            Block.BranchParadigm[] paradigms = Block.BranchParadigm.values();
+            blocks = new Block[readCount(in, 4)];
+            for (int i = 0; i < blocks.length; i++) {
+                String strId = readString(in);
+                int[] id = readInts(in);
+                boolean randomize = in.readBoolean();
+                Block.BranchParadigm paradigm = paradigms[in.readByte()];
+                blocks[i] = new Block(strId, id, randomize, paradigm);
+            }
+
+            questions = new Question[readCount(in, 4)];
+            for (int i = 0; i < questions.length; i++) {
+                String id = readString(in);
+                SurveyDatum data = datum(in.readInt());
+                Question q = data == null
+                        ? Question.makeQuestion((SurveyDatum) null, 0, 0)
+                        : Question.makeQuestion(data, data.getSourceRow(), data.getSourceCol());
+                q.id = id;
+                q.answer = datum(in.readInt());
+                int n = in.readInt();
+                for (int j = 0; j < n; j++) {
+                    String key = readString(in);
+                    q.options.put(key, datum(in.readInt()));
+                }
+                q.sourceLineNos.clear();
+                n = in.readInt();
+                for (int j = 0; j < n; j++)
+                    q.sourceLineNos.add(in.readInt());
+                n = in.readInt();
+                for (int j = 0; j < n; j++)
+                    q.otherValues.put(readString(in), readString(in));
+                q.block = block(in.readInt());
+                q.exclusive = readFlag(in);
+                q.ordered = readFlag(in);
+                q.randomize = readFlag(in);
+                q.freetext = readFlag(in);
+                String pattern = readString(in);
+                int flags = in.readInt();
+                q.freetextPattern = pattern == null ? null : Pattern.compile(pattern, flags);
+                q.freetextDefault = readString(in);
+                q.permitBreakoff = in.readBoolean();
+                q.correlation = readString(in);
+                n = in.readInt();
+                for (int j = 0; j < n; j++) {
+                    SurveyDatum key = datum(in.readInt());
+                    q.branchMap.put(key, block(in.readInt()));
+                }
+                questions[i] = q;
+            }
+
+            for (Block block : blocks) {
+                block.parentBlock = block(in.readInt());
+                block.branchQ = question(in.readInt());
+                block.questions = questionList(readInts(in));
+                block.subBlocks = blockList(readInts(in));
+            }
+
+            Survey survey = new Survey();
+            survey.sid = readString(in);
+            survey.encoding = readString(in);
+            survey.sourceName = readString(in);
+            survey.source = readString(in);
+            int n = readCount(in, 4);
+            if (n >= 0) {
+                survey.otherHeaders = new String[n];
+                for (int i = 0; i < n; i++)
+                    survey.otherHeaders[i] = readString(in);
+            }
+            survey.questions = questionList(readInts(in));
+            survey.topLevelBlocks = blockList(readInts(in));
+            n = in.readInt();
+            for (int i = 0; i < n; i++)
+                survey.blocks.put(readString(in), block(in.readInt()));
+            n = in.readInt();
+            if (n >= 0) {
+                survey.correlationMap = new HashMap<>();
+                for (int i = 0; i < n; i++)
+                    survey.correlationMap.put(readString(in), questionList(readInts(in)));
+            }
+            survey.freeze();
+            return survey;
+        }
+    }
+}
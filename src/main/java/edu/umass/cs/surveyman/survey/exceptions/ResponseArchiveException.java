@@ -0,0 +1,11 @@
+package edu.umass.cs.surveyman.survey.exceptions;
+
+/**
+ * Thrown when a response archive is truncated, corrupt, written by an incompatible version, or does not match the
+ * survey it is opened against.
+ */
+public class ResponseArchiveException extends SurveyException {
+    public ResponseArchiveException(String msg) {
+        super(msg);
+    }
+}
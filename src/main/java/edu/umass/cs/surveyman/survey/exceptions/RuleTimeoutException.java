@@ -0,0 +1,10 @@
+package edu.umass.cs.surveyman.survey.exceptions;
+
+/**
+ * Thrown when a wellformedness rule does not finish within the time allotted to it.
+ */
+public class RuleTimeoutException extends SurveyException {
+    public RuleTimeoutException(String rule, long timeoutMillis) {
+        super(String.format("Rule %s did not finish within %dms.", rule, timeoutMillis));
+    }
+}
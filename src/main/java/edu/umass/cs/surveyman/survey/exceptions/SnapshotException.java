@@ -0,0 +1,10 @@
+package edu.umass.cs.surveyman.survey.exceptions;
+
+/**
+ * Thrown when a survey snapshot is truncated, corrupt, or was written by an incompatible version.
+ */
+public class SnapshotException extends SurveyException {
+    public SnapshotException(String msg) {
+        super(msg);
+    }
+}
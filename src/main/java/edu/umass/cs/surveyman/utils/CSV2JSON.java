@@ -30,7 +30,7 @@ public class CSV2JSON {
             CSVLexer csvLexer = new CSVLexer((String) ns.get("csv"), (String) ns.get("sep"), (String) ns.get("encoding"));
             CSVParser csvParser = new CSVParser(csvLexer);
             Survey survey = csvParser.parse();
-            String json = survey.jsonize();
+            String json = survey.jsonize(true);
             BufferedWriter bw = new BufferedWriter(new FileWriter(survey.sourceName + ".json"));
             bw.write(json);
             bw.close();
@@ -1,13 +1,14 @@
 package edu.umass.cs.surveyman.utils;
 
 import java.lang.String;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Internal identifier generator.
  */
 public class Gensym {
 
-    private static int counter = 0;
+    private static final AtomicInteger counter = new AtomicInteger();
     private final String prefix;
 
     public Gensym (String prefix) {
@@ -19,7 +20,6 @@ public class Gensym {
     }
 
     public String next() {
-        counter += 1;
-        return prefix + counter;
+        return prefix + counter.incrementAndGet();
     }
 }
\ No newline at end of file
@@ -0,0 +1,243 @@
+package edu.umass.cs.surveyman.utils;
+
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes JSON directly to a {@link Writer}, one token at a time, so that large reports never have to be assembled in
+ * memory. The writer tracks nesting and inserts separators itself; callers only say what comes next. Fields are written
+ * in exactly the order they are given. Misuse (a value where a name is expected, unbalanced containers) raises
+ * {@link IllegalStateException}.
+ *
+ * <pre>
+ *     out.beginObject().name("id").value(q.id).name("options").beginArray() ... .endArray().endObject();
+ * </pre>
+ */
+public final class JsonWriter implements Closeable, Flushable {
+
+    private static final int EMPTY_ARRAY = 1, NONEMPTY_ARRAY = 2, EMPTY_OBJECT = 3, NONEMPTY_OBJECT = 4, NAME = 5;
+    private static final String[] ESCAPES = new String[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++)
+            ESCAPES[c] = String.format("\\u%04x", c);
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\t'] = "\\t";
+    }
+
+    private final Writer out;
+    private int[] stack = new int[16];
+    private int depth = 0;
+
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * @param out A byte stream; JSON is written to it as UTF-8, through a buffer.
+     */
+    public JsonWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Serializes a single value to a string. This is what {@link Jsonable#jsonize()} implementations that write
+     * themselves should delegate to.
+     * @param jsonable The value to serialize.
+     * @return Its JSON text.
+     * @throws SurveyException
+     */
+    public static String toString(Jsonable jsonable) throws SurveyException {
+        StringWriter sw = new StringWriter();
+        try {
+            new JsonWriter(sw).value(jsonable).flush();
+        } catch (IOException e) {
+            // StringWriter does not throw.
+            throw new RuntimeException(e);
+        }
+        return sw.toString();
+    }
+
+    private void push(int state) {
+        if (depth == stack.length)
+            stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = state;
+    }
+
+    /**
+     * Emits whatever separator must precede the next value, and records that a value has been written.
+     */
+    private void beforeValue() throws IOException {
+        if (depth == 0)
+            return;
+        switch (stack[depth - 1]) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                out.write(", ");
+                break;
+            case NAME:
+                depth--;
+                break;
+            default:
+                throw new IllegalStateException("Expected a name inside an object.");
+        }
+    }
+
+    private JsonWriter close(int empty, int nonempty, char bracket) throws IOException {
+        if (depth == 0 || (stack[depth - 1] != empty && stack[depth - 1] != nonempty))
+            throw new IllegalStateException(String.format("Cannot close with '%c' here.", bracket));
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        push(EMPTY_OBJECT);
+        out.write('{');
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        push(EMPTY_ARRAY);
+        out.write('[');
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+    }
+
+    /**
+     * Writes an object key. The next call must write its value.
+     * @param name The key.
+     * @return This writer.
+     * @throws IOException
+     */
+    public JsonWriter name(String name) throws IOException {
+        if (depth == 0)
+            throw new IllegalStateException("Names may only appear inside objects.");
+        int state = stack[depth - 1];
+        if (state == NONEMPTY_OBJECT)
+            out.write(", ");
+        else if (state != EMPTY_OBJECT)
+            throw new IllegalStateException("Names may only appear inside objects.");
+        stack[depth - 1] = NONEMPTY_OBJECT;
+        string(name);
+        out.write(" : ");
+        push(NAME);
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null)
+            return nullValue();
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes a number. JSON has no representation for NaN or the infinities, so those are written as null: an
+     * undefined statistic, such as the correlation of a question everyone answered the same way, reads as missing.
+     * @param value The number.
+     * @return This writer.
+     * @throws IOException
+     */
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            return nullValue();
+        beforeValue();
+        out.write(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(Jsonable value) throws IOException, SurveyException {
+        if (value == null)
+            return nullValue();
+        value.write(this);
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    /**
+     * Writes pre-serialized JSON verbatim, as a single value. The text is not checked.
+     * @param json A complete JSON value.
+     * @return This writer.
+     * @throws IOException
+     */
+    public JsonWriter rawValue(String json) throws IOException {
+        beforeValue();
+        out.write(json);
+        return this;
+    }
+
+    private void string(String s) throws IOException {
+        out.write('"');
+        int last = 0, n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            String escape;
+            if (c < 128)
+                escape = ESCAPES[c];
+            else if (c == 0x2028 || c == 0x2029)
+                escape = String.format("\\u%04x", (int) c);
+            else continue;
+            if (escape == null)
+                continue;
+            if (last < i)
+                out.write(s, last, i - last);
+            out.write(escape);
+            last = i + 1;
+        }
+        if (last < n)
+            out.write(s, last, n - last);
+        out.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying writer.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -2,8 +2,22 @@ package edu.umass.cs.surveyman.utils;
 
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 
+import java.io.IOException;
+
 public interface Jsonable {
 
     java.lang.String jsonize() throws SurveyException;
 
+    /**
+     * Writes this value to a streaming writer. The default writes the output of {@link #jsonize()} verbatim; large or
+     * nested structures override this to stream their contents, and implement {@link #jsonize()} as
+     * {@code JsonWriter.toString(this)}.
+     * @param out The writer.
+     * @throws SurveyException
+     * @throws IOException
+     */
+    default void write(JsonWriter out) throws SurveyException, IOException {
+        out.rawValue(jsonize());
+    }
+
 }
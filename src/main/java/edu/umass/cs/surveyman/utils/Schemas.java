@@ -0,0 +1,85 @@
+package edu.umass.cs.surveyman.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
+import com.github.fge.jsonschema.main.JsonSchema;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+
+import java.io.IOException;
+
+/**
+ * The JSON schemas for SurveyMan's input and output formats. Both are bundled on the classpath, so validation never
+ * touches the network, and each is compiled at most once per JVM, on first use. {@link JsonSchema} instances are
+ * immutable, so the compiled schemas are shared by all threads.
+ */
+public final class Schemas {
+
+    /**
+     * Classpath location of the schema for surveys read by {@link edu.umass.cs.surveyman.input.json.JSONParser}.
+     */
+    public static final String INPUT_RESOURCE = "schema/survey_input.json";
+    /**
+     * Classpath location of the schema for surveys written by {@link edu.umass.cs.surveyman.survey.Survey#jsonize()}.
+     */
+    public static final String OUTPUT_RESOURCE = "schema/survey_output.json";
+
+    // Holder classes, so each schema is compiled lazily and exactly once.
+    private static final class Input {
+        static final JsonSchema SCHEMA = compile(INPUT_RESOURCE);
+    }
+
+    private static final class Output {
+        static final JsonSchema SCHEMA = compile(OUTPUT_RESOURCE);
+    }
+
+    private Schemas() {
+    }
+
+    private static JsonSchema compile(String resource) {
+        try {
+            JsonNode schema = JsonLoader.fromResource("/" + resource);
+            return JsonSchemaFactory.byDefault().getJsonSchema(schema);
+        } catch (IOException | ProcessingException e) {
+            throw new RuntimeException(String.format("Cannot load bundled schema %s", resource), e);
+        }
+    }
+
+    /**
+     * @return The compiled input schema.
+     */
+    public static JsonSchema input() {
+        return Input.SCHEMA;
+    }
+
+    /**
+     * @return The compiled output schema.
+     */
+    public static JsonSchema output() {
+        return Output.SCHEMA;
+    }
+
+    /**
+     * Validates a JSON document against a compiled schema.
+     * @param schema One of {@link #input()} or {@link #output()}.
+     * @param json The document to validate.
+     * @return The validation report.
+     * @throws IOException if the document is not well-formed JSON.
+     * @throws ProcessingException if validation could not be carried out.
+     */
+    public static ProcessingReport validate(JsonSchema schema, String json) throws IOException, ProcessingException {
+        return validate(schema, JsonLoader.fromString(json));
+    }
+
+    /**
+     * Validates a parsed JSON document against a compiled schema.
+     * @param schema One of {@link #input()} or {@link #output()}.
+     * @param json The document to validate.
+     * @return The validation report.
+     * @throws ProcessingException if validation could not be carried out.
+     */
+    public static ProcessingReport validate(JsonSchema schema, JsonNode json) throws ProcessingException {
+        return schema.validate(json);
+    }
+}
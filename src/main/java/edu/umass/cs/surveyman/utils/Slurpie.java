@@ -39,6 +39,23 @@ public class Slurpie {
         return br;
     }
 
+    /**
+     * Open a file or URL as a byte stream, looking for it in the same places as {@link #getReader(String)}.
+     * @param filename file or URL.
+     * @return an InputStream, make sure to close it.
+     * @throws IOException
+     */
+    public static InputStream getInputStream(String filename) throws IOException {
+        URL resource = Slurpie.class.getClassLoader().getResource(filename);
+        if (resource != null)
+            return resource.openStream();
+        try {
+            return new FileInputStream(filename);
+        } catch (FileNotFoundException fe) {
+            return new URL(filename).openStream();
+        }
+    }
+
     /**
      * Slurp in a filename up to a maximimum number of characters.
      * @param filename file name or url.
@@ -53,7 +70,7 @@ public class Slurpie {
     }
 
     /**
-     * Slurp from a BufferedReader up to roughly numChars characters of data.
+     * Slurp from a BufferedReader up to numChars characters of data.
      * @param br the buffered reader.
      * @param numChars the number of characters to read.
      * @return the data as a string.
@@ -61,13 +78,13 @@ public class Slurpie {
      */
     public static String slurp(BufferedReader br, int numChars) throws IOException {
         StringBuilder s = new StringBuilder();
-        char[] buf = new char[1024 * 1024];
+        char[] buf = new char[Math.min(numChars, 1024 * 1024)];
         for (int totalCharsRead = 0; totalCharsRead < numChars; ) {
-            int charsRead = br.read(buf);
+            int charsRead = br.read(buf, 0, Math.min(buf.length, numChars - totalCharsRead));
             if (charsRead == -1)
                 break;
             s.append(buf, 0, charsRead);
-            totalCharsRead += buf.length;
+            totalCharsRead += charsRead;
         }
         return s.toString();
     }
@@ -0,0 +1,199 @@
+package edu.umass.cs.surveyman.utils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Writes delimited text reports one cell at a time, straight to a {@link Writer}, so that tables with hundreds of
+ * thousands of rows never exist as a single string. Doubles are written in the same fixed six-place form as
+ * {@code %f}, without going through {@link java.util.Formatter}.
+ *
+ * <pre>
+ *     out.cell(srid).cell(score).cell(valid).endRow();
+ * </pre>
+ */
+public final class TableWriter implements Closeable, Flushable {
+
+    private static final int FRACTION_DIGITS = 6;
+    private static final long SCALE = 1000000L;
+    // Beyond this, scaling by SCALE loses integer precision; hand off to the formatter.
+    private static final double MAX_FAST = (1L << 52) / (double) SCALE;
+
+    private final Writer out;
+    private final char separator;
+    private final char[] digits = new char[24];
+    private boolean startOfRow = true;
+
+    /**
+     * @param out The destination. Wrap unbuffered writers in a {@link BufferedWriter}.
+     * @param separator Written between cells.
+     */
+    public TableWriter(Writer out, char separator) {
+        this.out = out;
+        this.separator = separator;
+    }
+
+    /**
+     * Writes tab-separated values.
+     */
+    public TableWriter(Writer out) {
+        this(out, '\t');
+    }
+
+    /**
+     * Writes tab-separated values to a byte stream, as UTF-8, through a buffer.
+     */
+    public TableWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Renders a table to a string. This is what {@link Tabularable#tabularize()} implementations that stream
+     * themselves should delegate to.
+     * @param tabularable The table.
+     * @return Its text.
+     */
+    public static String toString(Tabularable tabularable) {
+        StringWriter sw = new StringWriter();
+        try {
+            tabularable.tabularize(new TableWriter(sw));
+        } catch (IOException e) {
+            // StringWriter does not throw.
+            throw new RuntimeException(e);
+        }
+        return sw.toString();
+    }
+
+    /**
+     * Renders a table as a report section (see {@link Tabularable#print}) to a string.
+     * @param tabularable The table.
+     * @return Its text.
+     */
+    public static String printed(Tabularable tabularable) {
+        StringWriter sw = new StringWriter();
+        try {
+            tabularable.print(new TableWriter(sw));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return sw.toString();
+    }
+
+    private void beforeCell() throws IOException {
+        if (startOfRow)
+            startOfRow = false;
+        else out.write(separator);
+    }
+
+    public TableWriter cell(String s) throws IOException {
+        beforeCell();
+        out.write(s == null ? "null" : s);
+        return this;
+    }
+
+    /**
+     * Writes a cell wrapped in double quotes. The contents are not escaped.
+     */
+    public TableWriter quoted(Object o) throws IOException {
+        beforeCell();
+        out.write('"');
+        out.write(String.valueOf(o));
+        out.write('"');
+        return this;
+    }
+
+    public TableWriter cell(Object o) throws IOException {
+        return cell(String.valueOf(o));
+    }
+
+    public TableWriter cell(boolean b) throws IOException {
+        return cell(b ? "true" : "false");
+    }
+
+    public TableWriter cell(long n) throws IOException {
+        beforeCell();
+        writeLong(n);
+        return this;
+    }
+
+    /**
+     * Writes a double with six digits after the decimal point, as {@code %f} would. Rounds half up; for values that
+     * are not exactly representable, the last digit may differ from {@code %f}'s. Always uses '.' as the decimal
+     * point, regardless of the default locale.
+     */
+    public TableWriter cell(double d) throws IOException {
+        beforeCell();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            out.write(Double.toString(d));
+            return this;
+        }
+        double abs = Math.abs(d);
+        if (abs >= MAX_FAST) {
+            out.write(String.format(Locale.ROOT, "%f", d));
+            return this;
+        }
+        long scaled = Math.round(abs * SCALE);
+        if (Double.doubleToRawLongBits(d) < 0)
+            out.write('-');
+        writeLong(scaled / SCALE);
+        out.write('.');
+        long fraction = scaled % SCALE;
+        int i = digits.length;
+        for (int k = 0; k < FRACTION_DIGITS; k++) {
+            digits[--i] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        out.write(digits, i, FRACTION_DIGITS);
+        return this;
+    }
+
+    private void writeLong(long n) throws IOException {
+        if (n == Long.MIN_VALUE) {
+            out.write(Long.toString(n));
+            return;
+        }
+        boolean negative = n < 0;
+        if (negative)
+            n = -n;
+        int i = digits.length;
+        do {
+            digits[--i] = (char) ('0' + n % 10);
+            n /= 10;
+        } while (n > 0);
+        if (negative)
+            digits[--i] = '-';
+        out.write(digits, i, digits.length - i);
+    }
+
+    /**
+     * Ends the current row.
+     */
+    public TableWriter endRow() throws IOException {
+        out.write('\n');
+        startOfRow = true;
+        return this;
+    }
+
+    /**
+     * Writes text verbatim, e.g. a section title or a pre-rendered block. Callers are responsible for line endings.
+     */
+    public TableWriter raw(String s) throws IOException {
+        out.write(s);
+        startOfRow = s.isEmpty() ? startOfRow : s.charAt(s.length() - 1) == '\n';
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Flushes and closes the underlying writer.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
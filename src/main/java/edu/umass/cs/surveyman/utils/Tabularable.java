@@ -1,5 +1,26 @@
 package edu.umass.cs.surveyman.utils;
 
+import java.io.IOException;
+
 public interface Tabularable {
     java.lang.String tabularize();
+
+    /**
+     * Streams this table's rows. The default writes the output of {@link #tabularize()} verbatim; large tables
+     * override this to write row by row, and implement {@link #tabularize()} as {@code TableWriter.toString(this)}.
+     * @param out The writer.
+     * @throws IOException
+     */
+    default void tabularize(TableWriter out) throws IOException {
+        out.raw(tabularize());
+    }
+
+    /**
+     * Streams this table as a report section: any title and summary lines, followed by the rows.
+     * @param out The writer.
+     * @throws IOException
+     */
+    default void print(TableWriter out) throws IOException {
+        tabularize(out);
+    }
 }
@@ -5,7 +5,7 @@ import edu.umass.cs.surveyman.utils.Jsonable;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -22,7 +22,7 @@ public class Jsonify {
 
     public static Map<java.lang.String, Jsonable> mapify(Object... items) throws SurveyException {
 
-        HashMap<java.lang.String, Jsonable> output = new HashMap<>();
+        Map<java.lang.String, Jsonable> output = new LinkedHashMap<>();
 
         if (items.length % 2 != 0) {
             throw new JsonableException("Must have an even number of arguments to mapify (key-value pairs incomplete)");
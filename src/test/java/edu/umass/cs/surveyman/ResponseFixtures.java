@@ -0,0 +1,127 @@
+package edu.umass.cs.surveyman;
+
+import edu.umass.cs.surveyman.analyses.IQuestionResponse;
+import edu.umass.cs.surveyman.analyses.OptTuple;
+import edu.umass.cs.surveyman.analyses.SurveyResponse;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.SurveyDatum;
+
+import java.io.StringReader;
+import java.util.*;
+
+/**
+ * Hand-built responses for testing the one-pass tallies against counts worked out on paper.
+ *
+ * <p>The hand-built responses answer {@link #SURVEY}, a survey small enough to tally on paper. Its first block holds
+ * two variants of one question, V1 and V2, with options x and y; its second block holds Q1, with options a and b, and
+ * Q2, with options c and d. Every question is ordered. The expected counts are worked out next to each test.</p>
+ */
+public final class ResponseFixtures {
+
+    public static final String SURVEY = "BLOCK,QUESTION,OPTIONS,BRANCH,EXCLUSIVE,ORDERED\n"
+            + "1.1,V1,x,NEXT,TRUE,TRUE\n"
+            + ",,y,NEXT,,\n"
+            + "1.1,V2,x,NEXT,TRUE,TRUE\n"
+            + ",,y,NEXT,,\n"
+            + "2,Q1,a,,TRUE,TRUE\n"
+            + ",,b,,,\n"
+            + "2,Q2,c,,TRUE,TRUE\n"
+            + ",,d,,,\n";
+
+    /**
+     * Each respondent's answers, as question=option, in the order they were seen.
+     */
+    public static final String[][] RESPONSES = {
+            {"V1=x", "Q1=a", "Q2=c"},
+            {"V2=y", "Q2=d", "Q1=a"},
+            {"V1=x", "Q1=b", "Q2=d"},
+            {"V2=x", "Q2=d", "Q1=b"},
+            {"V1=y", "Q1=a"},
+            {"V2=y", "Q1=a", "Q2=c"},
+            {"V2=y", "Q2=c"},
+            {"V1=x"}
+    };
+
+    private ResponseFixtures() {}
+
+    public static Survey survey() throws Exception {
+        return new CSVParser(new CSVLexer(new StringReader(SURVEY), ",")).parse();
+    }
+
+    public static Question question(Survey survey, String text) {
+        for (Question q : survey.questions)
+            if (q.data.toString().equals(text))
+                return q;
+        throw new NoSuchElementException(text);
+    }
+
+    public static SurveyDatum option(Question q, String text) {
+        for (SurveyDatum option : q.options.values())
+            if (option.toString().equals(text))
+                return option;
+        throw new NoSuchElementException(text);
+    }
+
+    /**
+     * @return {@link #RESPONSES}, as responses to the parsed {@link #SURVEY}.
+     */
+    public static List<SurveyResponse> handBuilt(Survey survey) {
+        List<SurveyResponse> responses = new ArrayList<>();
+        for (String[] answers : RESPONSES) {
+            SurveyResponse sr = new SurveyResponse(survey);
+            for (int i = 0; i < answers.length; i++) {
+                String[] answer = answers[i].split("=");
+                Question q = question(survey, answer[0]);
+                sr.getAllResponses().add(new Answer(q, option(q, answer[1]), i));
+            }
+            responses.add(sr);
+        }
+        return responses;
+    }
+
+    private static final class Answer implements IQuestionResponse {
+
+        private final Question q;
+        private final List<OptTuple> opts = new ArrayList<>();
+        private final int indexSeen;
+
+        Answer(Question q, SurveyDatum option, int indexSeen) {
+            this.q = q;
+            this.opts.add(new OptTuple(option, option.getIndex()));
+            this.indexSeen = indexSeen;
+        }
+
+        @Override
+        public Question getQuestion() {
+            return q;
+        }
+
+        @Override
+        public List<OptTuple> getOpts() {
+            return opts;
+        }
+
+        @Override
+        public int getIndexSeen() {
+            return indexSeen;
+        }
+
+        @Override
+        public SurveyDatum getAnswer() {
+            return opts.get(0).c;
+        }
+
+        @Override
+        public List<SurveyDatum> getAnswers() {
+            return Collections.singletonList(opts.get(0).c);
+        }
+
+        @Override
+        public int compareTo(Object o) {
+            return Integer.compare(indexSeen, ((IQuestionResponse) o).getIndexSeen());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package edu.umass.cs.surveyman.analyses;
+
+import edu.umass.cs.surveyman.TestLog;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
+import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
+import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.exceptions.ResponseArchiveException;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import org.apache.logging.log4j.LogManager;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class ResponseArchiveTest extends TestLog {
+
+    public ResponseArchiveTest()
+            throws IOException,
+            SyntaxException
+    {
+        super.LOGGER = LogManager.getLogger(ResponseArchiveTest.class);
+        super.init(this.getClass());
+    }
+
+    private Survey survey()
+            throws InvocationTargetException,
+            NoSuchMethodException,
+            IllegalAccessException,
+            IOException,
+            SurveyException
+    {
+        return new CSVParser(new CSVLexer(testsFiles[0], String.valueOf(separators[0]))).parse();
+    }
+
+    private static List<SurveyResponse> respond(Survey survey, int n) throws SurveyException {
+        List<SurveyResponse> responses = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            responses.add(new RandomRespondent(survey, RandomRespondent.AdversaryType.UNIFORM).getResponse());
+        return responses;
+    }
+
+    private static byte[] archive(List<SurveyResponse> responses) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseArchive.write(responses, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip()
+            throws InvocationTargetException,
+            NoSuchMethodException,
+            IllegalAccessException,
+            IOException,
+            SurveyException
+    {
+        Survey survey = survey();
+        List<SurveyResponse> responses = respond(survey, 20);
+        File file = File.createTempFile("responses", ResponseArchive.EXTENSION);
+        file.deleteOnExit();
+        ResponseArchive.write(responses, file);
+        Assert.assertTrue(ResponseArchive.isArchive(file.getPath()));
+        ResponseArchive archive = ResponseArchive.open(survey, file);
+        Assert.assertEquals(responses.size(), archive.size());
+        List<DynamicAnalysis.DynamicSurveyResponse> restored = DynamicAnalysis.readSurveyResponses(survey,
+                file.getPath());
+        Assert.assertEquals(responses.size(), restored.size());
+        for (int r = 0; r < responses.size(); r++) {
+            SurveyResponse expected = responses.get(r), actual = restored.get(r);
+            Assert.assertEquals(expected.getSrid(), archive.srid(r));
+            Assert.assertEquals(expected.getSrid(), actual.getSrid());
+            Assert.assertEquals(expected.getAllResponses().size(), actual.getAllResponses().size());
+            for (int a = 0; a < expected.getAllResponses().size(); a++) {
+                IQuestionResponse e = expected.getAllResponses().get(a), q = actual.getAllResponses().get(a);
+                Assert.assertSame(e.getQuestion(), q.getQuestion());
+                Assert.assertEquals(e.getIndexSeen(), q.getIndexSeen());
+                Assert.assertEquals(e.getOpts().size(), q.getOpts().size());
+                for (int o = 0; o < e.getOpts().size(); o++) {
+                    Assert.assertSame(e.getOpts().get(o).c, q.getOpts().get(o).c);
+                    Assert.assertEquals(e.getOpts().get(o).i, q.getOpts().get(o).i);
+                }
+            }
+        }
+        // Archiving the restored responses reproduces the file.
+        Assert.assertArrayEquals(archive(responses), archive(new ArrayList<SurveyResponse>(restored)));
+    }
+
+    @Test
+    public void testRejectsCorruptArchives()
+            throws InvocationTargetException,
+            NoSuchMethodException,
+            IllegalAccessException,
+            IOException,
+            SurveyException
+    {
+        Survey survey = survey();
+        byte[] bytes = archive(respond(survey, 3));
+        ResponseArchive.read(survey, bytes);
+        byte[][] corrupt = {
+                "responseid,workerid\n".getBytes("UTF-8"),
+                Arrays.copyOf(bytes, bytes.length - 4),
+                bytes.clone()
+        };
+        // Claim more answers than the file holds.
+        corrupt[2][28] = 0x7f;
+        for (byte[] b : corrupt) {
+            try {
+                ResponseArchive.read(survey, b);
+                Assert.fail("Read a corrupt response archive.");
+            } catch (ResponseArchiveException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testSourceHashes()
+            throws InvocationTargetException,
+            NoSuchMethodException,
+            IllegalAccessException,
+            IOException,
+            SurveyException
+    {
+        Survey survey = survey();
+        File results = File.createTempFile("results", ".csv");
+        results.deleteOnExit();
+        Files.write(results.toPath(), "responseid\n".getBytes("UTF-8"));
+        String resultsHash = ResponseArchive.contentHash(results.getPath());
+        Assert.assertEquals(resultsHash, ResponseArchive.contentHash(results.getPath()));
+
+        File file = File.createTempFile("responses", ResponseArchive.EXTENSION);
+        file.deleteOnExit();
+        Assert.assertTrue(file.delete());
+        Assert.assertFalse(ResponseArchive.isCurrent(file, "survey", resultsHash));
+        ResponseArchive.write(respond(survey, 3), "survey", resultsHash, file);
+        Assert.assertEquals("survey", ResponseArchive.open(survey, file).getSurveyHash());
+        Assert.assertEquals(resultsHash, ResponseArchive.open(survey, file).getResultsHash());
+        Assert.assertTrue(ResponseArchive.isCurrent(file, "survey", resultsHash));
+        Assert.assertTrue(ResponseArchive.isCurrent(file, "survey", null));
+        Assert.assertFalse(ResponseArchive.isCurrent(file, "another survey", resultsHash));
+
+        // Editing the results makes the archive stale.
+        Files.write(results.toPath(), "responseid,workerid\n".getBytes("UTF-8"));
+        Assert.assertFalse(ResponseArchive.isCurrent(file, "survey", ResponseArchive.contentHash(results.getPath())));
+        // Archives written without hashes are never current.
+        ResponseArchive.write(respond(survey, 3), file);
+        Assert.assertFalse(ResponseArchive.isCurrent(file, "survey", resultsHash));
+    }
+}
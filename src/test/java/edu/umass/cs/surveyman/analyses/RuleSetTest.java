@@ -0,0 +1,170 @@
+package edu.umass.cs.surveyman.analyses;
+
+import com.github.fge.jackson.JsonLoader;
+import edu.umass.cs.surveyman.TestLog;
+import edu.umass.cs.surveyman.analyses.rules.Compactness;
+import edu.umass.cs.surveyman.analyses.rules.NonEmptySurvey;
+import edu.umass.cs.surveyman.analyses.rules.Reachability;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
+import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.SurveyObj;
+import edu.umass.cs.surveyman.survey.exceptions.RuleTimeoutException;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class RuleSetTest extends TestLog {
+
+    public RuleSetTest()
+            throws IOException,
+            SyntaxException
+    {
+        super.init(this.getClass());
+    }
+
+    @Test
+    public void testComposition()
+    {
+        RuleSet defaults = RuleSet.defaults();
+        Assert.assertEquals(10, defaults.size());
+        RuleSet noCompactness = defaults.without(Compactness.class);
+        Assert.assertTrue(defaults.contains(Compactness.class));
+        Assert.assertFalse(noCompactness.contains(Compactness.class));
+        Assert.assertEquals(9, noCompactness.size());
+        Assert.assertEquals(10, noCompactness.with(defaults).size());
+        Assert.assertEquals(2, RuleSet.of(new Reachability(), new NonEmptySurvey(), new Reachability()).size());
+        Assert.assertEquals(0, RuleSet.EMPTY.size());
+    }
+
+    @Test
+    public void testParallelAgreesWithSequential()
+            throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            RuleSet rules = RuleSet.defaults();
+            for (int i = 0; i < testsFiles.length; i++) {
+                Survey survey;
+                try {
+                    survey = new CSVParser(new CSVLexer(testsFiles[i], String.valueOf(separators[i]))).parse();
+                } catch (SurveyException e) {
+                    continue;
+                }
+                RuleSet.Result sequential = rules.check(survey);
+                RuleSet.Result parallel = rules.check(survey, executor, 1, TimeUnit.MINUTES);
+                Assert.assertEquals(testsFiles[i], sequential.passed(), parallel.passed());
+                if (!parallel.passed())
+                    Assert.assertEquals(testsFiles[i], sequential.firstViolation().getClass(),
+                            parallel.firstViolation().getClass());
+                Assert.assertEquals(rules.size(), parallel.timings().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTimeout()
+            throws Exception
+    {
+        AbstractRule slow = new AbstractRule() {
+            @Override
+            public void check(Survey survey) throws SurveyException {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Survey survey = new Survey(new Question("q"));
+            RuleSet.Result result = RuleSet.of(new NonEmptySurvey(), slow)
+                    .check(survey, executor, 200, TimeUnit.MILLISECONDS);
+            Assert.assertTrue(result.firstViolation() instanceof RuleTimeoutException);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCollectAgreesWithCheck()
+            throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            RuleSet rules = RuleSet.defaults();
+            for (int i = 0; i < testsFiles.length; i++) {
+                Survey survey;
+                try {
+                    survey = new CSVParser(new CSVLexer(testsFiles[i], String.valueOf(separators[i]))).parse();
+                } catch (SurveyException e) {
+                    continue;
+                }
+                RuleSet.Result result = rules.check(survey);
+                Diagnostics diagnostics = rules.collect(survey, executor, 1, TimeUnit.MINUTES);
+                Assert.assertEquals(testsFiles[i], result.passed(), diagnostics.isEmpty());
+                if (!result.passed()) {
+                    boolean found = false;
+                    for (Diagnostics.Diagnostic d : diagnostics)
+                        found |= d.type.equals(result.firstViolation().getClass().getSimpleName());
+                    Assert.assertTrue(testsFiles[i], found);
+                }
+                Assert.assertEquals(rules.size(), diagnostics.timings().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCollectReportsEveryViolation()
+            throws Exception
+    {
+        AbstractRule everyQuestion = new AbstractRule() {
+            @Override
+            public void check(Survey survey) throws SurveyException {
+                check(survey, FAIL_FAST);
+            }
+
+            @Override
+            public void check(Survey survey, Reporter reporter) throws SurveyException {
+                for (Question q : survey.questions)
+                    reporter.report(new SyntaxException("Bad question " + q.id), q);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Survey survey = new CSVParser(new CSVLexer(testsFiles[0], String.valueOf(separators[0]))).parse();
+            Diagnostics diagnostics = RuleSet.of(everyQuestion, new NonEmptySurvey())
+                    .collect(survey, executor, 1, TimeUnit.MINUTES);
+            Assert.assertEquals(survey.questions.size(), diagnostics.size());
+            int lastLine = -1;
+            for (Diagnostics.Diagnostic d : diagnostics) {
+                Question q = survey.getQuestionById(d.locus);
+                Assert.assertEquals((int) Collections.min(q.sourceLineNos), d.line);
+                Assert.assertTrue(d.column >= 0);
+                Assert.assertTrue(d.line >= lastLine);
+                lastLine = d.line;
+            }
+            String json = diagnostics.jsonize();
+            Assert.assertTrue(json, json.contains("\"valid\" : false"));
+            JsonLoader.fromString(json);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package edu.umass.cs.surveyman.analyses;
+
+import edu.umass.cs.surveyman.TestLog;
+import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
+import edu.umass.cs.surveyman.samples.SyntheticSurvey;
+import edu.umass.cs.surveyman.survey.Block;
+import edu.umass.cs.surveyman.survey.Question;
+import edu.umass.cs.surveyman.survey.Survey;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class SyntheticResponsesTest extends TestLog {
+
+    public SyntheticResponsesTest()
+            throws IOException,
+            SyntaxException
+    {
+        super.init(this.getClass());
+    }
+
+    private static SyntheticSurvey.Shape shape() {
+        SyntheticSurvey.Shape shape = new SyntheticSurvey.Shape();
+        shape.questions = 120;
+        shape.depth = 3;
+        shape.branching = 0.3;
+        shape.fanOut = 3;
+        shape.variants = 0.2;
+        shape.checkboxes = 0.2;
+        shape.floating = 0.1;
+        return shape;
+    }
+
+    private static String csv(SyntheticSurvey.Shape shape, long seed) throws IOException {
+        StringWriter out = new StringWriter();
+        new SyntheticSurvey(shape, seed).writeCsv(out);
+        return out.toString();
+    }
+
+    private static String results(SyntheticResponses responses) throws IOException {
+        StringWriter out = new StringWriter();
+        responses.write(out);
+        return out.toString();
+    }
+
+    private static int depth(Block b) {
+        int depth = 0;
+        for (Block sb : b.subBlocks)
+            depth = Math.max(depth, depth(sb));
+        return depth + 1;
+    }
+
+    private static int variants(Block b) {
+        int variants = b.getBranchParadigm().equals(Block.BranchParadigm.ALL) ? 1 : 0;
+        for (Block sb : b.subBlocks)
+            variants += variants(sb);
+        return variants;
+    }
+
+    @Test
+    public void testShape()
+            throws Exception
+    {
+        Survey survey = new SyntheticSurvey(shape(), 1).survey();
+        Assert.assertEquals(120, survey.questions.size());
+        int depth = 0, variants = 0, branching = 0, checkboxes = 0;
+        for (Block b : survey.topLevelBlocks) {
+            depth = Math.max(depth, depth(b));
+            variants += variants(b);
+            if (b.getBranchParadigm().equals(Block.BranchParadigm.ONE))
+                branching++;
+        }
+        for (Question q : survey.questions)
+            if (!q.exclusive)
+                checkboxes++;
+        Assert.assertEquals(3, depth);
+        Assert.assertTrue(variants > 0);
+        Assert.assertTrue(branching > 0);
+        Assert.assertTrue(checkboxes > 0);
+        Assert.assertTrue(RuleSet.defaults().check(survey).passed());
+    }
+
+    @Test
+    public void testReproducible()
+            throws Exception
+    {
+        Assert.assertEquals(csv(shape(), 7), csv(shape(), 7));
+        Assert.assertNotEquals(csv(shape(), 7), csv(shape(), 8));
+        Survey survey = new SyntheticSurvey(shape(), 7).survey();
+        Assert.assertEquals(results(new SyntheticResponses(survey, 50, 3, 0.2, 0.1, 0.1)),
+                results(new SyntheticResponses(survey, 50, 3, 0.2, 0.1, 0.1)));
+        Assert.assertNotEquals(results(new SyntheticResponses(survey, 50, 3, 0.2, 0.1, 0.1)),
+                results(new SyntheticResponses(survey, 50, 4, 0.2, 0.1, 0.1)));
+    }
+
+    @Test
+    public void testRoundTrip()
+            throws Exception
+    {
+        Survey survey = new SyntheticSurvey(shape(), 11).survey();
+        SyntheticResponses responses = new SyntheticResponses(survey, 40, 5, 0.25, 0.1, 0.2);
+        List<DynamicAnalysis.DynamicSurveyResponse> restored =
+                DynamicAnalysis.readSurveyResponses(survey, new StringReader(results(responses)));
+        Assert.assertEquals(responses.size(), restored.size());
+        int r = 0;
+        for (SurveyResponse expected : responses) {
+            SurveyResponse actual = restored.get(r++);
+            Assert.assertEquals(expected.getSrid(), actual.getSrid());
+            Assert.assertEquals(expected.getAllResponses().size(), actual.getAllResponses().size());
+            Set<Question> seen = new HashSet<>();
+            for (int a = 0; a < expected.getAllResponses().size(); a++) {
+                IQuestionResponse e = expected.getAllResponses().get(a), q = actual.getAllResponses().get(a);
+                // Each question is shown at most once, even after a branch.
+                Assert.assertTrue(seen.add(e.getQuestion()));
+                Assert.assertSame(e.getQuestion(), q.getQuestion());
+                Assert.assertEquals(e.getIndexSeen(), q.getIndexSeen());
+                Assert.assertEquals(e.getOpts().size(), q.getOpts().size());
+                for (int o = 0; o < e.getOpts().size(); o++) {
+                    Assert.assertSame(e.getOpts().get(o).c, q.getOpts().get(o).c);
+                    Assert.assertEquals(e.getOpts().get(o).i, q.getOpts().get(o).i);
+                }
+            }
+        }
+    }
+}
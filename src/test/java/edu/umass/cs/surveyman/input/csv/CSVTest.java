@@ -3,12 +3,15 @@ package edu.umass.cs.surveyman.input.csv;
 import edu.umass.cs.surveyman.TestLog;
 import static edu.umass.cs.surveyman.input.csv.CSVEntry.sort;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Map;
 
+import edu.umass.cs.surveyman.input.exceptions.MalformedBooleanException;
 import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
 import org.apache.commons.codec.binary.StringUtils;
 import org.apache.logging.log4j.Logger;
@@ -195,4 +198,93 @@ public class CSVTest extends TestLog {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testLexesStreamsInOnePass()
+            throws InvocationTargetException,
+            SurveyException,
+            IOException,
+            IllegalAccessException,
+            NoSuchMethodException
+    {
+        String surveyCsv = "\"question\",OPTIONS,EXCLUSIVE\r\n" +
+                "\"Which one,\nreally?\",caf\u00e9,yes\r\n" +
+                "\r\n" +
+                ",th\u00e9,\r\n";
+        // A stream that cannot be rewound, as from a servlet request.
+        InputStream stream = new ByteArrayInputStream(surveyCsv.getBytes("UTF-8")) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        CSVLexer lexer = new CSVLexer(stream, ",", "UTF-8");
+        Assert.assertArrayEquals(new String[]{"QUESTION", "OPTIONS", "EXCLUSIVE"}, lexer.headers);
+        ArrayList<CSVEntry> questions = lexer.entries.get("QUESTION");
+        ArrayList<CSVEntry> options = lexer.entries.get("OPTIONS");
+        Assert.assertEquals("Which one,\nreally?", questions.get(0).contents);
+        Assert.assertNull(questions.get(1).contents);
+        Assert.assertEquals("caf\u00e9", options.get(0).contents);
+        // Line numbers count the header, the embedded line break, and the blank line.
+        Assert.assertEquals(3, options.get(0).lineNo);
+        Assert.assertEquals(5, options.get(1).lineNo);
+        Survey survey = new CSVParser(lexer).parse();
+        Assert.assertEquals(1, survey.questions.size());
+        Assert.assertEquals(2, survey.questions.get(0).options.size());
+        try {
+            new CSVLexer(new StringReader("QUESTION,OPTIONS,EXCLUSIVE\nfoo,bar,maybe\n"));
+            Assert.fail("Accepted a malformed boolean.");
+        } catch (MalformedBooleanException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testJoinsColumnsByRow()
+            throws InvocationTargetException,
+            SurveyException,
+            IOException,
+            IllegalAccessException,
+            NoSuchMethodException
+    {
+        // Each block's first question branches to the next block.
+        int numBlocks = 300, perBlock = 4;
+        StringBuilder surveyCsv = new StringBuilder("BLOCK,QUESTION,OPTIONS,BRANCH\n");
+        for (int b = 1; b <= numBlocks; b++)
+            for (int q = 0; q < perBlock; q++)
+                for (int o = 0; o < 2; o++)
+                    surveyCsv.append(String.format("%d,%s,opt%d,%s\n", b, o == 0 ? "q" + b + "_" + q : "", o,
+                            q == 0 && b < numBlocks ? String.valueOf(b + 1) : ""));
+        CSVLexer lexer = new CSVLexer(new StringReader(surveyCsv.toString()));
+        Assert.assertEquals(numBlocks * perBlock * 2, lexer.table.size());
+        Assert.assertSame(lexer.entries.get("OPTIONS").get(5), lexer.table.get(5, "OPTIONS"));
+        Survey survey = new CSVParser(lexer).parse();
+        Assert.assertEquals(numBlocks * perBlock, survey.questions.size());
+        for (int b = 1; b <= numBlocks; b++) {
+            Block block = survey.blocks.get(String.valueOf(b));
+            Assert.assertEquals(perBlock, block.questions.size());
+            Question first = survey.getQuestionByText("q" + b + "_0");
+            Assert.assertSame(block, first.block);
+            if (b < numBlocks) {
+                Assert.assertSame(first, block.branchQ);
+                for (Block dest : first.getBranchDestinations())
+                    Assert.assertSame(survey.blocks.get(String.valueOf(b + 1)), dest);
+            }
+        }
+    }
+
+    @Test
+    public void testTranscodesEntities()
+    {
+        String xml = "\"Fish & chips\" <b>\u2018or\u2019</b> \u2039\u201Cboth\u201D\u203A &lt;";
+        String html = CSVLexer.xmlChars2HTML(xml);
+        Assert.assertEquals("&quot;Fish &amp; chips&quot; &lt;b&gt;&lsquo;or&rsquo;&lt;/b&gt; " +
+                "&lsaquo;&ldquo;both&rdquo;&rsaquo; &amp;lt;", html);
+        Assert.assertEquals(xml, CSVLexer.htmlChars2XML(html));
+        Assert.assertEquals("& &unknown; &amp", CSVLexer.htmlChars2XML("& &unknown; &amp"));
+        Assert.assertEquals("", CSVLexer.xmlChars2HTML(null));
+        String plain = "No special characters.";
+        Assert.assertSame(plain, CSVLexer.xmlChars2HTML(plain));
+        Assert.assertSame(plain, CSVLexer.htmlChars2XML(plain));
+    }
+
+}
@@ -6,6 +6,7 @@ import edu.umass.cs.surveyman.analyses.StaticAnalysis;
 import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
 import edu.umass.cs.surveyman.qc.classifiers.StackedClassifier;
 import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
+import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 import edu.umass.cs.surveyman.utils.Slurpie;
@@ -17,6 +18,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 /**
@@ -96,4 +98,51 @@ public class JSONTest extends TestLog {
         StaticAnalysis.staticAnalysis(s, new StackedClassifier(s, false, 0.05, 2), 0.25, RandomRespondent.AdversaryType.UNIFORM);
     }
 
+    @Test
+    public void testSchemaValidation() throws Exception
+    {
+        for (String filename : new String[]{"ex0.json", "ex1.json", "ex2.json"})
+            new JSONParser(Slurpie.slurp(filename), true).parse();
+        try {
+            new JSONParser("{\"survey\": [ { \"questions\": [] } ]}", true).parse();
+            Assert.fail("Blocks without ids should not validate.");
+        } catch (SyntaxException se) {
+
+        }
+    }
+
+    @Test
+    public void testStreamingParse() throws Exception
+    {
+        for (String filename : new String[]{"ex0.json", "ex1.json", "ex2.json"}) {
+            String json = Slurpie.slurp(filename);
+            byte[] bytes = json.getBytes("UTF-8");
+            Survey expected = new JSONParser(json).parse();
+            Survey[] streamed = {
+                    JSONParser.makeParser(filename).parse(),
+                    JSONParser.makeParser(filename, true).parse(),
+                    new JSONParser(new ByteArrayInputStream(bytes), filename, false, bytes.length).parse()
+            };
+            for (Survey s : streamed) {
+                Assert.assertEquals(expected.blocks.keySet(), s.blocks.keySet());
+                Assert.assertEquals(expected.questions.size(), s.questions.size());
+                for (int i = 0; i < s.questions.size(); i++) {
+                    Question e = expected.questions.get(i), q = s.questions.get(i);
+                    Assert.assertEquals(e.id, q.id);
+                    Assert.assertEquals(e.block.getId(), q.block.getId());
+                    Assert.assertEquals(e.options.keySet(), q.options.keySet());
+                    Assert.assertEquals(e.getBranchDestinations().size(), q.getBranchDestinations().size());
+                }
+            }
+            try {
+                new JSONParser(new ByteArrayInputStream(bytes), filename, false, bytes.length - 1).parse();
+                Assert.fail("Read a survey larger than the size limit.");
+            } catch (SyntaxException se) {
+
+            }
+        }
+        // Every top-level block gets its own identifier.
+        Assert.assertEquals(5, new JSONParser(Slurpie.slurp("ex2.json")).parse().topLevelBlocks.size());
+    }
+
 }
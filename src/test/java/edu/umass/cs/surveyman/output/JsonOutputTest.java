@@ -3,6 +3,8 @@ package edu.umass.cs.surveyman.output;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeType;
 import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import com.github.fge.jsonschema.core.report.ProcessingReport;
 import edu.umass.cs.surveyman.TestLog;
 import edu.umass.cs.surveyman.analyses.KnownValidityStatus;
 import edu.umass.cs.surveyman.analyses.SurveyResponse;
@@ -19,6 +21,8 @@ import edu.umass.cs.surveyman.survey.InputOutputKeys;
 import edu.umass.cs.surveyman.survey.Question;
 import edu.umass.cs.surveyman.survey.Survey;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.JsonWriter;
+import edu.umass.cs.surveyman.utils.Schemas;
 import edu.umass.cs.surveyman.utils.Slurpie;
 import org.apache.logging.log4j.LogManager;
 import org.junit.Assert;
@@ -26,9 +30,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 
@@ -55,11 +62,38 @@ public class JsonOutputTest extends TestLog {
         StringReader surveyReader = new StringReader(surveyString);
         CSVLexer lexer = new CSVLexer(surveyReader, ",");
         Survey survey = new CSVParser(lexer).parse();
-        java.lang.String json = survey.jsonize();
+        java.lang.String json = survey.jsonize(true);
         LOGGER.info(json);
         Assert.assertFalse(json.isEmpty());
     }
 
+    @Test
+    public void testSurveysConformToSchema()
+            throws InvocationTargetException,
+            IllegalAccessException,
+            NoSuchMethodException,
+            IOException,
+            ProcessingException
+    {
+        for (int i = 0; i < testsFiles.length; i++) {
+            Survey survey;
+            try {
+                survey = new CSVParser(new CSVLexer(testsFiles[i], java.lang.String.valueOf(separators[i]))).parse();
+            } catch (SurveyException e) {
+                continue;
+            }
+            java.lang.String json;
+            try {
+                json = survey.jsonize();
+            } catch (SurveyException | RuntimeException e) {
+                // Not serializable at all (e.g., empty cells); nothing to check against the schema.
+                continue;
+            }
+            ProcessingReport report = Schemas.validate(Schemas.output(), json);
+            Assert.assertTrue(testsFiles[i] + ": " + report, report.isSuccess());
+        }
+    }
+
     @Test
     public void testBreakoffByPositionJson()
             throws InvocationTargetException,
@@ -170,6 +204,62 @@ public class JsonOutputTest extends TestLog {
         final JsonNode jsonObj = JsonLoader.fromString(json);
         Assert.assertEquals(jsonObj.getNodeType(), JsonNodeType.OBJECT);
         Assert.assertEquals(jsonObj.get(InputOutputKeys.COEFFICIENTTYPE).asText(), CoefficentsAndTests.CHI.name());
+        Assert.assertEquals(jsonObj.get(InputOutputKeys.NUMSAMPLESA).asInt(), 12);
+    }
+
+    @Test
+    public void testJsonWriter()
+            throws IOException,
+            SurveyException
+    {
+        StringWriter sw = new StringWriter();
+        JsonWriter out = new JsonWriter(sw);
+        out.beginObject()
+                .name("z").value("quote \" slash \\ newline \n tab \t \u2028")
+                .name("a").beginArray().value(1).value(2.5).value(Double.NaN).nullValue().value(Double.POSITIVE_INFINITY)
+                .value(true).endArray()
+                .name("empty").beginObject().endObject()
+                .endObject()
+                .flush();
+        java.lang.String json = sw.toString();
+        LOGGER.debug("JsonWriter:\t" + json);
+        final JsonNode jsonObj = JsonLoader.fromString(json);
+        Assert.assertEquals("quote \" slash \\ newline \n tab \t \u2028", jsonObj.get("z").asText());
+        Assert.assertEquals(6, jsonObj.get("a").size());
+        // Non-finite numbers have no JSON form, and come out as null rather than as strings.
+        Assert.assertTrue(jsonObj.get("a").get(2).isNull());
+        Assert.assertTrue(jsonObj.get("a").get(3).isNull());
+        Assert.assertTrue(jsonObj.get("a").get(4).isNull());
+        Assert.assertTrue(jsonObj.get("a").get(5).asBoolean());
+        // Fields come out in the order they were written.
+        Assert.assertTrue(json.indexOf("\"z\"") < json.indexOf("\"a\""));
+        Assert.assertFalse(json.contains("\u2028"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testJsonWriterRejectsValueWithoutName()
+            throws IOException
+    {
+        new JsonWriter(new StringWriter()).beginObject().value("no name");
+    }
+
+    @Test
+    public void testSurveyJsonIsDeterministic()
+            throws InvocationTargetException,
+            SurveyException,
+            IllegalAccessException,
+            NoSuchMethodException,
+            IOException
+    {
+        CSVLexer lexer = new CSVLexer(testsFiles[0], java.lang.String.valueOf(separators[0]));
+        Survey survey = new CSVParser(lexer).parse();
+        java.lang.String json = survey.jsonize();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        survey.write(new JsonWriter(bytes));
+        Assert.assertEquals(json, bytes.toString(StandardCharsets.UTF_8.name()));
+        Assert.assertEquals(json, survey.jsonize());
+        BreakoffByQuestion breakoffByQuestion = new BreakoffByQuestion(survey);
+        Assert.assertEquals(breakoffByQuestion.jsonize(), new BreakoffByQuestion(survey).jsonize());
     }
 
     @Test
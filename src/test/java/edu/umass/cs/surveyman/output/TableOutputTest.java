@@ -0,0 +1,84 @@
+package edu.umass.cs.surveyman.output;
+
+import edu.umass.cs.surveyman.TestLog;
+import edu.umass.cs.surveyman.analyses.KnownValidityStatus;
+import edu.umass.cs.surveyman.analyses.SurveyResponse;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
+import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
+import edu.umass.cs.surveyman.qc.classifiers.EntropyClassifier;
+import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.TableWriter;
+import org.apache.logging.log4j.LogManager;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+
+@RunWith(JUnit4.class)
+public class TableOutputTest extends TestLog {
+
+    public TableOutputTest()
+            throws IOException,
+            SyntaxException
+    {
+        super.LOGGER = LogManager.getLogger(TableOutputTest.class);
+        super.init(this.getClass());
+    }
+
+    @Test
+    public void testDoublesMatchFormatter()
+            throws IOException
+    {
+        double[] values = {0.0, -0.0, 1.0, -1.5, 0.1, 2.0 / 3.0, 1e-7, -1e-9, 123456.7890125, 1e15, Double.NaN,
+                Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Long.MAX_VALUE};
+        for (double d : values) {
+            StringWriter sw = new StringWriter();
+            new TableWriter(sw).cell(d).flush();
+            Assert.assertEquals(Double.toString(d), String.format(Locale.ROOT, "%f", d), sw.toString());
+        }
+    }
+
+    @Test
+    public void testRowsAndSeparators()
+            throws IOException
+    {
+        StringWriter sw = new StringWriter();
+        new TableWriter(sw, ',').cell("a").cell(1).cell(true).endRow().quoted("b").cell(2.5).endRow().flush();
+        Assert.assertEquals("a,1,true\n\"b\",2.500000\n", sw.toString());
+    }
+
+    @Test
+    public void testClassifiedRespondentsTable()
+            throws SurveyException,
+            InvocationTargetException,
+            NoSuchMethodException,
+            IllegalAccessException,
+            IOException
+    {
+        CSVLexer lexer = new CSVLexer(testsFiles[0], java.lang.String.valueOf(separators[0]));
+        Survey survey = new CSVParser(lexer).parse();
+        ClassifiedRespondentsStruct classifiedRespondentsStruct = new ClassifiedRespondentsStruct();
+        int n = 50;
+        for (int i = 0; i < n; i++) {
+            SurveyResponse sr = new RandomRespondent(survey, RandomRespondent.AdversaryType.UNIFORM).getResponse();
+            sr.setScore(i);
+            sr.setThreshold(n / 2.0);
+            sr.setComputedValidityStatus(KnownValidityStatus.YES);
+            classifiedRespondentsStruct.add(new ClassificationStruct(sr, new EntropyClassifier(survey)));
+        }
+        String[] rows = classifiedRespondentsStruct.tabularize().split("\n");
+        Assert.assertEquals(n, rows.length);
+        for (String row : rows)
+            Assert.assertEquals(row, 6, row.split("\t").length);
+        // The printed section adds a title and a header row.
+        Assert.assertEquals(n + 2, classifiedRespondentsStruct.toString().split("\n").length);
+    }
+}
@@ -1,22 +1,38 @@
 package edu.umass.cs.surveyman.qc;
 
+import edu.umass.cs.surveyman.ResponseFixtures;
 import edu.umass.cs.surveyman.TestLog;
 import edu.umass.cs.surveyman.analyses.IQuestionResponse;
 import edu.umass.cs.surveyman.analyses.OptTuple;
 import edu.umass.cs.surveyman.analyses.StaticAnalysis;
 import edu.umass.cs.surveyman.analyses.SurveyResponse;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
 import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
+import edu.umass.cs.surveyman.output.BreakoffTally;
 import edu.umass.cs.surveyman.output.CorrelationStruct;
+import edu.umass.cs.surveyman.output.OrderBiasStruct;
+import edu.umass.cs.surveyman.output.WordingBiasStruct;
+import edu.umass.cs.surveyman.qc.classifiers.AllClassifier;
+import edu.umass.cs.surveyman.qc.exceptions.UnanalyzableException;
 import edu.umass.cs.surveyman.qc.respondents.AbstractRespondent;
 import edu.umass.cs.surveyman.qc.respondents.RandomRespondent;
+import edu.umass.cs.surveyman.samples.SyntheticSurvey;
 import edu.umass.cs.surveyman.survey.*;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.Slurpie;
+import edu.umass.cs.surveyman.utils.Tuple;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.math3.stat.correlation.KendallsCorrelation;
+import org.apache.commons.math3.stat.correlation.SpearmansCorrelation;
+import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 
 @RunWith(JUnit4.class)
@@ -215,7 +231,9 @@ public class MetricsTest extends TestLog {
     
     @Test
     public void testMaxEntropy() {
-        //// TODO: 7/10/16 Write this test
+        init();
+        // Only the two branch questions have options, and every path can see both.
+        Assert.assertEquals(2.0, qcMetrics.getMaxPossibleEntropy(), 0.001);
     }
 
     @Test
@@ -227,8 +245,68 @@ public class MetricsTest extends TestLog {
     }
 
     @Test
-    public void testAvgPath() {
-        // // TODO: 7/10/16 Write this test
+    public void testAvgPath() throws SurveyException {
+        init();
+        // Paths 1-4, 1-2-4, and 1-2-3-4 are taken with probabilities 1/2, 1/4, and 1/4.
+        Assert.assertEquals(2 * 0.5 + 3 * 0.25 + 4 * 0.25, qcMetrics.averagePathLength(), 0.001);
+    }
+
+    @Test
+    public void testPathStatisticsMatchEnumeration()
+            throws InvocationTargetException, SurveyException, IllegalAccessException, NoSuchMethodException,
+                   IOException
+    {
+        for (String filename : new String[]{"pathTest.csv", "sample3.csv", "test4.csv", "test5.csv",
+                "test_reachability.csv", "prototypicality.csv"}) {
+            Survey survey = new CSVParser(new CSVLexer(Slurpie.getReader(filename), ",")).parse();
+            PathStatistics statistics = new PathStatistics(survey);
+            List<SurveyPath> paths = SurveyDAG.getPaths(survey);
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (SurveyPath path : paths) {
+                min = Math.min(min, path.getPathLength());
+                max = Math.max(max, path.getPathLength());
+            }
+            Assert.assertEquals(filename, paths.size(), statistics.numPaths);
+            Assert.assertEquals(filename, min, statistics.minimumPathLength());
+            Assert.assertEquals(filename, max, statistics.maximumPathLength());
+            double expected = statistics.expectedPathLength();
+            Assert.assertTrue(filename, min <= expected && expected <= max);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testSaturatedSampleSizeFailsFast()
+            throws Exception
+    {
+        // A chain of 100 blocks, each branching to the next two, has Fibonacci(100) paths: more than a long holds.
+        SyntheticSurvey.Shape shape = new SyntheticSurvey.Shape();
+        shape.questions = 100;
+        shape.blockSize = 1;
+        shape.branching = 1.0;
+        shape.fanOut = 2;
+        Survey survey = new SyntheticSurvey(shape, 0).survey();
+        Assert.assertEquals(Long.MAX_VALUE, new PathStatistics(survey).numPaths);
+        // Neither the metrics nor a static analysis should start simulating a sample it can never finish.
+        QCMetrics metrics = new QCMetrics(survey, new AllClassifier(survey));
+        try {
+            metrics.getSampleSize();
+            Assert.fail("Expected an UnanalyzableException.");
+        } catch (UnanalyzableException e) {
+            // expected
+        }
+        try {
+            metrics.getFrequenciesOfRandomCorrelation();
+            Assert.fail("Expected an UnanalyzableException.");
+        } catch (UnanalyzableException e) {
+            // expected
+        }
+        try {
+            StaticAnalysis.staticAnalysis(survey, new AllClassifier(survey), 0.1,
+                    RandomRespondent.AdversaryType.UNIFORM);
+            Assert.fail("Expected an UnanalyzableException.");
+        } catch (UnanalyzableException e) {
+            // expected
+        }
     }
 
     @Test
@@ -281,7 +359,11 @@ public class MetricsTest extends TestLog {
 
     @Test
     public void testComputeRanks() {
-        // // TODO: 7/10/16 write this test
+        init();
+        List<SurveyDatum> xs = Arrays.asList(a, a, b, c, c, c, d);
+        double[] xranks = new double[xs.size()];
+        QCMetrics.computeRanks(xranks, xs);
+        Assert.assertArrayEquals(new double[]{1.5, 1.5, 3, 5, 5, 5, 7}, xranks, 1e-9);
     }
 
     @Test
@@ -303,15 +385,26 @@ public class MetricsTest extends TestLog {
         ansMap1.put("b", qr1);
         ansMap2.put("a", qr2);
         ansMap2.put("b", qr2);
+        // Everyone gave the same answers, so neither question has any rank variance.
+        Assert.assertTrue(Double.isNaN(QCMetrics.spearmansRho(ansMap1, ansMap2)));
+        // Pairs (a,d), (a,e), (b,e), (b,f): the table {{1,1,0},{0,1,1}}, and the answer the table version gives.
+        SurveyDatum[] opts1 = q1.getOptListByIndex(), opts2 = q2.getOptListByIndex();
+        Arrays.sort(opts1);
+        Arrays.sort(opts2);
+        int[][] pairs = {{0, 0}, {0, 1}, {1, 1}, {1, 2}};
+        ansMap1.clear();
+        ansMap2.clear();
+        for (int r = 0; r < pairs.length; r++) {
+            ansMap1.put("r" + r, new QuestionResponse(q1, new OptTuple(opts1[pairs[r][0]], pairs[r][0])));
+            ansMap2.put("r" + r, new QuestionResponse(q2, new OptTuple(opts2[pairs[r][1]], pairs[r][1])));
+        }
+        // Respondents who answered only one of the questions are left out.
+        ansMap1.put("x", new QuestionResponse(q1, new OptTuple(opts1[2], 2)));
         double rho = QCMetrics.spearmansRho(ansMap1, ansMap2);
-        Assert.assertEquals("Rho should be 1", 1, rho, 0.001);
+        Assert.assertEquals(0.7071, rho, 0.001);
+        Assert.assertEquals(QCMetrics.spearmansRho(new int[][]{{1, 1, 0}, {0, 1, 1}}), rho, 1e-9);
     }
-    
-    @Test
-    public void testCellExpectation() {
-        // TODO: 7/10/16 write this test     
-    }
-    
+
     @Test
     public void testChiSquared() {
         // TODO: 7/10/16 write this test 
@@ -462,6 +555,187 @@ public class MetricsTest extends TestLog {
     }
 
 
+    @Test
+    public void testContingencyTableStatistics() {
+        Tuple<Double, Double> v = QCMetrics.cramersV(new int[][]{{5, 20, 45}, {5, 10, 15}});
+        Assert.assertEquals("V should be 0.166666...", 0.1666, v.fst, 0.001);
+        Assert.assertEquals("p-value should be 0.2491", 0.2491, v.snd, 0.001);
+        Assert.assertEquals(1., QCMetrics.spearmansRho(new int[][]{{2, 0, 0}, {0, 0, 3}}), 0.001);
+        Assert.assertEquals(-1., QCMetrics.spearmansRho(new int[][]{{0, 2}, {2, 0}}), 0.001);
+        // Midranks of the first question are (1.5, 3.5), of the second (1, 2.5, 4); n = 4.
+        Assert.assertEquals(0.7071, QCMetrics.spearmansRho(new int[][]{{1, 1, 0}, {0, 1, 1}}), 0.001);
+        Assert.assertTrue(Double.isNaN(QCMetrics.spearmansRho(new int[][]{{4, 0}})));
+    }
+
+    @Test
+    public void testContingencyTableKernel() {
+        ContingencyTable table = ContingencyTable.of(new int[][]{{5, 20, 45}, {5, 10, 15}});
+        Assert.assertEquals(100, table.n);
+        Assert.assertEquals(70, table.rowTotal(0));
+        Assert.assertEquals(30, table.colTotal(1));
+        Assert.assertEquals(2, table.degreesOfFreedom());
+        Assert.assertEquals(QCMetrics.chiSquared(new int[][]{{5, 20, 45}, {5, 10, 15}}, new Object[2], new Object[3]),
+                table.chiSquared(), 1e-9);
+        Assert.assertEquals(0.1666, table.cramersV(), 0.001);
+        // With two degrees of freedom, the upper tail is exp(-x / 2).
+        Assert.assertEquals(Math.exp(-table.chiSquared() / 2),
+                ContingencyTable.chiSquaredPValue(table.degreesOfFreedom(), table.chiSquared()), 1e-9);
+        Assert.assertTrue(Double.isNaN(ContingencyTable.chiSquaredPValue(0, 0.0)));
+    }
+
+    @Test
+    public void testRankTests() {
+        // Expand count vectors into one observation per respondent, and compare against commons-math.
+        int[] counts1 = {3, 0, 5, 2}, counts2 = {1, 4, 2, 6};
+        List<Double> xs = new ArrayList<>(), ys = new ArrayList<>();
+        double[] sample1 = new double[10], sample2 = new double[13];
+        for (int k = 0, i = 0, j = 0; k < counts1.length; k++) {
+            for (int c = 0; c < counts1[k]; c++)
+                sample1[i++] = k;
+            for (int c = 0; c < counts2[k]; c++)
+                sample2[j++] = k;
+        }
+        MannWhitneyUTest mannWhitney = new MannWhitneyUTest();
+        ImmutablePair<Double, Double> u = RankTests.mannWhitney(counts1, counts2);
+        Assert.assertEquals(mannWhitney.mannWhitneyU(sample1, sample2), u.getLeft(), 1e-9);
+        // Ties shrink the variance, so the tie-corrected p-value is the smaller one.
+        Assert.assertTrue(u.getRight() <= mannWhitney.mannWhitneyUTest(sample1, sample2));
+        // Without ties, the two agree exactly.
+        ImmutablePair<Double, Double> untied = RankTests.mannWhitney(new double[]{1, 3, 4}, new int[]{1, 1, 1},
+                new double[]{2, 5, 6, 7}, new int[]{1, 1, 1, 1});
+        Assert.assertEquals(mannWhitney.mannWhitneyU(new double[]{1, 3, 4}, new double[]{2, 5, 6, 7}),
+                untied.getLeft(), 1e-9);
+        Assert.assertEquals(mannWhitney.mannWhitneyUTest(new double[]{1, 3, 4}, new double[]{2, 5, 6, 7}),
+                untied.getRight(), 1e-9);
+
+        int[][] pairs = {{3, 1, 0}, {2, 4, 1}, {0, 2, 5}};
+        for (int r = 0; r < pairs.length; r++)
+            for (int c = 0; c < pairs[r].length; c++)
+                for (int k = 0; k < pairs[r][c]; k++) {
+                    xs.add((double) r);
+                    ys.add((double) c);
+                }
+        double[] x = new double[xs.size()], y = new double[ys.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = xs.get(i);
+            y[i] = ys.get(i);
+        }
+        ContingencyTable table = ContingencyTable.of(pairs);
+        Assert.assertEquals(new SpearmansCorrelation().correlation(x, y), RankTests.spearmansRho(table), 1e-9);
+        Assert.assertEquals(new KendallsCorrelation().correlation(x, y), RankTests.kendallsTauB(table), 1e-9);
+        Assert.assertTrue(Double.isNaN(RankTests.kendallsTauB(ContingencyTable.of(new int[][]{{3, 4}}))));
+    }
+
+    @Test
+    public void testCorrelationMatrix()
+            throws Exception
+    {
+        Survey survey = ResponseFixtures.survey();
+        List<SurveyResponse> responses = ResponseFixtures.handBuilt(survey);
+        CorrelationMatrix matrix = CorrelationMatrix.compute(survey, responses);
+        Question v1 = ResponseFixtures.question(survey, "V1"), v2 = ResponseFixtures.question(survey, "V2");
+        Question q1 = ResponseFixtures.question(survey, "Q1"), q2 = ResponseFixtures.question(survey, "Q2");
+        // Five respondents answer both: (a,c) twice, (a,d) once, (b,d) twice. Midranks are a 2, b 4.5, c 1.5, d 4,
+        // around a mean of 3, so rho = (2 - 1 + 3) / sqrt(7.5 * 7.5) = 2/3.
+        CorrelationStruct struct = matrix.get(q1, q2);
+        Assert.assertEquals(CoefficentsAndTests.RHO, struct.coefficientType);
+        Assert.assertEquals(5, struct.numSamplesA);
+        Assert.assertEquals(2.0 / 3.0, struct.coefficientValue, 1e-9);
+        Assert.assertSame(struct, matrix.get(q2, q1));
+        // The pairwise version agrees.
+        Assert.assertEquals(2.0 / 3.0, QCMetrics.spearmansRho(responsesByRespondent(responses, q1),
+                responsesByRespondent(responses, q2)), 1e-9);
+        // V1 and Q1: (x,a), (x,b), (y,a) from respondents 1, 3 and 5. Midranks are x 1.5, y 3, a 1.5, b 3, around a
+        // mean of 2, so rho = (1/4 - 1/2 - 1/2) / 3/2 = -1/2.
+        Assert.assertEquals(3, matrix.get(v1, q1).numSamplesA);
+        Assert.assertEquals(-0.5, matrix.get(v1, q1).coefficientValue, 1e-9);
+        // V2 and Q1: (y,a), (x,b), (y,a) from respondents 2, 4 and 6, which disagree perfectly.
+        Assert.assertEquals(3, matrix.get(v2, q1).numSamplesA);
+        Assert.assertEquals(-1.0, matrix.get(v2, q1).coefficientValue, 1e-9);
+        // Variants of one question are never compared, and no respondent answers both; every other pair is.
+        Assert.assertNull(matrix.get(v1, v2));
+        Assert.assertEquals(5, matrix.numComparisons);
+        Assert.assertEquals(0, matrix.numInsufficientData);
+    }
+
+    private static Map<String, IQuestionResponse> responsesByRespondent(List<SurveyResponse> responses, Question q) {
+        Map<String, IQuestionResponse> byRespondent = new HashMap<>();
+        for (SurveyResponse sr : responses)
+            if (sr.hasResponseForQuestion(q))
+                byRespondent.put(sr.getSrid(), sr.getResponseForQuestion(q));
+        return byRespondent;
+    }
+
+    @Test
+    public void testOrderBias()
+            throws Exception
+    {
+        Survey survey = ResponseFixtures.survey();
+        OrderBiasStruct struct = OrderBiasStruct.makeStruct(new QCMetrics(survey, new AllClassifier(survey)),
+                ResponseFixtures.handBuilt(survey), 0.05);
+        Question q1 = ResponseFixtures.question(survey, "Q1"), q2 = ResponseFixtures.question(survey, "Q2");
+        // Q1 is seen before Q2 by respondents 1, 3 and 6, who answer a, b, a, and after it by 2 and 4, who answer a, b.
+        // Ranking a below b, the before sample beats the after sample in 1 pair and ties it in 3 of the 6, so
+        // U = max(1 + 3/2, 6 - 5/2) = 3.5. Respondent 5 answers Q1 but not Q2, so is not counted.
+        CorrelationStruct q1q2 = struct.get(q1, q2);
+        Assert.assertEquals(CoefficentsAndTests.U, q1q2.coefficientType);
+        Assert.assertEquals(3, q1q2.numSamplesA);
+        Assert.assertEquals(2, q1q2.numSamplesB);
+        Assert.assertEquals(3.5, q1q2.coefficientValue, 1e-9);
+        // The variant block always comes first, so no variant is ever seen after Q1 or Q2: those four pairs are too
+        // imbalanced to test.
+        for (String v : new String[]{"V1", "V2"})
+            for (Question q : new Question[]{q1, q2})
+                Assert.assertNull(struct.get(ResponseFixtures.question(survey, v), q).coefficientType);
+        Assert.assertEquals(4, struct.getNumImbalances());
+    }
+
+    @Test
+    public void testWordingBias()
+            throws Exception
+    {
+        Survey survey = ResponseFixtures.survey();
+        WordingBiasStruct struct = WordingBiasStruct.makeStruct(new QCMetrics(survey, new AllClassifier(survey)),
+                ResponseFixtures.handBuilt(survey), 0.05);
+        Question v1 = ResponseFixtures.question(survey, "V1"), v2 = ResponseFixtures.question(survey, "V2");
+        // V1 is answered x, x, y, x by respondents 1, 3, 5 and 8; V2 is answered y, x, y, y by 2, 4, 6 and 7. Ranking
+        // x below y, V1's answers beat V2's in 1 of the 16 pairs and tie in 6, so U = max(1 + 6/2, 16 - 4) = 12.
+        CorrelationStruct v1v2 = struct.get(v1.block, v1, v2);
+        Assert.assertEquals(CoefficentsAndTests.U, v1v2.coefficientType);
+        Assert.assertEquals(4, v1v2.numSamplesA);
+        Assert.assertEquals(4, v1v2.numSamplesB);
+        Assert.assertEquals(12.0, v1v2.coefficientValue, 1e-9);
+        Assert.assertEquals(1, struct.getNumComparisons());
+        Assert.assertEquals(0, struct.getNumImbalances());
+    }
+
+    @Test
+    public void testBreakoffTally()
+            throws Exception
+    {
+        Survey survey = ResponseFixtures.survey();
+        List<SurveyResponse> responses = ResponseFixtures.handBuilt(survey);
+        QCMetrics qcMetrics = new QCMetrics(survey, new AllClassifier(survey));
+        BreakoffTally tally = BreakoffTally.count(qcMetrics, responses);
+        // Respondent 5 stops after Q1 and respondent 7 after Q2, both at position 1, halfway through the second block.
+        // Respondent 8 answers only a variant, but that finishes the first block, so it is not a breakoff.
+        Assert.assertEquals(3, tally.byPosition.size());
+        Assert.assertEquals(0, (int) tally.byPosition.get(0));
+        Assert.assertEquals(2, (int) tally.byPosition.get(1));
+        Assert.assertEquals(0, (int) tally.byPosition.get(2));
+        Assert.assertEquals(0, (int) tally.byQuestion.get(ResponseFixtures.question(survey, "V1")));
+        Assert.assertEquals(0, (int) tally.byQuestion.get(ResponseFixtures.question(survey, "V2")));
+        Assert.assertEquals(1, (int) tally.byQuestion.get(ResponseFixtures.question(survey, "Q1")));
+        Assert.assertEquals(1, (int) tally.byQuestion.get(ResponseFixtures.question(survey, "Q2")));
+        // Spread over more shards, each copy of the responses adds its own breakoffs.
+        List<SurveyResponse> repeated = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            repeated.addAll(responses);
+        BreakoffTally tally4 = BreakoffTally.count(qcMetrics, repeated);
+        Assert.assertEquals(8, (int) tally4.byPosition.get(1));
+        Assert.assertEquals(4, (int) tally4.byQuestion.get(ResponseFixtures.question(survey, "Q2")));
+    }
+
     @Test
     public void testNonRandomRespondentFrequencies() {
 //        AbstractRespondent profile = new NonRandomRespondent(survey);
@@ -22,6 +22,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import edu.umass.cs.surveyman.analyses.IQuestionResponse;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.MersenneRandom;
 
 import java.io.IOException;
 import java.io.StringReader;
@@ -29,6 +30,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 @RunWith(JUnit4.class)
 public class RespondentTest extends TestLog {
@@ -373,4 +375,100 @@ public class RespondentTest extends TestLog {
         Assert.assertTrue(SurveyResponse.getResponseForQuestion(q2).getOpts().get(0).c.dataEquals("a"));
         Assert.assertTrue(SurveyResponse.getResponseForQuestion(q3).getOpts().get(0).c.dataEquals("a"));
     }
+
+    @Test
+    public void testPositionalAdversaries()
+            throws SurveyException
+    {
+        Question radio = new Question("radio");
+        radio.addOptions("a", "b", "c");
+        Question check = new Question("check");
+        check.addOption("x", false, false);
+        check.addOption("y", false, false);
+        check.addOption("z", false, false);
+        radio.randomize = false;
+        check.randomize = false;
+        Survey s = new Survey(radio, check);
+        SurveyDatum[] radioOpts = radio.getOptListByIndex();
+        SurveyDatum[] checkOpts = check.getOptListByIndex();
+        for (int i = 0; i < 10; i++) {
+            SurveyResponse first = new RandomRespondent(s, RandomRespondent.AdversaryType.FIRST).getResponse();
+            Assert.assertEquals(radioOpts[0], first.getResponseForQuestion(radio).getOpts().get(0).c);
+            Assert.assertEquals(1, first.getResponseForQuestion(check).getOpts().size());
+            Assert.assertEquals(checkOpts[0], first.getResponseForQuestion(check).getOpts().get(0).c);
+            // The last position in a checkbox question's response space is the bitmask 110: all but the last option.
+            SurveyResponse last = new RandomRespondent(s, RandomRespondent.AdversaryType.LAST).getResponse();
+            Assert.assertEquals(radioOpts[2], last.getResponseForQuestion(radio).getOpts().get(0).c);
+            List<OptTuple> checked = last.getResponseForQuestion(check).getOpts();
+            Assert.assertEquals(2, checked.size());
+            Assert.assertEquals(checkOpts[0], checked.get(0).c);
+            Assert.assertEquals(checkOpts[1], checked.get(1).c);
+        }
+    }
+
+    // A survey of five randomized questions. The interpreter renumbers options in place, so a population that answers
+    // by position needs its own copy for its draws to be comparable.
+    private static Survey fiveQuestions() throws SurveyException {
+        Question[] questions = new Question[5];
+        for (int i = 0; i < questions.length; i++) {
+            questions[i] = new Question("q" + i);
+            questions[i].addOptions("a", "b", "c", "d");
+        }
+        return new Survey(questions);
+    }
+
+    // Each response as the questions in the order they were seen, with the options chosen.
+    private static List<String> draw(AbstractRespondent respondent, int n) throws SurveyException {
+        List<String> drawn = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (IQuestionResponse qr : respondent.getResponse().getAllResponses())
+                sb.append(qr.getIndexSeen()).append(':').append(qr.getQuestion().data).append('=')
+                        .append(qr.getOpts().get(0).c).append(' ');
+            drawn.add(sb.toString());
+        }
+        return drawn;
+    }
+
+    @Test
+    public void testSeededRespondentsAreReproducible()
+            throws SurveyException
+    {
+        // Identically seeded populations draw the same paths and answers; copies carry on from the same generator.
+        for (long seed : new long[]{0, 7}) {
+            Assert.assertEquals(
+                    draw(new RandomRespondent(fiveQuestions(), RandomRespondent.AdversaryType.UNIFORM,
+                            new MersenneRandom(seed)), 20),
+                    draw(new RandomRespondent(fiveQuestions(), RandomRespondent.AdversaryType.UNIFORM,
+                            new MersenneRandom(seed)), 20));
+            // Preferences follow the order of the options' ids, so both of these populations answer one survey.
+            Survey s = fiveQuestions();
+            Assert.assertEquals(draw(new NonRandomRespondent(s, new MersenneRandom(seed)).copy(), 20),
+                    draw(new NonRandomRespondent(s, new MersenneRandom(seed)).copy(), 20));
+            Assert.assertEquals(
+                    draw(new NoisyLexicographicRespondent(fiveQuestions(), 0.5, new MersenneRandom(seed)), 20),
+                    draw(new NoisyLexicographicRespondent(fiveQuestions(), 0.5, new MersenneRandom(seed)), 20));
+        }
+        Assert.assertNotEquals(
+                draw(new RandomRespondent(fiveQuestions(), RandomRespondent.AdversaryType.UNIFORM,
+                        new MersenneRandom(0)), 20),
+                draw(new RandomRespondent(fiveQuestions(), RandomRespondent.AdversaryType.UNIFORM,
+                        new MersenneRandom(7)), 20));
+    }
+
+    @Test
+    public void testFreetextGenerators()
+    {
+        String[] regexes = {"[0-9]*", "[1-2][0-9][0-9][0-9]", "[1-9][0-9]*", "(foo|bar)+\\d{2,4}", "[^a-z]{3}",
+                "\\w+@\\w+\\.com", "^(?:yes|no)?$", "\\Q(x)\\E[a-c-]"};
+        for (String regex : regexes) {
+            Pattern pattern = Pattern.compile(regex);
+            FreetextGenerators.Generator generator = FreetextGenerators.forPattern(pattern);
+            Assert.assertSame(generator, FreetextGenerators.forPattern(Pattern.compile(regex)));
+            for (int i = 0; i < 100; i++) {
+                String s = generator.generate(AbstractRespondent.sharedRng);
+                Assert.assertTrue(String.format("%s does not match %s", s, regex), pattern.matcher(s).matches());
+            }
+        }
+    }
 }
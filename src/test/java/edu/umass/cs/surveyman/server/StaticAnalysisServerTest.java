@@ -1,9 +1,12 @@
 package edu.umass.cs.surveyman.server;
 
+import edu.umass.cs.surveyman.survey.Survey;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
 import edu.umass.cs.surveyman.utils.Slurpie;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
@@ -11,10 +14,17 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 /**
  * @author jfoley.
@@ -54,4 +64,95 @@ public class StaticAnalysisServerTest {
       }
     }
   }
-}
\ No newline at end of file
+
+  private static final String CSV = "question,options\nq1,a\n,b\nq2,c\n,d\n";
+
+  @Test
+  public void testCachedResubmission() throws Exception {
+    try (AnalysisService service = new AnalysisService(2, 4, 4)) {
+      Map<String, String> params = new HashMap<>();
+      params.put("classifier", "log_likelihood");
+      params.put("granularity", "0.5");
+      String key = AnalysisService.contentHash("text/csv", CSV, params);
+      AnalysisService.SurveySource source = new AnalysisService.SurveySource() {
+        @Override
+        public Survey parse() throws SurveyException {
+          return StaticAnalysisServer.parseCSV(CSV);
+        }
+      };
+      AnalysisService.Job first = service.submit(key, source, params);
+      assertTrue(first.await(5, TimeUnit.MINUTES));
+      assertEquals(AnalysisService.Status.DONE, first.getStatus());
+      AnalysisService.Job second = service.submit(key, source, params);
+      assertEquals(AnalysisService.Status.DONE, second.getStatus());
+      assertEquals(first.getReport(), second.getReport());
+      assertSame(second, service.getJob(second.id));
+    }
+  }
+
+  @Test
+  public void testBackPressure() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    AnalysisService.SurveySource blocked = new AnalysisService.SurveySource() {
+      @Override
+      public Survey parse() throws SurveyException {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        throw new SurveyException("released") {};
+      }
+    };
+    Map<String, String> params = new HashMap<>();
+    try (AnalysisService service = new AnalysisService(1, 1, 4)) {
+      AnalysisService.Job running = service.submit("a", blocked, params);
+      while (running.getStatus() == AnalysisService.Status.PENDING)
+        Thread.sleep(10);
+      AnalysisService.Job queued = service.submit("b", blocked, params);
+      assertSame(queued, service.submit("b", blocked, params));
+      try {
+        service.submit("c", blocked, params);
+        fail("Expected the full queue to reject a third job.");
+      } catch (RejectedExecutionException e) {
+        // expected
+      }
+      release.countDown();
+      assertTrue(running.await(1, TimeUnit.MINUTES));
+      assertTrue(queued.await(1, TimeUnit.MINUTES));
+      assertEquals(AnalysisService.Status.FAILED, queued.getStatus());
+      assertTrue(queued.getError() instanceof SurveyException);
+    }
+  }
+
+  private static int post(String url, String contentType, String body, boolean chunked) throws IOException {
+    try (CloseableHttpClient client = HttpClientBuilder.create().build()) {
+      HttpPost post = new HttpPost(url);
+      post.setHeader("Content-Type", contentType);
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      post.setEntity(new InputStreamEntity(new ByteArrayInputStream(bytes), chunked ? -1 : bytes.length));
+      try (CloseableHttpResponse response = client.execute(post)) {
+        return response.getStatusLine().getStatusCode();
+      }
+    }
+  }
+
+  @Test
+  public void testRequestSizeLimit() throws Exception {
+    long limit = StaticAnalysisServer.MAX_SURVEY_BYTES;
+    StaticAnalysisServer.MAX_SURVEY_BYTES = CSV.length();
+    try (StaticAnalysisServer sas = new StaticAnalysisServer(TESTING_PORT)) {
+      sas.startServer();
+      String url = "http://localhost:" + TESTING_PORT;
+      String tooLarge = CSV + "q3,e\n";
+      assertEquals(200, post(url + "/validate", "text/csv", CSV, false));
+      // Refused on its declared length, and when it declares none and has to be counted as it is read.
+      assertEquals(413, post(url + "/validate", "text/csv", tooLarge, false));
+      assertEquals(413, post(url + "/validate", "text/csv", tooLarge, true));
+      assertEquals(413, post(url + "/jobs", "application/json", tooLarge, true));
+      assertEquals(413, post(url + "/analyze", "text/csv", tooLarge, false));
+    } finally {
+      StaticAnalysisServer.MAX_SURVEY_BYTES = limit;
+    }
+  }
+}
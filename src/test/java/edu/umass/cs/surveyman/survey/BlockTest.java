@@ -1,12 +1,18 @@
 package edu.umass.cs.surveyman.survey;
 
 import edu.umass.cs.surveyman.TestLog;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
 import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
 import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import edu.umass.cs.surveyman.utils.Slurpie;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class BlockTest extends TestLog {
 
@@ -103,5 +109,61 @@ public class BlockTest extends TestLog {
         Assert.assertEquals(b5.branchParadigm, Block.BranchParadigm.NONE);
     }
 
+    @Test
+    public void testFrozenHierarchy()
+            throws SurveyException, IOException, NoSuchMethodException, IllegalAccessException,
+                   InvocationTargetException
+    {
+        for (String filename : new String[]{"pathTest.csv", "prototypicality.csv", "sample3.csv", "test5.csv"}) {
+            Survey survey = new CSVParser(new CSVLexer(Slurpie.getReader(filename), ",")).parse();
+            Assert.assertTrue(filename, survey.isFrozen());
+            List<Block> blocks = new ArrayList<>(survey.getAllBlocks());
+            List<Object> frozen = describe(survey, blocks);
+            // Thawing any block sends every block back to walking the tree.
+            blocks.get(0).thaw();
+            Assert.assertEquals(filename, describe(survey, blocks), frozen);
+            Assert.assertFalse(filename, survey.isFrozen());
+        }
+    }
+
+    @Test
+    public void testBuildingAfterFreeze() throws SurveyException {
+        Survey survey = new Survey();
+        Block top = new Block("1"), sub = new Block("1.1");
+        top.addBlock(sub);
+        survey.addBlock(top);
+        Question q1 = new Question("q1");
+        sub.addQuestion(q1);
+        survey.freeze();
+        Assert.assertTrue(survey.isFrozen());
+        Assert.assertEquals(1, top.blockSize());
+        Assert.assertEquals(top, sub.getFarthestContainingBlock());
+        Question q2 = new Question("q2");
+        sub.addQuestion(q2);
+        Assert.assertFalse(survey.isFrozen());
+        Assert.assertEquals(2, top.blockSize());
+        Assert.assertTrue(top.containsQuestion(q2));
+    }
+
+    private static List<Object> describe(Survey survey, List<Block> blocks) {
+        List<Object> description = new ArrayList<>();
+        for (Block b : blocks) {
+            description.add(b.blockSize());
+            description.add(new ArrayList<>(b.getAllQuestions()));
+            description.add(b.getFarthestContainingBlock().getId());
+            for (Question q : survey.questions)
+                description.add(b.containsQuestion(q));
+            for (Block that : blocks)
+                description.add(b.isSubblockOf(that));
+        }
+        List<Block> topLevel = new ArrayList<>();
+        for (Block b : survey.topLevelBlocks)
+            if (!b.isRandomized())
+                topLevel.add(b);
+        for (Block b : Block.getSorted(topLevel))
+            description.add(b.getId());
+        return description;
+    }
+
 
 }
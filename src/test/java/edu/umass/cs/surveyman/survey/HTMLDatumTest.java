@@ -0,0 +1,96 @@
+package edu.umass.cs.surveyman.survey;
+
+import edu.umass.cs.surveyman.TestLog;
+import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
+import org.jsoup.Jsoup;
+import org.jsoup.safety.Whitelist;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class HTMLDatumTest extends TestLog {
+
+    private static final String[] FRAGMENTS = {
+            "<p>Pick one</p>",
+            "<p>Pick one",
+            "<b>bold</b> and <i>italic</i>",
+            "<img src=\"http://example.com/a.png\">",
+            "<script>alert(1)</script>",
+            "<div onclick=\"x()\">hi</div>",
+            "plain text &amp; an entity"
+    };
+
+    public HTMLDatumTest()
+            throws IOException,
+            SyntaxException
+    {
+        super.init(this.getClass());
+    }
+
+    private static String freshlyNormalized(String html) {
+        return Jsoup.parseBodyFragment(html).normalise().body().html();
+    }
+
+    private static boolean freshlyValid(String html) {
+        return Jsoup.isValid(html, Whitelist.basicWithImages());
+    }
+
+    private static void assertMatchesFresh(String html) {
+        HTMLDatum datum = new HTMLDatum(html);
+        Assert.assertEquals(html, freshlyNormalized(html), datum.data);
+        Assert.assertEquals(html, datum.data, datum.toString());
+        Assert.assertEquals(html, datum.data, datum.toString(true));
+        Assert.assertEquals(html, freshlyValid(html), HTMLDatum.isHTMLComponent(html));
+    }
+
+    @Test
+    public void testCachedFormsMatchFreshComputation()
+    {
+        // The first pass fills the caches and the second reads from them; both must agree with Jsoup.
+        for (int pass = 0; pass < 2; pass++)
+            for (String html : FRAGMENTS)
+                assertMatchesFresh(html);
+        // A copy normalizes the already-normalized form, which is its own cache entry.
+        for (String html : FRAGMENTS) {
+            String normalized = new HTMLDatum(html).data;
+            Assert.assertEquals(html, freshlyNormalized(normalized), ((HTMLDatum) new HTMLDatum(html).copy()).data);
+        }
+    }
+
+    @Test
+    public void testChangedFragmentIsNotServedFromCache()
+    {
+        String html = "<p>Pick one</p>";
+        HTMLDatum before = new HTMLDatum(html);
+        Assert.assertTrue(HTMLDatum.isHTMLComponent(html));
+        // Each edit is a new key: the datum built from it reflects the edit, not the fragment cached before it.
+        String[] edits = {html.replace("one", "two"), html + "<script>x()</script>", html.replace("p>", "b>")};
+        for (String edited : edits) {
+            HTMLDatum after = new HTMLDatum(edited);
+            Assert.assertNotEquals(edited, before.data, after.data);
+            assertMatchesFresh(edited);
+        }
+        Assert.assertFalse(HTMLDatum.isHTMLComponent(edits[1]));
+        Assert.assertTrue(new HTMLDatum(html).dataEquals(before.data));
+        Assert.assertFalse(new HTMLDatum(edits[0]).dataEquals(before.data));
+    }
+
+    @Test
+    public void testCachesStayCorrectWhenFull()
+    {
+        for (String html : FRAGMENTS)
+            assertMatchesFresh(html);
+        // Push both caches past their limit so that they are emptied and refilled.
+        for (int i = 0; i <= HTMLDatum.CACHE_LIMIT; i++) {
+            HTMLDatum.normalize("<p>" + i + "</p>");
+            HTMLDatum.isHTMLComponent("<p>" + i + "</p>");
+        }
+        for (String html : FRAGMENTS)
+            assertMatchesFresh(html);
+        assertMatchesFresh("<p>" + HTMLDatum.CACHE_LIMIT + "</p>");
+    }
+}
@@ -0,0 +1,143 @@
+package edu.umass.cs.surveyman.survey;
+
+import edu.umass.cs.surveyman.TestLog;
+import edu.umass.cs.surveyman.analyses.RuleSet;
+import edu.umass.cs.surveyman.input.csv.CSVLexer;
+import edu.umass.cs.surveyman.input.csv.CSVParser;
+import edu.umass.cs.surveyman.input.exceptions.SyntaxException;
+import edu.umass.cs.surveyman.survey.exceptions.SnapshotException;
+import edu.umass.cs.surveyman.survey.exceptions.SurveyException;
+import org.apache.logging.log4j.LogManager;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class SnapshotTest extends TestLog {
+
+    public SnapshotTest()
+            throws IOException,
+            SyntaxException
+    {
+        super.LOGGER = LogManager.getLogger(SnapshotTest.class);
+        super.init(this.getClass());
+    }
+
+    private static byte[] snapshot(Survey survey) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SurveySnapshot.write(survey, "hash", RuleSet.defaults().names(), out);
+        return out.toByteArray();
+    }
+
+    private static void assertSameStructure(Block expected, Block actual) {
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertArrayEquals(expected.getBlockId(), actual.getBlockId());
+        Assert.assertEquals(expected.isRandomized(), actual.isRandomized());
+        Assert.assertEquals(expected.getBranchParadigm(), actual.getBranchParadigm());
+        Assert.assertEquals(expected.questions.size(), actual.questions.size());
+        for (Question q : actual.questions)
+            Assert.assertSame(actual, q.block);
+        Assert.assertEquals(expected.subBlocks.size(), actual.subBlocks.size());
+        for (int i = 0; i < expected.subBlocks.size(); i++) {
+            Assert.assertSame(actual, actual.subBlocks.get(i).parentBlock);
+            assertSameStructure(expected.subBlocks.get(i), actual.subBlocks.get(i));
+        }
+    }
+
+    @Test
+    public void testRoundTrip()
+            throws InvocationTargetException,
+            IllegalAccessException,
+            NoSuchMethodException,
+            IOException,
+            SurveyException
+    {
+        for (int i = 0; i < testsFiles.length; i++) {
+            Survey survey;
+            try {
+                survey = new CSVParser(new CSVLexer(testsFiles[i], String.valueOf(separators[i]))).parse();
+            } catch (SurveyException e) {
+                continue;
+            }
+            SurveySnapshot snapshot = SurveySnapshot.read(new ByteArrayInputStream(snapshot(survey)));
+            Survey restored = snapshot.survey;
+            Assert.assertEquals("hash", snapshot.sourceHash);
+            Assert.assertEquals(RuleSet.defaults().names(), snapshot.checkedRules);
+            Assert.assertEquals(survey.sid, restored.sid);
+            Assert.assertEquals(survey.questions.size(), restored.questions.size());
+            Assert.assertEquals(survey.blocks.keySet(), restored.blocks.keySet());
+            Assert.assertEquals(survey.topLevelBlocks.size(), restored.topLevelBlocks.size());
+            for (int j = 0; j < survey.topLevelBlocks.size(); j++)
+                assertSameStructure(survey.topLevelBlocks.get(j), restored.topLevelBlocks.get(j));
+            for (int j = 0; j < survey.questions.size(); j++) {
+                Question q = survey.questions.get(j), r = restored.questions.get(j);
+                Assert.assertEquals(q.id, r.id);
+                Assert.assertEquals(q.sourceLineNos, r.sourceLineNos);
+                Assert.assertEquals(q.options.keySet(), r.options.keySet());
+                Assert.assertEquals(q.branchMap.size(), r.branchMap.size());
+                for (int k = 0; k < q.branchMap.size(); k++) {
+                    Block dest = r.branchMap.valueAt(k);
+                    if (dest != null)
+                        Assert.assertSame(testsFiles[i], restored.blocks.get(dest.getId()), dest);
+                }
+            }
+            // The same rules reach the same verdict on the restored survey.
+            Assert.assertEquals(testsFiles[i], RuleSet.defaults().check(survey).passed(),
+                    RuleSet.defaults().check(restored).passed());
+            // A snapshot of the restored survey is byte-for-byte identical.
+            Assert.assertArrayEquals(testsFiles[i], snapshot(survey), snapshot(restored));
+        }
+    }
+
+    @Test
+    public void testRejectsOtherInput()
+            throws IOException,
+            SurveyException
+    {
+        try {
+            SurveySnapshot.read(new ByteArrayInputStream("question,options\n".getBytes("UTF-8")));
+            Assert.fail("Read a CSV file as a snapshot.");
+        } catch (SnapshotException e) {
+            // expected
+        }
+        byte[] bytes = snapshot(new Survey());
+        bytes[5]++;
+        try {
+            SurveySnapshot.read(new ByteArrayInputStream(bytes));
+            Assert.fail("Read a snapshot with the wrong version.");
+        } catch (SnapshotException e) {
+            // expected
+        }
+        bytes = snapshot(new Survey());
+        try {
+            SurveySnapshot.read(new ByteArrayInputStream(bytes, 0, bytes.length - 3));
+            Assert.fail("Read a truncated snapshot.");
+        } catch (SnapshotException e) {
+            // expected
+        }
+        // The source hash's length, just after the magic number and version, claims far more bytes than there are.
+        bytes = snapshot(new Survey());
+        bytes[6] = 0x7f;
+        try {
+            SurveySnapshot.read(new ByteArrayInputStream(bytes));
+            Assert.fail("Read a snapshot with a corrupt length.");
+        } catch (SnapshotException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUncheckedRules()
+    {
+        RuleSet rules = RuleSet.defaults();
+        Assert.assertEquals(0, rules.without(rules.names()).size());
+        Assert.assertEquals(rules.size(), rules.without(Collections.<String>emptyList()).size());
+    }
+}